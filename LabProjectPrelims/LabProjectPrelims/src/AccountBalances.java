@@ -0,0 +1,114 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Amount due and overpayment of each student, shared by every window and job of this
+ * program, in whole centavos. A student's balance is one immutable value replaced by
+ * compare-and-set, so concurrent payments for the same student are never lost and
+ * payments for different students never touch the same memory. Payments for a
+ * student whose account is not open yet are held and applied when it opens.
+ */
+public class AccountBalances {
+
+    /**
+     * A student's balance at one moment
+     */
+    public static final class Balance {
+        private final long dueCentavos;
+        private final long creditCentavos;
+        private final boolean open;
+
+        Balance(long dueCentavos, long creditCentavos) {
+            this(dueCentavos, creditCentavos, true);
+        }
+
+        private Balance(long dueCentavos, long creditCentavos, boolean open) {
+            this.dueCentavos = dueCentavos;
+            this.creditCentavos = creditCentavos;
+            this.open = open;
+        }
+
+        /**
+         * A payment first clears the amount due; anything beyond it is overpayment
+         * @param centavos The amount paid
+         * @return The balance after the payment
+         */
+        public Balance afterPayment(long centavos) {
+            if (centavos >= dueCentavos) {
+                return new Balance(0, creditCentavos + centavos - dueCentavos, open);
+            }
+            return new Balance(dueCentavos - centavos, creditCentavos, open);
+        }
+
+        public long getDueCentavos() { return dueCentavos; }
+        public long getCreditCentavos() { return creditCentavos; }
+
+        /**
+         * @return The amount due in pesos
+         */
+        public double getAmountDue() {
+            return dueCentavos / 100.0;
+        }
+
+        /**
+         * @return The overpayment in pesos
+         */
+        public double getOverpayment() {
+            return creditCentavos / 100.0;
+        }
+    }
+
+    // An account that is not open holds the payments made so far as its overpayment
+    private static final Balance NOT_OPEN = new Balance(0, 0, false);
+
+    private final ConcurrentHashMap<String, AtomicReference<Balance>> accounts = new ConcurrentHashMap<>();
+
+    /**
+     * Opens a student's account unless it is already open; payments made before it
+     * was opened are applied to the new balance
+     * @param studentID The student
+     * @param dueCentavos The amount due
+     * @param creditCentavos The overpayment
+     * @return The student's balance, which is the existing one if the account was open
+     */
+    public Balance open(String studentID, long dueCentavos, long creditCentavos) {
+        AtomicReference<Balance> account = accounts.computeIfAbsent(studentID, ignored -> new AtomicReference<>(NOT_OPEN));
+        while (true) {
+            Balance before = account.get();
+            if (before.open) {
+                return before;
+            }
+            Balance opened = new Balance(dueCentavos, creditCentavos).afterPayment(before.creditCentavos);
+            if (account.compareAndSet(before, opened)) {
+                return opened;
+            }
+        }
+    }
+
+    /**
+     * @param studentID The student
+     * @return The student's balance, or null if the account is not open
+     */
+    public Balance getBalance(String studentID) {
+        AtomicReference<Balance> account = accounts.get(studentID);
+        Balance balance = account == null ? null : account.get();
+        return balance == null || !balance.open ? null : balance;
+    }
+
+    /**
+     * Applies a payment to a student's balance, or holds it until the account is opened
+     * @param studentID The student
+     * @param centavos The amount paid
+     * @return The balance just before the payment, or null if the account is not open;
+     *         afterPayment() on it gives the balance the payment produced
+     */
+    public Balance applyPayment(String studentID, long centavos) {
+        AtomicReference<Balance> account = accounts.computeIfAbsent(studentID, ignored -> new AtomicReference<>(NOT_OPEN));
+        while (true) {
+            Balance before = account.get();
+            if (account.compareAndSet(before, before.afterPayment(centavos))) {
+                return before.open ? before : null;
+            }
+        }
+    }
+}
@@ -0,0 +1,270 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal that makes appends to several data files all-or-nothing.
+ * A commit first writes one journal record holding every file's start offset and
+ * bytes (and any in-place patches) and forces it to disk, then appends to the files,
+ * applies the patches, forces the files, and empties the journal. If the program
+ * dies in between, recover() finds the record and finishes the appends that are
+ * missing or torn and reapplies the patches, so the files never disagree.
+ *
+ * Callers hold the DataFileLock for the data directory, which also keeps other
+ * processes from appending after an unfinished commit before it is recovered.
+ */
+public class AppendJournal {
+
+    private static final int MAGIC = 0x414A524E;   // "AJRN"
+
+    /**
+     * Bytes to overwrite in place at an offset within a file, e.g. a tombstone
+     */
+    public static class Patch {
+        final File file;
+        final long offset;
+        final byte[] bytes;
+
+        public Patch(File file, long offset, byte[] bytes) {
+            this.file = file;
+            this.offset = offset;
+            this.bytes = bytes;
+        }
+    }
+
+    private final File journalFile;
+
+    private long commits;
+    private long forces;
+    private long recoveredAppends;
+
+    /**
+     * Creates a journal
+     * @param journalFile The journal file, in the same directory as the data files
+     */
+    public AppendJournal(File journalFile) {
+        this.journalFile = journalFile;
+    }
+
+    /**
+     * Appends bytes to several files as one commit; the caller holds the data lock
+     * @param files The files to append to
+     * @param data The bytes for each file, made of complete lines
+     * @return The length of each file before and after its append
+     * @throws IOException If the commit could not be written; recover() completes it later
+     */
+    public long[][] commit(File[] files, byte[][] data) throws IOException {
+        return commit(files, data, Collections.emptyList());
+    }
+
+    /**
+     * Appends bytes to several files and overwrites bytes in place as one commit;
+     * the caller holds the data lock
+     * @param files The files to append to
+     * @param data The bytes for each file, made of complete lines
+     * @param patches Bytes to overwrite within the files' existing contents
+     * @return The length of each appended file before and after its append
+     * @throws IOException If the commit could not be written; recover() completes it later
+     */
+    public long[][] commit(File[] files, byte[][] data, List<Patch> patches) throws IOException {
+        recover();
+        FileChannel[] channels = new FileChannel[files.length];
+        try {
+            long[] starts = new long[files.length];
+            for (int i = 0; i < files.length; i++) {
+                channels[i] = BatchingAppender.openForAppend(files[i]);
+                // Terminate a line torn by a dead writer, so our bytes start a line
+                starts[i] = BatchingAppender.writeAtEnd(channels[i], channels[i].size(), ByteBuffer.allocate(0));
+            }
+
+            try (FileChannel journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer record = ByteBuffer.wrap(encode(files, starts, data, patches));
+                while (record.hasRemaining()) {
+                    journal.write(record);
+                }
+                journal.force(false);
+            }
+
+            long[][] lengths = new long[files.length][];
+            for (int i = 0; i < files.length; i++) {
+                write(channels[i], starts[i], data[i]);
+                lengths[i] = new long[]{starts[i], starts[i] + data[i].length};
+            }
+            for (FileChannel channel : channels) {
+                channel.force(false);
+            }
+            for (Patch patch : patches) {
+                redoPatch(patch);
+            }
+            clear();
+            synchronized (this) {
+                commits++;
+                forces += files.length + patches.size() + 1;
+            }
+            return lengths;
+        } finally {
+            for (FileChannel channel : channels) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Completes the commit left in the journal by a program that stopped in the
+     * middle of it; the caller holds the data lock. A journal record that was not
+     * completely written is dropped, since none of its appends were started.
+     * @return The number of file appends that had to be redone
+     * @throws IOException If the journal or a data file cannot be read or written
+     */
+    public int recover() throws IOException {
+        if (journalFile.length() == 0) {
+            return 0;
+        }
+        byte[] record;
+        try (FileInputStream in = new FileInputStream(journalFile)) {
+            record = in.readAllBytes();
+        }
+        int redone = 0;
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        try {
+            if (record.length < 16 || in.readInt() != MAGIC || !checksumMatches(record)) {
+                clear();
+                return 0;
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                File file = new File(in.readUTF());
+                long start = in.readLong();
+                byte[] data = new byte[in.readInt()];
+                in.readFully(data);
+                if (redo(file, start, data)) {
+                    redone++;
+                }
+            }
+            int patchCount = in.readInt();
+            for (int i = 0; i < patchCount; i++) {
+                File file = new File(in.readUTF());
+                long offset = in.readLong();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                redoPatch(new Patch(file, offset, bytes));
+            }
+        } catch (EOFException e) {
+            // A record with a matching checksum is complete, so this is not expected
+            System.err.println("Error reading account journal: " + e.getMessage());
+        }
+        clear();
+        synchronized (this) {
+            recoveredAppends += redone;
+        }
+        return redone;
+    }
+
+    /**
+     * Makes sure a file holds the journaled bytes at their offset
+     * @return true if the bytes had to be written again
+     */
+    private static boolean redo(File file, long start, byte[] data) throws IOException {
+        try (FileChannel channel = BatchingAppender.openForAppend(file)) {
+            long length = channel.size();
+            long end = start + data.length;
+            if (length >= start) {
+                int present = (int) Math.min(length - start, data.length);
+                ByteBuffer existing = ByteBuffer.allocate(present);
+                while (existing.hasRemaining()) {
+                    if (channel.read(existing, start + existing.position()) < 0) {
+                        break;
+                    }
+                }
+                boolean matches = Arrays.equals(existing.array(), 0, present, data, 0, present);
+                if (matches && length >= end) {
+                    return false;
+                }
+                if (matches || length <= end) {
+                    // Our own append was cut short (or left garbage): write it again in place
+                    write(channel, start, data);
+                    channel.force(false);
+                    return true;
+                }
+            }
+            // The file no longer lines up with the journal; keep the records anyway
+            BatchingAppender.writeAtEnd(channel, length, ByteBuffer.wrap(data));
+            channel.force(false);
+            return true;
+        }
+    }
+
+    /**
+     * Overwrites a patch's bytes; writing them again is harmless. A patch past the
+     * end of the file is skipped, since its target line is gone.
+     */
+    private static void redoPatch(Patch patch) throws IOException {
+        try (FileChannel channel = BatchingAppender.openForAppend(patch.file)) {
+            if (channel.size() >= patch.offset + patch.bytes.length) {
+                write(channel, patch.offset, patch.bytes);
+                channel.force(false);
+            }
+        }
+    }
+
+    private static void write(FileChannel channel, long position, byte[] data) throws IOException {
+        ByteBuffer bytes = ByteBuffer.wrap(data);
+        while (bytes.hasRemaining()) {
+            position += channel.write(bytes, position);
+        }
+    }
+
+    private static byte[] encode(File[] files, long[] starts, byte[][] data, List<Patch> patches) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(files.length);
+        for (int i = 0; i < files.length; i++) {
+            out.writeUTF(files[i].getAbsolutePath());
+            out.writeLong(starts[i]);
+            out.writeInt(data[i].length);
+            out.write(data[i]);
+        }
+        out.writeInt(patches.size());
+        for (Patch patch : patches) {
+            out.writeUTF(patch.file.getAbsolutePath());
+            out.writeLong(patch.offset);
+            out.writeInt(patch.bytes.length);
+            out.write(patch.bytes);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static boolean checksumMatches(byte[] record) {
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length - 8);
+        return ByteBuffer.wrap(record, record.length - 8, 8).getLong() == crc.getValue();
+    }
+
+    /**
+     * Empties the journal. This is not forced: if it is lost, recover() finds every
+     * append already in place and only empties it again.
+     */
+    private void clear() throws IOException {
+        try (FileChannel journal = FileChannel.open(journalFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE)) {
+            journal.truncate(0);
+        }
+    }
+
+    public synchronized long getCommits() { return commits; }
+    public synchronized long getForces() { return forces; }
+    public synchronized long getRecoveredAppends() { return recoveredAppends; }
+}
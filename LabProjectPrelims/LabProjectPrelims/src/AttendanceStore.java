@@ -0,0 +1,510 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Event store for class attendance.
+ * Every per-meeting event is packed into one long and, with a backing file, appended
+ * to a compact binary log, while per-student, per-class counters and per-meeting
+ * roster bitmaps are kept up to date as the events arrive. Percentage queries and
+ * absence-limit reports are answered from the counters and never rescan the history,
+ * so the events themselves are not kept in memory: memory grows with the students,
+ * classes and meetings, not with the number of events imported.
+ *
+ * The first event of a new class is preceded in the log by a record naming the
+ * class, so replay numbers the classes as they were numbered when written. Logs
+ * written before keep their class names in a .classes file beside the log.
+ */
+public class AttendanceStore {
+
+    public static final byte PRESENT = 0;
+    public static final byte ABSENT = 1;
+    public static final byte LATE = 2;
+
+    private static final int MAX_STUDENT_ID = (1 << 24) - 1;
+    private static final int MAX_CLASSES = 1 << 16;
+    private static final int MAX_MEETINGS = 1 << 16;
+    // Status of a log record naming the next class: [class:16][name length:16],
+    // followed by the UTF-8 name padded to whole longs
+    private static final byte CLASS_NAME = 0x7F;
+
+    private final File logFile;
+    private FileOutputStream logFileOut;
+    private DataOutputStream logOut;
+    private long replayedLength = -1;   // end of the last complete record, once replayed
+
+    // Events are packed as [studentID:24][class:16][meeting:16][status:8]
+    private int eventCount;
+
+    // Dense numbering of students and classes
+    private final Map<Integer, Integer> studentSlots = new HashMap<>();
+    private int[] slotStudentIDs = new int[64];
+    private final Map<String, Integer> classIDs = new HashMap<>();
+    private final List<String> classNames = new ArrayList<>();
+
+    // Counters, one row per (student, class) pair
+    private final Map<Long, Integer> counterRows = new HashMap<>();
+    private int[] present = new int[64];
+    private int[] absent = new int[64];
+    private int[] late = new int[64];
+    private int[] rowStudentSlot = new int[64];
+    private int rowCount;
+
+    // Per class: counter rows of the roster and one set of bitmaps per meeting
+    private final List<List<Integer>> classRosters = new ArrayList<>();
+    private final List<List<MeetingBitmaps>> classMeetings = new ArrayList<>();
+
+    /**
+     * Bitmaps over student slots for a single meeting of a class
+     */
+    private static class MeetingBitmaps {
+        final BitSet recorded = new BitSet();
+        final BitSet attended = new BitSet();
+        final BitSet late = new BitSet();
+    }
+
+    /**
+     * Creates an in-memory store with no backing file
+     */
+    public AttendanceStore() {
+        this.logFile = null;
+    }
+
+    /**
+     * Creates a store backed by a binary event log, replaying any existing events
+     * @param logFile The binary log file to replay and append to
+     */
+    public AttendanceStore(File logFile) {
+        this.logFile = logFile;
+        replay();
+    }
+
+    /**
+     * Records an attendance event. A later event for the same student, class and
+     * meeting replaces the earlier one and the counters are adjusted accordingly.
+     * @param studentID The 7-digit student ID
+     * @param className The class (subject) name
+     * @param meeting The meeting number within the class, starting at 0
+     * @param status PRESENT, ABSENT or LATE
+     */
+    public synchronized void recordEvent(String studentID, String className, int meeting, byte status) {
+        int id = parseStudentID(studentID);
+        checkEvent(meeting, status);
+        try {
+            long event = pack(id, defineClass(className), meeting, status);
+            if (logFile != null) {
+                openLog();
+                logOut.writeLong(event);
+                logOut.flush();
+            }
+            apply(event);
+        } catch (IOException e) {
+            System.err.println("Error writing attendance log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Records a batch of attendance events with a single flush and fsync of the
+     * log, used by bulk imports
+     * @param studentIDs The numeric student IDs
+     * @param classNames The class names
+     * @param meetings The meeting numbers
+     * @param statuses The statuses (PRESENT, ABSENT or LATE)
+     * @param count The number of events to take from the arrays
+     * @throws IllegalArgumentException if any event is invalid; none are recorded then
+     * @throws IOException if the log cannot be written
+     */
+    public synchronized void recordEvents(int[] studentIDs, String[] classNames, int[] meetings,
+                                          byte[] statuses, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (studentIDs[i] < 0 || studentIDs[i] > MAX_STUDENT_ID) {
+                throw new IllegalArgumentException("Invalid student ID: " + studentIDs[i]);
+            }
+            checkEvent(meetings[i], statuses[i]);
+            checkClass(classNames[i]);
+        }
+        long[] events = new long[count];
+        for (int i = 0; i < count; i++) {
+            events[i] = pack(studentIDs[i], defineClass(classNames[i]), meetings[i], statuses[i]);
+        }
+        if (logFile != null) {
+            // Counters only change once the batch is in the log
+            openLog();
+            for (int i = 0; i < count; i++) {
+                logOut.writeLong(events[i]);
+            }
+            logOut.flush();
+            logFileOut.getFD().sync();
+        }
+        for (int i = 0; i < count; i++) {
+            apply(events[i]);
+        }
+    }
+
+    /**
+     * @return The present, absent and late counts for a student in a class
+     */
+    public synchronized int[] getCounts(String studentID, String className) {
+        int row = findRow(studentID, className);
+        if (row < 0) {
+            return new int[]{0, 0, 0};
+        }
+        return new int[]{present[row], absent[row], late[row]};
+    }
+
+    /**
+     * Attendance percentage for a student in a class; late counts as attended
+     * @return The percentage (0-100), or 0 if there are no meetings recorded
+     */
+    public synchronized double getAttendancePercentage(String studentID, String className) {
+        int row = findRow(studentID, className);
+        if (row < 0) {
+            return 0.0;
+        }
+        return percentage(row);
+    }
+
+    /**
+     * Lists the students whose absences in a class exceed the given limit
+     * @param className The class name
+     * @param absenceLimit The maximum number of allowed absences
+     * @return The IDs of the students over the limit
+     */
+    public synchronized List<String> getStudentsOverAbsenceLimit(String className, int absenceLimit) {
+        List<String> result = new ArrayList<>();
+        Integer classID = classIDs.get(className);
+        if (classID == null) {
+            return result;
+        }
+        for (int row : classRosters.get(classID)) {
+            if (absent[row] > absenceLimit) {
+                result.add(formatStudentID(slotStudentIDs[rowStudentSlot[row]]));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * @return The number of students that attended (present or late) a meeting
+     */
+    public synchronized int getMeetingAttendance(String className, int meeting) {
+        MeetingBitmaps bitmaps = findMeeting(className, meeting);
+        return bitmaps == null ? 0 : bitmaps.attended.cardinality();
+    }
+
+    /**
+     * @return The number of students recorded absent in a meeting
+     */
+    public synchronized int getMeetingAbsences(String className, int meeting) {
+        MeetingBitmaps bitmaps = findMeeting(className, meeting);
+        if (bitmaps == null) {
+            return 0;
+        }
+        BitSet missing = (BitSet) bitmaps.recorded.clone();
+        missing.andNot(bitmaps.attended);
+        return missing.cardinality();
+    }
+
+    /**
+     * Builds the attendance table rows for one student
+     * @return Rows of {Subject, Present, Absent, Late, Percentage}
+     */
+    public synchronized Object[][] getStudentSummary(String studentID) {
+        Integer slot = studentSlots.get(parseStudentID(studentID));
+        if (slot == null) {
+            return new Object[0][5];
+        }
+        List<Object[]> rows = new ArrayList<>();
+        for (int classID = 0; classID < classNames.size(); classID++) {
+            Integer row = counterRows.get(rowKey(slot, classID));
+            if (row != null) {
+                rows.add(new Object[]{
+                    classNames.get(classID),
+                    String.valueOf(present[row]),
+                    String.valueOf(absent[row]),
+                    String.valueOf(late[row]),
+                    formatPercentage(percentage(row))
+                });
+            }
+        }
+        return rows.toArray(new Object[0][]);
+    }
+
+    /**
+     * @return The number of events recorded or replayed
+     */
+    public synchronized int getEventCount() {
+        return eventCount;
+    }
+
+    /**
+     * Flushes and closes the backing log file, if any
+     */
+    public synchronized void close() {
+        if (logOut != null) {
+            try {
+                logOut.close();
+            } catch (IOException e) {
+                System.err.println("Error closing attendance log: " + e.getMessage());
+            }
+            logOut = null;
+            logFileOut = null;
+        }
+    }
+
+    private void apply(long event) {
+        int studentID = (int) (event >>> 40);
+        int classID = (int) ((event >>> 24) & 0xFFFF);
+        int meeting = (int) ((event >>> 8) & 0xFFFF);
+        byte status = (byte) (event & 0xFF);
+
+        eventCount++;
+
+        int slot = studentSlot(studentID);
+        int row = counterRow(slot, classID);
+        MeetingBitmaps bitmaps = meetingBitmaps(classID, meeting);
+
+        // Undo the previous status for this meeting, if one was recorded
+        if (bitmaps.recorded.get(slot)) {
+            if (bitmaps.late.get(slot)) {
+                late[row]--;
+            } else if (bitmaps.attended.get(slot)) {
+                present[row]--;
+            } else {
+                absent[row]--;
+            }
+        }
+
+        bitmaps.recorded.set(slot);
+        bitmaps.attended.set(slot, status != ABSENT);
+        bitmaps.late.set(slot, status == LATE);
+        if (status == PRESENT) {
+            present[row]++;
+        } else if (status == LATE) {
+            late[row]++;
+        } else {
+            absent[row]++;
+        }
+    }
+
+    private double percentage(int row) {
+        int total = present[row] + absent[row] + late[row];
+        return total == 0 ? 0.0 : (present[row] + late[row]) * 100.0 / total;
+    }
+
+    private int studentSlot(int studentID) {
+        Integer slot = studentSlots.get(studentID);
+        if (slot == null) {
+            slot = studentSlots.size();
+            if (slot == slotStudentIDs.length) {
+                slotStudentIDs = Arrays.copyOf(slotStudentIDs, slot * 2);
+            }
+            slotStudentIDs[slot] = studentID;
+            studentSlots.put(studentID, slot);
+        }
+        return slot;
+    }
+
+    private int classID(String className) {
+        Integer id = classIDs.get(className);
+        if (id == null) {
+            if (classNames.size() == MAX_CLASSES) {
+                throw new IllegalStateException("Too many classes in attendance store");
+            }
+            id = classNames.size();
+            classIDs.put(className, id);
+            classNames.add(className);
+            classRosters.add(new ArrayList<>());
+            classMeetings.add(new ArrayList<>());
+        }
+        return id;
+    }
+
+    private int counterRow(int slot, int classID) {
+        long key = rowKey(slot, classID);
+        Integer row = counterRows.get(key);
+        if (row == null) {
+            row = rowCount++;
+            if (row == present.length) {
+                int newCapacity = present.length * 2;
+                present = Arrays.copyOf(present, newCapacity);
+                absent = Arrays.copyOf(absent, newCapacity);
+                late = Arrays.copyOf(late, newCapacity);
+                rowStudentSlot = Arrays.copyOf(rowStudentSlot, newCapacity);
+            }
+            rowStudentSlot[row] = slot;
+            counterRows.put(key, row);
+            classRosters.get(classID).add(row);
+        }
+        return row;
+    }
+
+    private MeetingBitmaps meetingBitmaps(int classID, int meeting) {
+        List<MeetingBitmaps> meetings = classMeetings.get(classID);
+        while (meetings.size() <= meeting) {
+            meetings.add(null);
+        }
+        MeetingBitmaps bitmaps = meetings.get(meeting);
+        if (bitmaps == null) {
+            bitmaps = new MeetingBitmaps();
+            meetings.set(meeting, bitmaps);
+        }
+        return bitmaps;
+    }
+
+    private int findRow(String studentID, String className) {
+        Integer slot = studentSlots.get(parseStudentID(studentID));
+        Integer classID = classIDs.get(className);
+        if (slot == null || classID == null) {
+            return -1;
+        }
+        Integer row = counterRows.get(rowKey(slot, classID));
+        return row == null ? -1 : row;
+    }
+
+    private MeetingBitmaps findMeeting(String className, int meeting) {
+        Integer classID = classIDs.get(className);
+        if (classID == null) {
+            return null;
+        }
+        List<MeetingBitmaps> meetings = classMeetings.get(classID);
+        return meeting >= 0 && meeting < meetings.size() ? meetings.get(meeting) : null;
+    }
+
+    private void replay() {
+        if (logFile == null || !logFile.exists()) {
+            return;
+        }
+        File namesFile = new File(logFile.getPath() + ".classes");
+        try {
+            if (namesFile.exists()) {
+                try (BufferedReader reader = new BufferedReader(new FileReader(namesFile))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (!line.isEmpty()) {
+                            classID(line);
+                        }
+                    }
+                }
+            }
+            long records = logFile.length() / Long.BYTES;
+            long unknown = 0;
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)))) {
+                long i = 0;
+                while (i < records) {
+                    long record = in.readLong();
+                    int classID = (int) ((record >>> 24) & 0xFFFF);
+                    if ((byte) record == CLASS_NAME) {
+                        int length = (int) ((record >>> 8) & 0xFFFF);
+                        int padded = (length + Long.BYTES - 1) / Long.BYTES;
+                        if (i + padded >= records) {
+                            break;      // cut short by a crash
+                        }
+                        byte[] name = new byte[padded * Long.BYTES];
+                        in.readFully(name);
+                        if (classID == classNames.size()) {
+                            classID(new String(name, 0, length, StandardCharsets.UTF_8));
+                        }
+                        i += 1 + padded;
+                    } else {
+                        if (classID < classNames.size()) {
+                            apply(record);
+                        } else {
+                            unknown++;  // its class was never named, e.g. the .classes file was edited
+                        }
+                        i++;
+                    }
+                }
+                replayedLength = i * Long.BYTES;
+            }
+            if (unknown > 0) {
+                System.err.println("Skipped " + unknown + " attendance events of unknown classes in " + logFile);
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading attendance log: " + e.getMessage());
+        }
+    }
+
+    private void openLog() throws IOException {
+        if (logOut == null) {
+            if (replayedLength >= 0 && logFile.length() > replayedLength) {
+                // Drop a record cut short by a crash, so appends start on a record boundary
+                try (RandomAccessFile file = new RandomAccessFile(logFile, "rw")) {
+                    file.setLength(replayedLength);
+                }
+            }
+            logFileOut = new FileOutputStream(logFile, true);
+            logOut = new DataOutputStream(new BufferedOutputStream(logFileOut));
+        }
+    }
+
+    /**
+     * Numbers a class; a new one is named in the log before its first event
+     * @return The class number
+     */
+    private int defineClass(String className) throws IOException {
+        Integer id = classIDs.get(className);
+        if (id != null) {
+            return id;
+        }
+        checkClass(className);
+        if (classNames.size() == MAX_CLASSES) {
+            throw new IllegalStateException("Too many classes in attendance store");
+        }
+        if (logFile != null) {
+            byte[] name = className.getBytes(StandardCharsets.UTF_8);
+            openLog();
+            logOut.writeLong(((long) classNames.size() << 24) | ((long) name.length << 8) | CLASS_NAME);
+            logOut.write(name);
+            logOut.write(new byte[(Long.BYTES - name.length % Long.BYTES) % Long.BYTES]);
+        }
+        return classID(className);
+    }
+
+    private static void checkClass(String className) {
+        if (className == null || className.getBytes(StandardCharsets.UTF_8).length > 0xFFFF) {
+            throw new IllegalArgumentException("Invalid class name: " + className);
+        }
+    }
+
+    private static void checkEvent(int meeting, byte status) {
+        if (meeting < 0 || meeting >= MAX_MEETINGS) {
+            throw new IllegalArgumentException("Meeting out of range: " + meeting);
+        }
+        if (status != PRESENT && status != ABSENT && status != LATE) {
+            throw new IllegalArgumentException("Unknown attendance status: " + status);
+        }
+    }
+
+    private static long pack(int studentID, int classID, int meeting, byte status) {
+        return ((long) studentID << 40) | ((long) classID << 24) | ((long) meeting << 8) | status;
+    }
+
+    private static long rowKey(int slot, int classID) {
+        return ((long) slot << 16) | classID;
+    }
+
+    private static int parseStudentID(String studentID) {
+        int id;
+        try {
+            id = Integer.parseInt(studentID.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid student ID: " + studentID);
+        }
+        if (id < 0 || id > MAX_STUDENT_ID) {
+            throw new IllegalArgumentException("Invalid student ID: " + studentID);
+        }
+        return id;
+    }
+
+    private static String formatStudentID(int id) {
+        return String.format("%07d", id);
+    }
+
+    private static String formatPercentage(double percentage) {
+        String formatted = String.format("%.2f", percentage);
+        // Trim trailing zeros so 100.00 shows as 100 and 87.50 as 87.5
+        formatted = formatted.replaceAll("0+$", "").replaceAll("\\.$", "");
+        return formatted + "%";
+    }
+}
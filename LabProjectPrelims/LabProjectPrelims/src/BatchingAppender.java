@@ -0,0 +1,212 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Appends whole lines to a shared data file, safely across processes.
+ * Lines from concurrent callers are collected into batches: the first waiting caller
+ * takes the directory's DataFileLock and writes every queued line with a single
+ * append, while the others wait for that write. Each line is therefore written
+ * complete, and the lock is held only for one short write per batch. An optional
+ * filter sees each batch under the lock and may refuse some of its lines.
+ */
+public class BatchingAppender {
+
+    /**
+     * Notified after each batch is written, while the lock is still held
+     */
+    public interface BatchListener {
+        void written(List<String> lines, long lengthBefore, long lengthAfter);
+    }
+
+    /**
+     * Chooses the lines of a batch to write, while the lock is held and before the write
+     */
+    public interface BatchFilter {
+        /**
+         * @param lines The batch
+         * @param length The file length before the write
+         * @return Whether to write each line
+         * @throws IOException If the file cannot be read
+         */
+        boolean[] admit(List<String> lines, long length) throws IOException;
+    }
+
+    // A submitted line; written is set by the batch's writer before its callers return
+    private static final class Line {
+        final String text;
+        boolean written;
+
+        Line(String text) {
+            this.text = text;
+        }
+    }
+
+    private final File file;
+    private final DataFileLock lock;
+    private final BatchListener listener;
+    private final BatchFilter filter;
+    private final boolean force;
+
+    private final GroupCommit<Line> group = new GroupCommit<>(this::write);
+
+    /**
+     * Creates an appender
+     * @param file The file to append to
+     * @param listener Notified after each batch, or null
+     */
+    public BatchingAppender(File file, BatchListener listener) {
+        this(file, listener, false);
+    }
+
+    /**
+     * Creates an appender
+     * @param file The file to append to
+     * @param listener Notified after each batch, or null
+     * @param force true to force each batch to disk before its callers return
+     */
+    public BatchingAppender(File file, BatchListener listener, boolean force) {
+        this(file, listener, null, force);
+    }
+
+    /**
+     * Creates an appender whose batches pass a filter
+     * @param file The file to append to
+     * @param listener Notified after each batch, or null
+     * @param filter Chooses the lines of each batch to write, or null to write them all
+     * @param force true to force each batch to disk before its callers return
+     */
+    public BatchingAppender(File file, BatchListener listener, BatchFilter filter, boolean force) {
+        this.file = file;
+        this.lock = DataFileLock.forFile(file);
+        this.listener = listener;
+        this.filter = filter;
+        this.force = force;
+    }
+
+    /**
+     * Appends one line and waits until it is written
+     * @param line The line, without a line terminator
+     * @return true if the line was written, false if the filter refused it
+     * @throws IOException If the batch holding the line could not be written
+     */
+    public boolean append(String line) throws IOException {
+        Line item = new Line(line);
+        group.submit(item);
+        return item.written;
+    }
+
+    /**
+     * Appends several lines in one batch and waits until they are written
+     * @param lines The lines, without line terminators
+     * @return Whether each line was written; false where the filter refused it
+     * @throws IOException If the batch holding the lines could not be written
+     */
+    public boolean[] appendAll(List<String> lines) throws IOException {
+        List<Line> items = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            items.add(new Line(line));
+        }
+        group.submitAll(items);
+        boolean[] written = new boolean[items.size()];
+        for (int i = 0; i < written.length; i++) {
+            written[i] = items.get(i).written;
+        }
+        return written;
+    }
+
+    private void write(List<Line> batch) throws IOException {
+        List<String> lines = new ArrayList<>(batch.size());
+        for (Line line : batch) {
+            lines.add(line.text);
+        }
+        // Without a filter every line is written, so the bytes are ready before the lock
+        ByteBuffer all = filter == null ? encode(lines) : null;
+        lock.call(() -> {
+            try (FileChannel channel = openForAppend(file)) {
+                long lengthBefore = channel.size();
+                List<String> admitted = lines;
+                ByteBuffer bytes = all;
+                boolean[] admit = null;
+                if (filter != null) {
+                    admit = filter.admit(lines, lengthBefore);
+                    admitted = new ArrayList<>(lines.size());
+                    for (int i = 0; i < lines.size(); i++) {
+                        if (admit[i]) {
+                            admitted.add(lines.get(i));
+                        }
+                    }
+                    bytes = encode(admitted);
+                }
+                if (!admitted.isEmpty()) {
+                    long lengthAfter = writeAtEnd(channel, lengthBefore, bytes);
+                    if (force) {
+                        channel.force(false);
+                    }
+                    if (listener != null) {
+                        listener.written(admitted, lengthBefore, lengthAfter);
+                    }
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.get(i).written = admit == null || admit[i];
+                }
+            }
+            return null;
+        });
+    }
+
+    private static ByteBuffer encode(List<String> lines) {
+        StringBuilder text = new StringBuilder(lines.size() * 80);
+        for (String line : lines) {
+            text.append(line).append(System.lineSeparator());
+        }
+        return ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Opens a file for appends made while holding the DataFileLock. The channel is
+     * also readable, so the end of the file can be checked for a torn last line.
+     */
+    static FileChannel openForAppend(File file) throws IOException {
+        return FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Writes complete lines at the end of the file; the caller holds the DataFileLock
+     * @return The file length after the write
+     */
+    static long writeAtEnd(FileChannel channel, long length, ByteBuffer bytes) throws IOException {
+        ByteBuffer last = ByteBuffer.allocate(1);
+        if (length > 0 && channel.read(last, length - 1) == 1 && last.get(0) != '\n') {
+            // A writer died mid-line; keep its fragment off our first line
+            ByteBuffer newline = ByteBuffer.wrap(System.lineSeparator().getBytes(StandardCharsets.UTF_8));
+            while (newline.hasRemaining()) {
+                length += channel.write(newline, length);
+            }
+        }
+        while (bytes.hasRemaining()) {
+            length += channel.write(bytes, length);
+        }
+        return length;
+    }
+
+    /**
+     * @return Number of batches written
+     */
+    public long getBatches() {
+        return group.getBatches();
+    }
+
+    /**
+     * @return Number of lines written
+     */
+    public long getLines() {
+        return group.getItems();
+    }
+}
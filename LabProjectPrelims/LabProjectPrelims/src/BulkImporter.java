@@ -0,0 +1,359 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Streaming bulk importer for faculty grade and attendance sheets.
+ * The sheet is read in chunks of lines that are parsed and validated in parallel
+ * against the in-memory student ID index. Accepted rows are then persisted in sheet
+ * order with one batched append and one fsync per chunk. Only a fixed number of
+ * chunks are in flight at a time, so memory stays bounded for any sheet size.
+ *
+ * Sheet rows (blank lines and lines starting with '#' are skipped):
+ *   GRADE,studentID,courseCode,term,grade,units
+ *   ATTENDANCE,studentID,className,meeting,P|A|L
+ */
+public class BulkImporter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 10_000;
+    private static final int MAX_SAMPLE_REJECTS = 100;
+
+    private final StudentIdIndex idIndex;
+    private final File gradesFile;
+    private final AttendanceStore attendanceStore;
+    private final int chunkSize;
+    private final int parserThreads;
+
+    public BulkImporter(StudentIdIndex idIndex, File gradesFile, AttendanceStore attendanceStore) {
+        this(idIndex, gradesFile, attendanceStore, DEFAULT_CHUNK_SIZE, Runtime.getRuntime().availableProcessors());
+    }
+
+    public BulkImporter(StudentIdIndex idIndex, File gradesFile, AttendanceStore attendanceStore,
+                        int chunkSize, int parserThreads) {
+        if (chunkSize <= 0 || parserThreads <= 0) {
+            throw new IllegalArgumentException("Chunk size and parser threads must be positive");
+        }
+        this.idIndex = idIndex;
+        this.gradesFile = gradesFile;
+        this.attendanceStore = attendanceStore;
+        this.chunkSize = chunkSize;
+        this.parserThreads = parserThreads;
+    }
+
+    /**
+     * Imports a sheet file; rejected rows are written next to it with a ".rejects" suffix
+     * @param sheet The sheet to import
+     * @return The import report
+     * @throws IOException if the sheet cannot be read or the rows cannot be persisted
+     */
+    public ImportReport importSheet(File sheet) throws IOException {
+        try (Reader reader = new FileReader(sheet, StandardCharsets.UTF_8)) {
+            return importSheet(reader, new File(sheet.getPath() + ".rejects"));
+        }
+    }
+
+    /**
+     * Imports a sheet from a reader
+     * @param sheet The sheet contents
+     * @param rejectsFile The file that receives the rejected rows
+     * @return The import report
+     * @throws IOException if the sheet cannot be read or the rows cannot be persisted
+     */
+    public ImportReport importSheet(Reader sheet, File rejectsFile) throws IOException {
+        long start = System.nanoTime();
+        ImportReport report = new ImportReport(rejectsFile);
+
+        ExecutorService parsers = Executors.newFixedThreadPool(parserThreads, runnable -> {
+            Thread thread = new Thread(runnable, "bulk-import-parser");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // Chunks are queued in sheet order; the bounded queue is what caps memory use
+        BlockingQueue<Future<ParsedChunk>> pending = new ArrayBlockingQueue<>(parserThreads * 2);
+        IOException[] readFailure = new IOException[1];
+
+        Thread readerThread = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(sheet, 1 << 16)) {
+                long lineNumber = 0;
+                String[] lines = new String[chunkSize];
+                int count = 0;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    lines[count++] = line;
+                    if (count == chunkSize) {
+                        pending.put(submit(parsers, lines, count, lineNumber + 1));
+                        lineNumber += count;
+                        lines = new String[chunkSize];
+                        count = 0;
+                    }
+                }
+                if (count > 0) {
+                    pending.put(submit(parsers, lines, count, lineNumber + 1));
+                }
+            } catch (IOException e) {
+                readFailure[0] = e;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            try {
+                pending.put(CompletableFuture.completedFuture(ParsedChunk.END));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "bulk-import-reader");
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        try (FileChannel grades = FileChannel.open(gradesFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+             BufferedWriter rejects = new BufferedWriter(new FileWriter(rejectsFile, StandardCharsets.UTF_8))) {
+            while (true) {
+                ParsedChunk chunk = pending.take().get();
+                if (chunk == ParsedChunk.END) {
+                    break;
+                }
+                persist(chunk, grades, rejects);
+                report.add(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Bulk import interrupted");
+        } catch (ExecutionException e) {
+            throw new IOException("Error parsing sheet: " + e.getCause().getMessage(), e.getCause());
+        } finally {
+            readerThread.interrupt();
+            parsers.shutdownNow();
+        }
+
+        if (readFailure[0] != null) {
+            throw readFailure[0];
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private Future<ParsedChunk> submit(ExecutorService parsers, String[] lines, int count, long firstLine) {
+        return parsers.submit(() -> parse(lines, count, firstLine));
+    }
+
+    /**
+     * Parses and validates one chunk of sheet lines
+     */
+    private ParsedChunk parse(String[] lines, int count, long firstLine) {
+        ParsedChunk chunk = new ParsedChunk(count);
+        for (int i = 0; i < count; i++) {
+            String line = lines[i].trim();
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            chunk.rows++;
+            String error = parseRow(line, chunk);
+            if (error != null) {
+                chunk.reject(firstLine + i, error, line);
+            }
+        }
+        return chunk;
+    }
+
+    /**
+     * @return null if the row was accepted, otherwise the reason it was rejected
+     */
+    private String parseRow(String line, ParsedChunk chunk) {
+        String[] parts = line.split(",", -1);
+        String type = parts[0].trim();
+
+        if (type.equalsIgnoreCase("GRADE")) {
+            if (parts.length != 6) {
+                return "expected 6 fields for GRADE";
+            }
+            String studentID = parts[1].trim();
+            String error = checkStudent(studentID);
+            if (error != null) {
+                return error;
+            }
+            String course = parts[2].trim();
+            String term = parts[3].trim();
+            if (course.isEmpty() || term.isEmpty()) {
+                return "missing course or term";
+            }
+            double grade;
+            int units;
+            try {
+                grade = Double.parseDouble(parts[4].trim());
+                units = Integer.parseInt(parts[5].trim());
+            } catch (NumberFormatException e) {
+                return "invalid grade or units";
+            }
+            if (!Double.isFinite(grade)) {
+                return "invalid grade or units";
+            }
+            if (grade < 0 || grade > 100) {
+                return "grade out of range";
+            }
+            if (units < 0 || units > 10) {
+                return "units out of range";
+            }
+            chunk.grades.append(studentID).append(',').append(course).append(',').append(term)
+                    .append(',').append(parts[4].trim()).append(',').append(units).append('\n');
+            chunk.gradeCount++;
+            return null;
+        }
+
+        if (type.equalsIgnoreCase("ATTENDANCE")) {
+            if (parts.length != 5) {
+                return "expected 5 fields for ATTENDANCE";
+            }
+            String studentID = parts[1].trim();
+            String error = checkStudent(studentID);
+            if (error != null) {
+                return error;
+            }
+            String className = parts[2].trim();
+            if (className.isEmpty()) {
+                return "missing class";
+            }
+            int meeting;
+            try {
+                meeting = Integer.parseInt(parts[3].trim());
+            } catch (NumberFormatException e) {
+                return "invalid meeting number";
+            }
+            if (meeting < 0 || meeting > 0xFFFF) {
+                return "meeting out of range";
+            }
+            byte status;
+            switch (parts[4].trim().toUpperCase()) {
+                case "P": status = AttendanceStore.PRESENT; break;
+                case "A": status = AttendanceStore.ABSENT; break;
+                case "L": status = AttendanceStore.LATE; break;
+                default: return "status must be P, A or L";
+            }
+            chunk.addAttendance(StudentIdIndex.parse(studentID), className, meeting, status);
+            return null;
+        }
+
+        return "unknown row type '" + type + "'";
+    }
+
+    private String checkStudent(String studentID) {
+        int id = StudentIdIndex.parse(studentID);
+        if (id < 0) {
+            return "malformed student ID";
+        }
+        if (!idIndex.contains(id)) {
+            return "unknown student ID";
+        }
+        return null;
+    }
+
+    /**
+     * Writes one chunk: a single append and fsync for the grades, one batch for attendance
+     */
+    private void persist(ParsedChunk chunk, FileChannel grades, BufferedWriter rejects) throws IOException {
+        if (chunk.gradeCount > 0) {
+            ByteBuffer buffer = ByteBuffer.wrap(chunk.grades.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                grades.write(buffer);
+            }
+            grades.force(false);
+        }
+        if (chunk.attendanceCount > 0) {
+            attendanceStore.recordEvents(chunk.attendanceIDs, chunk.attendanceClasses,
+                    chunk.attendanceMeetings, chunk.attendanceStatuses, chunk.attendanceCount);
+        }
+        for (String reject : chunk.rejects) {
+            rejects.write(reject);
+            rejects.newLine();
+        }
+        rejects.flush();
+    }
+
+    /**
+     * Rows of one chunk after parsing and validation
+     */
+    private static class ParsedChunk {
+        static final ParsedChunk END = new ParsedChunk(0);
+
+        int rows;
+        final StringBuilder grades = new StringBuilder();
+        int gradeCount;
+        final int[] attendanceIDs;
+        final String[] attendanceClasses;
+        final int[] attendanceMeetings;
+        final byte[] attendanceStatuses;
+        int attendanceCount;
+        final List<String> rejects = new ArrayList<>();
+
+        ParsedChunk(int capacity) {
+            attendanceIDs = new int[capacity];
+            attendanceClasses = new String[capacity];
+            attendanceMeetings = new int[capacity];
+            attendanceStatuses = new byte[capacity];
+        }
+
+        void addAttendance(int studentID, String className, int meeting, byte status) {
+            attendanceIDs[attendanceCount] = studentID;
+            attendanceClasses[attendanceCount] = className;
+            attendanceMeetings[attendanceCount] = meeting;
+            attendanceStatuses[attendanceCount] = status;
+            attendanceCount++;
+        }
+
+        void reject(long lineNumber, String reason, String line) {
+            rejects.add("line " + lineNumber + ": " + reason + ": " + line);
+        }
+    }
+
+    /**
+     * Summary of a bulk import
+     */
+    public static class ImportReport {
+        private final File rejectsFile;
+        private final List<String> sampleRejects = new ArrayList<>();
+        private long rowsRead;
+        private long gradesAccepted;
+        private long attendanceAccepted;
+        private long rejected;
+        private long elapsedNanos;
+
+        ImportReport(File rejectsFile) {
+            this.rejectsFile = rejectsFile;
+        }
+
+        void add(ParsedChunk chunk) {
+            rowsRead += chunk.rows;
+            gradesAccepted += chunk.gradeCount;
+            attendanceAccepted += chunk.attendanceCount;
+            rejected += chunk.rejects.size();
+            for (String reject : chunk.rejects) {
+                if (sampleRejects.size() == MAX_SAMPLE_REJECTS) {
+                    break;
+                }
+                sampleRejects.add(reject);
+            }
+        }
+
+        // Getters
+        public File getRejectsFile() { return rejectsFile; }
+        public List<String> getSampleRejects() { return sampleRejects; }
+        public long getRowsRead() { return rowsRead; }
+        public long getGradesAccepted() { return gradesAccepted; }
+        public long getAttendanceAccepted() { return attendanceAccepted; }
+        public long getRejected() { return rejected; }
+        public long getElapsedMillis() { return elapsedNanos / 1_000_000; }
+
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0.0 : rowsRead * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        public String getSummary() {
+            return String.format("Rows: %,d | Grades: %,d | Attendance: %,d | Rejected: %,d | %,d ms (%,.0f rows/s)",
+                    rowsRead, gradesAccepted, attendanceAccepted, rejected, getElapsedMillis(), getRowsPerSecond());
+        }
+    }
+}
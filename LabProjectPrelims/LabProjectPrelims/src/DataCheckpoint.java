@@ -0,0 +1,166 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Versioned binary snapshot of in-memory indexes, so a program can start from
+ * the snapshot and read only what was appended to the data files after it instead
+ * of parsing them all again. The caller writes and reads the body; this class adds
+ * the header and a checksum and replaces the file atomically.
+ *
+ * Format: magic, version, body, CRC32 of everything before it. A snapshot with
+ * another version, a bad checksum or a torn end is ignored, and the indexes are
+ * built from the data files as before.
+ */
+public class DataCheckpoint {
+
+    private static final int MAGIC = 0x44434B50;   // "DCKP"
+    static final int VERSION = 2;   // 2: adds the payment ledger
+
+    /** Writes the body of a checkpoint */
+    public interface BodyWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** Reads the body of a checkpoint */
+    public interface BodyReader {
+        void read(DataInputStream in) throws IOException;
+    }
+
+    private final File file;
+    private final int version;
+
+    /**
+     * Creates a checkpoint
+     * @param file The snapshot file, in the data directory
+     */
+    public DataCheckpoint(File file) {
+        this(file, VERSION);
+    }
+
+    /**
+     * Creates a snapshot file with a format version of its own
+     * @param file The snapshot file
+     * @param version The version of the body format
+     */
+    public DataCheckpoint(File file, int version) {
+        this.file = file;
+        this.version = version;
+    }
+
+    /**
+     * Writes a new snapshot. It is written next to the old one and renamed over it,
+     * so a crash leaves either snapshot complete.
+     * @param body Writes the indexes
+     * @return The size of the snapshot in bytes
+     * @throws IOException If the snapshot cannot be written; the old one is kept
+     */
+    public long write(BodyWriter body) throws IOException {
+        File temp = new File(file.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream, 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(version);
+            body.write(out);
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return file.length();
+    }
+
+    /**
+     * Reads the snapshot, if there is a usable one
+     * @param body Reads the indexes
+     * @return false if there is no snapshot, or it has another version or is damaged
+     * @throws IOException If the snapshot cannot be read
+     */
+    public boolean read(BodyReader body) throws IOException {
+        if (!file.exists() || file.length() < 16) {
+            return false;
+        }
+        byte[] snapshot;
+        try (FileInputStream in = new FileInputStream(file)) {
+            snapshot = in.readAllBytes();
+        }
+        CRC32 crc = new CRC32();
+        crc.update(snapshot, 0, snapshot.length - 8);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(snapshot));
+        if (in.readInt() != MAGIC || in.readInt() != version
+                || new DataInputStream(new ByteArrayInputStream(snapshot, snapshot.length - 8, 8)).readLong() != crc.getValue()) {
+            return false;
+        }
+        try {
+            body.read(in);
+        } catch (EOFException e) {
+            // A snapshot with a matching checksum is complete, so this is not expected
+            System.err.println("Error reading checkpoint: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the first count values of an array, in bulk
+     */
+    static void writeLongs(DataOutput out, long[] values, int count) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+        for (int i = 0; i < count; i++) {
+            if (!chunk.hasRemaining()) {
+                out.write(chunk.array(), 0, chunk.position());
+                chunk.clear();
+            }
+            chunk.putLong(values[i]);
+        }
+        out.write(chunk.array(), 0, chunk.position());
+    }
+
+    /**
+     * Reads values written by writeLongs() into the start of an array
+     */
+    static void readLongs(DataInput in, long[] values, int count) throws IOException {
+        byte[] chunk = new byte[1 << 16];
+        for (int i = 0; i < count; ) {
+            int n = Math.min(count - i, chunk.length / Long.BYTES);
+            in.readFully(chunk, 0, n * Long.BYTES);
+            ByteBuffer.wrap(chunk, 0, n * Long.BYTES).asLongBuffer().get(values, i, n);
+            i += n;
+        }
+    }
+
+    /**
+     * Writes the first count values of an array, in bulk
+     */
+    static void writeInts(DataOutput out, int[] values, int count) throws IOException {
+        ByteBuffer chunk = ByteBuffer.allocate(1 << 16);
+        for (int i = 0; i < count; i++) {
+            if (!chunk.hasRemaining()) {
+                out.write(chunk.array(), 0, chunk.position());
+                chunk.clear();
+            }
+            chunk.putInt(values[i]);
+        }
+        out.write(chunk.array(), 0, chunk.position());
+    }
+
+    /**
+     * Reads values written by writeInts() into the start of an array
+     */
+    static void readInts(DataInput in, int[] values, int count) throws IOException {
+        byte[] chunk = new byte[1 << 16];
+        for (int i = 0; i < count; ) {
+            int n = Math.min(count - i, chunk.length / Integer.BYTES);
+            in.readFully(chunk, 0, n * Integer.BYTES);
+            ByteBuffer.wrap(chunk, 0, n * Integer.BYTES).asIntBuffer().get(values, i, n);
+            i += n;
+        }
+    }
+
+    public File getFile() { return file; }
+}
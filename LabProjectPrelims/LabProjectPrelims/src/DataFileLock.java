@@ -0,0 +1,109 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Exclusive lock over a data directory, shared by every portal process using it.
+ * The lock is a FileChannel lock on a ".portal.lock" file in the directory; since a
+ * JVM cannot hold two overlapping file locks, threads of one process first take an
+ * in-process lock. Critical sections should be short: append, never scan the data.
+ */
+public class DataFileLock {
+
+    private static final String LOCK_FILE = ".portal.lock";
+    // One lock per lock file, keyed by its absolute path
+    private static final Map<File, DataFileLock> locks = new HashMap<>();
+
+    private final File lockFile;
+    private final ReentrantLock processLock = new ReentrantLock();
+    private FileChannel channel;
+    private FileLock fileLock;
+
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    /**
+     * Work done while holding the lock
+     * @param <T> The result type
+     */
+    public interface LockedAction<T> {
+        T run() throws IOException;
+    }
+
+    private DataFileLock(File lockFile) {
+        this.lockFile = lockFile;
+    }
+
+    /**
+     * Gets the lock for the directory holding a data file
+     * @param dataFile A file in the data directory
+     * @return The directory's lock, shared by all callers in this process
+     */
+    public static DataFileLock forFile(File dataFile) {
+        return forLockFile(new File(dataFile.getAbsoluteFile().getParentFile(), LOCK_FILE));
+    }
+
+    /**
+     * Gets the lock held through a given lock file, for data that is locked on its
+     * own rather than with its whole directory (e.g. one shard of the student records)
+     * @param lockFile The lock file, created on first use
+     * @return The lock, shared by all callers in this process
+     */
+    public static DataFileLock forLockFile(File lockFile) {
+        synchronized (locks) {
+            return locks.computeIfAbsent(lockFile.getAbsoluteFile(), DataFileLock::new);
+        }
+    }
+
+    /**
+     * Runs an action while holding the lock. Calls may nest within one thread.
+     * @param action The work to do
+     * @return The action's result
+     * @throws IOException If the lock cannot be taken or the action fails
+     */
+    public <T> T call(LockedAction<T> action) throws IOException {
+        long start = System.nanoTime();
+        processLock.lock();
+        try {
+            boolean outermost = processLock.getHoldCount() == 1;
+            if (outermost) {
+                if (channel == null || !channel.isOpen()) {
+                    channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                }
+                fileLock = channel.lock();
+                waitNanos.addAndGet(System.nanoTime() - start);
+                acquisitions.incrementAndGet();
+            }
+            try {
+                return action.run();
+            } finally {
+                if (outermost) {
+                    fileLock.release();
+                    fileLock = null;
+                }
+            }
+        } finally {
+            processLock.unlock();
+        }
+    }
+
+    /**
+     * @return Number of times the file lock was taken
+     */
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    /**
+     * @return Total time spent waiting for the lock, in milliseconds
+     */
+    public long getWaitMillis() {
+        return waitNanos.get() / 1_000_000;
+    }
+}
@@ -0,0 +1,275 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Watches data files for changes made by other programs (e.g. registrar scripts).
+ * Each file is tracked by the length already processed and a checksum of the bytes
+ * just before that point. When a file grows and those bytes are unchanged, only the
+ * appended lines are read and handed to the listener; when it shrinks or its earlier
+ * contents changed, the listener is told to reload it completely.
+ *
+ * Appends made by this program are reported with advance(), so they are not read back.
+ */
+public class DataFileWatcher implements Closeable {
+
+    // Bytes before the processed length whose checksum detects rewrites
+    private static final int FINGERPRINT_BYTES = 256;
+    // Larger appended tails are handled as a full reload
+    private static final long MAX_TAIL_BYTES = 16L << 20;
+
+    /**
+     * Receives the changes to one watched file
+     */
+    public interface Listener {
+        /**
+         * Complete lines were appended to the file
+         * @param lines The appended lines, without line terminators
+         * @param lengthBefore The processed length before these lines
+         * @param lengthAfter The processed length after these lines
+         */
+        void appended(List<String> lines, long lengthBefore, long lengthAfter);
+
+        /**
+         * The file was truncated, rewritten or deleted; everything derived from it must be reloaded
+         */
+        void reset();
+    }
+
+    private static class TrackedFile {
+        final File file;
+        final Listener listener;
+        long knownLength;
+        long fingerprint;
+
+        TrackedFile(File file, Listener listener) {
+            this.file = file;
+            this.listener = listener;
+        }
+    }
+
+    private final Map<Path, List<TrackedFile>> filesByDirectory = new HashMap<>();
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+    private WatchService watchService;
+    private Thread thread;
+    private volatile long appendEvents;
+    private volatile long resetEvents;
+
+    /**
+     * Starts tracking a file from its current contents
+     * @param file The file to watch
+     * @param listener Receives its changes
+     * @throws IOException If the file cannot be read or its directory cannot be watched
+     */
+    public synchronized void watch(File file, Listener listener) throws IOException {
+        TrackedFile tracked = new TrackedFile(file.getAbsoluteFile(), listener);
+        synchronized (tracked) {
+            tracked.knownLength = tracked.file.length();
+            tracked.fingerprint = fingerprint(tracked.file, tracked.knownLength);
+        }
+        Path directory = tracked.file.toPath().getParent();
+        if (!filesByDirectory.containsKey(directory)) {
+            if (watchService == null) {
+                watchService = FileSystems.getDefault().newWatchService();
+            }
+            WatchKey key = directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+            directories.put(key, directory);
+            filesByDirectory.put(directory, new ArrayList<>());
+        }
+        filesByDirectory.get(directory).add(tracked);
+    }
+
+    /**
+     * Starts the background thread that waits for change events
+     */
+    public synchronized void start() {
+        if (thread != null || watchService == null) {
+            return;
+        }
+        thread = new Thread(this::run, "DataFileWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Records an append made by this program so the watcher does not read it back
+     * @param file The file that was appended to
+     * @param lengthBefore The file length before the append
+     * @param lengthAfter The file length after the append
+     * @return true if the watcher had processed everything up to lengthBefore, so the
+     * caller should apply its own change; false if unprocessed changes came first, in
+     * which case the watcher will deliver this append together with them
+     */
+    public boolean advance(File file, long lengthBefore, long lengthAfter) {
+        TrackedFile tracked = find(file);
+        if (tracked == null) {
+            return true;
+        }
+        synchronized (tracked) {
+            if (tracked.knownLength != lengthBefore) {
+                return false;
+            }
+            tracked.knownLength = lengthAfter;
+            tracked.fingerprint = fingerprint(tracked.file, lengthAfter);
+            return true;
+        }
+    }
+
+    /**
+     * Checks every watched file now, without waiting for an event
+     */
+    public void checkAll() {
+        List<TrackedFile> all = new ArrayList<>();
+        synchronized (this) {
+            for (List<TrackedFile> files : filesByDirectory.values()) {
+                all.addAll(files);
+            }
+        }
+        for (TrackedFile tracked : all) {
+            check(tracked);
+        }
+    }
+
+    public long getAppendEvents() { return appendEvents; }
+    public long getResetEvents() { return resetEvents; }
+
+    @Override
+    public void close() throws IOException {
+        Thread running;
+        synchronized (this) {
+            running = thread;
+            thread = null;
+            if (watchService != null) {
+                watchService.close();
+            }
+        }
+        if (running != null) {
+            running.interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path directory;
+            List<TrackedFile> files;
+            synchronized (this) {
+                directory = directories.get(key);
+                files = directory == null ? Collections.emptyList() : new ArrayList<>(filesByDirectory.get(directory));
+            }
+            for (WatchEvent<?> event : key.pollEvents()) {
+                for (TrackedFile tracked : files) {
+                    // On overflow the individual events were lost, so check every file
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || tracked.file.toPath().getFileName().equals(event.context())) {
+                        check(tracked);
+                    }
+                }
+            }
+            if (!key.reset()) {
+                synchronized (this) {
+                    directories.remove(key);
+                }
+            }
+        }
+    }
+
+    private TrackedFile find(File file) {
+        File absolute = file.getAbsoluteFile();
+        synchronized (this) {
+            List<TrackedFile> files = filesByDirectory.get(absolute.toPath().getParent());
+            if (files != null) {
+                for (TrackedFile tracked : files) {
+                    if (tracked.file.equals(absolute)) {
+                        return tracked;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Compares a file with what was processed and reports appended lines or a reset
+     */
+    private void check(TrackedFile tracked) {
+        synchronized (tracked) {
+            long length = tracked.file.length();
+            if (length == tracked.knownLength && fingerprint(tracked.file, length) == tracked.fingerprint) {
+                return;
+            }
+            boolean rewritten = length < tracked.knownLength
+                    || fingerprint(tracked.file, tracked.knownLength) != tracked.fingerprint
+                    || length - tracked.knownLength > MAX_TAIL_BYTES;
+            if (!rewritten) {
+                try {
+                    long before = tracked.knownLength;
+                    List<String> lines = new ArrayList<>();
+                    long after = readLines(tracked.file, before, length, lines);
+                    if (after > before) {
+                        tracked.knownLength = after;
+                        tracked.fingerprint = fingerprint(tracked.file, after);
+                        appendEvents++;
+                        tracked.listener.appended(lines, before, after);
+                    }
+                    return;
+                } catch (IOException e) {
+                    System.err.println("Error reading appended data: " + e.getMessage());
+                }
+            }
+            tracked.knownLength = length;
+            tracked.fingerprint = fingerprint(tracked.file, length);
+            resetEvents++;
+            tracked.listener.reset();
+        }
+    }
+
+    /**
+     * Reads the complete lines between two offsets
+     * @return The offset just past the last complete line
+     */
+    static long readLines(File file, long from, long to, List<String> lines) throws IOException {
+        byte[] bytes = new byte[(int) (to - from)];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            in.seek(from);
+            in.readFully(bytes);
+        }
+        int lineStart = 0;
+        for (int i = 0; i < bytes.length; i++) {
+            if (bytes[i] == '\n') {
+                int lineEnd = i > lineStart && bytes[i - 1] == '\r' ? i - 1 : i;
+                lines.add(new String(bytes, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8));
+                lineStart = i + 1;
+            }
+        }
+        return from + lineStart;
+    }
+
+    /**
+     * Checksum of the bytes just before a length, or -1 if the file is shorter
+     */
+    static long fingerprint(File file, long length) {
+        int size = (int) Math.min(FINGERPRINT_BYTES, length);
+        byte[] bytes = new byte[size];
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            if (in.length() < length) {
+                return -1;
+            }
+            in.seek(length - size);
+            in.readFully(bytes);
+        } catch (IOException e) {
+            return -1;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, size);
+        return crc.getValue();
+    }
+}
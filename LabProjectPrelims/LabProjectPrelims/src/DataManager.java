@@ -1,5 +1,8 @@
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.nio.charset.StandardCharsets;
 import java.net.URL;
 import java.net.URISyntaxException;
 
@@ -13,6 +16,96 @@ public class DataManager {
     private static final String DATABASE_FILE = "Database.txt";
     private static final String USER_PASSWORD_FILE = "UserPasswordID.txt";
     private static final String PAYMENT_LOGS_FILE = "paymentLogs.txt";
+    private static final String ATTENDANCE_LOG_FILE = "attendanceLog.dat";
+    private static final String GRADE_LOGS_FILE = "gradeLogs.txt";
+    private static final String JOURNAL_CATALOG_FILE = "journalCatalog.txt";
+    private static final String ACCOUNT_JOURNAL_FILE = "accountJournal.dat";
+    private static final String STUDENT_DETAILS_FILE = "studentDetails.txt";
+    private static final String CHECKPOINT_FILE = "dataCheckpoint.dat";
+    private static final String PAYMENT_ARCHIVE_FILE = "paymentArchive.dat";
+    private static final String PAYMENT_ARCHIVE_INDEX_FILE = "paymentArchive.idx";
+    // System property naming the card gateway: a URI, or "mock" for a local MockPaymentGateway
+    private static final String PAYMENT_GATEWAY_PROPERTY = "portal.paymentGateway";
+
+    // Attendance events, replayed on first use
+    private static AttendanceStore attendanceStore;
+
+    // Student IDs in the database, built on first use, with the database length it
+    // covers (-1 if unknown) and the IDs this process handed out but may not have saved
+    private static StudentIdIndex studentIdIndex;
+    private static long studentIdIndexLength = -1;
+    private static final Set<Integer> handedOutStudentIDs = new HashSet<>();
+    private static final int FIRST_STUDENT_ID = 2_250_000;
+    // Every ID from FIRST_STUDENT_ID up to this one is taken, so sequential picks start here
+    private static int sequentialIDFloor = FIRST_STUDENT_ID;
+    // Batches with up to this many new accounts get random IDs
+    private static final int RANDOM_ID_BATCH = 16;
+
+    // Journal making account saves to Database.txt and UserPasswordID.txt atomic, and
+    // the batching of concurrent account saves into one journaled commit
+    private static AppendJournal accountJournal;
+    private static GroupCommit<PendingAccount> accountCommit;
+
+    // Locators for updating and deleting student records and profile details in
+    // place, and whether a background compaction is queued
+    private static RecordFile studentRecords;
+    private static RecordFile studentDetailRecords;
+    private static boolean compactionQueued;
+
+    // Appender for the payment log, shared by all threads of this process, the
+    // queue in front of it for the UI, the offsets of each student's payment lines,
+    // and the per-term time index
+    private static BatchingAppender paymentAppender;
+    private static PaymentPipeline paymentPipeline;
+
+    // Idempotency keys of recently logged payments, filled from the log tail on first use
+    private static CompletableFuture<RecentPaymentKeys> recentPaymentKeys;
+    private static MockPaymentGateway mockPaymentGateway;
+    private static PaymentLogIndex paymentLogIndex;
+    private static PaymentLedger paymentLedger;
+
+    // Compressed payments of completed terms, and whether moving them there is queued
+    private static PaymentArchive paymentArchive;
+    private static boolean archiveQueued;
+
+    // Column view of all payments for finance reports, built on the first report
+    private static PaymentColumns paymentColumns;
+
+    // Amount due and overpayment of each student, shared by every portal window
+    private static AccountBalances accountBalances;
+
+    // Snapshot of the indexes above, so startup reads only what was appended after it;
+    // a new one is written once startup had to read more than this
+    private static final long CHECKPOINT_TAIL_BYTES = 1L << 20;
+    private static DataCheckpoint checkpoint;
+    private static boolean checkpointQueued;
+
+    // Bloom filter of student IDs for turning away unknown IDs, with the database
+    // length it was built for so changes made by other programs trigger a rebuild
+    private static StudentIdBloomFilter studentIdFilter;
+    private static long studentIdFilterLength = -1;
+    private static final AtomicLong idScansAvoided = new AtomicLong();
+    private static final AtomicLong idScansPerformed = new AtomicLong();
+
+    // Record caches in front of getStudentInfo and loadPaymentTransactions
+    private static final long STUDENT_CACHE_BYTES = 1L << 20;
+    private static final long PAYMENT_CACHE_BYTES = 2L << 20;
+    private static RecordCache<String, StudentInfo> studentCache;
+    private static RecordCache<String, List<PaymentTransaction>> paymentCache;
+
+    // Student name index for type-ahead search, built on first use, with the
+    // database length it covers (-1 if unknown)
+    private static StudentNameIndex studentNameIndex;
+    private static long studentNameIndexLength = -1;
+
+    // Watches the data files for edits made by other programs
+    private static DataFileWatcher fileWatcher;
+
+    // Filtered student queries, using the secondary indexes when they exist
+    private static StudentQueryEngine studentQueryEngine;
+
+    // Journal/periodical search index, built in the background on first use
+    private static CompletableFuture<JournalSearchIndex> journalSearchIndex;
     
     /**
      * Resolve a data file by searching from the working directory and then walking up
@@ -49,6 +142,9 @@ public class DataManager {
     private static File getDatabaseFile() { return resolveFile(DATABASE_FILE); }
     private static File getUserPasswordFile() { return resolveFile(USER_PASSWORD_FILE); }
     private static File getPaymentLogsFile() { return resolveFile(PAYMENT_LOGS_FILE); }
+    private static File getAttendanceLogFile() { return resolveFile(ATTENDANCE_LOG_FILE); }
+    private static File getGradeLogsFile() { return resolveFile(GRADE_LOGS_FILE); }
+    private static File getJournalCatalogFile() { return resolveFile(JOURNAL_CATALOG_FILE); }
 
     public static boolean databaseExists() {
         return getDatabaseFile().exists();
@@ -61,31 +157,11 @@ public class DataManager {
      * @return true if credentials are valid, false otherwise
      */
     public static boolean authenticateUser(String studentID, String password) {
-        try {
-            File databaseFile = getDatabaseFile();
-            if (!databaseFile.exists()) {
-                return false;
-            }
-
-            try (BufferedReader reader = new BufferedReader(new FileReader(databaseFile))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split(",");
-                    if (parts.length >= 6) {
-                        String storedID = parts[0].trim();
-                        String storedPassword = parts[5].trim();
-                        
-                        if (studentID.equals(storedID) && password.equals(storedPassword)) {
-                            return true;
-                        }
-                    }
-                }
-            }
-        } catch (IOException e) {
-            System.err.println("Error reading database: " + e.getMessage());
+        if (studentID == null || password == null || !getDatabaseFile().exists()) {
+            return false;
         }
-        
-        return false;
+        StudentInfo student = getStudentInfo(studentID);
+        return student != null && password.equals(student.getPassword());
     }
     
     /**
@@ -94,30 +170,34 @@ public class DataManager {
      * @return StudentInfo object containing student details, or null if not found
      */
     public static StudentInfo getStudentInfo(String studentID) {
+        if (studentID == null) {
+            return null;
+        }
+        return getStudentCache().get(studentID, DataManager::readStudentInfo);
+    }
+
+    /**
+     * Reads one student's record at the offset kept by the record index, so only
+     * that line is read and only that StudentInfo created
+     */
+    private static StudentInfo readStudentInfo(String studentID) {
         try {
             File databaseFile = getDatabaseFile();
-            if (!databaseFile.exists()) {
+            if (!databaseFile.exists() || !mightBeStudentID(studentID)) {
                 return null;
             }
-
-            try (BufferedReader reader = new BufferedReader(new FileReader(databaseFile))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split(",");
-                    if (parts.length >= 6) {
-                        String storedID = parts[0].trim();
-                        
-                        if (studentID.equals(storedID)) {
-                            return new StudentInfo(
-                                parts[0].trim(), // ID
-                                parts[1].trim(), // Last Name
-                                parts[2].trim(), // First Name
-                                parts[3].trim(), // Middle Name
-                                parts[4].trim(), // Date of Birth
-                                parts[5].trim()  // Password
-                            );
-                        }
-                    }
+            String line = getStudentRecords().readRecord(studentID);
+            if (line != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 6) {
+                    return new StudentInfo(
+                        parts[0].trim(), // ID
+                        parts[1].trim(), // Last Name
+                        parts[2].trim(), // First Name
+                        parts[3].trim(), // Middle Name
+                        parts[4].trim(), // Date of Birth
+                        parts[5].trim()  // Password
+                    );
                 }
             }
         } catch (IOException e) {
@@ -127,165 +207,1505 @@ public class DataManager {
         return null;
     }
     
+    /**
+     * An account waiting to be saved by the next journaled commit
+     */
+    private static class PendingAccount {
+        final StudentInfo requested;    // ID is null or empty when a new one must be picked
+        StudentInfo saved;
+        String error;
+
+        PendingAccount(StudentInfo requested) {
+            this.requested = requested;
+        }
+    }
+
     /**
      * Saves a new student account to the database
      * @param studentInfo The student information to save
-     * @return true if successful, false otherwise
+     * @return true if successful, false otherwise (including when the ID is already taken)
      */
     public static boolean saveStudentAccount(StudentInfo studentInfo) {
+        return submitAccount(new PendingAccount(studentInfo)) != null;
+    }
+
+    /**
+     * Creates a student account with a new unique ID. The ID is picked and the
+     * account saved under the data directory lock, so portals running side by side
+     * never hand out the same ID.
+     * @param lastName The last name
+     * @param firstName The first name
+     * @param middleName The middle name
+     * @param dateOfBirth The date of birth
+     * @param password The password
+     * @return The saved student, or null if the account could not be saved
+     */
+    public static StudentInfo createStudentAccount(String lastName, String firstName, String middleName,
+                                                   String dateOfBirth, String password) {
+        return submitAccount(new PendingAccount(
+                new StudentInfo(null, lastName, firstName, middleName, dateOfBirth, password)));
+    }
+
+    /**
+     * Saves many student accounts at once, e.g. a freshman class. Students without an
+     * ID get new unique IDs, picked in bulk; all records are written with one journaled
+     * append to each file, so either every accepted account is saved or none is.
+     * @param students The students to save; an ID that is null or empty is assigned
+     * @return The ID of each student in the given order (null where the account was
+     * refused because its ID is taken or no ID was left), or null if nothing could be saved
+     */
+    public static List<String> saveStudentAccounts(Iterable<StudentInfo> students) {
+        List<PendingAccount> batch = new ArrayList<>();
+        for (StudentInfo student : students) {
+            batch.add(new PendingAccount(student));
+        }
         try {
-            // Save to Database.txt
-            File dbFile = getDatabaseFile();
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(dbFile, true))) {
-                writer.write(studentInfo.toDatabaseFormat());
-                writer.newLine();
-            }
-            
-            // Save to UserPasswordID.txt
-            File credsFile = getUserPasswordFile();
-            try (BufferedWriter logWriter = new BufferedWriter(new FileWriter(credsFile, true))) {
-                logWriter.write("ID: " + studentInfo.getId() + " | Password: " + studentInfo.getPassword());
-                logWriter.newLine();
-            }
-            
-            return true;
+            commitAccounts(batch);
+        } catch (IOException e) {
+            System.err.println("Error saving student accounts: " + e.getMessage());
+            return null;
+        }
+        List<String> ids = new ArrayList<>(batch.size());
+        for (PendingAccount account : batch) {
+            if (account.error != null) {
+                System.err.println("Error saving student account: " + account.error);
+            }
+            ids.add(account.saved == null ? null : account.saved.getId());
+        }
+        return ids;
+    }
+
+    private static StudentInfo submitAccount(PendingAccount account) {
+        try {
+            getAccountCommit().submit(account);
         } catch (IOException e) {
             System.err.println("Error saving student account: " + e.getMessage());
+            return null;
+        }
+        if (account.error != null) {
+            System.err.println("Error saving student account: " + account.error);
+        }
+        return account.saved;
+    }
+
+    private static synchronized GroupCommit<PendingAccount> getAccountCommit() {
+        if (accountCommit == null) {
+            accountCommit = new GroupCommit<>(DataManager::commitAccounts);
+        }
+        return accountCommit;
+    }
+
+    /**
+     * Gets the journal that account saves are committed through
+     * @return The account journal
+     */
+    public static synchronized AppendJournal getAccountJournal() {
+        if (accountJournal == null) {
+            accountJournal = new AppendJournal(new File(getDatabaseFile().getParentFile(), ACCOUNT_JOURNAL_FILE));
+        }
+        return accountJournal;
+    }
+
+    /**
+     * Saves the accounts submitted by concurrent callers with one journaled commit to
+     * Database.txt and UserPasswordID.txt, so a batch costs one lock and one round of
+     * fsyncs however many accounts it holds
+     */
+    private static void commitAccounts(List<PendingAccount> batch) throws IOException {
+        getDataFileLock().call(() -> {
+            AppendJournal journal = getAccountJournal();
+            journal.recover();
+            StudentIdIndex index = catchUpStudentIdIndex();
+            // Explicit IDs first, so new IDs are picked around them
+            Set<String> batchIDs = new HashSet<>();
+            int needed = 0;
+            for (PendingAccount account : batch) {
+                String id = account.requested.getId();
+                if (id == null || id.isEmpty()) {
+                    needed++;
+                } else if (index.contains(id) || !batchIDs.add(id)) {
+                    account.error = "ID " + id + " is already taken";
+                }
+            }
+            Iterator<String> newIDs = allocateStudentIDs(index, needed, batchIDs).iterator();
+
+            List<StudentInfo> students = new ArrayList<>();
+            StringBuilder records = new StringBuilder();
+            StringBuilder credentials = new StringBuilder();
+            for (PendingAccount account : batch) {
+                StudentInfo student = account.requested;
+                String id = student.getId();
+                if (account.error != null) {
+                    continue;
+                }
+                if (id == null || id.isEmpty()) {
+                    if (!newIDs.hasNext()) {
+                        account.error = "no unused student IDs left";
+                        continue;
+                    }
+                    id = newIDs.next();
+                    student = new StudentInfo(id, student.getLastName(), student.getFirstName(),
+                            student.getMiddleName(), student.getDateOfBirth(), student.getPassword());
+                }
+                records.append(student.toDatabaseFormat()).append(System.lineSeparator());
+                credentials.append("ID: ").append(id).append(" | Password: ").append(student.getPassword())
+                        .append(System.lineSeparator());
+                students.add(student);
+                account.saved = student;
+            }
+            if (students.isEmpty()) {
+                return null;
+            }
+
+            long[][] lengths = journal.commit(new File[]{getDatabaseFile(), getUserPasswordFile()}, new byte[][]{
+                    records.toString().getBytes(StandardCharsets.UTF_8),
+                    credentials.toString().getBytes(StandardCharsets.UTF_8)});
+            afterStudentCommit(students, Collections.emptyList(), lengths[0]);
+            return null;
+        });
+    }
+
+    /**
+     * Brings this process's views up to date after a commit appended to the
+     * database; the caller holds the data lock
+     */
+    private static void afterStudentCommit(List<StudentInfo> students, Collection<String> changedIDs,
+                                           long[] databaseLengths) {
+        synchronized (DataManager.class) {
+            if (studentIdIndex != null && studentIdIndexLength == databaseLengths[0]) {
+                studentIdIndexLength = databaseLengths[1];
+            }
+        }
+        advanceFileWatcher(getDatabaseFile(), databaseLengths[0], databaseLengths[1]);
+        applyStudentsAppended(students, changedIDs, databaseLengths[0], databaseLengths[1]);
+    }
+
+    /**
+     * Updates a student account in place: the old record is turned into a tombstone
+     * and the new one appended, in one journaled commit, so the cost does not grow
+     * with the size of the database
+     * @param studentInfo The new details; the ID selects the account
+     * @return true if successful, false if there is no such account or it could not be saved
+     */
+    public static boolean updateStudentAccount(StudentInfo studentInfo) {
+        try {
+            return getDataFileLock().call(() -> {
+                AppendJournal journal = getAccountJournal();
+                journal.recover();
+                RecordFile records = getStudentRecords();
+                long offset = records.locate(studentInfo.getId());
+                if (offset < 0) {
+                    System.err.println("Error updating student account: no student " + studentInfo.getId());
+                    return false;
+                }
+                String[] old = records.readLine(offset).split(",");
+                List<File> files = new ArrayList<>();
+                List<byte[]> data = new ArrayList<>();
+                files.add(getDatabaseFile());
+                data.add((studentInfo.toDatabaseFormat() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                if (old.length < 6 || !old[5].trim().equals(studentInfo.getPassword())) {
+                    files.add(getUserPasswordFile());
+                    data.add(("ID: " + studentInfo.getId() + " | Password: " + studentInfo.getPassword()
+                            + System.lineSeparator()).getBytes(StandardCharsets.UTF_8));
+                }
+                long[][] lengths = journal.commit(files.toArray(new File[0]), data.toArray(new byte[0][]),
+                        Collections.singletonList(records.tombstone(studentInfo.getId())));
+                afterStudentCommit(Collections.singletonList(studentInfo),
+                        Collections.singletonList(studentInfo.getId()), lengths[0]);
+                return true;
+            });
+        } catch (IOException e) {
+            System.err.println("Error updating student account: " + e.getMessage());
             return false;
+        } finally {
+            scheduleCompaction();
         }
     }
-    
+
     /**
-     * Generates a unique student ID
-     * @return A unique 7-digit ID starting with "225"
+     * Deletes a student account in place. The record becomes a tombstone and a
+     * deletion marker is appended; the ID stays reserved and is not handed out again.
+     * @param studentID The ID of the account to delete
+     * @return true if successful, false if there is no such account or it could not be deleted
      */
-    public static String generateUniqueStudentID() {
-        Set<String> usedIDs = new HashSet<>();
-        
+    public static boolean deleteStudentAccount(String studentID) {
         try {
-            File file = getDatabaseFile();
-            if (file.exists()) {
-                try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        String[] parts = line.split(",");
-                        if (parts.length > 0) {
-                            usedIDs.add(parts[0]);
-                        }
+            return getDataFileLock().call(() -> {
+                AppendJournal journal = getAccountJournal();
+                journal.recover();
+                AppendJournal.Patch tombstone = getStudentRecords().tombstone(studentID);
+                if (tombstone == null) {
+                    System.err.println("Error deleting student account: no student " + studentID);
+                    return false;
+                }
+                long[][] lengths = journal.commit(new File[]{getDatabaseFile()}, new byte[][]{
+                        (RecordFile.deletionMarker(studentID) + System.lineSeparator()).getBytes(StandardCharsets.UTF_8)},
+                        Collections.singletonList(tombstone));
+                afterStudentCommit(Collections.emptyList(), Collections.singletonList(studentID), lengths[0]);
+                return true;
+            });
+        } catch (IOException e) {
+            System.err.println("Error deleting student account: " + e.getMessage());
+            return false;
+        } finally {
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * Saves one profile detail of a student (e.g. "Home Address"), replacing the
+     * previous value in place
+     * @param studentID The student ID
+     * @param field The detail name
+     * @param value The new value
+     * @return true if successful, false otherwise
+     */
+    public static boolean updateStudentDetail(String studentID, String field, String value) {
+        String key = studentID + "," + field.replace(',', ' ');
+        String line = key + "," + value.replace('\r', ' ').replace('\n', ' ');
+        try {
+            return getDataFileLock().call(() -> {
+                AppendJournal journal = getAccountJournal();
+                journal.recover();
+                RecordFile details = getStudentDetailRecords();
+                AppendJournal.Patch tombstone = details.tombstone(key);
+                journal.commit(new File[]{details.getFile()},
+                        new byte[][]{(line + System.lineSeparator()).getBytes(StandardCharsets.UTF_8)},
+                        tombstone == null ? Collections.emptyList() : Collections.singletonList(tombstone));
+                return true;
+            });
+        } catch (IOException e) {
+            System.err.println("Error saving student detail: " + e.getMessage());
+            return false;
+        } finally {
+            scheduleCompaction();
+        }
+    }
+
+    /**
+     * Gets the profile details saved for a student
+     * @param studentID The student ID
+     * @return The saved values by detail name, empty if none were saved
+     */
+    public static Map<String, String> getStudentDetails(String studentID) {
+        Map<String, String> values = new HashMap<>();
+        RecordFile details = getStudentDetailRecords();
+        if (!details.getFile().exists()) {
+            return values;
+        }
+        try {
+            String prefix = studentID + ",";
+            for (String key : details.keys()) {
+                if (key.startsWith(prefix)) {
+                    long offset = details.locate(key);
+                    String line = offset < 0 ? null : details.readLine(offset);
+                    if (line != null) {
+                        values.put(key.substring(prefix.length()), line.substring(key.length() + 1));
                     }
                 }
             }
         } catch (IOException e) {
-            System.err.println("Error reading existing IDs: " + e.getMessage());
+            System.err.println("Error reading student details: " + e.getMessage());
         }
-        
-        Random rand = new Random();
-        String newID;
-        do {
-            int lastFour = rand.nextInt(10000);
-            newID = "225" + String.format("%04d", lastFour);
-        } while (usedIDs.contains(newID));
-        
-        return newID;
+        return values;
     }
-    
+
     /**
-     * Logs a payment transaction
-     * @param channelName The payment channel used
-     * @param amount The amount paid
-     * @param studentID The student ID making the payment
+     * Gets the locator used for in-place updates of Database.txt
+     * @return The student record locator, also for its dead-space and compaction statistics
      */
-    public static void logPaymentTransaction(String channelName, double amount, String studentID) {
-        try {
-            File logFile = getPaymentLogsFile();
-            
-            java.text.SimpleDateFormat dateFormat = new java.text.SimpleDateFormat("MM/dd/yyyy hh:mm a");
-            String currentDateTime = dateFormat.format(new java.util.Date());
-            
-            String reference = "FIRST SEMESTER 2025-2026 Enrollme.";
-            String formattedAmount = String.format("P %,.2f", amount);
-            
-            String logEntry = currentDateTime + "," + channelName + "," + reference + "," + formattedAmount + "," + studentID;
-            
-            try (BufferedWriter writer = new BufferedWriter(new FileWriter(logFile, true))) {
-                writer.write(logEntry);
-                writer.newLine();
+    public static synchronized RecordFile getStudentRecords() {
+        if (studentRecords == null) {
+            studentRecords = RecordFile.byStudentID(getDatabaseFile());
+        }
+        return studentRecords;
+    }
+
+    private static synchronized RecordFile getStudentDetailRecords() {
+        if (studentDetailRecords == null) {
+            studentDetailRecords = new RecordFile(new File(getDatabaseFile().getParentFile(), STUDENT_DETAILS_FILE),
+                    line -> {
+                        int first = line.indexOf(',');
+                        int second = first < 0 ? -1 : line.indexOf(',', first + 1);
+                        return second < 0 ? null : line.substring(0, second);
+                    });
+        }
+        return studentDetailRecords;
+    }
+
+    /**
+     * Starts a background compaction if updates and deletes left enough dead
+     * records behind; at most one is queued at a time
+     */
+    private static void scheduleCompaction() {
+        if (!getStudentRecords().shouldCompact() && !getStudentDetailRecords().shouldCompact()) {
+            return;
+        }
+        synchronized (DataManager.class) {
+            if (compactionQueued) {
+                return;
+            }
+            compactionQueued = true;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                compactDataFiles();
+            } finally {
+                synchronized (DataManager.class) {
+                    compactionQueued = false;
+                }
             }
+        }, "DataCompactor");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Rewrites Database.txt and the student details without their dead records.
+     * Writers wait for the data lock meanwhile; readers keep reading the old files
+     * until the new ones are renamed into place.
+     * @return The number of bytes reclaimed
+     */
+    public static long compactDataFiles() {
+        try {
+            return getDataFileLock().call(() -> {
+                getAccountJournal().recover();
+                long reclaimed = getStudentRecords().compact();
+                resetStudentViews();
+                if (getStudentDetailRecords().getFile().exists()) {
+                    reclaimed += getStudentDetailRecords().compact();
+                }
+                return reclaimed;
+            });
         } catch (IOException e) {
-            System.err.println("Error writing to payment log: " + e.getMessage());
+            System.err.println("Error compacting data files: " + e.getMessage());
+            return 0;
         }
     }
-    
+
     /**
-     * Loads payment transactions for a specific student
-     * @param studentID The student ID to load transactions for
-     * @return List of payment transactions
+     * Completes an account save that was cut short, e.g. by a crash between the writes
+     * to Database.txt and UserPasswordID.txt. Saving an account does this first anyway;
+     * call it at startup so the files agree before they are read.
+     * @return The number of file appends that had to be redone
      */
-    public static List<PaymentTransaction> loadPaymentTransactions(String studentID) {
-        List<PaymentTransaction> transactions = new ArrayList<>();
-        
+    public static int recoverAccountJournal() {
         try {
-            File logFile = getPaymentLogsFile();
-            if (logFile.exists()) {
-                try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        String[] parts = line.split(",");
-                        if (parts.length >= 5) {
-                            String transactionStudentID = parts[4].trim();
-                            if (studentID.equals(transactionStudentID)) {
-                                transactions.add(new PaymentTransaction(
-                                    parts[0].trim(), // Date
-                                    parts[1].trim(), // Channel
-                                    parts[2].trim(), // Reference
-                                    parts[3].trim()  // Amount
-                                ));
-                            }
+            return getDataFileLock().call(() -> getAccountJournal().recover());
+        } catch (IOException e) {
+            System.err.println("Error recovering account journal: " + e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Loads the checkpoint written by an earlier run and reads only what was appended
+     * to Database.txt and the payment log after it, instead of reading them in full.
+     * Call it at startup after recoverAccountJournal(). Indexes the checkpoint does not
+     * match (e.g. the database was compacted since) are built from the files as before,
+     * and if startup had to read much, a new checkpoint is written in the background.
+     * @return true if the checkpoint was loaded
+     */
+    public static boolean loadCheckpoint() {
+        try {
+            return getDataFileLock().call(() -> {
+                File dbFile = getDatabaseFile();
+                boolean loaded = getCheckpoint().read(in -> {
+                    long idLength = in.readLong();
+                    long idFingerprint = in.readLong();
+                    StudentIdIndex ids = StudentIdIndex.readFrom(in);
+                    int idFloor = in.readInt();
+                    if (dbFile.length() >= idLength && DataFileWatcher.fingerprint(dbFile, idLength) == idFingerprint) {
+                        synchronized (DataManager.class) {
+                            studentIdIndex = ids;
+                            studentIdIndexLength = idLength;
+                        }
+                        synchronized (handedOutStudentIDs) {
+                            sequentialIDFloor = Math.max(sequentialIDFloor, idFloor);
                         }
                     }
+                    getStudentRecords().readIndexFrom(in);
+                    getPaymentLogIndex().readFrom(in);
+                    getPaymentLedger().readFrom(in);
+                });
+                long databaseCovered;
+                synchronized (DataManager.class) {
+                    databaseCovered = studentIdIndex == null ? 0 : studentIdIndexLength;
                 }
-            }
+                long paymentsCovered = getPaymentLogIndex().getCoveredLength();
+                // Replay the tails now rather than on the first login
+                catchUpStudentIdIndex();
+                getStudentRecords().refresh();
+                getPaymentLogIndex().refresh();
+                getPaymentLedger().refresh();
+                long tail = dbFile.length() - databaseCovered + getPaymentLogsFile().length() - paymentsCovered;
+                if (hasCompletedTerms()) {
+                    scheduleArchive();
+                } else if (!loaded || tail > CHECKPOINT_TAIL_BYTES) {
+                    scheduleCheckpoint();
+                }
+                return loaded;
+            });
         } catch (IOException e) {
-            System.err.println("Error reading payment logs: " + e.getMessage());
+            System.err.println("Error loading checkpoint: " + e.getMessage());
+            return false;
         }
-        
-        return transactions;
     }
-    
+
     /**
-     * Gets all students from the database
-     * @return List of all student information
+     * Writes a checkpoint of the student ID index, the ID allocator, the student
+     * record offsets, the per-student payment offsets and the per-term payment time
+     * index, as of the current end of Database.txt and the payment log
+     * @return The size of the checkpoint in bytes, or -1 if it could not be written
      */
-    public static List<StudentInfo> getAllStudents() {
-        List<StudentInfo> students = new ArrayList<>();
-        
+    public static long writeCheckpoint() {
         try {
-            File databaseFile = getDatabaseFile();
-            if (!databaseFile.exists()) {
-                return students;
-            }
-
-            try (BufferedReader reader = new BufferedReader(new FileReader(databaseFile))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    String[] parts = line.split(",");
-                    if (parts.length >= 6) {
-                        students.add(new StudentInfo(
-                            parts[0].trim(), // ID
-                            parts[1].trim(), // Last Name
-                            parts[2].trim(), // First Name
-                            parts[3].trim(), // Middle Name
-                            parts[4].trim(), // Date of Birth
-                            parts[5].trim()  // Password
-                        ));
+            return getDataFileLock().call(() -> {
+                getAccountJournal().recover();
+                StudentIdIndex ids = catchUpStudentIdIndex();
+                return getCheckpoint().write(out -> {
+                    synchronized (DataManager.class) {
+                        out.writeLong(studentIdIndexLength);
+                        out.writeLong(DataFileWatcher.fingerprint(getDatabaseFile(), studentIdIndexLength));
+                        ids.writeTo(out);
                     }
+                    int idFloor = FIRST_STUDENT_ID;
+                    while (ids.contains(idFloor)) {
+                        idFloor++;
+                    }
+                    out.writeInt(idFloor);
+                    getStudentRecords().writeIndexTo(out);
+                    getPaymentLogIndex().writeTo(out);
+                    getPaymentLedger().writeTo(out);
+                });
+            });
+        } catch (IOException e) {
+            System.err.println("Error writing checkpoint: " + e.getMessage());
+            return -1;
+        }
+    }
+
+    private static synchronized DataCheckpoint getCheckpoint() {
+        if (checkpoint == null) {
+            checkpoint = new DataCheckpoint(new File(getDatabaseFile().getParentFile(), CHECKPOINT_FILE));
+        }
+        return checkpoint;
+    }
+
+    /**
+     * Writes a checkpoint on a background thread; at most one is queued at a time
+     */
+    private static void scheduleCheckpoint() {
+        synchronized (DataManager.class) {
+            if (checkpointQueued) {
+                return;
+            }
+            checkpointQueued = true;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                writeCheckpoint();
+            } finally {
+                synchronized (DataManager.class) {
+                    checkpointQueued = false;
                 }
             }
+        }, "DataCheckpointer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Moves the payments of completed terms out of paymentLogs.txt into the
+     * compressed payment archive, leaving the current term in the log. Startup does
+     * this in the background once a term is over.
+     * @return The number of payments archived, or -1 if archiving failed
+     */
+    public static int archivePayments() {
+        try {
+            return getDataFileLock().call(() -> {
+                int archived = getPaymentArchive().archive(getPaymentLogsFile(),
+                        PaymentLedger.termOf(java.time.LocalDate.now()));
+                // The log shrank; index what is left of it now rather than on the next lookup
+                getPaymentLogIndex().refresh();
+                getPaymentLedger().refresh();
+                return archived;
+            });
         } catch (IOException e) {
-            System.err.println("Error reading all students: " + e.getMessage());
+            System.err.println("Error archiving payment logs: " + e.getMessage());
+            return -1;
         }
-        
-        return students;
     }
-}
 
+    /**
+     * @return true if the payment log has payments of a term that has ended since
+     *         the log was last archived, payments of completed terms logged since, or
+     *         payments an archive run that did not finish left in it
+     */
+    private static boolean hasCompletedTerms() throws IOException {
+        int currentTerm = PaymentLedger.termOf(java.time.LocalDate.now());
+        PaymentArchive archive = getPaymentArchive();
+        if (archive.getLeftovers(getPaymentLogsFile()) != null
+                || getPaymentLedger().lastOffsetBefore(currentTerm) >= archive.getCheckedLength()) {
+            return true;
+        }
+        int archivedBefore = archive.getArchivedBefore();
+        for (int term : getPaymentLedger().getTerms()) {
+            if (term >= archivedBefore && term < currentTerm) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Archives completed terms on a background thread, then writes a checkpoint of
+     * the smaller log; at most one is queued at a time
+     */
+    private static void scheduleArchive() {
+        synchronized (DataManager.class) {
+            if (archiveQueued) {
+                return;
+            }
+            archiveQueued = true;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                if (archivePayments() >= 0) {
+                    writeCheckpoint();
+                }
+            } finally {
+                synchronized (DataManager.class) {
+                    archiveQueued = false;
+                }
+            }
+        }, "PaymentArchiver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * @return The number of account batches saved by this process
+     */
+    public static long getAccountBatches() {
+        return getAccountCommit().getBatches();
+    }
+
+    /**
+     * Brings the student ID index up to date with the database, reading only what
+     * other processes appended since the last call; the caller holds the data lock
+     * @return The index
+     */
+    private static StudentIdIndex catchUpStudentIdIndex() throws IOException {
+        synchronized (DataManager.class) {
+            File dbFile = getDatabaseFile();
+            long length = dbFile.length();
+            if (studentIdIndex == null || studentIdIndexLength < 0 || length < studentIdIndexLength) {
+                studentIdIndex = StudentIdIndex.load(dbFile);
+                studentIdIndexLength = length;
+            } else if (length > studentIdIndexLength) {
+                List<String> lines = new ArrayList<>();
+                studentIdIndexLength = DataFileWatcher.readLines(dbFile, studentIdIndexLength, length, lines);
+                for (String line : lines) {
+                    int comma = line.indexOf(',');
+                    if (comma > 0) {
+                        studentIdIndex.add(line.substring(0, comma).trim());
+                    } else if (line.startsWith(RecordFile.DELETED_MARKER)) {
+                        studentIdIndex.add(line.substring(RecordFile.DELETED_MARKER.length()).trim());
+                    }
+                }
+            }
+            return studentIdIndex;
+        }
+    }
+
+    /**
+     * Picks a random unused 225xxxx ID that was not handed out before in this process
+     */
+    private static String pickUnusedStudentID(StudentIdIndex index) {
+        synchronized (handedOutStudentIDs) {
+            Random rand = new Random();
+            for (int attempt = 0; attempt < 100_000; attempt++) {
+                int id = FIRST_STUDENT_ID + rand.nextInt(10_000);
+                if (!index.contains(id) && handedOutStudentIDs.add(id)) {
+                    return String.valueOf(id);
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Picks unused IDs for a batch of new accounts; the caller holds the data lock.
+     * A few accounts get random 225xxxx IDs as before. Larger batches take the
+     * lowest free IDs from 2250000 up, which continue into 226xxxx and beyond once
+     * the 225xxxx range (only 10,000 IDs) is used up.
+     * @param index The IDs in the database
+     * @param count The number of IDs needed
+     * @param taken IDs already used by the batch
+     * @return The IDs, fewer than count if the ID space ran out
+     */
+    private static List<String> allocateStudentIDs(StudentIdIndex index, int count, Set<String> taken) {
+        List<String> ids = new ArrayList<>(count);
+        synchronized (handedOutStudentIDs) {
+            if (count <= RANDOM_ID_BATCH) {
+                while (ids.size() < count) {
+                    String id = pickUnusedStudentID(index);
+                    if (id == null) {
+                        break;
+                    }
+                    if (!taken.contains(id)) {
+                        ids.add(id);
+                    }
+                }
+            }
+            for (int id = sequentialIDFloor; ids.size() < count && id < StudentIdIndex.ID_SPACE; id++) {
+                if (!index.contains(id) && !handedOutStudentIDs.contains(id) && !taken.contains(String.valueOf(id))) {
+                    handedOutStudentIDs.add(id);
+                    ids.add(String.valueOf(id));
+                }
+                if (id == sequentialIDFloor && (index.contains(id) || handedOutStudentIDs.contains(id))) {
+                    sequentialIDFloor = id + 1;
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Generates a unique student ID. No other portal process can pick the same ID at
+     * the same time, and saveStudentAccount refuses IDs that are already in the
+     * database; createStudentAccount does both steps at once.
+     * @return A unique 7-digit ID starting with "225"
+     */
+    public static String generateUniqueStudentID() {
+        try {
+            String id = getDataFileLock().call(() -> pickUnusedStudentID(catchUpStudentIdIndex()));
+            if (id != null) {
+                return id;
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading existing IDs: " + e.getMessage());
+        }
+        return "225" + String.format("%04d", new Random().nextInt(10000));
+    }
+    
+    /**
+     * Logs a payment transaction
+     * @param channelName The payment channel used
+     * @param amount The amount paid
+     * @param studentID The student ID making the payment
+     */
+    public static void logPaymentTransaction(String channelName, double amount, String studentID) {
+        logPaymentTransaction(channelName, amount, studentID, null);
+    }
+
+    /**
+     * Logs a payment transaction once: a payment with a key that was logged within the
+     * last day, by this program or another one sharing the data files, is not logged again
+     * @param channelName The payment channel used
+     * @param amount The amount paid
+     * @param studentID The student ID making the payment
+     * @param idempotencyKey Identifies the payment across retries (see PaymentLedger.isValidKey), or null
+     * @return true if the payment was logged now, false if it was logged before or could not be logged
+     */
+    public static boolean logPaymentTransaction(String channelName, double amount, String studentID,
+                                                String idempotencyKey) {
+        RecentPaymentKeys keys = null;
+        if (idempotencyKey != null) {
+            if (!PaymentLedger.isValidKey(idempotencyKey)) {
+                System.err.println("Error writing to payment log: invalid idempotency key " + idempotencyKey);
+                return false;
+            }
+            keys = getRecentPaymentKeys();
+            if (!keys.add(idempotencyKey, System.currentTimeMillis())) {
+                return false;
+            }
+        }
+        try {
+            // Refused if another program logged the key since this one last read the log
+            return getPaymentAppender().append(PaymentLedger.logLine(java.time.LocalDateTime.now(), channelName,
+                    amount, studentID, idempotencyKey));
+        } catch (IOException e) {
+            if (keys != null) {
+                keys.remove(idempotencyKey);
+            }
+            System.err.println("Error writing to payment log: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Gets the idempotency keys of recently logged payments, waiting for them to be
+     * read from the end of the payment log if loadRecentPaymentKeys() has not finished
+     * @return The recent payment keys
+     */
+    public static RecentPaymentKeys getRecentPaymentKeys() {
+        // Joined outside the lock, so other DataManager calls do not wait on the read
+        return loadRecentPaymentKeys().join();
+    }
+
+    /**
+     * Starts reading the idempotency keys of recently logged payments on a background
+     * thread; call it at startup so the first payment does not wait for the read
+     * @return A future completed with the keys
+     */
+    public static synchronized CompletableFuture<RecentPaymentKeys> loadRecentPaymentKeys() {
+        if (recentPaymentKeys == null) {
+            recentPaymentKeys = CompletableFuture.supplyAsync(DataManager::readRecentPaymentKeys);
+        }
+        return recentPaymentKeys;
+    }
+
+    private static RecentPaymentKeys readRecentPaymentKeys() {
+        RecentPaymentKeys keys = new RecentPaymentKeys(RecentPaymentKeys.DEFAULT_MAX_KEYS,
+                RecentPaymentKeys.DEFAULT_WINDOW_MILLIS);
+        File logFile = getPaymentLogsFile();
+        if (logFile.exists()) {
+            try {
+                keys.restore(logFile);
+            } catch (IOException e) {
+                System.err.println("Error reading recent payment keys: " + e.getMessage());
+            }
+        }
+        return keys;
+    }
+
+    // The keys if they are being read already; lines appended before that are read with them
+    private static synchronized CompletableFuture<RecentPaymentKeys> loadingRecentPaymentKeys() {
+        return recentPaymentKeys;
+    }
+
+    /**
+     * Validates a payment, charges it if a gateway is set, and queues it for the payment
+     * log, without waiting for the network or the disk
+     * @param request The payment as entered
+     * @return Completes with the logged transaction once it is on disk, or fails with
+     *         the reason it was refused, declined or could not be written
+     */
+    public static java.util.concurrent.CompletableFuture<PaymentTransaction> submitPayment(PaymentPipeline.Request request) {
+        return getPaymentPipeline().submit(request);
+    }
+
+    /**
+     * Sets the gateway that charges payments made through submitPayment
+     * @param gateway The gateway, or null to log payments without charging them
+     */
+    public static void setPaymentGateway(PaymentGateway gateway) {
+        getPaymentPipeline().setGateway(gateway);
+    }
+
+    /**
+     * Sets the payment gateway named by the portal.paymentGateway system property, e.g.
+     * -Dportal.paymentGateway=https://gateway.example/ or -Dportal.paymentGateway=mock
+     * to charge against a MockPaymentGateway on a local port for offline runs. Without
+     * the property payments are logged without being charged.
+     * @return true if a gateway was set
+     */
+    public static boolean configurePaymentGateway() {
+        String setting = System.getProperty(PAYMENT_GATEWAY_PROPERTY, "").trim();
+        if (setting.isEmpty()) {
+            return false;
+        }
+        try {
+            java.net.URI uri;
+            if (setting.equalsIgnoreCase("mock")) {
+                synchronized (DataManager.class) {
+                    if (mockPaymentGateway == null) {
+                        mockPaymentGateway = new MockPaymentGateway(100, 0, 0);
+                    }
+                    uri = mockPaymentGateway.getUri();
+                }
+            } else {
+                uri = new java.net.URI(setting);
+                if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+                    throw new URISyntaxException(setting, "Expected an http or https URI or \"mock\"");
+                }
+            }
+            setPaymentGateway(new PaymentGateway(uri, PaymentGateway.DEFAULT_MAX_ATTEMPTS));
+            return true;
+        } catch (IOException | URISyntaxException e) {
+            System.err.println("Error setting payment gateway: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Gets the queue that submitPayment hands payments to
+     * @return The payment pipeline
+     */
+    public static PaymentPipeline getPaymentPipeline() {
+        RecentPaymentKeys keys = getRecentPaymentKeys();
+        synchronized (DataManager.class) {
+            if (paymentPipeline == null) {
+                BatchingAppender appender = getPaymentAppender();
+                paymentPipeline = new PaymentPipeline(appender::appendAll, keys, PaymentPipeline.DEFAULT_CAPACITY);
+            }
+            return paymentPipeline;
+        }
+    }
+    
+    /**
+     * Loads payment transactions for a specific student
+     * @param studentID The student ID to load transactions for
+     * @return List of payment transactions
+     */
+    public static List<PaymentTransaction> loadPaymentTransactions(String studentID) {
+        // Callers get their own copy of the cached list
+        return new ArrayList<>(getPaymentCache().get(studentID, DataManager::readPaymentTransactions));
+    }
+
+    private static List<PaymentTransaction> readPaymentTransactions(String studentID) {
+        List<PaymentTransaction> transactions = new ArrayList<>();
+        
+        try {
+            File logFile = getPaymentLogsFile();
+            PaymentArchive archive = getPaymentArchive();
+            List<String> lines = logFile.exists()
+                    ? getPaymentLogIndex().readLines(studentID, archive.getLeftovers(logFile)) : null;
+            if (lines != null) {
+                // Completed terms first, from the archive, then the rest from the log
+                for (String line : archive.readLines(studentID)) {
+                    transactions.add(PaymentTransaction.parse(line));
+                }
+                for (String line : lines) {
+                    PaymentTransaction transaction = PaymentTransaction.parse(line);
+                    if (transaction != null && transaction.getStudentID() != null) {
+                        transactions.add(transaction);
+                    }
+                }
+            } else if (logFile.exists()) {
+                try (BufferedReader reader = new BufferedReader(new FileReader(logFile))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        PaymentTransaction transaction = PaymentTransaction.parse(line);
+                        if (transaction != null && studentID.equals(transaction.getStudentID())) {
+                            transactions.add(transaction);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading payment logs: " + e.getMessage());
+        }
+        
+        return transactions;
+    }
+    
+    /**
+     * Finds the payments made in a time range, e.g. for a cashier's end-of-day
+     * report. Only the terms the range touches are searched, and only the matching
+     * lines of the payment log are read; archived terms are read block by block.
+     * @param from The earliest payment time, inclusive
+     * @param to The latest payment time, inclusive
+     * @param channel Only payments through this channel (case-insensitive), or null for all
+     * @return The payments in time order
+     */
+    public static List<PaymentTransaction> queryPayments(java.time.LocalDateTime from, java.time.LocalDateTime to,
+                                                         String channel) {
+        try {
+            PaymentArchive archive = getPaymentArchive();
+            List<PaymentTransaction> payments = archive.query(from, to, channel);
+            payments.addAll(getPaymentLedger().query(from, to, channel, archive.getLeftovers(getPaymentLogsFile())));
+            // The log may still hold payments of archived terms logged since they were archived
+            payments.sort(java.util.Comparator.comparingInt(payment -> PaymentLedger.parseTimestamp(payment.getDate())));
+            return payments;
+        } catch (IOException e) {
+            System.err.println("Error reading payment logs: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Totals the payments made in a time range by channel, day or term, for
+     * cashier and finance reports
+     * @param from The earliest payment time, inclusive
+     * @param to The latest payment time, inclusive
+     * @param by What to total by
+     * @return The totals; channels by name, days and terms in time order
+     */
+    public static List<PaymentColumns.Total> summarizePayments(java.time.LocalDateTime from,
+                                                               java.time.LocalDateTime to,
+                                                               PaymentColumns.GroupBy by) {
+        try {
+            return getPaymentColumns().summarize(from, to, by);
+        } catch (IOException e) {
+            System.err.println("Error reading payment logs: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Reconciles a bank settlement export against the payments logged for its
+     * channel; the matched, missing and extra reports are written next to the file
+     * @param settlement The settlement CSV (date, student ID, amount[, reference])
+     * @param channel The channel the bank settles, as logged (e.g. "UnionBank UPay Online")
+     * @param from The first day of the settlement period
+     * @param to The last day of the settlement period
+     * @return The reconciliation report, or null if it could not be done
+     */
+    public static SettlementReconciler.ReconcileReport reconcileSettlement(File settlement, String channel,
+                                                                           java.time.LocalDate from,
+                                                                           java.time.LocalDate to) {
+        try {
+            return new SettlementReconciler(getPaymentLedger(), getPaymentArchive(),
+                    SettlementReconciler.DEFAULT_MAX_TABLE_ENTRIES).reconcile(settlement, channel, from, to);
+        } catch (IOException e) {
+            System.err.println("Error reconciling settlement: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Gets all students from the database
+     * @return List of all student information
+     */
+    public static List<StudentInfo> getAllStudents() {
+        List<StudentInfo> students = new ArrayList<>();
+        
+        try {
+            File databaseFile = getDatabaseFile();
+            if (!databaseFile.exists()) {
+                return students;
+            }
+
+            try (BufferedReader reader = new BufferedReader(new FileReader(databaseFile))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] parts = line.split(",");
+                    if (parts.length >= 6) {
+                        students.add(new StudentInfo(
+                            parts[0].trim(), // ID
+                            parts[1].trim(), // Last Name
+                            parts[2].trim(), // First Name
+                            parts[3].trim(), // Middle Name
+                            parts[4].trim(), // Date of Birth
+                            parts[5].trim()  // Password
+                        ));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading all students: " + e.getMessage());
+        }
+        
+        return students;
+    }
+
+    /**
+     * Gets the shared attendance store, replaying the attendance log on first use
+     * @return The attendance store
+     */
+    public static synchronized AttendanceStore getAttendanceStore() {
+        if (attendanceStore == null) {
+            attendanceStore = new AttendanceStore(getAttendanceLogFile());
+        }
+        return attendanceStore;
+    }
+
+    /**
+     * Gets the index of existing student IDs, reading the database on first use
+     * @return The student ID index
+     */
+    public static synchronized StudentIdIndex getStudentIdIndex() {
+        if (studentIdIndex == null) {
+            long length = getDatabaseFile().length();
+            studentIdIndex = StudentIdIndex.load(getDatabaseFile());
+            studentIdIndexLength = getDatabaseFile().length() == length ? length : -1;
+        }
+        return studentIdIndex;
+    }
+
+    /**
+     * Gets the lock shared by every portal process using this data directory
+     * @return The data directory lock
+     */
+    public static DataFileLock getDataFileLock() {
+        return DataFileLock.forFile(getDatabaseFile());
+    }
+
+    private static synchronized PaymentLedger getPaymentLedger() {
+        if (paymentLedger == null) {
+            paymentLedger = new PaymentLedger(getPaymentLogsFile());
+        }
+        return paymentLedger;
+    }
+
+    private static synchronized PaymentArchive getPaymentArchive() {
+        if (paymentArchive == null) {
+            paymentArchive = new PaymentArchive(resolveFile(PAYMENT_ARCHIVE_FILE), resolveFile(PAYMENT_ARCHIVE_INDEX_FILE));
+        }
+        return paymentArchive;
+    }
+
+    /**
+     * Gets the balances that payments logged by this program are applied to, as each
+     * payment reaches the disk
+     * @return The account balances
+     */
+    public static synchronized AccountBalances getAccountBalances() {
+        if (accountBalances == null) {
+            accountBalances = new AccountBalances();
+        }
+        return accountBalances;
+    }
+
+    private static synchronized PaymentColumns getPaymentColumns() {
+        if (paymentColumns == null) {
+            paymentColumns = new PaymentColumns(getPaymentLogsFile(), getPaymentArchive());
+        }
+        return paymentColumns;
+    }
+
+    private static synchronized PaymentLogIndex getPaymentLogIndex() {
+        if (paymentLogIndex == null) {
+            paymentLogIndex = new PaymentLogIndex(getPaymentLogsFile());
+        }
+        return paymentLogIndex;
+    }
+
+    /**
+     * Applies a payment to its student's balance once its line is on disk, so payments
+     * logged by any window, job or retry reduce the amount due exactly once
+     */
+    private static void applyToBalance(AccountBalances balances, String line) {
+        PaymentTransaction payment = PaymentTransaction.parse(line);
+        if (payment == null || payment.getStudentID() == null) {
+            return;
+        }
+        long centavos = PaymentTransaction.parseCentavos(payment.getAmount());
+        if (centavos > 0) {
+            balances.applyPayment(payment.getStudentID(), centavos);
+        }
+    }
+
+    /**
+     * Refuses the payments in a batch whose key another program logged first; runs under
+     * the data lock, so the log read here is the log appended to
+     */
+    private static boolean[] admitPayments(List<String> lines, long length) throws IOException {
+        boolean[] admit = new boolean[lines.size()];
+        RecentPaymentKeys keys = null;
+        for (int i = 0; i < admit.length; i++) {
+            String key = PaymentLedger.keyOf(lines.get(i));
+            if (key != null && keys == null) {
+                keys = getRecentPaymentKeys();
+                keys.catchUp(getPaymentLogsFile(), length);
+            }
+            admit[i] = key == null || !keys.isLogged(key);
+        }
+        return admit;
+    }
+
+    private static synchronized BatchingAppender getPaymentAppender() {
+        if (paymentAppender == null) {
+            // Forced to disk per batch: a payment the student saw acknowledged must survive a crash
+            AccountBalances balances = getAccountBalances();
+            paymentAppender = new BatchingAppender(getPaymentLogsFile(), (lines, lengthBefore, lengthAfter) -> {
+                Set<String> studentIDs = new HashSet<>();
+                for (String line : lines) {
+                    studentIDs.add(line.substring(line.lastIndexOf(',') + 1).trim());
+                    applyToBalance(balances, line);
+                }
+                advanceFileWatcher(getPaymentLogsFile(), lengthBefore, lengthAfter);
+                getPaymentCache().afterAppend(studentIDs, lengthBefore, lengthAfter);
+                CompletableFuture<RecentPaymentKeys> keys = loadingRecentPaymentKeys();
+                if (keys != null && keys.isDone()) {
+                    keys.join().afterAppend(lengthBefore, lengthAfter);
+                }
+            }, DataManager::admitPayments, true);
+        }
+        return paymentAppender;
+    }
+
+    /**
+     * Gets the cache in front of getStudentInfo
+     * @return The student record cache
+     */
+    public static synchronized RecordCache<String, StudentInfo> getStudentCache() {
+        if (studentCache == null) {
+            studentCache = new RecordCache<>(getDatabaseFile(), STUDENT_CACHE_BYTES, DataManager::estimateSize);
+        }
+        return studentCache;
+    }
+
+    /**
+     * Gets the cache in front of loadPaymentTransactions
+     * @return The payment transaction cache
+     */
+    public static synchronized RecordCache<String, List<PaymentTransaction>> getPaymentCache() {
+        if (paymentCache == null) {
+            paymentCache = new RecordCache<>(getPaymentLogsFile(), PAYMENT_CACHE_BYTES, transactions -> {
+                long size = 64 + 8L * transactions.size();
+                for (PaymentTransaction transaction : transactions) {
+                    size += 32 + estimateSize(transaction.getDate()) + estimateSize(transaction.getChannel())
+                            + estimateSize(transaction.getReference()) + estimateSize(transaction.getAmount());
+                }
+                return size;
+            });
+        }
+        return paymentCache;
+    }
+
+    private static long estimateSize(StudentInfo student) {
+        return 40 + estimateSize(student.getId()) + estimateSize(student.getLastName())
+                + estimateSize(student.getFirstName()) + estimateSize(student.getMiddleName())
+                + estimateSize(student.getDateOfBirth()) + estimateSize(student.getPassword());
+    }
+
+    // Heap size of a String: object header and fields plus a compact (Latin-1) byte array
+    private static long estimateSize(String text) {
+        return text == null ? 0 : 40 + ((text.length() + 7) & ~7);
+    }
+
+    /**
+     * Starts watching Database.txt and paymentLogs.txt for edits made by other programs.
+     * Appended records are added to the in-memory indexes and caches; if a file is
+     * truncated or rewritten, everything derived from it is reloaded on next use.
+     * @return true if the watcher is running
+     */
+    public static synchronized boolean startFileWatcher() {
+        if (fileWatcher != null) {
+            return true;
+        }
+        try {
+            DataFileWatcher watcher = new DataFileWatcher();
+            watcher.watch(getDatabaseFile(), new DataFileWatcher.Listener() {
+                @Override
+                public void appended(List<String> lines, long lengthBefore, long lengthAfter) {
+                    List<StudentInfo> students = new ArrayList<>();
+                    List<String> changedIDs = new ArrayList<>();
+                    StudentIdIndex knownIDs;
+                    synchronized (DataManager.class) {
+                        knownIDs = studentIdIndex;
+                    }
+                    for (String line : lines) {
+                        String[] parts = line.split(",");
+                        if (parts.length >= 6) {
+                            students.add(new StudentInfo(parts[0].trim(), parts[1].trim(), parts[2].trim(),
+                                    parts[3].trim(), parts[4].trim(), parts[5].trim()));
+                            if (knownIDs != null && knownIDs.contains(parts[0].trim())) {
+                                changedIDs.add(parts[0].trim());
+                            }
+                        } else if (line.startsWith(RecordFile.DELETED_MARKER)) {
+                            changedIDs.add(line.substring(RecordFile.DELETED_MARKER.length()).trim());
+                        }
+                    }
+                    applyStudentsAppended(students, changedIDs, lengthBefore, lengthAfter);
+                }
+
+                @Override
+                public void reset() {
+                    resetStudentViews();
+                }
+            });
+            watcher.watch(getPaymentLogsFile(), new DataFileWatcher.Listener() {
+                @Override
+                public void appended(List<String> lines, long lengthBefore, long lengthAfter) {
+                    Set<String> studentIDs = new HashSet<>();
+                    for (String line : lines) {
+                        String[] parts = line.split(",");
+                        if (parts.length >= 5) {
+                            studentIDs.add(parts[parts.length - 1].trim());
+                        }
+                    }
+                    getPaymentCache().afterAppend(studentIDs, lengthBefore, lengthAfter);
+                    // Payments another portal logged count as logged here too
+                    CompletableFuture<RecentPaymentKeys> keys = loadingRecentPaymentKeys();
+                    if (keys != null) {
+                        keys.thenAccept(loaded -> loaded.addLogged(lines));
+                    }
+                }
+
+                @Override
+                public void reset() {
+                    resetPaymentViews();
+                }
+            });
+            watcher.start();
+            fileWatcher = watcher;
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error starting file watcher: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Stops the file watcher, if running
+     */
+    public static synchronized void stopFileWatcher() {
+        if (fileWatcher != null) {
+            try {
+                fileWatcher.close();
+            } catch (IOException e) {
+                System.err.println("Error stopping file watcher: " + e.getMessage());
+            }
+            fileWatcher = null;
+        }
+    }
+
+    /**
+     * Tells the file watcher about an append made here, so it is not read back
+     */
+    private static void advanceFileWatcher(File file, long lengthBefore, long lengthAfter) {
+        DataFileWatcher watcher;
+        synchronized (DataManager.class) {
+            watcher = fileWatcher;
+        }
+        if (watcher != null) {
+            watcher.advance(file, lengthBefore, lengthAfter);
+        }
+    }
+
+    /**
+     * Drops everything derived from Database.txt after it was rewritten
+     */
+    private static void resetStudentViews() {
+        synchronized (DataManager.class) {
+            studentIdIndex = null;
+            studentIdFilter = null;
+            studentNameIndex = null;
+        }
+        getStudentCache().clear();
+    }
+
+    /**
+     * Drops everything derived from paymentLogs.txt after it was rewritten (e.g.
+     * archived by another portal), whose offsets no longer match the log
+     */
+    private static void resetPaymentViews() {
+        synchronized (DataManager.class) {
+            paymentLogIndex = null;
+            paymentLedger = null;
+            paymentColumns = null;
+        }
+        getPaymentCache().clear();
+    }
+
+    /**
+     * Brings the in-memory student views up to date with records appended to the
+     * database, by this program or another one. A view that did not cover exactly
+     * the records before the append is dropped and rebuilt on next use, and so is
+     * the name index when records were replaced or deleted.
+     */
+    private static void applyStudentsAppended(List<StudentInfo> students, Collection<String> changedIDs,
+                                              long lengthBefore, long lengthAfter) {
+        List<String> studentIDs = new ArrayList<>(changedIDs);
+        synchronized (DataManager.class) {
+            for (StudentInfo student : students) {
+                studentIDs.add(student.getId());
+                if (studentIdIndex != null) {
+                    studentIdIndex.add(student.getId());
+                }
+            }
+            if (studentIdFilter != null && studentIdFilterLength == lengthBefore) {
+                for (String studentID : studentIDs) {
+                    studentIdFilter.add(studentID);
+                }
+                studentIdFilterLength = studentIdFilter.isSaturated() ? -1 : lengthAfter;
+            }
+            if (studentNameIndex != null) {
+                if (studentNameIndexLength == lengthBefore && changedIDs.isEmpty()) {
+                    for (StudentInfo student : students) {
+                        studentNameIndex.add(student);
+                    }
+                    studentNameIndexLength = lengthAfter;
+                } else {
+                    studentNameIndex = null;
+                }
+            }
+        }
+        getStudentCache().afterAppend(studentIDs, lengthBefore, lengthAfter);
+    }
+
+    /**
+     * Checks a student ID against the ID index if it is current, or else the Bloom
+     * filter, before a database read. The filter is rebuilt when the database changed outside saveStudentAccount
+     * or when it holds more IDs than it was sized for.
+     * @param studentID The student ID to check
+     * @return false if the ID is certainly not in the database
+     */
+    private static boolean mightBeStudentID(String studentID) {
+        StudentIdBloomFilter filter;
+        synchronized (DataManager.class) {
+            long length = getDatabaseFile().length();
+            int id = StudentIdIndex.parse(studentID);
+            if (id >= 0 && studentIdIndex != null && studentIdIndexLength == length) {
+                // The ID index is exact and current (e.g. loaded from a checkpoint); no filter needed
+                if (!studentIdIndex.contains(id)) {
+                    idScansAvoided.incrementAndGet();
+                    return false;
+                }
+                idScansPerformed.incrementAndGet();
+                return true;
+            }
+            if (studentIdFilter == null || studentIdFilterLength != length) {
+                studentIdFilter = StudentIdBloomFilter.load(getDatabaseFile());
+                studentIdFilterLength = length;
+            }
+            filter = studentIdFilter;
+        }
+        if (!filter.mightContain(studentID)) {
+            idScansAvoided.incrementAndGet();
+            return false;
+        }
+        idScansPerformed.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @return Number of login/lookup scans skipped because the ID was not in the Bloom filter
+     */
+    public static long getIdScansAvoided() {
+        return idScansAvoided.get();
+    }
+
+    /**
+     * @return Number of login/lookup scans that went ahead after the Bloom filter check
+     */
+    public static long getIdScansPerformed() {
+        return idScansPerformed.get();
+    }
+
+    /**
+     * Searches students by last or first name, for type-ahead lookups.
+     * The name index is built from the database on first use.
+     * @param prefix The name or name prefix typed so far
+     * @param limit The maximum number of results
+     * @return Matching students; close misspellings follow the prefix matches
+     */
+    public static List<StudentInfo> searchByName(String prefix, int limit) {
+        StudentNameIndex index;
+        synchronized (DataManager.class) {
+            if (studentNameIndex == null) {
+                long length = getDatabaseFile().length();
+                studentNameIndex = StudentNameIndex.build(getAllStudents());
+                // If the file grew while it was read, it is unknown which records are in the index
+                studentNameIndexLength = getDatabaseFile().length() == length ? length : -1;
+            }
+            index = studentNameIndex;
+        }
+        return index.search(prefix, limit);
+    }
+
+    private static synchronized StudentQueryEngine getStudentQueryEngine() {
+        if (studentQueryEngine == null) {
+            studentQueryEngine = new StudentQueryEngine(getDatabaseFile());
+        }
+        return studentQueryEngine;
+    }
+
+    /**
+     * Finds the students matching a query on last name, date of birth and/or ID range.
+     * Records are filtered while the database is read; the secondary indexes are used
+     * when they exist and are up to date.
+     * @param query The query
+     * @return List of matching students, in database order
+     */
+    public static List<StudentInfo> queryStudents(StudentQuery query) {
+        try {
+            return getStudentQueryEngine().query(query);
+        } catch (IOException e) {
+            System.err.println("Error querying students: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * Builds the date-of-birth and last-name indexes next to the database.
+     * Accounts saved afterwards are still found; rebuild now and then to cover them.
+     * @return true if successful, false otherwise
+     */
+    public static boolean buildStudentIndexes() {
+        try {
+            getStudentQueryEngine().buildIndexes();
+            return true;
+        } catch (IOException e) {
+            System.err.println("Error building student indexes: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Imports a faculty grade/attendance sheet in bulk.
+     * Grades are appended to gradeLogs.txt and attendance goes to the attendance store;
+     * rejected rows are written next to the sheet with a ".rejects" suffix.
+     * @param sheet The sheet file to import
+     * @return The import report, or null if the import failed
+     */
+    public static BulkImporter.ImportReport importSheet(File sheet) {
+        try {
+            BulkImporter importer = new BulkImporter(getStudentIdIndex(), getGradeLogsFile(), getAttendanceStore());
+            return importer.importSheet(sheet);
+        } catch (IOException e) {
+            System.err.println("Error importing sheet: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Loads the journal/periodical catalog
+     * @return List of catalog entries
+     */
+    public static List<JournalEntry> loadJournalCatalog() {
+        try {
+            return readJournalCatalog();
+        } catch (IOException e) {
+            System.err.println("Error reading journal catalog: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private static List<JournalEntry> readJournalCatalog() throws IOException {
+        List<JournalEntry> entries = new ArrayList<>();
+        File catalogFile = getJournalCatalogFile();
+        if (catalogFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(catalogFile))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    JournalEntry entry = JournalEntry.fromCatalogLine(line);
+                    if (entry != null) {
+                        entries.add(entry);
+                    }
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Gets the journal search index. The first call starts building it on a
+     * background thread; callers should check isDone() or chain on the future.
+     * If the catalog cannot be read the future fails and is dropped, so the next
+     * call tries again.
+     * @return A future completed with the index
+     */
+    public static synchronized CompletableFuture<JournalSearchIndex> getJournalSearchIndex() {
+        if (journalSearchIndex == null) {
+            CompletableFuture<JournalSearchIndex> building = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return JournalSearchIndex.build(readJournalCatalog());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            journalSearchIndex = building;
+            building.whenComplete((index, error) -> {
+                if (error != null) {
+                    Throwable cause = error;
+                    while (cause.getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    System.err.println("Error building journal search index: " + cause.getMessage());
+                    synchronized (DataManager.class) {
+                        if (journalSearchIndex == building) {
+                            journalSearchIndex = null;
+                        }
+                    }
+                }
+            });
+        }
+        return journalSearchIndex;
+    }
+}
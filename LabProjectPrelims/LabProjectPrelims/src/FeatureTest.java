@@ -0,0 +1,1118 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Correctness checks for the data structures and storage behind the portal. Each
+ * test works on small data in a temporary directory and stops the run with exit
+ * code 1 at the first wrong result.
+ * The DataManager tests run in child processes whose working directory is a
+ * prepared data directory, so they never touch the real data files.
+ */
+public class FeatureTest {
+
+    private static File dir;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("dataWorker")) {
+            runDataWorker(args[1]);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("journalWorker")) {
+            runJournalWorker(new File(args[1]));
+            return;
+        }
+        System.out.println("=== STUDENT PORTAL FEATURE TEST ===\n");
+        dir = Files.createTempDirectory("portal-test").toFile();
+        try {
+            // Test 1: Transcript averages
+            testTranscript();
+
+            // Test 2: Attendance counters
+            testAttendanceStore();
+
+            // Test 3: Bulk import
+            testBulkImport();
+
+            // Test 4: Journal search
+            testJournalSearch();
+
+            // Test 5: Student name search
+            testNameSearch();
+
+            // Test 6: Indexed student queries
+            testStudentQuery();
+
+            // Test 7: Student ID filters
+            testStudentIdFilters();
+
+            // Test 8: Record cache
+            testRecordCache();
+
+            // Test 9: File watcher
+            testFileWatcher();
+
+            // Test 10: Appends from several processes
+            testMultiProcessAppends();
+
+            // Test 11: Append journal recovery
+            testAppendJournal();
+
+            // Test 12: Bulk account provisioning
+            testBulkProvisioning();
+
+            // Test 13: Record file updates and compaction
+            testRecordFile();
+
+            // Test 14: Account updates and deletes
+            testAccountUpdates();
+
+            // Test 15: Sharded student store
+            testShardedStore();
+
+            // Test 16: Off-heap ID index
+            testOffHeapIndex();
+
+            // Test 17: Compact student records
+            testStudentRecords();
+
+            // Test 18: Restart from a checkpoint
+            testCheckpoint();
+
+            // Test 19: Payment ledger queries
+            testPaymentLedger();
+
+            // Test 20: Payment archive
+            testPaymentArchive();
+
+            // Test 21: Payment report totals
+            testPaymentColumns();
+
+            // Test 22: Settlement reconciliation
+            testSettlementReconciler();
+
+            // Test 23: Payment pipeline
+            testPaymentPipeline();
+
+            // Test 24: Payment gateway
+            testPaymentGateway();
+
+            // Test 25: Account balances
+            testAccountBalances();
+
+            // Test 26: Payment dedupe
+            testPaymentDedupe();
+        } finally {
+            deleteRecursively(dir);
+        }
+        System.out.println("\n=== ALL FEATURE TESTS COMPLETED SUCCESSFULLY ===");
+    }
+
+    /**
+     * Test weighted averages and grade corrections
+     */
+    private static void testTranscript() {
+        System.out.println("1. Testing Transcript Averages:");
+        TranscriptModel transcript = new TranscriptModel();
+        int first = transcript.addTerm("FIRST SEMESTER 2025-2026");
+        int second = transcript.addTerm("SECOND SEMESTER 2025-2026");
+        transcript.addCourse(first, "CS 111", "Programming", 90, 3);
+        int lab = transcript.addCourse(first, "CS 111L", "Programming Lab", 80, 1);
+        transcript.addCourse(second, "CS 122", "Data Structures", 85, 3);
+        check(near(transcript.getTermGwa(first), 87.5), "term GWA is weighted by units");
+        check(near(transcript.getCumulativeGwa(), (270 + 80 + 255) / 7.0), "cumulative GWA covers every term");
+        transcript.correctGrade(lab, 100);
+        check(near(transcript.getTermGwa(first), 92.5) && near(transcript.getCumulativeGwa(), (270 + 100 + 255) / 7.0),
+                "grade correction updates both averages");
+        check(transcript.getTotalUnits() == 7, "total units");
+        System.out.println("   Transcript: PASSED\n");
+    }
+
+    /**
+     * Test attendance counters and their replay after reopening
+     */
+    private static void testAttendanceStore() throws IOException {
+        System.out.println("2. Testing Attendance Counters:");
+        File file = new File(dir, "attendance.dat");
+        AttendanceStore store = new AttendanceStore(file);
+        for (int meeting = 1; meeting <= 10; meeting++) {
+            store.recordEvent("2250001", "CS 122", meeting, meeting <= 7 ? AttendanceStore.PRESENT
+                    : meeting == 8 ? AttendanceStore.LATE : AttendanceStore.ABSENT);
+            store.recordEvent("2250002", "CS 122", meeting, meeting <= 5 ? AttendanceStore.PRESENT : AttendanceStore.ABSENT);
+        }
+        check(Arrays.equals(store.getCounts("2250001", "CS 122"), new int[]{7, 2, 1}), "present, absent and late counts");
+        check(near(store.getAttendancePercentage("2250001", "CS 122"), 80.0), "late counts as attended");
+        check(store.getStudentsOverAbsenceLimit("CS 122", 3).equals(Collections.singletonList("2250002")),
+                "students over the absence limit");
+        check(store.getMeetingAttendance("CS 122", 6) == 1 && store.getMeetingAbsences("CS 122", 9) == 2,
+                "per-meeting attendance");
+        store.close();
+
+        AttendanceStore reopened = new AttendanceStore(file);
+        check(Arrays.equals(reopened.getCounts("2250002", "CS 122"), new int[]{5, 5, 0})
+                && reopened.getEventCount() == 20, "counts are replayed after reopening");
+        reopened.recordEvent("2250002", "CS 122", 10, AttendanceStore.PRESENT);
+        check(Arrays.equals(reopened.getCounts("2250002", "CS 122"), new int[]{6, 4, 0}),
+                "a reopened store records events for a known class");
+        reopened.close();
+
+        AttendanceStore again = new AttendanceStore(file);
+        check(Arrays.equals(again.getCounts("2250002", "CS 122"), new int[]{6, 4, 0}),
+                "events recorded after reopening are in the log");
+        again.close();
+        System.out.println("   Attendance Store: PASSED\n");
+    }
+
+    /**
+     * Test that an import keeps the valid rows and reports the rejected ones
+     */
+    private static void testBulkImport() throws IOException {
+        System.out.println("3. Testing Bulk Import:");
+        StudentIdIndex ids = new StudentIdIndex();
+        ids.add(2250001);
+        ids.add(2250002);
+        File grades = new File(dir, "importedGrades.txt");
+        AttendanceStore attendance = new AttendanceStore(new File(dir, "importAttendance.dat"));
+        File sheet = new File(dir, "sheet.csv");
+        Files.write(sheet.toPath(), Arrays.asList(
+                "GRADE,2250001,CS 122,FIRST SEMESTER 2025-2026,91,3",
+                "GRADE,2250002,CS 122,FIRST SEMESTER 2025-2026,88,3",
+                "GRADE,2259999,CS 122,FIRST SEMESTER 2025-2026,75,3",
+                "GRADE,2250001,CS 122,FIRST SEMESTER 2025-2026,abc,3",
+                "GRADE,2250002,CS 122,FIRST SEMESTER 2025-2026,NaN,3",
+                "ATTENDANCE,2250001,CS 122,1,P",
+                "ATTENDANCE,2250002,CS 122,1,X"));
+
+        BulkImporter.ImportReport report = new BulkImporter(ids, grades, attendance).importSheet(sheet);
+        check(report.getRowsRead() == 7, "every row read");
+        check(report.getGradesAccepted() == 2 && report.getAttendanceAccepted() == 1 && report.getRejected() == 4,
+                "valid rows accepted, unknown students and bad values rejected");
+        check(Files.readAllLines(grades.toPath()).size() == 2, "accepted grades written");
+        check(Files.readAllLines(report.getRejectsFile().toPath()).size() == 4, "rejected rows written with reasons");
+        check(attendance.getCounts("2250001", "CS 122")[0] == 1, "attendance recorded");
+        attendance.close();
+
+        // A second import after a restart, for a class already in the attendance log
+        AttendanceStore reopened = new AttendanceStore(new File(dir, "importAttendance.dat"));
+        File nextSheet = new File(dir, "nextSheet.csv");
+        Files.write(nextSheet.toPath(), Arrays.asList(
+                "GRADE,2250001,CS 123,FIRST SEMESTER 2025-2026,93,3",
+                "ATTENDANCE,2250001,CS 122,2,P",
+                "ATTENDANCE,2250002,CS 122,2,A"));
+        report = new BulkImporter(ids, grades, reopened).importSheet(nextSheet);
+        check(report.getGradesAccepted() == 1 && report.getAttendanceAccepted() == 2 && report.getRejected() == 0,
+                "a second import after reopening is accepted");
+        check(Files.readAllLines(grades.toPath()).size() == 3 && reopened.getCounts("2250001", "CS 122")[0] == 2,
+                "both imports are kept");
+        reopened.close();
+        check(new AttendanceStore(new File(dir, "importAttendance.dat")).getEventCount() == 3,
+                "attendance from both imports is in the log");
+        System.out.println("   Bulk Import: PASSED\n");
+    }
+
+    /**
+     * Test ranked journal search, all-words matching, prefixes and accents
+     */
+    private static void testJournalSearch() {
+        System.out.println("4. Testing Journal Search:");
+        List<JournalEntry> catalog = new ArrayList<>();
+        catalog.add(new JournalEntry("Machine Learning in Schools", "Santos", "Tech Review", "1", "2024", "1-10", "Computing"));
+        catalog.add(new JournalEntry("Learning Analytics", "Reyes", "Education Quarterly", "2", "2023", "11-20", "Education"));
+        catalog.add(new JournalEntry("Education Policy", "Cruz", "Policy Review", "4", "2021", "31-40", "Education"));
+        catalog.add(new JournalEntry("Coral Reef Ecology", "Peña", "Marine Studies", "3", "2022", "21-30", "Biology"));
+        JournalSearchIndex index = JournalSearchIndex.build(catalog);
+
+        check(index.search("learning education", 10).size() == 3, "any word matches in a ranked search");
+        List<JournalEntry> all = index.searchAll("learning education", 10);
+        check(all.size() == 1 && all.get(0).getTitle().equals("Learning Analytics"), "every word must match in searchAll");
+        check(index.search("ecol", 10).size() == 1, "the last word matches as a prefix");
+        check(index.search("pena", 10).size() == 1, "accents are ignored");
+        check(index.search("quantum", 10).isEmpty(), "no match for an unknown word");
+        check(!index.isPrefixTruncated("ecol"), "a short prefix list is not truncated");
+        List<JournalEntry> many = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            many.add(new JournalEntry("Study of topic" + i, "Author", "Journal", "1", "2024", "1", "Science"));
+        }
+        check(JournalSearchIndex.build(many).isPrefixTruncated("topic"), "a long prefix list is reported as truncated");
+        System.out.println("   Journal Search: PASSED\n");
+    }
+
+    /**
+     * Test name search by prefix and with a typo
+     */
+    private static void testNameSearch() {
+        System.out.println("5. Testing Student Name Search:");
+        List<StudentInfo> roster = Arrays.asList(
+                new StudentInfo("2250001", "Bautista", "Maria", "C", "01/02/05", "pw"),
+                new StudentInfo("2250002", "Santos", "Jose", "R", "03/04/05", "pw"),
+                new StudentInfo("2250003", "Bautista", "Pedro", "L", "05/06/05", "pw"));
+        StudentNameIndex index = StudentNameIndex.build(roster);
+        check(index.search("baut", 10).size() == 2, "prefix finds both students");
+        check(index.search("maria bautista", 10).get(0).getFirstName().equals("Maria"), "first and last name together");
+        List<StudentInfo> typo = index.search("bautsta", 10);
+        check(!typo.isEmpty() && typo.get(0).getLastName().equals("Bautista"), "a misspelt name still matches");
+        System.out.println("   Name Search: PASSED\n");
+    }
+
+    /**
+     * Test that indexed queries return what a full scan does
+     */
+    private static void testStudentQuery() throws IOException {
+        System.out.println("6. Testing Indexed Student Queries:");
+        File database = writeDatabase(new File(dir, "queryDatabase.txt"), 500);
+        StudentQueryEngine engine = new StudentQueryEngine(database);
+        StudentQuery byName = new StudentQuery().lastName("Reyes");
+        StudentQuery byBirth = new StudentQuery().bornBetween(LocalDate.of(2003, 1, 1), LocalDate.of(2003, 6, 30))
+                .idBetween(2000100, 2000400);
+        List<String> scannedByName = ids(engine.query(byName));
+        List<String> scannedByBirth = ids(engine.query(byBirth));
+        check(!scannedByName.isEmpty() && !scannedByBirth.isEmpty(), "full scan finds matches");
+
+        engine.buildIndexes();
+        check(engine.explain(byName) == StudentQueryEngine.Plan.LAST_NAME_INDEX, "last-name query uses its index");
+        check(ids(engine.query(byName)).equals(scannedByName), "last-name index agrees with the scan");
+        check(ids(engine.query(byBirth)).equals(scannedByBirth), "birth-date query agrees with the scan");
+
+        Files.write(database.toPath(), Collections.singletonList("2000999,Reyes,Late,A,01/01/03,pw"),
+                StandardOpenOption.APPEND);
+        check(ids(engine.query(byName)).contains("2000999"), "records appended after indexing are found");
+        System.out.println("   Student Query: PASSED\n");
+    }
+
+    /**
+     * Test the ID index and Bloom filter against a database
+     */
+    private static void testStudentIdFilters() throws IOException {
+        System.out.println("7. Testing Student ID Filters:");
+        File database = writeDatabase(new File(dir, "filterDatabase.txt"), 1000);
+        StudentIdBloomFilter filter = StudentIdBloomFilter.load(database);
+        StudentIdIndex index = StudentIdIndex.load(database);
+        boolean allFound = true;
+        for (int id = 2000000; id < 2001000; id++) {
+            allFound &= filter.mightContain(String.valueOf(id)) && index.contains(id);
+        }
+        check(allFound, "no false negatives");
+        int falsePositives = 0;
+        for (int id = 3000000; id < 3010000; id++) {
+            if (filter.mightContain(String.valueOf(id))) {
+                falsePositives++;
+            }
+        }
+        check(falsePositives < 300, "false positive rate near 1% (" + falsePositives + " of 10000)");
+        check(!index.contains(3000000) && index.size() == 1000, "the ID index is exact");
+        System.out.println("   Student ID Filters: PASSED\n");
+    }
+
+    /**
+     * Test cache hits, eviction by weight and invalidation after a file change
+     */
+    private static void testRecordCache() throws IOException {
+        System.out.println("8. Testing Record Cache:");
+        File file = new File(dir, "cached.txt");
+        Files.write(file.toPath(), Collections.singletonList("first"));
+        RecordCache<String, String> cache = new RecordCache<>(file, 100, value -> 40);
+        int[] loads = new int[1];
+        java.util.function.Function<String, String> loader = key -> {
+            loads[0]++;
+            return "value " + key;
+        };
+        cache.get("a", loader);
+        cache.get("a", loader);
+        check(loads[0] == 1 && cache.getHits() == 1, "a second read is a hit");
+        cache.get("b", loader);
+        cache.get("c", loader);
+        check(cache.size() == 2 && cache.getEvictions() == 1, "the least recently used entry is evicted by weight");
+
+        Files.write(file.toPath(), Collections.singletonList("changed by someone else"), StandardOpenOption.APPEND);
+        cache.get("c", loader);
+        check(loads[0] == 4 && cache.getInvalidations() > 0, "a change to the file drops the cached records");
+        System.out.println("   Record Cache: PASSED\n");
+    }
+
+    /**
+     * Test that the watcher delivers appended lines and reports rewrites
+     */
+    private static void testFileWatcher() throws IOException {
+        System.out.println("9. Testing File Watcher:");
+        File file = new File(dir, "watched.txt");
+        Files.write(file.toPath(), Collections.singletonList("existing"));
+        List<String> appended = new ArrayList<>();
+        int[] resets = new int[1];
+        try (DataFileWatcher watcher = new DataFileWatcher()) {
+            watcher.watch(file, new DataFileWatcher.Listener() {
+                @Override
+                public void appended(List<String> lines, long lengthBefore, long lengthAfter) {
+                    appended.addAll(lines);
+                }
+
+                @Override
+                public void reset() {
+                    resets[0]++;
+                }
+            });
+            Files.write(file.toPath(), Arrays.asList("one", "two"), StandardOpenOption.APPEND);
+            Files.write(file.toPath(), "partial".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            watcher.checkAll();
+            check(appended.equals(Arrays.asList("one", "two")), "only complete appended lines are delivered");
+
+            Files.write(file.toPath(), Collections.singletonList("rewritten from scratch"));
+            watcher.checkAll();
+            check(resets[0] == 1, "a rewritten file is reported as a reset");
+        }
+        System.out.println("   File Watcher: PASSED\n");
+    }
+
+    /**
+     * Test that payments and accounts saved by two processes at once are all kept whole
+     */
+    private static void testMultiProcessAppends() throws Exception {
+        System.out.println("10. Testing Appends From Several Processes:");
+        File data = newDataDirectory("appends");
+        Process first = startDataWorker(data, "append");
+        Process second = startDataWorker(data, "append");
+        check(first.waitFor() == 0 && second.waitFor() == 0, "both workers finished");
+
+        Set<String> tags = new HashSet<>();
+        boolean whole = true;
+        for (String line : Files.readAllLines(new File(data, "paymentLogs.txt").toPath())) {
+            String[] parts = line.split(",");
+            whole &= parts.length == 6 && parts[5].matches("W\\d+T\\d+S\\d+") && tags.add(parts[5]);
+        }
+        check(whole && tags.size() == 2 * 4 * 200, "every payment logged once and whole");
+        Set<String> accounts = new HashSet<>();
+        for (String line : Files.readAllLines(new File(data, "Database.txt").toPath())) {
+            accounts.add(line.split(",")[0]);
+        }
+        check(accounts.size() == 2 * 20 && accountFilesAgree(data), "every account saved with a unique ID");
+        System.out.println("   Multi-Process Appends: PASSED\n");
+    }
+
+    /**
+     * Test that recovery after a killed writer leaves both files holding the same commits
+     */
+    private static void testAppendJournal() throws Exception {
+        System.out.println("11. Testing Append Journal Recovery:");
+        File records = new File(dir, "journalRecords.txt");
+        File credentials = new File(dir, "journalCredentials.txt");
+        AppendJournal journal = new AppendJournal(new File(dir, "journal.dat"));
+        journal.commit(new File[]{records, credentials},
+                new byte[][]{"2250001,A\n".getBytes(StandardCharsets.UTF_8), "ID: 2250001\n".getBytes(StandardCharsets.UTF_8)});
+        check(journal.recover() == 0, "a finished commit leaves nothing to recover");
+
+        for (int round = 0; round < 3; round++) {
+            File started = new File(dir, "journalStarted");
+            started.delete();
+            ProcessBuilder builder = new ProcessBuilder(
+                    new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", System.getProperty("java.class.path"), "FeatureTest", "journalWorker", dir.getPath());
+            builder.inheritIO();
+            Process worker = builder.start();
+            while (!started.exists() && worker.isAlive()) {
+                Thread.sleep(10);
+            }
+            Thread.sleep(50 + round * 50);
+            worker.destroyForcibly().waitFor();
+            journal.recover();
+            List<String> recordLines = Files.readAllLines(records.toPath());
+            List<String> credentialLines = Files.readAllLines(credentials.toPath());
+            boolean agree = recordLines.size() == credentialLines.size();
+            for (int i = 0; agree && i < recordLines.size(); i++) {
+                agree = credentialLines.get(i).equals("ID: " + recordLines.get(i).split(",")[0]);
+            }
+            check(agree, "files agree after a writer was killed (round " + (round + 1) + ")");
+        }
+        System.out.println("   Append Journal: PASSED\n");
+    }
+
+    /**
+     * Test that one bulk save gives every freshman a unique ID in both account files
+     */
+    private static void testBulkProvisioning() throws Exception {
+        System.out.println("12. Testing Bulk Account Provisioning:");
+        File data = newDataDirectory("provision");
+        check(startDataWorker(data, "provision").waitFor() == 0, "50 freshmen saved with unique IDs");
+        check(Files.readAllLines(new File(data, "Database.txt").toPath()).size() == 50 && accountFilesAgree(data),
+                "Database.txt and UserPasswordID.txt agree");
+        System.out.println("   Bulk Provisioning: PASSED\n");
+    }
+
+    /**
+     * Test tombstones and compaction of a keyed record file
+     */
+    private static void testRecordFile() throws IOException {
+        System.out.println("13. Testing Record File Updates:");
+        File database = writeDatabase(new File(dir, "recordDatabase.txt"), 100);
+        RecordFile records = new RecordFile(database, line -> {
+            int comma = line.indexOf(',');
+            return comma > 0 ? line.substring(0, comma) : null;
+        });
+        check(readRecord(records, "2000042").startsWith("2000042,"), "a record is found by its ID");
+        AppendJournal journal = new AppendJournal(new File(dir, "recordJournal.dat"));
+        for (int id = 2000000; id < 2000060; id++) {
+            AppendJournal.Patch tombstone = records.tombstone(String.valueOf(id));
+            String replacement = id % 2 == 0 ? id + ",Edited,Name,E,01/01/05,pw" : RecordFile.deletionMarker(String.valueOf(id));
+            journal.commit(new File[]{database}, new byte[][]{(replacement + System.lineSeparator())
+                    .getBytes(StandardCharsets.UTF_8)}, Collections.singletonList(tombstone));
+        }
+        check(readRecord(records, "2000010").contains("Edited") && readRecord(records, "2000011") == null,
+                "updates and deletes are seen");
+        long length = database.length();
+        check(records.compact() > 0 && database.length() < length, "compaction reclaims the dead records");
+        check(readRecord(records, "2000010").contains("Edited") && readRecord(records, "2000011") == null
+                && readRecord(records, "2000099") != null && records.keys().size() == 70, "records survive compaction");
+        System.out.println("   Record File: PASSED\n");
+    }
+
+    /**
+     * Test account updates and deletes through DataManager
+     */
+    private static void testAccountUpdates() throws Exception {
+        System.out.println("14. Testing Account Updates and Deletes:");
+        File data = newDataDirectory("updates");
+        check(startDataWorker(data, "provision").waitFor() == 0, "accounts provisioned");
+        check(startDataWorker(data, "update").waitFor() == 0, "updates and deletes applied");
+        Set<String> credentials = new HashSet<>();
+        for (String line : Files.readAllLines(new File(data, "UserPasswordID.txt").toPath())) {
+            credentials.add(line.substring("ID: ".length(), line.indexOf(" |")));
+        }
+        check(credentials.equals(new HashSet<>(Files.readAllLines(new File(data, "ids.txt").toPath()))),
+                "a password line for every provisioned account");
+        System.out.println("   Account Updates: PASSED\n");
+    }
+
+    /**
+     * Test migration into shards and reads and writes through them
+     */
+    private static void testShardedStore() throws IOException {
+        System.out.println("15. Testing Sharded Student Store:");
+        File database = writeDatabase(new File(dir, "shardDatabase.txt"), 400);
+        ShardedStudentStore store = ShardedStudentStore.migrate(database, new File(dir, "shards"), 4);
+        check(store.get("2000123") != null && store.authenticate("2000123", "pw123"), "migrated students log in");
+        check(store.scan(student -> true).size() == 400, "a scan sees every student once");
+        check(store.save(new StudentInfo("2000500", "New", "Student", "N", "01/01/05", "pw"))
+                && !store.save(new StudentInfo("2000500", "Again", "Student", "N", "01/01/05", "pw")),
+                "a taken ID cannot be saved twice");
+        check(store.update(new StudentInfo("2000123", "Changed", "Name", "C", "01/01/05", "new"))
+                && store.authenticate("2000123", "new"), "updates are seen");
+        check(store.delete("2000124") && store.get("2000124") == null, "deletes are seen");
+        ShardedStudentStore reopened = ShardedStudentStore.open(new File(dir, "shards"));
+        check(reopened.get("2000500") != null && reopened.get("2000124") == null
+                && reopened.get("2000123").getLastName().equals("Changed"), "a reopened store holds the changes");
+        System.out.println("   Sharded Store: PASSED\n");
+    }
+
+    /**
+     * Test the off-heap map through growth and removal
+     */
+    private static void testOffHeapIndex() throws IOException {
+        System.out.println("16. Testing Off-Heap ID Index:");
+        OffHeapIdIndex index = new OffHeapIdIndex(16);
+        Map<Integer, Long> expected = new HashMap<>();
+        Random random = new Random(15);
+        for (int i = 0; i < 5000; i++) {
+            int id = random.nextInt(100_000);
+            if (i % 5 == 4) {
+                index.remove(id);
+                expected.remove(id);
+            } else {
+                index.put(id, i * 10L);
+                expected.put(id, i * 10L);
+            }
+        }
+        check(index.size() == expected.size() && matches(index, expected), "agrees with a HashMap after growing");
+        Set<Integer> visited = new HashSet<>();
+        index.forEachId(visited::add);
+        check(visited.equals(expected.keySet()), "visits every ID once");
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        index.writeTo(new DataOutputStream(bytes));
+        OffHeapIdIndex copy = OffHeapIdIndex.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        check(matches(copy, expected), "survives a write and read");
+        check(index.get(100_001) == -1, "missing IDs return -1");
+        System.out.println("   Off-Heap Index: PASSED\n");
+    }
+
+    /**
+     * Test that compact student records give back what was stored
+     */
+    private static void testStudentRecords() {
+        System.out.println("17. Testing Compact Student Records:");
+        StudentInfo first = new StudentInfo("2250001", "Dela Cruz", "Juan", "Santos", "09/30/04", "secret");
+        StudentInfo second = new StudentInfo("2250002", "Dela Cruz", "Ana", "Reyes", "12/01/05", "other");
+        check(first.getId().equals("2250001") && first.getDateOfBirth().equals("09/30/04")
+                && first.getPassword().equals("secret"), "fields read back unchanged");
+        check(first.toDatabaseFormat().equals("2250001,Dela Cruz,Juan,Santos,09/30/04,secret"), "database format");
+        NameDictionary names = new NameDictionary();
+        check(names.intern(new String("Dela Cruz")) == names.intern(second.getLastName()), "names are shared");
+        System.out.println("   Student Records: PASSED\n");
+    }
+
+    /**
+     * Test that a portal restarted from its checkpoint sees the same accounts and payments
+     */
+    private static void testCheckpoint() throws Exception {
+        System.out.println("18. Testing Restart From a Checkpoint:");
+        File data = newDataDirectory("checkpoint");
+        check(startDataWorker(data, "provision").waitFor() == 0, "accounts provisioned");
+        check(startDataWorker(data, "checkpoint").waitFor() == 0, "checkpoint written");
+        check(new File(data, "dataCheckpoint.dat").length() > 0, "checkpoint file saved");
+        check(startDataWorker(data, "restart").waitFor() == 0, "a restarted portal sees the same accounts");
+        System.out.println("   Checkpoint: PASSED\n");
+    }
+
+    /**
+     * Test indexed ledger queries against a filtering scan
+     */
+    private static void testPaymentLedger() throws IOException {
+        System.out.println("19. Testing Payment Ledger Queries:");
+        File log = writePayments(new File(dir, "ledgerLogs.txt"));
+        PaymentLedger ledger = new PaymentLedger(log);
+        LocalDateTime from = LocalDateTime.of(2026, 1, 10, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2026, 3, 20, 23, 59);
+        check(describe(ledger.query(from, to, "GCash")).equals(describe(scan(log, from, to, "GCash"))),
+                "a channel query agrees with a scan");
+        check(describe(ledger.query(from, to, null)).equals(describe(scan(log, from, to, null))),
+                "an all-channel query agrees with a scan");
+        check(ledger.count(from, to) == scan(log, from, to, null).size(), "the count agrees");
+        List<Integer> minutes = new ArrayList<>();
+        ledger.forEach(from, to, "GCash", null, (minute, centavos, studentID) -> minutes.add(minute));
+        List<Integer> scanned = new ArrayList<>();
+        for (PaymentTransaction payment : scan(log, from, to, "GCash")) {
+            scanned.add(PaymentLedger.minuteOf(LocalDateTime.parse(payment.getDate(), PaymentLedger.TIMESTAMP_FORMAT)));
+        }
+        check(minutes.equals(scanned), "visiting a range gives the payments a scan does");
+
+        Files.write(log.toPath(), Collections.singletonList(paymentLine(LocalDateTime.of(2026, 2, 1, 9, 0),
+                "GCash", 123.45, "2259999")), StandardOpenOption.APPEND);
+        check(ledger.query(from, to, "GCash").size() == scan(log, from, to, "GCash").size(),
+                "payments appended later are found");
+        System.out.println("   Payment Ledger: PASSED\n");
+    }
+
+    /**
+     * Test that archiving old terms loses no payments
+     */
+    private static void testPaymentArchive() throws IOException {
+        System.out.println("20. Testing Payment Archive:");
+        File log = writePayments(new File(dir, "archiveLogs.txt"));
+        LocalDateTime from = LocalDateTime.of(2024, 1, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2026, 12, 31, 23, 59);
+        List<String> before = describe(scan(log, from, to, null));
+        List<String> studentBefore = describe(scan(log, from, to, null).stream()
+                .filter(payment -> payment.getStudentID().equals("2250003")).collect(java.util.stream.Collectors.toList()));
+
+        PaymentArchive archive = new PaymentArchive(new File(dir, "paymentArchive.dat"), new File(dir, "paymentArchive.idx"));
+        int archived = DataFileLock.forFile(log).call(() -> archive.archive(log, PaymentLedger.termOf(LocalDate.of(2026, 3, 1))));
+        check(archived > 0 && archive.getTerms().length > 0, "earlier terms moved to the archive");
+
+        List<PaymentTransaction> all = archive.query(from, to, null);
+        all.addAll(new PaymentLedger(log).query(from, to, null));
+        List<String> after = describe(all);
+        check(sorted(after).equals(sorted(before)), "archive and log together hold every payment");
+        List<String> student = new ArrayList<>(archive.readLines("2250003"));
+        student.addAll(new PaymentLogIndex(log).readLines("2250003"));
+        List<PaymentTransaction> parsed = new ArrayList<>();
+        for (String line : student) {
+            parsed.add(PaymentTransaction.parse(line));
+        }
+        check(sorted(describe(parsed)).equals(sorted(studentBefore)), "a student's history is complete");
+        System.out.println("   Payment Archive: PASSED\n");
+    }
+
+    /**
+     * Test report totals against sums over the log
+     */
+    private static void testPaymentColumns() throws IOException {
+        System.out.println("21. Testing Payment Report Totals:");
+        File log = writePayments(new File(dir, "reportLogs.txt"));
+        LocalDateTime from = LocalDateTime.of(2025, 9, 1, 0, 0);
+        LocalDateTime to = LocalDateTime.of(2026, 4, 30, 23, 59);
+        Map<String, long[]> expected = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        for (PaymentTransaction payment : scan(log, from, to, null)) {
+            long[] total = expected.computeIfAbsent(payment.getChannel(), channel -> new long[2]);
+            total[0]++;
+            total[1] += PaymentTransaction.parseCentavos(payment.getAmount());
+        }
+        List<PaymentColumns.Total> totals = new PaymentColumns(log, null).summarize(from, to, PaymentColumns.GroupBy.CHANNEL);
+        boolean agree = totals.size() == expected.size();
+        for (PaymentColumns.Total total : totals) {
+            long[] sums = expected.get(total.getKey());
+            agree &= sums != null && sums[0] == total.getCount() && sums[1] == total.getCentavos();
+        }
+        check(agree, "totals by channel agree with the log");
+        long termPayments = 0;
+        for (PaymentColumns.Total total : new PaymentColumns(log, null).summarize(from, to, PaymentColumns.GroupBy.TERM)) {
+            termPayments += total.getCount();
+        }
+        check(termPayments == scan(log, from, to, null).size(), "totals by term count every payment");
+        System.out.println("   Payment Columns: PASSED\n");
+    }
+
+    /**
+     * Test matching a settlement export, in memory and in partitions
+     */
+    private static void testSettlementReconciler() throws IOException {
+        System.out.println("22. Testing Settlement Reconciliation:");
+        String channel = "UnionBank UPay Online";
+        File log = new File(dir, "settleLogs.txt");
+        File settlement = new File(dir, "settlement.csv");
+        LocalDate day = LocalDate.of(2026, 3, 2);
+        try (BufferedWriter payments = new BufferedWriter(new FileWriter(log));
+             BufferedWriter export = new BufferedWriter(new FileWriter(settlement))) {
+            export.write("date,studentID,amount,reference");
+            export.newLine();
+            for (int i = 0; i < 300; i++) {
+                String studentID = String.valueOf(2250000 + i);
+                payments.write(paymentLine(day.atTime(8, 0).plusMinutes(i), channel, 1500, studentID));
+                payments.newLine();
+                payments.write(paymentLine(day.atTime(8, 0).plusMinutes(i), "GCash", 1500, studentID));
+                payments.newLine();
+                if (i % 50 != 0) {     // 6 payments the bank did not settle
+                    export.write(day + "," + studentID + ",\"1,500.00\",UB" + i);
+                    export.newLine();
+                }
+            }
+            export.write(day + ",2259999,99.00,UBX1");     // a settlement the portal never logged
+            export.newLine();
+            StringBuilder longReference = new StringBuilder("UBX");
+            while (longReference.length() < 70_000) {
+                longReference.append("0123456789");
+            }
+            export.write(day + ",2259998,1.00," + longReference);
+            export.newLine();
+        }
+        PaymentLedger ledger = new PaymentLedger(log);
+        for (int limit : new int[]{SettlementReconciler.DEFAULT_MAX_TABLE_ENTRIES, 50}) {
+            SettlementReconciler.ReconcileReport report = new SettlementReconciler(ledger, null, limit)
+                    .reconcile(settlement, channel, day, day);
+            check(report.getMatched() == 294 && report.getMissing() == 6 && report.getExtra() == 2
+                    && report.getRejected() == 0, (limit == 50 ? "partitioned" : "in-memory")
+                    + " matching finds 294 matched, 6 missing, 2 extra");
+            check(report.getMatchedCentavos() == 294 * 150_000L, "matched amount");
+        }
+        System.out.println("   Settlement Reconciler: PASSED\n");
+    }
+
+    /**
+     * Test that every valid payment is logged once and bad input is refused
+     */
+    private static void testPaymentPipeline() throws Exception {
+        System.out.println("23. Testing Payment Pipeline:");
+        File log = new File(dir, "pipelineLogs.txt");
+        PaymentPipeline pipeline = new PaymentPipeline(new BatchingAppender(log, null, true)::appendAll,
+                PaymentPipeline.DEFAULT_CAPACITY);
+        List<CompletableFuture<PaymentTransaction>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(pipeline.submit(new PaymentPipeline.Request("GCash", String.valueOf(2250000 + i),
+                    "4111 1111 1111 1111", "123", "12/30", "Test Payer", "500")));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        List<String> lines = Files.readAllLines(log.toPath());
+        check(lines.size() == 200 && PaymentTransaction.parse(lines.get(0)) != null, "every payment logged");
+        check(failure(pipeline.submit(new PaymentPipeline.Request("GCash", "2250001", "4111", "123", "12/30",
+                "Test Payer", "500"))) instanceof IllegalArgumentException, "an invalid card is refused");
+        System.out.println("   Payment Pipeline: PASSED\n");
+    }
+
+    /**
+     * Test approved, declined and retried charges against the mock gateway
+     */
+    private static void testPaymentGateway() throws Exception {
+        System.out.println("24. Testing Payment Gateway:");
+        try (MockPaymentGateway mock = new MockPaymentGateway(0, 0, 0)) {
+            PaymentGateway gateway = new PaymentGateway(mock.getUri(), 4);
+            PaymentGateway.Result result = gateway.charge("GCash", "2250001", 500, "charge-1").join();
+            check(result.getReference() != null && mock.isCharged("charge-1"), "an approved charge");
+
+            mock.setDeclineRate(1.0);
+            long requestsBefore = mock.getRequests();
+            check(failure(gateway.charge("GCash", "2250001", 500, "charge-2")) instanceof PaymentGateway.DeclinedException
+                    && mock.getRequests() - requestsBefore == 1, "a declined charge fails without retrying");
+            mock.setDeclineRate(0);
+
+            // Let every charge through the breaker, which would otherwise open after a run of failures
+            gateway.setBreakerOpenTime(Duration.ZERO);
+            mock.setFailureRate(0.5);
+            long chargesBefore = mock.getCharges();
+            int approved = 0;
+            for (int i = 0; i < 20; i++) {
+                try {
+                    gateway.charge("GCash", "2250001", 500, "retry-" + i).join();
+                    approved++;
+                } catch (CompletionException e) {
+                    // retries ran out
+                }
+            }
+            check(approved > 0 && mock.getCharges() - chargesBefore <= 20, "retries never charge a payment twice");
+        }
+        System.out.println("   Payment Gateway: PASSED\n");
+    }
+
+    /**
+     * Test that concurrent payments are all applied to the balances
+     */
+    private static void testAccountBalances() throws Exception {
+        System.out.println("25. Testing Account Balances:");
+        AccountBalances balances = new AccountBalances();
+        balances.open("2250001", 1_000_000, 0);
+        List<Thread> payers = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            Thread payer = new Thread(() -> {
+                for (int i = 0; i < 10_000; i++) {
+                    balances.applyPayment("2250001", 25);
+                }
+            });
+            payer.start();
+            payers.add(payer);
+        }
+        for (Thread payer : payers) {
+            payer.join();
+        }
+        AccountBalances.Balance balance = balances.getBalance("2250001");
+        check(balance.getDueCentavos() == 0 && balance.getCreditCentavos() == 1_000_000, "no payment lost");
+        check(balances.open("2250001", 5, 5).getCreditCentavos() == 1_000_000, "opening twice keeps the balance");
+        check(balances.applyPayment("2250002", 30_000) == null && balances.getBalance("2250002") == null
+                && balances.open("2250002", 100_000, 0).getDueCentavos() == 70_000,
+                "a payment made before the account opened is applied when it opens");
+        check(startDataWorker(newDataDirectory("balances"), "balances").waitFor() == 0,
+                "payments reduce the balance once they are logged");
+        System.out.println("   Account Balances: PASSED\n");
+    }
+
+    /**
+     * Test that a resent payment is logged once, also after a restart and across processes
+     */
+    private static void testPaymentDedupe() throws Exception {
+        System.out.println("26. Testing Payment Dedupe:");
+        File log = new File(dir, "dedupeLogs.txt");
+        RecentPaymentKeys keys = new RecentPaymentKeys(RecentPaymentKeys.DEFAULT_MAX_KEYS, RecentPaymentKeys.DEFAULT_WINDOW_MILLIS);
+        PaymentPipeline pipeline = new PaymentPipeline(new BatchingAppender(log, null, true)::appendAll, keys,
+                PaymentPipeline.DEFAULT_CAPACITY);
+        List<CompletableFuture<PaymentTransaction>> futures = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            futures.add(pipeline.submit(paymentRequest(2250000 + i, "key-" + i)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).join();
+        check(Files.readAllLines(log.toPath()).size() == 200, "every payment logged");
+        check(failure(pipeline.submit(paymentRequest(2250007, "key-7"))) instanceof PaymentPipeline.DuplicatePaymentException,
+                "a resent payment is refused");
+
+        RecentPaymentKeys afterRestart = new RecentPaymentKeys(RecentPaymentKeys.DEFAULT_MAX_KEYS,
+                RecentPaymentKeys.DEFAULT_WINDOW_MILLIS);
+        check(afterRestart.restore(log) == 200 && !afterRestart.add("key-42", System.currentTimeMillis()),
+                "a restart restores the keys from the log");
+
+        // Two programs that both restored the log before either logged "shared"
+        File shared = new File(dir, "sharedLogs.txt");
+        shared.createNewFile();
+        RecentPaymentKeys firstKeys = new RecentPaymentKeys(100, RecentPaymentKeys.DEFAULT_WINDOW_MILLIS);
+        RecentPaymentKeys secondKeys = new RecentPaymentKeys(100, RecentPaymentKeys.DEFAULT_WINDOW_MILLIS);
+        firstKeys.restore(shared);
+        secondKeys.restore(shared);
+        BatchingAppender first = dedupingAppender(shared, firstKeys);
+        BatchingAppender second = dedupingAppender(shared, secondKeys);
+        String line = PaymentLedger.logLine(LocalDateTime.now(), "GCash", 500, "2250001", "shared");
+        check(firstKeys.add("shared", System.currentTimeMillis()) && first.append(line)
+                && secondKeys.add("shared", System.currentTimeMillis()) && !second.append(line)
+                && Files.readAllLines(shared.toPath()).size() == 1, "a key logged by another program is refused");
+
+        File data = newDataDirectory("dedupe");
+        Process one = startDataWorker(data, "dedupe");
+        Process two = startDataWorker(data, "dedupe");
+        check(one.waitFor() == 0 && two.waitFor() == 0, "both workers finished");
+        Map<String, Integer> logged = new HashMap<>();
+        for (String payment : Files.readAllLines(new File(data, "paymentLogs.txt").toPath())) {
+            logged.merge(PaymentLedger.keyOf(payment), 1, Integer::sum);
+        }
+        check(logged.size() == 2 * 100 && !logged.containsValue(2),
+                "a payment sent by two processes at once is logged once");
+        System.out.println("   Payment Dedupe: PASSED\n");
+    }
+
+    /**
+     * @return An appender that refuses lines whose key another program logged, as DataManager's does
+     */
+    private static BatchingAppender dedupingAppender(File log, RecentPaymentKeys keys) {
+        return new BatchingAppender(log, (lines, lengthBefore, lengthAfter) -> keys.afterAppend(lengthBefore, lengthAfter),
+                (lines, length) -> {
+                    keys.catchUp(log, length);
+                    boolean[] admit = new boolean[lines.size()];
+                    for (int i = 0; i < admit.length; i++) {
+                        admit[i] = !keys.isLogged(PaymentLedger.keyOf(lines.get(i)));
+                    }
+                    return admit;
+                }, true);
+    }
+
+    /**
+     * One DataManager process, run in a prepared data directory as its working directory
+     */
+    private static void runDataWorker(String step) throws Exception {
+        DataManager.recoverAccountJournal();
+        if (step.equals("append")) {
+            String worker = String.valueOf(ProcessHandle.current().pid());
+            List<Thread> payers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                Thread payer = new Thread(() -> {
+                    for (int seq = 0; seq < 200; seq++) {
+                        DataManager.logPaymentTransaction("GCash", 1000 + seq, "W" + worker + "T" + thread + "S" + seq);
+                    }
+                });
+                payer.start();
+                payers.add(payer);
+            }
+            int created = 0;
+            for (int i = 0; i < 20; i++) {
+                if (DataManager.createStudentAccount("Worker", "Account" + i, "X", "01/01/05", "pw") != null) {
+                    created++;
+                }
+            }
+            check(created == 20, "worker created its accounts");
+            for (Thread payer : payers) {
+                payer.join();
+            }
+        } else if (step.equals("provision")) {
+            List<StudentInfo> freshmen = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                freshmen.add(new StudentInfo(null, "Fresh", "Man" + i, "F", "01/01/06", "pw" + i));
+            }
+            List<String> ids = DataManager.saveStudentAccounts(freshmen);
+            check(ids != null && new HashSet<>(ids).size() == 50 && !ids.contains(null), "50 unique IDs assigned");
+            Files.write(new File("ids.txt").toPath(), ids);
+        } else if (step.equals("update")) {
+            List<String> ids = Files.readAllLines(new File("ids.txt").toPath());
+            check(DataManager.updateStudentAccount(new StudentInfo(ids.get(0), "Renamed", "Man0", "F", "01/01/06", "changed"))
+                    && DataManager.authenticateUser(ids.get(0), "changed"), "update seen by login");
+            check(DataManager.deleteStudentAccount(ids.get(1)) && DataManager.getStudentInfo(ids.get(1)) == null,
+                    "deleted student gone");
+            check(!DataManager.saveStudentAccount(new StudentInfo(ids.get(1), "Reuse", "Attempt", "X", "01/01/05", "pw")),
+                    "a deleted ID is not reused");
+            check(DataManager.compactDataFiles() >= 0 && DataManager.getStudentInfo(ids.get(0)).getLastName().equals("Renamed")
+                    && DataManager.authenticateUser(ids.get(49), "pw49"), "records survive compaction");
+        } else if (step.equals("checkpoint")) {
+            List<String> ids = Files.readAllLines(new File("ids.txt").toPath());
+            DataManager.logPaymentTransaction("GCash", 1500, ids.get(2));
+            check(DataManager.writeCheckpoint() > 0, "checkpoint written");
+            // Appended after the checkpoint, so the restart must read it from the tail
+            DataManager.logPaymentTransaction("GCash", 500, ids.get(2));
+        } else if (step.equals("restart")) {
+            List<String> ids = Files.readAllLines(new File("ids.txt").toPath());
+            check(DataManager.loadCheckpoint(), "checkpoint loaded");
+            check(DataManager.authenticateUser(ids.get(0), "pw0") && DataManager.authenticateUser(ids.get(49), "pw49"),
+                    "accounts after the restart");
+            check(DataManager.loadPaymentTransactions(ids.get(2)).size() == 2, "payments after the restart");
+        } else if (step.equals("balances")) {
+            AccountBalances balances = DataManager.getAccountBalances();
+            balances.open("2250001", 100_000, 0);
+            DataManager.logPaymentTransaction("GCash", 250, "2250001");
+            check(balances.getBalance("2250001").getDueCentavos() == 75_000, "a logged payment is applied");
+            DataManager.submitPayment(paymentRequest(2250001, "balance-1")).join();
+            check(balances.getBalance("2250001").getDueCentavos() == 25_000, "a submitted payment is applied once saved");
+            check(!DataManager.logPaymentTransaction("GCash", 500, "2250001", "balance-1")
+                    && balances.getBalance("2250001").getDueCentavos() == 25_000, "a resent payment is applied once");
+        } else if (step.equals("dedupe")) {
+            // Both workers send the same payments, by both routes, at the same time
+            DataManager.getRecentPaymentKeys();
+            List<CompletableFuture<PaymentTransaction>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(DataManager.submitPayment(paymentRequest(2250000 + i, "piped-" + i)));
+                DataManager.logPaymentTransaction("GCash", 500, String.valueOf(2250000 + i), "logged-" + i);
+            }
+            boolean settled = true;
+            for (CompletableFuture<PaymentTransaction> future : futures) {
+                Throwable failure = failure(future);
+                settled &= failure == null || failure instanceof PaymentPipeline.DuplicatePaymentException;
+            }
+            check(settled, "each payment logged or refused as a duplicate");
+        }
+        DataManager.stopFileWatcher();
+    }
+
+    /**
+     * Commits to two files in a loop until killed
+     */
+    private static void runJournalWorker(File directory) throws IOException {
+        AppendJournal journal = new AppendJournal(new File(directory, "journal.dat"));
+        File[] files = {new File(directory, "journalRecords.txt"), new File(directory, "journalCredentials.txt")};
+        for (int id = 3000000; ; id++) {
+            journal.commit(files, new byte[][]{(id + ",Killed\n").getBytes(StandardCharsets.UTF_8),
+                    ("ID: " + id + "\n").getBytes(StandardCharsets.UTF_8)});
+            new File(directory, "journalStarted").createNewFile();
+        }
+    }
+
+    private static void check(boolean condition, String what) {
+        if (!condition) {
+            System.out.println("   ✗ " + what);
+            System.out.println("\n=== FEATURE TEST FAILED ===");
+            System.exit(1);
+        }
+        System.out.println("   ✓ " + what);
+    }
+
+    private static boolean near(double actual, double expected) {
+        return Math.abs(actual - expected) < 1e-9;
+    }
+
+    private static Throwable failure(CompletableFuture<?> future) {
+        try {
+            future.join();
+            return null;
+        } catch (CompletionException e) {
+            return e.getCause();
+        }
+    }
+
+    private static boolean matches(OffHeapIdIndex index, Map<Integer, Long> expected) {
+        for (Map.Entry<Integer, Long> entry : expected.entrySet()) {
+            if (index.get(entry.getKey()) != entry.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String readRecord(RecordFile records, String key) throws IOException {
+        long offset = records.locate(key);
+        return offset < 0 ? null : records.readLine(offset);
+    }
+
+    private static List<String> ids(List<StudentInfo> students) {
+        List<String> ids = new ArrayList<>();
+        for (StudentInfo student : students) {
+            ids.add(student.getId());
+        }
+        Collections.sort(ids);
+        return ids;
+    }
+
+    private static List<String> describe(List<PaymentTransaction> payments) {
+        List<String> lines = new ArrayList<>();
+        for (PaymentTransaction payment : payments) {
+            lines.add(payment.getDate() + "|" + payment.getChannel() + "|" + payment.getAmount() + "|" + payment.getStudentID());
+        }
+        return lines;
+    }
+
+    private static List<String> sorted(List<String> lines) {
+        List<String> copy = new ArrayList<>(lines);
+        Collections.sort(copy);
+        return copy;
+    }
+
+    /**
+     * Writes students 2000000 upwards with passwords "pw0" upwards
+     */
+    private static File writeDatabase(File file, int size) throws IOException {
+        String[] lastNames = {"Reyes", "Santos", "Bautista", "Garcia", "Cruz"};
+        List<String> lines = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            lines.add(new StudentInfo(String.valueOf(2000000 + i), lastNames[i % lastNames.length], "First" + i, "M",
+                    String.format("%02d/%02d/%02d", 1 + i % 12, 1 + i % 28, i % 6), "pw" + i).toDatabaseFormat());
+        }
+        Files.write(file.toPath(), lines);
+        return file;
+    }
+
+    /**
+     * @return A payment as the portal logs it
+     */
+    private static String paymentLine(LocalDateTime time, String channel, double amount, String studentID) {
+        return time.format(PaymentLedger.TIMESTAMP_FORMAT) + "," + channel + ","
+                + PaymentLedger.referenceFor(time.toLocalDate()) + "," + String.format("P %,.2f", amount) + "," + studentID;
+    }
+
+    /**
+     * Writes a payment every other day from August 2024 to May 2026, over three
+     * channels and ten students
+     */
+    private static File writePayments(File file) throws IOException {
+        String[] channels = {"GCash", "BPI Online", "UnionBank UPay Online"};
+        List<String> lines = new ArrayList<>();
+        int i = 0;
+        for (LocalDate day = LocalDate.of(2024, 8, 1); day.isBefore(LocalDate.of(2026, 6, 1)); day = day.plusDays(2)) {
+            lines.add(paymentLine(day.atTime(9 + i % 8, i % 60), channels[i % channels.length],
+                    500 + (i % 20) * 250, String.valueOf(2250000 + i % 10)));
+            i++;
+        }
+        Files.write(file.toPath(), lines);
+        return file;
+    }
+
+    /**
+     * Filters the log the way a report would without an index
+     */
+    private static List<PaymentTransaction> scan(File log, LocalDateTime from, LocalDateTime to, String channel)
+            throws IOException {
+        List<PaymentTransaction> result = new ArrayList<>();
+        for (String line : Files.readAllLines(log.toPath())) {
+            PaymentTransaction payment = PaymentTransaction.parse(line);
+            if (payment == null || (channel != null && !channel.equalsIgnoreCase(payment.getChannel()))) {
+                continue;
+            }
+            LocalDateTime time = LocalDateTime.parse(payment.getDate(), PaymentLedger.TIMESTAMP_FORMAT);
+            if (!time.isBefore(from) && !time.isAfter(to)) {
+                result.add(payment);
+            }
+        }
+        return result;
+    }
+
+    private static PaymentPipeline.Request paymentRequest(int studentID, String key) {
+        return new PaymentPipeline.Request("GCash", String.valueOf(studentID), "4111 1111 1111 1111", "123", "12/30",
+                "Test Payer", "500", key);
+    }
+
+    /**
+     * @return A data directory with the portal's files present, so DataManager never looks elsewhere
+     */
+    private static File newDataDirectory(String name) throws IOException {
+        File data = new File(dir, name);
+        data.mkdir();
+        for (String file : new String[]{"Database.txt", "UserPasswordID.txt", "paymentLogs.txt", "journalCatalog.txt"}) {
+            new File(data, file).createNewFile();
+        }
+        return data;
+    }
+
+    private static Process startDataWorker(File data, String step) throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"), "FeatureTest", "dataWorker", step);
+        builder.directory(data);
+        builder.inheritIO();
+        return builder.start();
+    }
+
+    /**
+     * @return true if every account in Database.txt has a password line and vice versa
+     */
+    private static boolean accountFilesAgree(File data) throws IOException {
+        Set<String> records = new HashSet<>();
+        for (String line : Files.readAllLines(new File(data, "Database.txt").toPath())) {
+            records.add(line.substring(0, line.indexOf(',')));
+        }
+        Set<String> credentials = new HashSet<>();
+        for (String line : Files.readAllLines(new File(data, "UserPasswordID.txt").toPath())) {
+            credentials.add(line.substring("ID: ".length(), line.indexOf(" |")));
+        }
+        return records.equals(credentials);
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,139 @@
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Leader/follower batching for writes that are expensive per call (a lock, an fsync).
+ * Callers submit an item and wait; the first waiting caller becomes the leader and
+ * hands every item queued so far to the writer in one batch, while items submitted
+ * during that write wait for the next batch.
+ *
+ * @param <T> The item type
+ */
+public class GroupCommit<T> {
+
+    /**
+     * Writes one batch of items
+     * @param <T> The item type
+     */
+    public interface BatchWriter<T> {
+        void write(List<T> batch) throws IOException;
+    }
+
+    private final BatchWriter<T> writer;
+
+    private final Object queueLock = new Object();
+    private List<T> queue = new ArrayList<>();
+    private long queuedBatch;          // number of the batch the queued items will go into
+    private long writtenBatch = -1;    // last batch number that finished (written or failed)
+    private final Map<Long, IOException> failures = new HashMap<>();
+    private boolean writing;
+
+    private long batches;
+    private long items;
+
+    public GroupCommit(BatchWriter<T> writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Submits an item and waits until the batch holding it was written
+     * @param item The item
+     * @throws IOException If the batch holding the item could not be written
+     */
+    public void submit(T item) throws IOException {
+        long batch;
+        synchronized (queueLock) {
+            queue.add(item);
+            batch = queuedBatch;
+        }
+        awaitBatch(batch);
+    }
+
+    /**
+     * Submits several items to the same batch and waits until it was written
+     * @param items The items
+     * @throws IOException If the batch holding the items could not be written
+     */
+    public void submitAll(List<T> items) throws IOException {
+        long batch;
+        synchronized (queueLock) {
+            queue.addAll(items);
+            batch = queuedBatch;
+        }
+        awaitBatch(batch);
+    }
+
+    private void awaitBatch(long batch) throws IOException {
+        while (true) {
+            List<T> toWrite;
+            long writingBatch;
+            synchronized (queueLock) {
+                while (writing && writtenBatch < batch) {
+                    try {
+                        queueLock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new InterruptedIOException("Interrupted while waiting for a batch write");
+                    }
+                }
+                if (writtenBatch >= batch) {
+                    IOException failure = failures.get(batch);
+                    if (failure != null) {
+                        throw new IOException("Batch write failed: " + failure.getMessage(), failure);
+                    }
+                    return;
+                }
+                // Become the writer for everything queued so far
+                writing = true;
+                toWrite = queue;
+                queue = new ArrayList<>();
+                writingBatch = queuedBatch++;
+            }
+
+            IOException failure = null;
+            try {
+                writer.write(toWrite);
+            } catch (IOException e) {
+                failure = e;
+            } catch (RuntimeException e) {
+                failure = new IOException(e);
+            }
+
+            synchronized (queueLock) {
+                writing = false;
+                writtenBatch = writingBatch;
+                if (failure == null) {
+                    batches++;
+                    items += toWrite.size();
+                } else {
+                    failures.put(writingBatch, failure);
+                }
+                // Waiters read their failure right after the batch; old entries can go
+                failures.keySet().removeIf(failed -> failed < writingBatch - 1024);
+                queueLock.notifyAll();
+            }
+        }
+    }
+
+    /**
+     * @return Number of batches written
+     */
+    public long getBatches() {
+        synchronized (queueLock) {
+            return batches;
+        }
+    }
+
+    /**
+     * @return Number of items written
+     */
+    public long getItems() {
+        synchronized (queueLock) {
+            return items;
+        }
+    }
+}
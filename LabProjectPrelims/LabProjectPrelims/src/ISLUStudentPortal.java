@@ -11,6 +11,8 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.Map;
+import java.util.HashMap;
 
 public class ISLUStudentPortal extends JFrame {
     private JPanel mainPanel;
@@ -30,14 +32,15 @@ public class ISLUStudentPortal extends JFrame {
     private String studentName;
     private String semester = "FIRST SEMESTER, 2025-2026";
     private String status = "CURRENTLY ENROLLED THIS FIRST SEMESTER, 2025-2026 IN BSIT 2.";
+    private Map<String, String> savedDetails = new HashMap<>();
 
     public ISLUStudentPortal(String studentID) {
         this.studentID = studentID;
         this.studentName = getStudentNameFromDatabase(studentID);
         
-        // Initialize random amounts for each account
-        this.amountDue = generateRandom5DigitAmount();
-        this.currentBalance = generateRandom5DigitAmount();
+        // Initialize random amounts for the account, unless another window already did
+        DataManager.getAccountBalances().open(studentID, Math.round(generateRandom5DigitAmount() * 100),
+                Math.round(generateRandom5DigitAmount() * 100));
         
         initializeComponents();
         setupLayout();
@@ -64,44 +67,45 @@ public class ISLUStudentPortal extends JFrame {
     }
 
     /**
-     * Generates transcript data with all semesters and random grades
+     * Generates the transcript with all semesters and random grades
      */
-    private Object[][] generateTranscriptData() {
-        java.util.List<Object[]> data = new java.util.ArrayList<>();
+    private TranscriptModel generateTranscript() {
+        TranscriptModel transcript = new TranscriptModel();
+        int term;
         
         // FIRST SEMESTER, 2024-2025
-        data.add(new Object[]{"FIRST SEMESTER, 2024-2025", "", "", ""});
-        data.add(new Object[]{"CFE 101", "GOD'S JOURNEY WITH HIS PEOPLE", generateRandomGrade(), 3});
-        data.add(new Object[]{"FIT HW", "PHYSICAL ACTIVITY TOWARDS HEALTH AND FITNESS (HEALTH AND WELLNESS)", generateRandomGrade(), 2});
-        data.add(new Object[]{"GART", "ART APPRECIATION", generateRandomGrade(), 3});
-        data.add(new Object[]{"GHIST", "READINGS IN PHILIPPINE HISTORY", generateRandomGrade(), 3});
-        data.add(new Object[]{"GSELF", "UNDERSTANDING THE SELF", generateRandomGrade(), 3});
-        data.add(new Object[]{"IT 111", "INTRODUCTION TO COMPUTING (LEC)", generateRandomGrade(), 2});
-        data.add(new Object[]{"IT 111L", "INTRODUCTION TO COMPUTING (LAB)", generateRandomGrade(), 1});
-        data.add(new Object[]{"IT 112", "COMPUTER PROGRAMMING 1 (LEC)", generateRandomGrade(), 2});
-        data.add(new Object[]{"IT 112L", "COMPUTER PROGRAMMING 1 (LAB)", generateRandomGrade(), 1});
-        data.add(new Object[]{"IT 113", "DISCRETE MATHEMATICS", generateRandomGrade(), 3});
+        term = transcript.addTerm("FIRST SEMESTER, 2024-2025");
+        transcript.addCourse(term, "CFE 101", "GOD'S JOURNEY WITH HIS PEOPLE", generateRandomGrade(), 3);
+        transcript.addCourse(term, "FIT HW", "PHYSICAL ACTIVITY TOWARDS HEALTH AND FITNESS (HEALTH AND WELLNESS)", generateRandomGrade(), 2);
+        transcript.addCourse(term, "GART", "ART APPRECIATION", generateRandomGrade(), 3);
+        transcript.addCourse(term, "GHIST", "READINGS IN PHILIPPINE HISTORY", generateRandomGrade(), 3);
+        transcript.addCourse(term, "GSELF", "UNDERSTANDING THE SELF", generateRandomGrade(), 3);
+        transcript.addCourse(term, "IT 111", "INTRODUCTION TO COMPUTING (LEC)", generateRandomGrade(), 2);
+        transcript.addCourse(term, "IT 111L", "INTRODUCTION TO COMPUTING (LAB)", generateRandomGrade(), 1);
+        transcript.addCourse(term, "IT 112", "COMPUTER PROGRAMMING 1 (LEC)", generateRandomGrade(), 2);
+        transcript.addCourse(term, "IT 112L", "COMPUTER PROGRAMMING 1 (LAB)", generateRandomGrade(), 1);
+        transcript.addCourse(term, "IT 113", "DISCRETE MATHEMATICS", generateRandomGrade(), 3);
         
         // SECOND SEMESTER, 2024-2025
-        data.add(new Object[]{"SECOND SEMESTER, 2024-2025", "", "", ""});
-        data.add(new Object[]{"CFE 102", "CHRISTIAN MORALITY IN OUR TIMES", generateRandomGrade(), 3});
-        data.add(new Object[]{"FIT CS", "PHYSICAL ACTIVITY TOWARDS HEALTH AND FITNESS (COMBATIVE SPORTS)", generateRandomGrade(), 2});
-        data.add(new Object[]{"GCWORLD", "THE CONTEMPORARY WORLD", generateRandomGrade(), 3});
-        data.add(new Object[]{"GMATH", "MATHEMATICS IN THE MODERN WORLD", generateRandomGrade(), 3});
-        data.add(new Object[]{"GPCOM", "PURPOSIVE COMMUNICATION", generateRandomGrade(), 3});
-        data.add(new Object[]{"IT 121", "INFORMATION SYSTEM FUNDAMENTALS", generateRandomGrade(), 3});
-        data.add(new Object[]{"IT 122", "COMPUTER PROGRAMMING 2", generateRandomGrade(), 2});
-        data.add(new Object[]{"IT 122L", "COMPUTER PROGRAMMING 2 (LAB)", generateRandomGrade(), 1});
-        data.add(new Object[]{"IT 123", "PLATFORM TECHNOLOGIES", generateRandomGrade(), 2});
-        data.add(new Object[]{"IT 123L", "PLATFORM TECHNOLOGIES (LAB)", generateRandomGrade(), 1});
+        term = transcript.addTerm("SECOND SEMESTER, 2024-2025");
+        transcript.addCourse(term, "CFE 102", "CHRISTIAN MORALITY IN OUR TIMES", generateRandomGrade(), 3);
+        transcript.addCourse(term, "FIT CS", "PHYSICAL ACTIVITY TOWARDS HEALTH AND FITNESS (COMBATIVE SPORTS)", generateRandomGrade(), 2);
+        transcript.addCourse(term, "GCWORLD", "THE CONTEMPORARY WORLD", generateRandomGrade(), 3);
+        transcript.addCourse(term, "GMATH", "MATHEMATICS IN THE MODERN WORLD", generateRandomGrade(), 3);
+        transcript.addCourse(term, "GPCOM", "PURPOSIVE COMMUNICATION", generateRandomGrade(), 3);
+        transcript.addCourse(term, "IT 121", "INFORMATION SYSTEM FUNDAMENTALS", generateRandomGrade(), 3);
+        transcript.addCourse(term, "IT 122", "COMPUTER PROGRAMMING 2", generateRandomGrade(), 2);
+        transcript.addCourse(term, "IT 122L", "COMPUTER PROGRAMMING 2 (LAB)", generateRandomGrade(), 1);
+        transcript.addCourse(term, "IT 123", "PLATFORM TECHNOLOGIES", generateRandomGrade(), 2);
+        transcript.addCourse(term, "IT 123L", "PLATFORM TECHNOLOGIES (LAB)", generateRandomGrade(), 1);
         
         // SHORT TERM, 2025
-        data.add(new Object[]{"SHORT TERM, 2025", "", "", ""});
-        data.add(new Object[]{"GRIZAL", "THE LIFE AND WORKS OF RIZAL", generateRandomGrade(), 3});
-        data.add(new Object[]{"IT 131", "COMPUTER ARCHITECTURE", generateRandomGrade(), 2});
-        data.add(new Object[]{"IT 131L", "COMPUTER ARCHITECTURE (LAB)", generateRandomGrade(), 1});
+        term = transcript.addTerm("SHORT TERM, 2025");
+        transcript.addCourse(term, "GRIZAL", "THE LIFE AND WORKS OF RIZAL", generateRandomGrade(), 3);
+        transcript.addCourse(term, "IT 131", "COMPUTER ARCHITECTURE", generateRandomGrade(), 2);
+        transcript.addCourse(term, "IT 131L", "COMPUTER ARCHITECTURE (LAB)", generateRandomGrade(), 1);
         
-        return data.toArray(new Object[data.size()][4]);
+        return transcript;
     }
 
     private void initializeComponents() {
@@ -535,6 +539,28 @@ public class ISLUStudentPortal extends JFrame {
 
         mainPanel.add(header, BorderLayout.NORTH);
 
+        // Search results, shown in place of the body copy while a query is entered
+        JPanel resultsPanel = new JPanel(new BorderLayout());
+        resultsPanel.setBackground(Color.WHITE);
+        resultsPanel.setBorder(BorderFactory.createEmptyBorder(10, 40, 10, 40));
+
+        JLabel resultsLabel = new JLabel();
+        resultsLabel.setFont(new Font("Arial", Font.BOLD, 12));
+        resultsLabel.setBorder(BorderFactory.createEmptyBorder(0, 0, 10, 0));
+        resultsPanel.add(resultsLabel, BorderLayout.NORTH);
+
+        String[] resultColumns = {"Title", "Author", "Journal", "Issue", "Date", "Pages"};
+        DefaultTableModel resultsModel = new DefaultTableModel(resultColumns, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        JTable resultsTable = new JTable(resultsModel);
+        resultsTable.setRowHeight(25);
+        resultsTable.getTableHeader().setReorderingAllowed(false);
+        resultsPanel.add(new JScrollPane(resultsTable), BorderLayout.CENTER);
+
         // Body copy mirroring the reference
         JPanel body = new JPanel();
         body.setLayout(new BoxLayout(body, BoxLayout.Y_AXIS));
@@ -586,10 +612,94 @@ public class ISLUStudentPortal extends JFrame {
         JScrollPane scroll = new JScrollPane(body);
         scroll.setBorder(null);
         scroll.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
-        mainPanel.add(scroll, BorderLayout.CENTER);
+
+        CardLayout bodyCards = new CardLayout();
+        JPanel bodyHolder = new JPanel(bodyCards);
+        bodyHolder.add(scroll, "info");
+        bodyHolder.add(resultsPanel, "results");
+        mainPanel.add(bodyHolder, BorderLayout.CENTER);
+
+        // Results update as the user types; Advance Search requires every word to match
+        boolean[] matchAll = {false};
+        Runnable runSearch = () -> runJournalSearch(searchField, matchAll[0],
+                resultsModel, resultsLabel, bodyCards, bodyHolder);
+        searchField.getDocument().addDocumentListener(new javax.swing.event.DocumentListener() {
+            @Override
+            public void insertUpdate(javax.swing.event.DocumentEvent e) { runSearch.run(); }
+            @Override
+            public void removeUpdate(javax.swing.event.DocumentEvent e) { runSearch.run(); }
+            @Override
+            public void changedUpdate(javax.swing.event.DocumentEvent e) { runSearch.run(); }
+        });
+        searchField.addActionListener(e -> runSearch.run());
+        searchButton.addActionListener(e -> {
+            matchAll[0] = false;
+            runSearch.run();
+        });
+        advancedButton.setToolTipText("Only show articles containing all of the words");
+        advancedButton.addActionListener(e -> {
+            matchAll[0] = true;
+            runSearch.run();
+        });
+
+        // Start building the index in the background as soon as the view opens
+        DataManager.getJournalSearchIndex();
 
         return mainPanel;
     }
+
+    /**
+     * Runs a journal search and shows the results, or the body copy for an empty query
+     */
+    private void runJournalSearch(JTextField searchField, boolean matchAll, DefaultTableModel resultsModel,
+                                  JLabel resultsLabel, CardLayout bodyCards, JPanel bodyHolder) {
+        String query = searchField.getText();
+        if (query.trim().isEmpty()) {
+            bodyCards.show(bodyHolder, "info");
+            return;
+        }
+        bodyCards.show(bodyHolder, "results");
+        resultsModel.setRowCount(0);
+
+        java.util.concurrent.CompletableFuture<JournalSearchIndex> index = DataManager.getJournalSearchIndex();
+        if (!index.isDone()) {
+            // Search again once the index is ready, using whatever the field holds by then
+            resultsLabel.setText("Indexing catalog...");
+            index.whenComplete((ready, error) -> SwingUtilities.invokeLater(() -> {
+                if ("Indexing catalog...".equals(resultsLabel.getText())) {
+                    if (error != null) {
+                        showJournalIndexError(resultsLabel);
+                    } else {
+                        runJournalSearch(searchField, matchAll, resultsModel, resultsLabel, bodyCards, bodyHolder);
+                    }
+                }
+            }));
+            return;
+        }
+        if (index.isCompletedExceptionally()) {
+            // The failed build is dropped, so searching again rebuilds the index
+            showJournalIndexError(resultsLabel);
+            return;
+        }
+
+        JournalSearchIndex searchIndex = index.join();
+        List<JournalEntry> results = matchAll ? searchIndex.searchAll(query, 100) : searchIndex.search(query, 100);
+        for (JournalEntry entry : results) {
+            resultsModel.addRow(entry.toTableRow());
+        }
+        String label = results.size() + (results.size() == 1 ? " article" : " articles") + " found"
+                + (matchAll ? " containing all of the words" : "");
+        if (searchIndex.isPrefixTruncated(query)) {
+            List<String> words = JournalSearchIndex.tokenize(query);
+            label += " (only the most common words starting with \"" + words.get(words.size() - 1)
+                    + "\" were searched; type more letters to narrow it down)";
+        }
+        resultsLabel.setText(label);
+    }
+
+    private void showJournalIndexError(JLabel resultsLabel) {
+        resultsLabel.setText("Could not read the journal catalog. Search again to retry.");
+    }
     //method for Schedule Content
     private JPanel showScheduleContent(LinkedList<String> subItems) {
         JPanel schedulePanel = new JPanel(new BorderLayout());
@@ -780,13 +890,17 @@ public class ISLUStudentPortal extends JFrame {
         attendancePanel.setBorder(BorderFactory.createTitledBorder("Attendance Record"));
 
         String[] columnNames = subItems.toArray(new String[0]);
-        Object[][] data = {
-                {"NSTP-CWTS 1", "15", "1", "0", "93.75%"},
-                {"Programming 2", "14", "2", "1", "87.5%"},
-                {"Data Structures", "16", "0", "1", "100%"},
-                {"Database Systems", "15", "1", "0", "93.75%"},
-                {"Web Development", "13", "2", "2", "81.25%"}
-        };
+        Object[][] data = DataManager.getAttendanceStore().getStudentSummary(studentID);
+        if (data.length == 0) {
+            // No recorded attendance yet, show the sample record
+            data = new Object[][]{
+                    {"NSTP-CWTS 1", "15", "1", "0", "93.75%"},
+                    {"Programming 2", "14", "2", "1", "87.5%"},
+                    {"Data Structures", "16", "0", "1", "100%"},
+                    {"Database Systems", "15", "1", "0", "93.75%"},
+                    {"Web Development", "13", "2", "2", "81.25%"}
+            };
+        }
 
         DefaultTableModel attendanceModel = new DefaultTableModel(data, columnNames) {
             @Override
@@ -832,6 +946,7 @@ public class ISLUStudentPortal extends JFrame {
         StudentInfo studentInfo = DataManager.getStudentInfo(studentID);
         String birthday = studentInfo != null ? studentInfo.getDateOfBirth() : "N/A";
         String email = studentID + "@slu.edu.ph";
+        savedDetails = DataManager.getStudentDetails(studentID);
 
         // GENERAL INFORMATION Section
         JPanel generalPanel = createSectionPanel("GENERAL INFORMATION", new Object[][]{
@@ -915,8 +1030,10 @@ public class ISLUStudentPortal extends JFrame {
 
         for (int i = 0; i < data.length; i++) {
             String label = (String) data[i][0];
-            String value = (String) data[i][1];
             boolean editable = (Boolean) data[i][2];
+            // Editable fields show the value the student saved, if any
+            String value = editable ? savedDetails.getOrDefault(detailName(label), (String) data[i][1])
+                    : (String) data[i][1];
             String fieldType = (String) data[i][3];
             String[] options = (String[]) data[i][4];
 
@@ -1038,6 +1155,14 @@ public class ISLUStudentPortal extends JFrame {
             }
             
             if (!newValue.isEmpty()) {
+                if (!DataManager.updateStudentDetail(studentID, detailName(fieldName), newValue)) {
+                    JOptionPane.showMessageDialog(editDialog,
+                        "Could not save " + detailName(fieldName) + ". Please try again.",
+                        "Update Failed",
+                        JOptionPane.ERROR_MESSAGE);
+                    return;
+                }
+                savedDetails.put(detailName(fieldName), newValue);
                 updateFieldValue(component, newValue);
                 JOptionPane.showMessageDialog(editDialog, 
                     fieldName + " updated successfully!", 
@@ -1067,6 +1192,13 @@ public class ISLUStudentPortal extends JFrame {
         editDialog.setVisible(true);
     }
 
+    /**
+     * @return The name a profile detail is saved under, e.g. "Home Address" for "Home Address:"
+     */
+    private static String detailName(String label) {
+        return label.endsWith(":") ? label.substring(0, label.length() - 1) : label;
+    }
+
     private void updateFieldValue(Component component, String newValue) {
         if (component instanceof JTextField) {
             ((JTextField) component).setText(newValue);
@@ -1256,7 +1388,8 @@ public class ISLUStudentPortal extends JFrame {
         amountDueLabel.setFont(new Font("Arial", Font.PLAIN, 14));
         amountPanel.add(amountDueLabel);
         
-        JLabel amountDueValue = new JLabel("P " + String.format("%.2f", amountDue));
+        AccountBalances.Balance balance = getBalance();
+        JLabel amountDueValue = new JLabel("P " + String.format("%.2f", balance.getAmountDue()));
         amountDueValue.setFont(new Font("Arial", Font.BOLD, 24));
         amountDueValue.setForeground(Color.BLACK);
         amountDueValueLabel = amountDueValue; // Store reference for updates
@@ -1274,7 +1407,7 @@ public class ISLUStudentPortal extends JFrame {
         overpaymentLabel.setFont(new Font("Arial", Font.PLAIN, 14));
         overpaymentPanel.add(overpaymentLabel);
         
-        JLabel overpaymentValue = new JLabel("P (" + String.format("%.2f", currentBalance) + ")");
+        JLabel overpaymentValue = new JLabel("P (" + String.format("%.2f", balance.getOverpayment()) + ")");
         overpaymentValue.setFont(new Font("Arial", Font.BOLD, 24));
         overpaymentValue.setForeground(Color.RED);
         overpaymentValueLabel = overpaymentValue; // Store reference for updates
@@ -1284,10 +1417,10 @@ public class ISLUStudentPortal extends JFrame {
         contentPanel.add(Box.createVerticalStrut(15));
 
         // Finals Status
-        String statusText = amountDue <= 0 ? 
+        String statusText = balance.getDueCentavos() <= 0 ? 
             "FINALS STATUS: PAID. Permitted to take the exams." : 
             "FINALS STATUS: UNPAID. Payment required to take exams.";
-        Color statusColor = amountDue <= 0 ? 
+        Color statusColor = balance.getDueCentavos() <= 0 ? 
             new Color(0, 150, 0) : // Green for paid
             new Color(200, 0, 0);   // Red for unpaid
         
@@ -1420,7 +1553,8 @@ public class ISLUStudentPortal extends JFrame {
         String[] columnNames = {"Course Number", "Descriptive Title", "Grade", "Units"};
         
         // Generate random grades (76-99)
-        Object[][] transcriptData = generateTranscriptData();
+        TranscriptModel transcript = generateTranscript();
+        Object[][] transcriptData = transcript.toTableData();
         
         DefaultTableModel transcriptModel = new DefaultTableModel(transcriptData, columnNames) {
             @Override
@@ -1482,6 +1616,20 @@ public class ISLUStudentPortal extends JFrame {
         scrollPane.setBorder(BorderFactory.createEmptyBorder());
         contentPanel.add(scrollPane, BorderLayout.CENTER);
 
+        // Cumulative figures
+        JPanel summaryPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 20, 10));
+        summaryPanel.setBackground(Color.WHITE);
+
+        JLabel gwaLabel = new JLabel("Cumulative GWA: " + String.format("%.2f", transcript.getCumulativeGwa()));
+        gwaLabel.setFont(new Font("Arial", Font.BOLD, 12));
+        summaryPanel.add(gwaLabel);
+
+        JLabel unitsLabel = new JLabel("Total Units Earned: " + transcript.getTotalUnits());
+        unitsLabel.setFont(new Font("Arial", Font.BOLD, 12));
+        summaryPanel.add(unitsLabel);
+
+        contentPanel.add(summaryPanel, BorderLayout.SOUTH);
+
         mainPanel.add(contentPanel, BorderLayout.CENTER);
         return mainPanel;
     }
@@ -1558,9 +1706,7 @@ public class ISLUStudentPortal extends JFrame {
         return panel;
     }
 
-    // Fields to track payment information
-    private double currentBalance; // Current overpayment amount (randomized)
-    private double amountDue; // Current amount due (randomized)
+    // Fields to track payment information; the balance itself is shared, see getBalance()
     private JLabel overpaymentValueLabel; // Reference to update the display
     private JLabel amountDueValueLabel; // Reference to update the amount due display
     private DefaultTableModel paymentTableModel; // Reference to payment transactions table model
@@ -1669,13 +1815,12 @@ public class ISLUStudentPortal extends JFrame {
         submitButton.setForeground(Color.WHITE);
         submitButton.setFont(new Font("Arial", Font.BOLD, 12));
         submitButton.setPreferredSize(new Dimension(120, 35));
-        submitButton.addActionListener(e -> {
-            if (processPayment(cardNumberField.getText(), cvvField.getText(), 
-                             expDateField.getText(), nameField.getText(), 
-                             amountField.getText(), channelName)) {
-                paymentDialog.dispose();
-            }
-        });
+        // One key for everything submitted from this dialog, so a payment sent twice is
+        // charged and logged once
+        String[] paymentKey = {java.util.UUID.randomUUID().toString()};
+        submitButton.addActionListener(e -> processPayment(cardNumberField.getText(), cvvField.getText(),
+                expDateField.getText(), nameField.getText(), amountField.getText(), channelName,
+                paymentDialog, submitButton, paymentKey));
         
         JButton cancelButton = new JButton("Cancel");
         cancelButton.setBackground(new Color(200, 0, 0));
@@ -1693,88 +1838,80 @@ public class ISLUStudentPortal extends JFrame {
     }
 
     /**
-     * Processes the payment and updates the balance
+     * Submits the payment; validation errors come back at once, and the balance,
+     * table and dialog are updated once the payment is saved
      */
-    private boolean processPayment(String cardNumber, String cvv, String expDate, 
-                                 String cardHolderName, String amountStr, String channelName) {
-        // Validate inputs
-        if (cardNumber.replaceAll("\\s", "").length() != 16) {
-            JOptionPane.showMessageDialog(this, "Card number must be 16 digits", "Invalid Input", JOptionPane.ERROR_MESSAGE);
-            return false;
-        }
-        if (cvv.length() != 3) {
-            JOptionPane.showMessageDialog(this, "CVV must be 3 digits", "Invalid Input", JOptionPane.ERROR_MESSAGE);
-            return false;
-        }
-        if (!expDate.matches("\\d{2}/\\d{2}")) {
-            JOptionPane.showMessageDialog(this, "Expiration date must be in MM/YY format", "Invalid Input", JOptionPane.ERROR_MESSAGE);
-            return false;
-        }
-        if (cardHolderName.trim().isEmpty()) {
-            JOptionPane.showMessageDialog(this, "Card holder name is required", "Invalid Input", JOptionPane.ERROR_MESSAGE);
-            return false;
-        }
-        
-        double amount;
-        try {
-            amount = Double.parseDouble(amountStr);
-            if (amount <= 0) {
-                JOptionPane.showMessageDialog(this, "Amount must be greater than 0", "Invalid Input", JOptionPane.ERROR_MESSAGE);
-                return false;
+    private void processPayment(String cardNumber, String cvv, String expDate, String cardHolderName,
+                                String amountStr, String channelName, JDialog paymentDialog, JButton submitButton,
+                                String[] paymentKey) {
+        PaymentPipeline.Request request = new PaymentPipeline.Request(channelName, studentID, cardNumber, cvv,
+                expDate, cardHolderName, amountStr, paymentKey[0]);
+        submitButton.setEnabled(false);
+        DataManager.submitPayment(request).whenComplete((transaction, failure) -> SwingUtilities.invokeLater(() -> {
+            if (failure != null) {
+                Throwable cause = failure instanceof java.util.concurrent.CompletionException && failure.getCause() != null
+                        ? failure.getCause() : failure;
+                if (cause instanceof PaymentPipeline.DuplicatePaymentException) {
+                    return;     // the first submit is still being processed and will answer
+                }
+                submitButton.setEnabled(true);
+                if (cause instanceof PaymentGateway.DeclinedException) {
+                    // A declined payment is final for its key; the next try is a new payment
+                    paymentKey[0] = java.util.UUID.randomUUID().toString();
+                }
+                if (cause instanceof IllegalArgumentException) {
+                    JOptionPane.showMessageDialog(paymentDialog, cause.getMessage(), "Invalid Input", JOptionPane.ERROR_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(paymentDialog, "Payment failed: " + cause.getMessage(),
+                            "Payment Failed", JOptionPane.ERROR_MESSAGE);
+                }
+                return;
             }
-        } catch (NumberFormatException e) {
-            JOptionPane.showMessageDialog(this, "Invalid amount format", "Invalid Input", JOptionPane.ERROR_MESSAGE);
-            return false;
-        }
+            paymentDialog.dispose();
+            acknowledgePayment(transaction, request.getAmount());
+        }));
+    }
 
-        // Process payment - handle overpayment if amount exceeds amount due
-        if (amount >= amountDue) {
-            // Calculate overpayment amount
-            double overpaymentAmount = amount - amountDue;
-            
-            // Clear the amount due and add excess to overpayment
-            amountDue = 0.0;
-            currentBalance += overpaymentAmount;
-            
-            // Log the payment transaction
-            logPaymentTransaction(channelName, amount);
-            
-            // Add payment to table
-            addPaymentToTable(channelName, amount);
-            
+    /**
+     * Shows a saved payment and the balance it left; runs on the event dispatch thread
+     */
+    private void acknowledgePayment(PaymentTransaction transaction, double amount) {
+        String channelName = transaction.getChannel();
+
+        // Add payment to table, exactly as it was logged
+        addPaymentToTable(transaction);
+
+        // DataManager applied the payment to the shared balance when it was logged
+        AccountBalances.Balance after = getBalance();
+        if (after.getDueCentavos() == 0) {
             // Show success message with overpayment details
             String message = "Payment successful!\n" +
                 "Channel: " + channelName + "\n" +
                 "Amount Paid: P " + String.format("%.2f", amount) + "\n" +
                 "Amount Due: P 0.00 (FULLY PAID)\n" +
-                "Overpayment: P " + String.format("%.2f", overpaymentAmount) + "\n" +
-                "Total Overpayment Balance: P " + String.format("%.2f", currentBalance);
+                "Total Overpayment Balance: P " + String.format("%.2f", after.getOverpayment());
             
             JOptionPane.showMessageDialog(this, message, "Payment Successful", JOptionPane.INFORMATION_MESSAGE);
         } else {
             // Partial payment - just reduce amount due
-            amountDue -= amount;
-            
-            // Log the payment transaction
-            logPaymentTransaction(channelName, amount);
-            
-            // Add payment to table
-            addPaymentToTable(channelName, amount);
-            
-            // Show success message
             JOptionPane.showMessageDialog(this, 
                 "Payment successful!\n" +
                 "Channel: " + channelName + "\n" +
                 "Amount Paid: P " + String.format("%.2f", amount) + "\n" +
-                "Remaining Amount Due: P " + String.format("%.2f", amountDue),
+                "Remaining Amount Due: P " + String.format("%.2f", after.getAmountDue()),
                 "Payment Successful", 
                 JOptionPane.INFORMATION_MESSAGE);
         }
 
         // Update the display (you would need to refresh the Statement of Accounts panel)
         refreshStatementOfAccounts();
-        
-        return true;
+    }
+
+    /**
+     * @return This student's balance, as shared with their other windows
+     */
+    private AccountBalances.Balance getBalance() {
+        return DataManager.getAccountBalances().getBalance(studentID);
     }
 
     /**
@@ -1797,29 +1934,11 @@ public class ISLUStudentPortal extends JFrame {
     }
 
     /**
-     * Logs payment transaction using DataManager
-     */
-    private void logPaymentTransaction(String channelName, double amount) {
-        DataManager.logPaymentTransaction(channelName, amount, studentID);
-    }
-
-    /**
-     * Adds a new payment transaction to the table
+     * Adds a saved payment transaction to the table
      */
-    private void addPaymentToTable(String channelName, double amount) {
+    private void addPaymentToTable(PaymentTransaction transaction) {
         if (paymentTableModel != null) {
-            // Generate current date and time
-            java.text.SimpleDateFormat dateFormat = new java.text.SimpleDateFormat("MM/dd/yyyy hh:mm a");
-            String currentDateTime = dateFormat.format(new java.util.Date());
-            
-            // Create reference text
-            String reference = "FIRST SEMESTER 2025-2026 Enrollme.";
-            
-            // Format amount with comma separator
-            String formattedAmount = String.format("P %,.2f", amount);
-            
-            // Add new row to table
-            paymentTableModel.addRow(new Object[]{currentDateTime, channelName, reference, formattedAmount});
+            paymentTableModel.addRow(transaction.toTableRow());
         }
     }
 
@@ -1827,20 +1946,22 @@ public class ISLUStudentPortal extends JFrame {
      * Refreshes the Statement of Accounts display with updated balance
      */
     private void refreshStatementOfAccounts() {
+        AccountBalances.Balance balance = getBalance();
+
         // Update the amount due value label if it exists
         if (amountDueValueLabel != null) {
-            amountDueValueLabel.setText("P " + String.format("%.2f", amountDue));
+            amountDueValueLabel.setText("P " + String.format("%.2f", balance.getAmountDue()));
         }
         
         // Update the overpayment value label if it exists
         if (overpaymentValueLabel != null) {
-            overpaymentValueLabel.setText("P (" + String.format("%.2f", currentBalance) + ")");
+            overpaymentValueLabel.setText("P (" + String.format("%.2f", balance.getOverpayment()) + ")");
         }
         
         // Show success message with both balances
         String message = "Statement of Accounts has been updated.\n" +
-            "Amount Due: P " + String.format("%.2f", amountDue) + "\n" +
-            "Overpayment Balance: P " + String.format("%.2f", currentBalance);
+            "Amount Due: P " + String.format("%.2f", balance.getAmountDue()) + "\n" +
+            "Overpayment Balance: P " + String.format("%.2f", balance.getOverpayment());
         
         JOptionPane.showMessageDialog(this, message, "Balance Updated", JOptionPane.INFORMATION_MESSAGE);
     }
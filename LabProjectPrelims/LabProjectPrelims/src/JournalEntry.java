@@ -0,0 +1,56 @@
+/**
+ * Data class to hold a journal/periodical article index entry
+ */
+public class JournalEntry {
+    private String title;
+    private String author;
+    private String journal;
+    private String issue;
+    private String date;
+    private String pages;
+    private String subject;
+
+    public JournalEntry(String title, String author, String journal, String issue, String date, String pages, String subject) {
+        this.title = title;
+        this.author = author;
+        this.journal = journal;
+        this.issue = issue;
+        this.date = date;
+        this.pages = pages;
+        this.subject = subject;
+    }
+
+    /**
+     * Parses a catalog line of the form title|author|journal|issue|date|pages|subject
+     * @param line The catalog line
+     * @return The entry, or null if the line is malformed
+     */
+    public static JournalEntry fromCatalogLine(String line) {
+        String[] parts = line.split("\\|", -1);
+        if (parts.length < 7) {
+            return null;
+        }
+        return new JournalEntry(parts[0].trim(), parts[1].trim(), parts[2].trim(), parts[3].trim(),
+                parts[4].trim(), parts[5].trim(), parts[6].trim());
+    }
+
+    // Getters
+    public String getTitle() { return title; }
+    public String getAuthor() { return author; }
+    public String getJournal() { return journal; }
+    public String getIssue() { return issue; }
+    public String getDate() { return date; }
+    public String getPages() { return pages; }
+    public String getSubject() { return subject; }
+
+    /**
+     * @return All the searchable text of the entry
+     */
+    public String getSearchText() {
+        return title + " " + author + " " + journal + " " + subject;
+    }
+
+    public Object[] toTableRow() {
+        return new Object[]{title, author, journal, issue, date, pages};
+    }
+}
@@ -0,0 +1,403 @@
+import java.text.Normalizer;
+import java.util.*;
+
+/**
+ * Inverted index over the journal/periodical catalog.
+ * Text is tokenized and normalized (lower case, accents removed); each term keeps
+ * its postings as sorted int arrays of entry numbers with parallel term frequencies.
+ * A trie over the sorted vocabulary answers prefix queries, so results can update
+ * as the user types, and matches are ranked with BM25.
+ */
+public class JournalSearchIndex {
+
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int MAX_PREFIX_EXPANSIONS = 64;
+    private static final int MAX_QUERY_TERMS = 31;
+
+    private final List<JournalEntry> entries;
+    // BM25 length normalization per entry: K1 * (1 - B + B * length / average length)
+    private final float[] docNorms;
+
+    // Vocabulary, sorted, with one posting list per term
+    private final String[] terms;
+    private final int[][] postingDocs;
+    private final int[][] postingFreqs;
+
+    // Trie over the vocabulary as first-child / next-sibling arrays. Because the
+    // vocabulary is sorted, the terms below a node form the range [termStart, termEnd).
+    private char[] nodeChars;
+    private int[] nodeFirstChild;
+    private int[] nodeNextSibling;
+    private int[] nodeLastChild;
+    private int[] nodeTermStart;
+    private int[] nodeTermEnd;
+    private int nodeCount;
+
+    private JournalSearchIndex(List<JournalEntry> entries, String[] terms, int[][] postingDocs,
+                               int[][] postingFreqs, int[] docLengths) {
+        this.entries = entries;
+        this.terms = terms;
+        this.postingDocs = postingDocs;
+        this.postingFreqs = postingFreqs;
+
+        long totalLength = 0;
+        for (int length : docLengths) {
+            totalLength += length;
+        }
+        float avgDocLength = docLengths.length == 0 ? 1f : Math.max(1f, (float) totalLength / docLengths.length);
+        this.docNorms = new float[docLengths.length];
+        for (int doc = 0; doc < docLengths.length; doc++) {
+            docNorms[doc] = K1 * (1 - B + B * docLengths[doc] / avgDocLength);
+        }
+        buildTrie();
+    }
+
+    /**
+     * Builds the index over a catalog
+     * @param catalog The catalog entries
+     * @return The index
+     */
+    public static JournalSearchIndex build(List<JournalEntry> catalog) {
+        List<JournalEntry> entries = new ArrayList<>(catalog);
+        Map<String, PostingBuilder> builders = new HashMap<>();
+        int[] docLengths = new int[entries.size()];
+
+        for (int doc = 0; doc < entries.size(); doc++) {
+            List<String> tokens = tokenize(entries.get(doc).getSearchText());
+            docLengths[doc] = tokens.size();
+            Collections.sort(tokens);
+            for (int i = 0; i < tokens.size(); ) {
+                int j = i;
+                while (j < tokens.size() && tokens.get(j).equals(tokens.get(i))) {
+                    j++;
+                }
+                builders.computeIfAbsent(tokens.get(i), t -> new PostingBuilder()).add(doc, j - i);
+                i = j;
+            }
+        }
+
+        String[] terms = builders.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[][] postingDocs = new int[terms.length][];
+        int[][] postingFreqs = new int[terms.length][];
+        for (int t = 0; t < terms.length; t++) {
+            PostingBuilder builder = builders.get(terms[t]);
+            postingDocs[t] = Arrays.copyOf(builder.docs, builder.size);
+            postingFreqs[t] = Arrays.copyOf(builder.freqs, builder.size);
+        }
+        return new JournalSearchIndex(entries, terms, postingDocs, postingFreqs, docLengths);
+    }
+
+    /**
+     * Ranked search; an entry matches if it contains any of the query terms.
+     * The last term is treated as a prefix unless the query ends with a space.
+     * @param query The query text
+     * @param limit The maximum number of results
+     * @return The matching entries, best first
+     */
+    public List<JournalEntry> search(String query, int limit) {
+        return search(query, limit, false);
+    }
+
+    /**
+     * Ranked search where an entry must contain every query term
+     * @param query The query text
+     * @param limit The maximum number of results
+     * @return The matching entries, best first
+     */
+    public List<JournalEntry> searchAll(String query, int limit) {
+        return search(query, limit, true);
+    }
+
+    /**
+     * Tells whether a search for the query left out some words its last term is a
+     * prefix of; only the most frequent MAX_PREFIX_EXPANSIONS of them are searched
+     * @param query The query text
+     * @return true if words starting with the last term were left out
+     */
+    public boolean isPrefixTruncated(String query) {
+        List<String> queryTerms = tokenize(query);
+        if (queryTerms.isEmpty() || Character.isWhitespace(query.charAt(query.length() - 1))) {
+            return false;
+        }
+        int node = findPrefix(queryTerms.get(Math.min(queryTerms.size(), MAX_QUERY_TERMS) - 1));
+        return node >= 0 && nodeTermEnd[node] - nodeTermStart[node] > MAX_PREFIX_EXPANSIONS;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public int getTermCount() {
+        return terms.length;
+    }
+
+    /**
+     * Splits text into normalized terms: accents removed, lower case, letters and digits only
+     * @param text The text to tokenize
+     * @return The terms in order of appearance
+     */
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        String normalized = Normalizer.normalize(text, Normalizer.Form.NFD);
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < normalized.length(); i++) {
+            char c = normalized.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                tokens.add(token.toString());
+                token.setLength(0);
+            }
+        }
+        if (token.length() > 0) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+
+    private List<JournalEntry> search(String query, int limit, boolean requireAll) {
+        List<String> queryTerms = tokenize(query);
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return new ArrayList<>();
+        }
+        if (queryTerms.size() > MAX_QUERY_TERMS) {
+            queryTerms = queryTerms.subList(0, MAX_QUERY_TERMS);
+        }
+        boolean lastIsPrefix = !Character.isWhitespace(query.charAt(query.length() - 1));
+
+        float[] scores = new float[entries.size()];
+        int[] matchedTerms = new int[entries.size()];
+        int[] touched = new int[16];
+        int touchedCount = 0;
+
+        for (int q = 0; q < queryTerms.size(); q++) {
+            int[] termIDs = (q == queryTerms.size() - 1 && lastIsPrefix)
+                    ? expandPrefix(queryTerms.get(q))
+                    : exactTerm(queryTerms.get(q));
+            for (int termID : termIDs) {
+                int[] docs = postingDocs[termID];
+                int[] freqs = postingFreqs[termID];
+                float idf = (float) Math.log(1 + (entries.size() - docs.length + 0.5) / (docs.length + 0.5));
+                for (int p = 0; p < docs.length; p++) {
+                    int doc = docs[p];
+                    float tf = freqs[p];
+                    if (matchedTerms[doc] == 0) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = doc;
+                    }
+                    scores[doc] += idf * tf * (K1 + 1) / (tf + docNorms[doc]);
+                    matchedTerms[doc] |= 1 << q;
+                }
+            }
+        }
+
+        // Keep the best `limit` entries in a primitive min-heap on score
+        int allTerms = (1 << queryTerms.size()) - 1;
+        int[] heap = new int[Math.min(limit, touchedCount)];
+        int heapSize = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int doc = touched[i];
+            if (requireAll && matchedTerms[doc] != allTerms) {
+                continue;
+            }
+            if (heapSize < heap.length) {
+                heap[heapSize] = doc;
+                siftUp(heap, heapSize++, scores);
+            } else if (heapSize > 0 && ranksAbove(doc, heap[0], scores)) {
+                heap[0] = doc;
+                siftDown(heap, heapSize, scores);
+            }
+        }
+
+        JournalEntry[] results = new JournalEntry[heapSize];
+        for (int i = heapSize - 1; i >= 0; i--) {
+            results[i] = entries.get(heap[0]);
+            heap[0] = heap[--heapSize];
+            siftDown(heap, heapSize, scores);
+        }
+        return new ArrayList<>(Arrays.asList(results));
+    }
+
+    /**
+     * Ranking order: higher score first, then earlier catalog entry first
+     */
+    private static boolean ranksAbove(int a, int b, float[] scores) {
+        return scores[a] != scores[b] ? scores[a] > scores[b] : a < b;
+    }
+
+    private static void siftUp(int[] heap, int index, float[] scores) {
+        int doc = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!ranksAbove(heap[parent], doc, scores)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = doc;
+    }
+
+    private static void siftDown(int[] heap, int size, float[] scores) {
+        if (size == 0) {
+            return;
+        }
+        int index = 0;
+        int doc = heap[0];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && ranksAbove(heap[child], heap[child + 1], scores)) {
+                child++;
+            }
+            if (!ranksAbove(doc, heap[child], scores)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = doc;
+    }
+
+    private int[] exactTerm(String term) {
+        int termID = Arrays.binarySearch(terms, term);
+        return termID >= 0 ? new int[]{termID} : new int[0];
+    }
+
+    /**
+     * Finds the terms starting with a prefix through the trie, keeping only the most
+     * frequent ones (and the prefix itself, if it is a term) when the prefix is very short
+     */
+    private int[] expandPrefix(String prefix) {
+        int node = findPrefix(prefix);
+        if (node < 0) {
+            return new int[0];
+        }
+        int start = nodeTermStart[node];
+        int end = nodeTermEnd[node];
+        if (end - start <= MAX_PREFIX_EXPANSIONS) {
+            int[] termIDs = new int[end - start];
+            for (int i = 0; i < termIDs.length; i++) {
+                termIDs[i] = start + i;
+            }
+            return termIDs;
+        }
+        // Sort by (document frequency, term) packed into longs and take the top ones
+        long[] byFrequency = new long[end - start];
+        for (int t = start; t < end; t++) {
+            byFrequency[t - start] = ((long) postingDocs[t].length << 32) | t;
+        }
+        Arrays.sort(byFrequency);
+        int[] termIDs = new int[MAX_PREFIX_EXPANSIONS];
+        boolean hasPrefix = false;
+        for (int i = 0; i < termIDs.length; i++) {
+            termIDs[i] = (int) byFrequency[byFrequency.length - 1 - i];
+            hasPrefix |= termIDs[i] == start;
+        }
+        // The vocabulary is sorted, so a term equal to the prefix comes first
+        if (!hasPrefix && terms[start].equals(prefix)) {
+            termIDs[termIDs.length - 1] = start;
+        }
+        return termIDs;
+    }
+
+    /**
+     * @return The trie node of a prefix, or -1 if no term starts with it
+     */
+    private int findPrefix(String prefix) {
+        int node = 0;
+        for (int i = 0; i < prefix.length() && node >= 0; i++) {
+            node = findChild(node, prefix.charAt(i));
+        }
+        return node;
+    }
+
+    private int findChild(int node, char c) {
+        for (int child = nodeFirstChild[node]; child >= 0; child = nodeNextSibling[child]) {
+            if (nodeChars[child] == c) {
+                return child;
+            }
+        }
+        return -1;
+    }
+
+    private void buildTrie() {
+        int capacity = 1;
+        for (String term : terms) {
+            capacity += term.length();
+        }
+        nodeChars = new char[capacity];
+        nodeFirstChild = new int[capacity];
+        nodeNextSibling = new int[capacity];
+        nodeLastChild = new int[capacity];
+        nodeTermStart = new int[capacity];
+        nodeTermEnd = new int[capacity];
+        newNode('\0', 0);
+
+        for (int t = 0; t < terms.length; t++) {
+            String term = terms[t];
+            int node = 0;
+            nodeTermEnd[0] = t + 1;
+            for (int i = 0; i < term.length(); i++) {
+                char c = term.charAt(i);
+                // Terms arrive sorted, so a matching child can only be the last one
+                int last = nodeLastChild[node];
+                int child;
+                if (last >= 0 && nodeChars[last] == c) {
+                    child = last;
+                } else {
+                    child = newNode(c, t);
+                    if (last < 0) {
+                        nodeFirstChild[node] = child;
+                    } else {
+                        nodeNextSibling[last] = child;
+                    }
+                    nodeLastChild[node] = child;
+                }
+                nodeTermEnd[child] = t + 1;
+                node = child;
+            }
+        }
+        // Release the build-only array
+        nodeLastChild = null;
+    }
+
+    private int newNode(char c, int termStart) {
+        int node = nodeCount++;
+        nodeChars[node] = c;
+        nodeFirstChild[node] = -1;
+        nodeNextSibling[node] = -1;
+        nodeLastChild[node] = -1;
+        nodeTermStart[node] = termStart;
+        nodeTermEnd[node] = termStart;
+        return node;
+    }
+
+    /**
+     * Growable posting list used while building
+     */
+    private static class PostingBuilder {
+        int[] docs = new int[4];
+        int[] freqs = new int[4];
+        int size;
+
+        void add(int doc, int freq) {
+            if (size == docs.length) {
+                docs = Arrays.copyOf(docs, size * 2);
+                freqs = Arrays.copyOf(freqs, size * 2);
+            }
+            docs[size] = doc;
+            freqs[size] = freq;
+            size++;
+        }
+    }
+}
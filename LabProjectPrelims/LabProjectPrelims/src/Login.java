@@ -284,6 +284,11 @@ public class Login extends JFrame {
     }
 
     public static void main(String[] args) {
+        DataManager.recoverAccountJournal();
+        DataManager.loadCheckpoint();
+        DataManager.startFileWatcher();
+        DataManager.loadRecentPaymentKeys();
         SwingUtilities.invokeLater(() -> new Login().setVisible(true));
+        DataManager.configurePaymentGateway();
     }
 }
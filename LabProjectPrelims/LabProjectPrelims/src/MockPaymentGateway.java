@@ -0,0 +1,164 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand-in for the card payment gateway on a local port, for trying PaymentGateway
+ * offline and under load. Each charge waits the configured latency (give or take half),
+ * then fails with 503 at the configured failure rate, is declined at the decline rate,
+ * or is approved. Half of the failures happen after the charge was taken, as when a
+ * reply is lost; a retry with the same idempotency key gets the first outcome back
+ * instead of a second charge.
+ */
+public class MockPaymentGateway implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Map<String, String> outcomes = new ConcurrentHashMap<>();
+
+    private volatile long latencyMillis;
+    private volatile double failureRate;
+    private volatile double declineRate;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong charges = new AtomicLong();
+    private final AtomicLong replays = new AtomicLong();
+    private final AtomicLong references = new AtomicLong();
+
+    /**
+     * Starts a gateway on a free local port
+     * @param latencyMillis Average time to answer a charge
+     * @param failureRate Share of charges answered with 503, 0 to 1
+     * @param declineRate Share of charges declined, 0 to 1
+     * @throws IOException If the server could not be started
+     */
+    public MockPaymentGateway(long latencyMillis, double failureRate, double declineRate) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.failureRate = failureRate;
+        this.declineRate = declineRate;
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/charges", this::handle);
+        // Latency is simulated by sleeping, so every request in flight needs a thread
+        executor = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "MockPaymentGateway");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * @return The gateway's address, for PaymentGateway
+     */
+    public URI getUri() {
+        return URI.create("http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort() + "/");
+    }
+
+    public void setLatencyMillis(long latencyMillis) { this.latencyMillis = latencyMillis; }
+    public void setFailureRate(double failureRate) { this.failureRate = failureRate; }
+    public void setDeclineRate(double declineRate) { this.declineRate = declineRate; }
+
+    /**
+     * @return Number of requests received, retries included
+     */
+    public long getRequests() { return requests.get(); }
+
+    /**
+     * @return Number of charges taken, each idempotency key at most once
+     */
+    public long getCharges() { return charges.get(); }
+
+    /**
+     * @return Number of retries answered with an earlier outcome
+     */
+    public long getReplays() { return replays.get(); }
+
+    /**
+     * @param idempotencyKey A charge's idempotency key
+     * @return true if the charge was taken, whether or not its reply arrived
+     */
+    public boolean isCharged(String idempotencyKey) {
+        String outcome = outcomes.get(idempotencyKey);
+        return outcome != null && outcome.startsWith("approved,");
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            requests.incrementAndGet();
+            String form = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            String key = exchange.getRequestHeaders().getFirst("Idempotency-Key");
+            if (!exchange.getRequestMethod().equals("POST") || key == null || !form.contains("amount=")) {
+                reply(exchange, 400, "bad request");
+                return;
+            }
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            long latency = latencyMillis;
+            if (latency > 0) {
+                Thread.sleep(latency / 2 + random.nextLong(latency + 1));
+            }
+
+            boolean fail = random.nextDouble() < failureRate;
+            if (fail && random.nextBoolean()) {
+                reply(exchange, 503, "unavailable");
+                return;
+            }
+            String outcome = outcomes.get(key);
+            if (outcome != null) {
+                replays.incrementAndGet();
+            } else {
+                String fresh = random.nextDouble() < declineRate
+                        ? "declined,insufficient funds"
+                        : "approved,MPG" + String.format("%010d", references.incrementAndGet());
+                outcome = outcomes.putIfAbsent(key, fresh);
+                if (outcome == null) {
+                    outcome = fresh;
+                    if (fresh.startsWith("approved,")) {
+                        charges.incrementAndGet();
+                    }
+                } else {
+                    replays.incrementAndGet();
+                }
+            }
+            if (fail) {
+                // Taken, but the reply is lost
+                reply(exchange, 503, "unavailable");
+                return;
+            }
+            reply(exchange, outcome.startsWith("approved,") ? 200 : 402, outcome);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reply(exchange, 503, "shutting down");
+        }
+    }
+
+    private static void reply(HttpExchange exchange, int status, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Stops the gateway
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,31 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shared copies of names, so the thousands of students named "Santos" or "Maria"
+ * hold one String between them instead of one each. Safe to use from several
+ * threads.
+ */
+public class NameDictionary {
+
+    private final ConcurrentHashMap<String, String> names = new ConcurrentHashMap<>();
+
+    /**
+     * Returns the dictionary's copy of a name, adding the name if it is new
+     * @param name The name, or null
+     * @return An equal String shared by every caller, or null for null
+     */
+    public String intern(String name) {
+        if (name == null) {
+            return null;
+        }
+        String shared = names.putIfAbsent(name, name);
+        return shared != null ? shared : name;
+    }
+
+    /**
+     * @return The number of distinct names
+     */
+    public int size() {
+        return names.size();
+    }
+}
@@ -0,0 +1,219 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.IntConsumer;
+
+/**
+ * Map from a 7-digit student ID, packed into an int, to a record's file offset,
+ * kept outside the Java heap. The table is open-addressed with linear probing in a
+ * direct ByteBuffer of 12-byte slots (int key + 1, long offset; a zero key is an
+ * empty slot), so a million students cost about 24 MB of native memory and nothing
+ * the garbage collector has to trace. Removal shifts the following slots back, so
+ * no tombstones build up.
+ *
+ * Not thread-safe; callers synchronize.
+ */
+public class OffHeapIdIndex {
+
+    private static final int SLOT_BYTES = 12;
+    private static final double MAX_LOAD = 0.6;
+
+    private ByteBuffer table;
+    private int capacity;   // a power of two
+    private int size;
+
+    /**
+     * Creates an empty index
+     * @param expectedSize The number of IDs to make room for before growing
+     */
+    public OffHeapIdIndex(int expectedSize) {
+        allocate(Math.max(16, Integer.highestOneBit((int) Math.ceil(Math.max(1, expectedSize) / MAX_LOAD)) << 1));
+    }
+
+    /**
+     * @param id The packed student ID
+     * @return The offset stored for the ID, or -1 if none
+     */
+    public long get(int id) {
+        int slot = find(id);
+        return slot < 0 ? -1 : table.getLong(slot * SLOT_BYTES + 4);
+    }
+
+    /**
+     * Stores the offset for an ID
+     * @param id The packed student ID, 0 or more
+     * @param offset The record offset
+     * @return The offset previously stored for the ID, or -1 if none
+     */
+    public long put(int id, long offset) {
+        if (id < 0) {
+            throw new IllegalArgumentException("Negative student ID: " + id);
+        }
+        if (size + 1 > capacity * MAX_LOAD) {
+            grow();
+        }
+        int mask = capacity - 1;
+        for (int slot = mix(id) & mask; ; slot = (slot + 1) & mask) {
+            int key = table.getInt(slot * SLOT_BYTES);
+            if (key == 0) {
+                table.putInt(slot * SLOT_BYTES, id + 1);
+                table.putLong(slot * SLOT_BYTES + 4, offset);
+                size++;
+                return -1;
+            }
+            if (key == id + 1) {
+                long previous = table.getLong(slot * SLOT_BYTES + 4);
+                table.putLong(slot * SLOT_BYTES + 4, offset);
+                return previous;
+            }
+        }
+    }
+
+    /**
+     * Removes an ID
+     * @param id The packed student ID
+     * @return The offset that was stored for the ID, or -1 if none
+     */
+    public long remove(int id) {
+        int slot = find(id);
+        if (slot < 0) {
+            return -1;
+        }
+        long previous = table.getLong(slot * SLOT_BYTES + 4);
+        int mask = capacity - 1;
+        // Move later entries of the probe run back into the gap, so lookups never stop early
+        int gap = slot;
+        for (int next = (gap + 1) & mask; ; next = (next + 1) & mask) {
+            int key = table.getInt(next * SLOT_BYTES);
+            if (key == 0) {
+                break;
+            }
+            int home = mix(key - 1) & mask;
+            boolean movable = gap <= next ? home <= gap || home > next : home <= gap && home > next;
+            if (movable) {
+                table.putInt(gap * SLOT_BYTES, key);
+                table.putLong(gap * SLOT_BYTES + 4, table.getLong(next * SLOT_BYTES + 4));
+                gap = next;
+            }
+        }
+        table.putInt(gap * SLOT_BYTES, 0);
+        table.putLong(gap * SLOT_BYTES + 4, 0);
+        size--;
+        return previous;
+    }
+
+    /**
+     * Calls an action with every ID in the index, in no particular order
+     * @param action Receives the packed IDs
+     */
+    public void forEachId(IntConsumer action) {
+        for (int slot = 0; slot < capacity; slot++) {
+            int key = table.getInt(slot * SLOT_BYTES);
+            if (key != 0) {
+                action.accept(key - 1);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return The native memory taken by the table, in bytes
+     */
+    public long getSizeInBytes() {
+        return (long) capacity * SLOT_BYTES;
+    }
+
+    /**
+     * Writes the table to a checkpoint as it is in memory, so reading it back needs
+     * no rehashing
+     * @param out The checkpoint stream
+     * @throws IOException If the checkpoint cannot be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(capacity);
+        out.writeInt(size);
+        byte[] chunk = new byte[Math.min(1 << 16, capacity * SLOT_BYTES)];
+        ByteBuffer slots = table.duplicate();
+        slots.clear();
+        while (slots.hasRemaining()) {
+            int length = Math.min(chunk.length, slots.remaining());
+            slots.get(chunk, 0, length);
+            out.write(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Reads an index written by writeTo()
+     * @param in The checkpoint stream
+     * @return The index
+     * @throws IOException If the checkpoint cannot be read or does not hold an index
+     */
+    public static OffHeapIdIndex readFrom(DataInput in) throws IOException {
+        int capacity = in.readInt();
+        int size = in.readInt();
+        if (Integer.bitCount(capacity) != 1 || size < 0 || size > capacity * MAX_LOAD) {
+            throw new IOException("Student ID index has " + size + " IDs in " + capacity + " slots");
+        }
+        OffHeapIdIndex index = new OffHeapIdIndex(1);
+        index.allocate(capacity);
+        byte[] chunk = new byte[Math.min(1 << 16, capacity * SLOT_BYTES)];
+        ByteBuffer slots = index.table.duplicate();
+        while (slots.hasRemaining()) {
+            int length = Math.min(chunk.length, slots.remaining());
+            in.readFully(chunk, 0, length);
+            slots.put(chunk, 0, length);
+        }
+        index.size = size;
+        return index;
+    }
+
+    private int find(int id) {
+        if (id < 0) {
+            return -1;
+        }
+        int mask = capacity - 1;
+        for (int slot = mix(id) & mask; ; slot = (slot + 1) & mask) {
+            int key = table.getInt(slot * SLOT_BYTES);
+            if (key == 0) {
+                return -1;
+            }
+            if (key == id + 1) {
+                return slot;
+            }
+        }
+    }
+
+    private void grow() {
+        ByteBuffer old = table;
+        int oldCapacity = capacity;
+        allocate(capacity << 1);
+        for (int slot = 0; slot < oldCapacity; slot++) {
+            int key = old.getInt(slot * SLOT_BYTES);
+            if (key != 0) {
+                put(key - 1, old.getLong(slot * SLOT_BYTES + 4));
+            }
+        }
+        // The old buffer's native memory is released when the buffer is collected
+    }
+
+    private void allocate(int newCapacity) {
+        if ((long) newCapacity * SLOT_BYTES > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Student ID index cannot grow past " + capacity + " slots");
+        }
+        capacity = newCapacity;
+        size = 0;
+        // A fixed byte order, so writeTo() output reads back on any machine
+        table = ByteBuffer.allocateDirect(newCapacity * SLOT_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    // Sequential IDs would fill neighbouring slots and make long probe runs
+    private static int mix(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
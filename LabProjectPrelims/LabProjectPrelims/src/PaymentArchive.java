@@ -0,0 +1,719 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cold storage for the payments of completed terms. archive() moves them out of
+ * paymentLogs.txt into compressed blocks of about 64 KB, so the log keeps only the
+ * current term and stays small to scan, index and cache.
+ *
+ * Each archive run writes a run of blocks per term. Within a run the payments are
+ * sorted by student ID (keeping log order for each student), so each block holds a
+ * range of IDs and a student's payments of a term are usually in one block. A
+ * payment logged after its term was archived (backdated, or written late) goes into
+ * a later run of the same term. The block index lists each block's term, ID range,
+ * position and checksum; a lookup inflates only the blocks whose range holds the
+ * student.
+ *
+ * The blocks are appended to paymentArchive.dat; the index is written to
+ * paymentArchive.idx only after them, and the log is rewritten only after the
+ * index, so a crash leaves each payment in the log, the archive or both. The index
+ * records how much of the log the run read, so until the log is rewritten readers
+ * skip the archived lines in that range, and nothing else (see getLeftovers()).
+ * Callers hold the DataFileLock for the data directory while archiving.
+ */
+public class PaymentArchive {
+
+    static final int BLOCK_BYTES = 64 * 1024;
+    private static final int INDEX_VERSION = 2;   // 2: adds runs and the range left in the log
+
+    /**
+     * Lines an archive run copied into the archive but did not get to remove from the
+     * log, because it stopped before rewriting it
+     */
+    public static final class Leftovers {
+        private final long length;
+        private final int currentTerm;
+
+        Leftovers(long length, int currentTerm) {
+            this.length = length;
+            this.currentTerm = currentTerm;
+        }
+
+        /**
+         * @param line A log line
+         * @param offset Where the line starts in the log
+         * @return true if the line is already archived, so it is to be ignored in the log
+         */
+        public boolean contains(String line, long offset) {
+            return offset < length && isArchivable(line, currentTerm);
+        }
+    }
+
+    private final File file;
+    private final DataCheckpoint index;
+
+    private long indexModified = -1;
+    private long indexLength = -1;
+    private long coveredLength;         // end of the last indexed block
+    private int archivedBefore;         // the log was last archived when this term was current
+    private long checkedLength;         // the log as the last run left it
+    private long leftoverLength;        // the log the last run read, if it was not rewritten
+    private long leftoverFingerprint;   // of the log there, to tell whether it was rewritten since
+    private int leftoverTerm;           // the current term of that run
+    private int[] terms = new int[0];   // term of each run, sorted; runs of a term oldest first
+    private int[] runStart = {0};       // first block of each run, and the block count at the end
+    private Blocks blocks = new Blocks(0);
+
+    private long blocksInflated;
+
+    /**
+     * Creates an archive
+     * @param file The block file
+     * @param indexFile The block index
+     */
+    public PaymentArchive(File file, File indexFile) {
+        this.file = file;
+        this.index = new DataCheckpoint(indexFile, INDEX_VERSION);
+    }
+
+    /**
+     * Reads the archived payment lines of a student
+     * @param studentID The 7-digit student ID
+     * @return The lines, oldest term first and in log order within a term; empty if
+     *         the ID is not a 7-digit ID, as such payments are never archived
+     * @throws IOException If the archive cannot be read or is damaged
+     */
+    public synchronized List<String> readLines(String studentID) throws IOException {
+        load();
+        List<String> result = new ArrayList<>();
+        int id = StudentIdIndex.parse(studentID);
+        if (id < 0 || blocks.count == 0) {
+            return result;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int t = 0; t < terms.length; t++) {
+                // A run's blocks are in ID order; find the first whose range ends at or after the ID
+                int low = runStart[t];
+                int high = runStart[t + 1];
+                while (low < high) {
+                    int mid = (low + high) >>> 1;
+                    if (blocks.lastID[mid] < id) {
+                        low = mid + 1;
+                    } else {
+                        high = mid;
+                    }
+                }
+                for (int b = low; b < runStart[t + 1] && blocks.firstID[b] <= id; b++) {
+                    for (String line : inflate(channel, b)) {
+                        if (id == studentIDOf(line)) {
+                            result.add(line);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Finds the archived payments made in a time range. Archived terms are kept in
+     * ID order, so every block of each term the range touches is read.
+     * @param from The earliest payment time, inclusive
+     * @param to The latest payment time, inclusive
+     * @param channel Only payments through this channel (case-insensitive), or null for all
+     * @return The payments in time order
+     * @throws IOException If the archive cannot be read or is damaged
+     */
+    public synchronized List<PaymentTransaction> query(LocalDateTime from, LocalDateTime to, String channel)
+            throws IOException {
+        load();
+        int fromMinute = PaymentLedger.minuteOf(from);
+        int toMinute = PaymentLedger.minuteOf(to);
+        List<PaymentTransaction> result = new ArrayList<>();
+        if (fromMinute > toMinute || blocks.count == 0) {
+            return result;
+        }
+        int firstTerm = PaymentLedger.termOf(fromMinute);
+        int lastTerm = PaymentLedger.termOf(toMinute);
+        List<Long> order = new ArrayList<>();   // (minute, position in result), to sort by time
+        try (FileChannel log = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int t = 0; t < terms.length; t++) {
+                if (terms[t] < firstTerm || terms[t] > lastTerm) {
+                    continue;
+                }
+                for (int b = runStart[t]; b < runStart[t + 1]; b++) {
+                    for (String line : inflate(log, b)) {
+                        int minute = PaymentLedger.parseMinute(line);
+                        if (minute < fromMinute || minute > toMinute) {
+                            continue;
+                        }
+                        PaymentTransaction payment = PaymentTransaction.parse(line);
+                        if (payment != null && (channel == null || channel.equalsIgnoreCase(payment.getChannel()))) {
+                            order.add(((long) minute << 32) | result.size());
+                            result.add(payment);
+                        }
+                    }
+                }
+            }
+        }
+        Collections.sort(order);
+        List<PaymentTransaction> sorted = new ArrayList<>(result.size());
+        for (long entry : order) {
+            sorted.add(result.get((int) entry));
+        }
+        return sorted;
+    }
+
+    /**
+     * Visits the archived payments made through one channel in a time range, one
+     * block of each term the range touches at a time
+     * @param from The earliest payment time, inclusive
+     * @param to The latest payment time, inclusive
+     * @param channel Only payments through this channel (case-insensitive), or null for all
+     * @param visitor Receives each payment's minute, amount in centavos and student ID (-1 if none)
+     * @return The number of payments visited
+     * @throws IOException If the archive cannot be read or is damaged, or the visitor fails
+     */
+    public synchronized long forEach(LocalDateTime from, LocalDateTime to, String channel,
+                                     PaymentLedger.PaymentVisitor visitor) throws IOException {
+        load();
+        int fromMinute = PaymentLedger.minuteOf(from);
+        int toMinute = PaymentLedger.minuteOf(to);
+        long visited = 0;
+        if (fromMinute > toMinute || blocks.count == 0) {
+            return visited;
+        }
+        int firstTerm = PaymentLedger.termOf(fromMinute);
+        int lastTerm = PaymentLedger.termOf(toMinute);
+        try (FileChannel log = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int t = 0; t < terms.length; t++) {
+                if (terms[t] < firstTerm || terms[t] > lastTerm) {
+                    continue;
+                }
+                for (int b = runStart[t]; b < runStart[t + 1]; b++) {
+                    for (String line : inflate(log, b)) {
+                        int minute = PaymentLedger.parseMinute(line);
+                        if (minute >= fromMinute && minute <= toMinute
+                                && PaymentLedger.visit(line, minute, channel, visitor)) {
+                            visited++;
+                        }
+                    }
+                }
+            }
+        }
+        return visited;
+    }
+
+    /**
+     * Reads every archived payment line, term by term
+     * @param visitor Receives each line
+     * @throws IOException If the archive cannot be read or is damaged
+     */
+    public synchronized void scan(Consumer<String> visitor) throws IOException {
+        load();
+        if (blocks.count == 0) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            for (int b = 0; b < blocks.count; b++) {
+                for (String line : inflate(channel, b)) {
+                    visitor.accept(line);
+                }
+            }
+        }
+    }
+
+    /**
+     * Finds the lines of the log that the last archive run archived but did not get
+     * to remove, as of the last lookup
+     * @param log The payment log
+     * @return The lines, or null if the log holds none
+     * @throws IOException If the archive index cannot be read
+     */
+    public synchronized Leftovers getLeftovers(File log) throws IOException {
+        load();
+        if (leftoverLength == 0 || log.length() < leftoverLength
+                || DataFileWatcher.fingerprint(log, leftoverLength) != leftoverFingerprint) {
+            return null;    // the run rewrote the log
+        }
+        return new Leftovers(leftoverLength, leftoverTerm);
+    }
+
+    /**
+     * Moves the payments of the terms before the current one from the log into the
+     * archive; the caller holds the data lock. Lines without a timestamp or a 7-digit
+     * student ID stay in the log. Payments of a term archived before are added as
+     * another run of it.
+     * @param log The payment log
+     * @param currentTerm The current term, from PaymentLedger.termOf(); it and later
+     *                    terms stay in the log
+     * @return The number of payments archived
+     * @throws IOException If archiving fails; the log is then left as it was
+     */
+    public synchronized int archive(File log, int currentTerm) throws IOException {
+        load();
+        if (!log.exists()) {
+            return 0;
+        }
+        File dir = log.getAbsoluteFile().getParentFile();
+        File hot = new File(dir, log.getName() + ".archive");
+        TreeMap<Integer, File> termFiles = new TreeMap<>();
+        Map<Integer, Writer> termWriters = new HashMap<>();
+        Leftovers leftovers = getLeftovers(log);
+        long length = log.length();
+        int[] counts = new int[2];      // archived, dropped
+        try {
+            // Split the log into the lines kept hot and one spill file per completed term
+            long read;
+            try (FileOutputStream stream = new FileOutputStream(hot);
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16)) {
+                read = RecordFile.scanLines(log, 0, length, (line, offset, lineBytes) -> {
+                    int minute = PaymentLedger.parseMinute(line);
+                    int term = minute < 0 ? currentTerm : PaymentLedger.termOf(minute);
+                    if (term >= currentTerm || studentIDOf(line) < 0) {
+                        writer.write(line);
+                        writer.write(System.lineSeparator());
+                    } else if (leftovers != null && offset < leftovers.length) {
+                        counts[1]++;    // archived by a run that did not finish
+                    } else {
+                        Writer termWriter = termWriters.get(term);
+                        if (termWriter == null) {
+                            File termFile = new File(dir, log.getName() + ".term" + term);
+                            termFiles.put(term, termFile);
+                            termWriter = new BufferedWriter(new OutputStreamWriter(
+                                    new FileOutputStream(termFile), StandardCharsets.UTF_8), 1 << 16);
+                            termWriters.put(term, termWriter);
+                        }
+                        termWriter.write(line);
+                        termWriter.write('\n');
+                        counts[0]++;
+                    }
+                });
+                writer.flush();
+                if (read < length) {
+                    // A torn last line stays as it is
+                    try (FileInputStream in = new FileInputStream(log)) {
+                        in.skipNBytes(read);
+                        in.transferTo(stream);
+                    }
+                }
+                stream.getFD().sync();
+            } finally {
+                for (Writer termWriter : termWriters.values()) {
+                    termWriter.close();
+                }
+            }
+            boolean moved = counts[0] > 0 || counts[1] > 0;
+            long checked = moved ? hot.length() - (length - read) : read;
+            if (!moved && currentTerm <= archivedBefore && checked == checkedLength && leftoverLength == 0) {
+                return 0;
+            }
+
+            // Compress each term into a run of blocks after the indexed ones, dropping
+            // any left by an archive run that did not finish
+            Blocks added = new Blocks(16);
+            int[] addedTerms = new int[termFiles.size()];
+            int[] addedStart = new int[termFiles.size() + 1];
+            long end = coveredLength;
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                channel.truncate(end);
+                int run = 0;
+                for (Map.Entry<Integer, File> entry : termFiles.entrySet()) {
+                    end = writeTerm(channel, end, entry.getKey(), entry.getValue(), added);
+                    addedTerms[run] = entry.getKey();
+                    addedStart[++run] = added.count;
+                }
+                channel.force(true);
+            }
+            merge(addedTerms, addedStart, added);
+            coveredLength = end;
+            archivedBefore = Math.max(archivedBefore, currentTerm);
+            checkedLength = checked;
+            leftoverLength = moved ? read : 0;
+            leftoverFingerprint = moved ? DataFileWatcher.fingerprint(log, read) : 0;
+            leftoverTerm = currentTerm;
+            writeIndex();
+
+            if (moved) {
+                Files.move(hot.toPath(), log.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                leftoverLength = 0;
+                leftoverFingerprint = 0;
+                writeIndex();
+            }
+            return counts[0];
+        } finally {
+            hot.delete();
+            for (File termFile : termFiles.values()) {
+                termFile.delete();
+            }
+        }
+    }
+
+    /**
+     * Adds new runs to the index, each after the runs of its term indexed before
+     */
+    private void merge(int[] addedTerms, int[] addedStart, Blocks added) {
+        int runs = terms.length + addedTerms.length;
+        int[] mergedTerms = new int[runs];
+        int[] mergedStart = new int[runs + 1];
+        Blocks merged = new Blocks(blocks.count + added.count);
+        int old = 0;
+        int fresh = 0;
+        for (int r = 0; r < runs; r++) {
+            boolean takeOld = fresh == addedTerms.length || (old < terms.length && terms[old] <= addedTerms[fresh]);
+            Blocks from = takeOld ? blocks : added;
+            int[] starts = takeOld ? runStart : addedStart;
+            int run = takeOld ? old++ : fresh++;
+            mergedTerms[r] = takeOld ? terms[run] : addedTerms[run];
+            for (int b = starts[run]; b < starts[run + 1]; b++) {
+                merged.addFrom(from, b);
+            }
+            mergedStart[r + 1] = merged.count;
+        }
+        terms = mergedTerms;
+        runStart = mergedStart;
+        blocks = merged;
+    }
+
+    /**
+     * Writes the block index; if that fails, the index on disk is read again on next use
+     */
+    private void writeIndex() throws IOException {
+        try {
+            index.write(out -> {
+                out.writeLong(coveredLength);
+                out.writeInt(archivedBefore);
+                out.writeLong(checkedLength);
+                out.writeLong(leftoverLength);
+                out.writeLong(leftoverFingerprint);
+                out.writeInt(leftoverTerm);
+                out.writeInt(terms.length);
+                DataCheckpoint.writeInts(out, terms, terms.length);
+                DataCheckpoint.writeInts(out, runStart, runStart.length);
+                blocks.writeTo(out);
+            });
+        } catch (IOException e) {
+            coveredLength = 0;
+            archivedBefore = 0;
+            checkedLength = 0;
+            leftoverLength = 0;
+            terms = new int[0];
+            runStart = new int[]{0};
+            blocks = new Blocks(0);
+            indexModified = -1;
+            throw e;
+        }
+        indexModified = index.getFile().lastModified();
+        indexLength = index.getFile().length();
+    }
+
+    /**
+     * @return true if the line is a payment of a term before the current one with a
+     *         7-digit student ID, which archive() moves out of the log
+     */
+    private static boolean isArchivable(String line, int currentTerm) {
+        int minute = PaymentLedger.parseMinute(line);
+        return minute >= 0 && PaymentLedger.termOf(minute) < currentTerm && studentIDOf(line) >= 0;
+    }
+
+    /**
+     * Sorts one term's payments by student ID and appends them as compressed blocks
+     * @return The end of the block file
+     */
+    private long writeTerm(FileChannel channel, long end, int term, File termFile, Blocks into) throws IOException {
+        List<String> lines = Files.readAllLines(termFile.toPath(), StandardCharsets.UTF_8);
+        long[] order = new long[lines.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = ((long) studentIDOf(lines.get(i)) << 32) | i;
+        }
+        Arrays.sort(order);
+
+        ByteArrayOutputStream raw = new ByteArrayOutputStream(BLOCK_BYTES + 1024);
+        Deflater deflater = new Deflater();
+        byte[] compressed = new byte[BLOCK_BYTES];
+        int firstID = -1;
+        int lastID = -1;
+        try {
+            for (int i = 0; i <= order.length; i++) {
+                if (i == order.length || raw.size() >= BLOCK_BYTES) {
+                    if (raw.size() == 0) {
+                        break;
+                    }
+                    byte[] bytes = raw.toByteArray();
+                    CRC32 crc = new CRC32();
+                    crc.update(bytes);
+                    deflater.reset();
+                    deflater.setInput(bytes);
+                    deflater.finish();
+                    long offset = end;
+                    while (!deflater.finished()) {
+                        int n = deflater.deflate(compressed);
+                        ByteBuffer chunk = ByteBuffer.wrap(compressed, 0, n);
+                        while (chunk.hasRemaining()) {
+                            end += channel.write(chunk, end);
+                        }
+                    }
+                    into.add(term, firstID, lastID, offset, (int) (end - offset), bytes.length, (int) crc.getValue());
+                    raw.reset();
+                    firstID = -1;
+                    if (i == order.length) {
+                        break;
+                    }
+                }
+                int id = (int) (order[i] >>> 32);
+                if (firstID < 0) {
+                    firstID = id;
+                }
+                lastID = id;
+                raw.write(lines.get((int) order[i]).getBytes(StandardCharsets.UTF_8));
+                raw.write('\n');
+            }
+        } finally {
+            deflater.end();
+        }
+        return end;
+    }
+
+    /**
+     * @return The archived terms, oldest first
+     */
+    public synchronized int[] getTerms() throws IOException {
+        load();
+        return Arrays.stream(terms).distinct().toArray();
+    }
+
+    /**
+     * @return The term that was current when the log was last archived; payments of
+     *         the terms before it that are still in the log were logged since, or have
+     *         no student ID
+     */
+    public synchronized int getArchivedBefore() throws IOException {
+        load();
+        return archivedBefore;
+    }
+
+    /**
+     * @return The length of the log as the last archive run left it; payments of
+     *         completed terms after it were logged since
+     */
+    public synchronized long getCheckedLength() throws IOException {
+        load();
+        return checkedLength;
+    }
+
+    /**
+     * @return The number of compressed blocks
+     */
+    public synchronized int getBlockCount() throws IOException {
+        load();
+        return blocks.count;
+    }
+
+    /**
+     * @return The number of blocks inflated by lookups so far
+     */
+    public synchronized long getBlocksInflated() {
+        return blocksInflated;
+    }
+
+    public File getFile() { return file; }
+
+    /**
+     * Reads the block index, again if another process archived since
+     */
+    private void load() throws IOException {
+        File indexFile = index.getFile();
+        if (!indexFile.exists()) {
+            return;
+        }
+        if (indexFile.lastModified() == indexModified && indexFile.length() == indexLength) {
+            return;
+        }
+        long modified = indexFile.lastModified();
+        long length = indexFile.length();
+        boolean read = index.read(in -> readIndex(in, true));
+        if (!read) {
+            // Written before runs were recorded: one run per term, and nothing left in the log
+            read = new DataCheckpoint(indexFile, 1).read(in -> readIndex(in, false));
+        }
+        if (!read) {
+            // The archived payments are nowhere else, so do not carry on without them
+            throw new IOException("Payment archive index is damaged: " + indexFile);
+        }
+        indexModified = modified;
+        indexLength = length;
+    }
+
+    private void readIndex(DataInputStream in, boolean withRuns) throws IOException {
+        long covered = in.readLong();
+        int before = in.readInt();
+        long checked = withRuns ? in.readLong() : 0;
+        long leftover = withRuns ? in.readLong() : 0;
+        long fingerprint = withRuns ? in.readLong() : 0;
+        int term = withRuns ? in.readInt() : 0;
+        int count = in.readInt();
+        int[] loadedTerms = new int[count];
+        int[] loadedStart = new int[count + 1];
+        DataCheckpoint.readInts(in, loadedTerms, count);
+        DataCheckpoint.readInts(in, loadedStart, count + 1);
+        Blocks loadedBlocks = Blocks.readFrom(in);
+        if (file.length() < covered) {
+            throw new IOException("Payment archive is shorter than its index");
+        }
+        coveredLength = covered;
+        archivedBefore = before;
+        checkedLength = checked;
+        leftoverLength = leftover;
+        leftoverFingerprint = fingerprint;
+        leftoverTerm = term;
+        terms = loadedTerms;
+        runStart = loadedStart;
+        blocks = loadedBlocks;
+    }
+
+    private List<String> inflate(FileChannel channel, int block) throws IOException {
+        ByteBuffer compressed = ByteBuffer.allocate(blocks.compressedLength[block]);
+        long position = blocks.offset[block];
+        while (compressed.hasRemaining()) {
+            if (channel.read(compressed, position + compressed.position()) < 0) {
+                throw new IOException("Payment archive block " + block + " is cut short");
+            }
+        }
+        byte[] raw = new byte[blocks.rawLength[block]];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed.array());
+            int n = 0;
+            while (n < raw.length && !inflater.finished()) {
+                n += inflater.inflate(raw, n, raw.length - n);
+                if (inflater.needsInput() && n < raw.length) {
+                    break;
+                }
+            }
+            CRC32 crc = new CRC32();
+            crc.update(raw, 0, n);
+            if (n != raw.length || (int) crc.getValue() != blocks.crc[block]) {
+                throw new IOException("Payment archive block " + block + " is damaged");
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Payment archive block " + block + " is damaged: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        blocksInflated++;
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < raw.length; i++) {
+            if (raw[i] == '\n') {
+                lines.add(new String(raw, start, i - start, StandardCharsets.UTF_8));
+                start = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    private static int studentIDOf(String line) {
+        int comma = line.lastIndexOf(',');
+        return comma < 0 ? -1 : StudentIdIndex.parse(line.substring(comma + 1).trim());
+    }
+
+    /**
+     * The block index, in parallel arrays: blocks are sorted by term and run, then by ID range
+     */
+    private static class Blocks {
+        int[] term;
+        int[] firstID;
+        int[] lastID;
+        long[] offset;
+        int[] compressedLength;
+        int[] rawLength;
+        int[] crc;
+        int count;
+
+        Blocks(int capacity) {
+            term = new int[capacity];
+            firstID = new int[capacity];
+            lastID = new int[capacity];
+            offset = new long[capacity];
+            compressedLength = new int[capacity];
+            rawLength = new int[capacity];
+            crc = new int[capacity];
+        }
+
+        Blocks copy(int capacity) {
+            Blocks copy = new Blocks(Math.max(capacity, count));
+            System.arraycopy(term, 0, copy.term, 0, count);
+            System.arraycopy(firstID, 0, copy.firstID, 0, count);
+            System.arraycopy(lastID, 0, copy.lastID, 0, count);
+            System.arraycopy(offset, 0, copy.offset, 0, count);
+            System.arraycopy(compressedLength, 0, copy.compressedLength, 0, count);
+            System.arraycopy(rawLength, 0, copy.rawLength, 0, count);
+            System.arraycopy(crc, 0, copy.crc, 0, count);
+            copy.count = count;
+            return copy;
+        }
+
+        void add(int blockTerm, int first, int last, long at, int compressed, int raw, int checksum) {
+            if (count == term.length) {
+                Blocks grown = copy(Math.max(16, count * 2));
+                term = grown.term;
+                firstID = grown.firstID;
+                lastID = grown.lastID;
+                offset = grown.offset;
+                compressedLength = grown.compressedLength;
+                rawLength = grown.rawLength;
+                crc = grown.crc;
+            }
+            term[count] = blockTerm;
+            firstID[count] = first;
+            lastID[count] = last;
+            offset[count] = at;
+            compressedLength[count] = compressed;
+            rawLength[count] = raw;
+            crc[count] = checksum;
+            count++;
+        }
+
+        void addFrom(Blocks other, int b) {
+            add(other.term[b], other.firstID[b], other.lastID[b], other.offset[b], other.compressedLength[b],
+                    other.rawLength[b], other.crc[b]);
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(count);
+            DataCheckpoint.writeInts(out, term, count);
+            DataCheckpoint.writeInts(out, firstID, count);
+            DataCheckpoint.writeInts(out, lastID, count);
+            DataCheckpoint.writeLongs(out, offset, count);
+            DataCheckpoint.writeInts(out, compressedLength, count);
+            DataCheckpoint.writeInts(out, rawLength, count);
+            DataCheckpoint.writeInts(out, crc, count);
+        }
+
+        static Blocks readFrom(DataInputStream in) throws IOException {
+            Blocks blocks = new Blocks(in.readInt());
+            blocks.count = blocks.term.length;
+            DataCheckpoint.readInts(in, blocks.term, blocks.count);
+            DataCheckpoint.readInts(in, blocks.firstID, blocks.count);
+            DataCheckpoint.readInts(in, blocks.lastID, blocks.count);
+            DataCheckpoint.readLongs(in, blocks.offset, blocks.count);
+            DataCheckpoint.readInts(in, blocks.compressedLength, blocks.count);
+            DataCheckpoint.readInts(in, blocks.rawLength, blocks.count);
+            DataCheckpoint.readInts(in, blocks.crc, blocks.count);
+            return blocks;
+        }
+    }
+}
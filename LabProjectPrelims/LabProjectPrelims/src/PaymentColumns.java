@@ -0,0 +1,353 @@
+import java.io.*;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Column view of all payments, archived and in the log, for finance reports. Each
+ * payment is a row of primitive columns: the minute it was made, its amount in
+ * centavos, its channel as a number into a dictionary of channel names, and its
+ * student ID. A report is a group-by over the rows in a time range, split into
+ * row ranges summed on the fork-join pool, so no line is parsed again.
+ *
+ * The view is built on first use and follows the log's tail like PaymentLogIndex;
+ * when the log shrinks (e.g. completed terms were archived) it is built again.
+ */
+public class PaymentColumns {
+
+    /** What to total payments by */
+    public enum GroupBy { CHANNEL, DAY, TERM }
+
+    // Rows summed by one fork-join task without splitting further
+    private static final int ROWS_PER_TASK = 1 << 16;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final File log;
+    private final PaymentArchive archive;
+
+    private int[] minutes = new int[1024];
+    private long[] centavos = new long[1024];
+    private int[] channels = new int[1024];
+    private int[] studentIDs = new int[1024];      // -1 for payments without one
+    private int rows;
+    private int minMinute = Integer.MAX_VALUE;
+    private int maxMinute = Integer.MIN_VALUE;
+
+    private final Map<String, Integer> channelCodes = new HashMap<>();
+    private String[] channelNames = new String[0];
+
+    private long coveredLength = -1;
+    private int archivedBlocks;
+    private PaymentArchive.Leftovers leftovers;     // log lines already archived, or null
+    private long unreadableLines;
+
+    /**
+     * Creates an empty view; it is filled on first use
+     * @param log The payment log
+     * @param archive The archive of completed terms, or null if there is none
+     */
+    public PaymentColumns(File log, PaymentArchive archive) {
+        this.log = log;
+        this.archive = archive;
+    }
+
+    /**
+     * Totals the payments made in a time range
+     * @param from The earliest payment time, inclusive
+     * @param to The latest payment time, inclusive
+     * @param by What to total by
+     * @return One total per channel (by name), day or term (in time order) with payments
+     * @throws IOException If the log or the archive cannot be read
+     */
+    public List<Total> summarize(LocalDateTime from, LocalDateTime to, GroupBy by) throws IOException {
+        Snapshot snapshot = snapshot();
+        int fromMinute = PaymentLedger.minuteOf(from);
+        int toMinute = PaymentLedger.minuteOf(to);
+        List<Total> totals = new ArrayList<>();
+        if (snapshot.rows == 0 || fromMinute > toMinute) {
+            return totals;
+        }
+
+        // Dense group numbers: channel codes, days from the first day, or terms from the first term
+        int firstDay = Math.floorDiv(Math.max(fromMinute, snapshot.minMinute), MINUTES_PER_DAY);
+        int lastDay = Math.floorDiv(Math.min(toMinute, snapshot.maxMinute), MINUTES_PER_DAY);
+        if (firstDay > lastDay) {
+            return totals;
+        }
+        int[] groupOfDay = null;
+        int groups;
+        if (by == GroupBy.CHANNEL) {
+            groups = snapshot.channelNames.length;
+        } else if (by == GroupBy.DAY) {
+            groups = lastDay - firstDay + 1;
+        } else {
+            int firstTerm = PaymentLedger.termOf(LocalDate.ofEpochDay(firstDay));
+            groupOfDay = new int[lastDay - firstDay + 1];
+            for (int day = firstDay; day <= lastDay; day++) {
+                groupOfDay[day - firstDay] = PaymentLedger.termOf(LocalDate.ofEpochDay(day)) - firstTerm;
+            }
+            groups = groupOfDay[groupOfDay.length - 1] + 1;
+        }
+
+        GroupTask task = new GroupTask(snapshot, 0, snapshot.rows, fromMinute, toMinute, by, firstDay,
+                groupOfDay, groups);
+        long[][] sums = ForkJoinPool.commonPool().invoke(task);
+        for (int g = 0; g < groups; g++) {
+            if (sums[0][g] == 0) {
+                continue;
+            }
+            String key;
+            if (by == GroupBy.CHANNEL) {
+                key = snapshot.channelNames[g];
+            } else if (by == GroupBy.DAY) {
+                key = LocalDate.ofEpochDay(firstDay + g).toString();
+            } else {
+                key = PaymentLedger.termLabel(PaymentLedger.termOf(LocalDate.ofEpochDay(firstDay)) + g);
+            }
+            totals.add(new Total(key, sums[0][g], sums[1][g]));
+        }
+        if (by == GroupBy.CHANNEL) {
+            totals.sort(Comparator.comparing(Total::getKey, String.CASE_INSENSITIVE_ORDER));
+        }
+        return totals;
+    }
+
+    /**
+     * Reads the lines appended since the last use now, rather than on the next report
+     * @throws IOException If the log or the archive cannot be read
+     */
+    public synchronized void refresh() throws IOException {
+        catchUp();
+    }
+
+    /**
+     * @return The number of payments in the view
+     */
+    public synchronized int size() {
+        return rows;
+    }
+
+    /**
+     * @return Lines skipped because their date or amount could not be read
+     */
+    public synchronized long getUnreadableLines() {
+        return unreadableLines;
+    }
+
+    /**
+     * Adds one payment as a row
+     * @param minute The minute it was made, from PaymentLedger.minuteOf()
+     * @param channel The channel name
+     * @param amount The amount in centavos
+     * @param studentID The student ID, or -1
+     */
+    synchronized void add(int minute, String channel, long amount, int studentID) {
+        if (rows == minutes.length) {
+            int capacity = rows * 2;
+            minutes = Arrays.copyOf(minutes, capacity);
+            centavos = Arrays.copyOf(centavos, capacity);
+            channels = Arrays.copyOf(channels, capacity);
+            studentIDs = Arrays.copyOf(studentIDs, capacity);
+        }
+        Integer code = channelCodes.get(channel);
+        if (code == null) {
+            code = channelNames.length;
+            channelCodes.put(channel, code);
+            channelNames = Arrays.copyOf(channelNames, code + 1);
+            channelNames[code] = channel;
+        }
+        minMinute = Math.min(minMinute, minute);
+        maxMinute = Math.max(maxMinute, minute);
+        minutes[rows] = minute;
+        centavos[rows] = amount;
+        channels[rows] = code;
+        studentIDs[rows] = studentID;
+        rows++;
+    }
+
+    private synchronized Snapshot snapshot() throws IOException {
+        catchUp();
+        return new Snapshot(minutes, centavos, channels, studentIDs, rows, channelNames, minMinute, maxMinute);
+    }
+
+    /**
+     * Reads the complete lines appended to the log since the last call, or the
+     * archive and the whole log if the log shrank or was never read
+     */
+    private void catchUp() throws IOException {
+        long length = log.exists() ? log.length() : 0;
+        int blocks = archive == null ? 0 : archive.getBlockCount();
+        if (coveredLength < 0 || length < coveredLength || blocks != archivedBlocks) {
+            // New arrays, so reports still running on the old ones are not disturbed
+            minutes = new int[1024];
+            centavos = new long[1024];
+            channels = new int[1024];
+            studentIDs = new int[1024];
+            rows = 0;
+            minMinute = Integer.MAX_VALUE;
+            maxMinute = Integer.MIN_VALUE;
+            coveredLength = 0;
+            unreadableLines = 0;
+            archivedBlocks = blocks;
+            leftovers = archive == null ? null : archive.getLeftovers(log);
+            if (archive != null) {
+                archive.scan(line -> addLine(line, -1));
+            }
+        }
+        if (length == coveredLength) {
+            return;
+        }
+        // A torn last line is read again once it is complete
+        coveredLength = RecordFile.scanLines(log, coveredLength, length, (line, offset, lineBytes) -> addLine(line, offset));
+    }
+
+    /**
+     * @param offset Where the line starts in the log, or -1 for an archived line
+     */
+    private void addLine(String line, long offset) {
+        int minute = PaymentLedger.parseMinute(line);
+        PaymentTransaction payment = minute < 0 ? null : PaymentTransaction.parse(line);
+        long amount = payment == null ? -1 : PaymentTransaction.parseCentavos(payment.getAmount());
+        if (amount < 0) {
+            if (!line.trim().isEmpty()) {
+                unreadableLines++;
+            }
+            return;
+        }
+        if (offset >= 0 && leftovers != null && leftovers.contains(line, offset)) {
+            return;     // left in the log by an archive run that did not finish
+        }
+        int studentID = payment.getStudentID() == null ? -1 : StudentIdIndex.parse(payment.getStudentID());
+        add(minute, payment.getChannel(), amount, studentID);
+    }
+
+    /**
+     * The columns as of one report; rows are only ever added past its row count
+     */
+    private static class Snapshot {
+        final int[] minutes;
+        final long[] centavos;
+        final int[] channels;
+        final int[] studentIDs;
+        final int rows;
+        final String[] channelNames;
+        final int minMinute;
+        final int maxMinute;
+
+        Snapshot(int[] minutes, long[] centavos, int[] channels, int[] studentIDs, int rows, String[] channelNames,
+                 int minMinute, int maxMinute) {
+            this.minutes = minutes;
+            this.centavos = centavos;
+            this.channels = channels;
+            this.studentIDs = studentIDs;
+            this.rows = rows;
+            this.channelNames = channelNames;
+            this.minMinute = minMinute;
+            this.maxMinute = maxMinute;
+        }
+    }
+
+    /**
+     * Counts and sums a range of rows by group, splitting it in halves for the pool
+     * @return {counts, centavos}, indexed by group
+     */
+    private static class GroupTask extends RecursiveTask<long[][]> {
+        private static final long serialVersionUID = 1L;
+
+        private final Snapshot columns;
+        private final int from;
+        private final int to;
+        private final int fromMinute;
+        private final int toMinute;
+        private final GroupBy by;
+        private final int firstDay;
+        private final int[] groupOfDay;
+        private final int groups;
+
+        GroupTask(Snapshot columns, int from, int to, int fromMinute, int toMinute, GroupBy by, int firstDay,
+                  int[] groupOfDay, int groups) {
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+            this.fromMinute = fromMinute;
+            this.toMinute = toMinute;
+            this.by = by;
+            this.firstDay = firstDay;
+            this.groupOfDay = groupOfDay;
+            this.groups = groups;
+        }
+
+        @Override
+        protected long[][] compute() {
+            if (to - from > ROWS_PER_TASK) {
+                int middle = (from + to) >>> 1;
+                GroupTask left = new GroupTask(columns, from, middle, fromMinute, toMinute, by, firstDay, groupOfDay, groups);
+                GroupTask right = new GroupTask(columns, middle, to, fromMinute, toMinute, by, firstDay, groupOfDay, groups);
+                left.fork();
+                long[][] sums = right.compute();
+                long[][] other = left.join();
+                for (int g = 0; g < groups; g++) {
+                    sums[0][g] += other[0][g];
+                    sums[1][g] += other[1][g];
+                }
+                return sums;
+            }
+            long[] counts = new long[groups];
+            long[] amounts = new long[groups];
+            int[] minutes = columns.minutes;
+            long[] centavos = columns.centavos;
+            int[] channels = columns.channels;
+            for (int i = from; i < to; i++) {
+                int minute = minutes[i];
+                if (minute < fromMinute || minute > toMinute) {
+                    continue;
+                }
+                int group;
+                if (by == GroupBy.CHANNEL) {
+                    group = channels[i];
+                } else if (by == GroupBy.DAY) {
+                    group = minute / MINUTES_PER_DAY - firstDay;
+                } else {
+                    group = groupOfDay[minute / MINUTES_PER_DAY - firstDay];
+                }
+                counts[group]++;
+                amounts[group] += centavos[i];
+            }
+            return new long[][]{counts, amounts};
+        }
+    }
+
+    /**
+     * The payments of one group of a report
+     */
+    public static class Total {
+        private final String key;
+        private final long count;
+        private final long centavos;
+
+        public Total(String key, long count, long centavos) {
+            this.key = key;
+            this.count = count;
+            this.centavos = centavos;
+        }
+
+        // Getters
+        public String getKey() { return key; }
+        public long getCount() { return count; }
+        public long getCentavos() { return centavos; }
+
+        /**
+         * @return The total as shown in the portal, e.g. "P 7,000.00"
+         */
+        public String getAmount() {
+            return String.format("P %,d.%02d", centavos / 100, centavos % 100);
+        }
+
+        @Override
+        public String toString() {
+            return key + ": " + count + " payments, " + getAmount();
+        }
+    }
+}
@@ -0,0 +1,242 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Client for the card payment gateway. Charges are sent asynchronously over one shared
+ * HttpClient, so its connections are reused and no thread waits for a reply. Each charge
+ * carries an idempotency key that stays the same across retries, so a retry after a lost
+ * reply cannot charge twice. Failed attempts (timeouts, connection errors, 5xx and 429
+ * replies) are retried with backoff; declines are not. Every channel has its own timeout
+ * and circuit breaker: after BREAKER_FAILURES failures in a row the channel fails fast
+ * for a while (10 s by default), then lets one trial charge through.
+ *
+ * The gateway takes POST /charges with a form body (channel, studentID, amount) and an
+ * Idempotency-Key header, and answers 200 "approved,&lt;reference&gt;" or 402 "declined,&lt;reason&gt;".
+ */
+public class PaymentGateway {
+
+    public static final Duration DEFAULT_TIMEOUT = Duration.ofSeconds(5);
+    public static final int DEFAULT_MAX_ATTEMPTS = 3;
+    static final int BREAKER_FAILURES = 5;
+    private static final long BACKOFF_MILLIS = 50;
+
+    /**
+     * An approved charge
+     */
+    public static class Result {
+        private final String reference;
+        private final int attempts;
+
+        Result(String reference, int attempts) {
+            this.reference = reference;
+            this.attempts = attempts;
+        }
+
+        public String getReference() { return reference; }
+        public int getAttempts() { return attempts; }
+    }
+
+    /**
+     * The gateway refused the charge; retrying will not help
+     */
+    public static class DeclinedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public DeclinedException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The channel's circuit breaker is open, so the charge was not sent
+     */
+    public static class UnavailableException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public UnavailableException(String message) {
+            super(message);
+        }
+    }
+
+    // A failed attempt that may succeed if sent again
+    private static class RetryableException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        RetryableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private final URI chargesUri;
+    private final HttpClient client;
+    private final int maxAttempts;
+    private final Map<String, Duration> timeouts = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private volatile long breakerOpenMillis = 10_000;
+
+    /**
+     * Creates a client
+     * @param baseUri The gateway, e.g. http://127.0.0.1:8080/
+     * @param maxAttempts How many times a charge is sent before giving up
+     */
+    public PaymentGateway(URI baseUri, int maxAttempts) {
+        this.chargesUri = baseUri.resolve("charges");
+        this.maxAttempts = maxAttempts;
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(DEFAULT_TIMEOUT)
+                .build();
+    }
+
+    /**
+     * Sets how long one attempt on a channel may take
+     * @param channel The payment channel
+     * @param timeout The timeout
+     */
+    public void setTimeout(String channel, Duration timeout) {
+        timeouts.put(channel, timeout);
+    }
+
+    /**
+     * Sets how long an open circuit breaker fails charges before letting a trial through
+     * @param openTime The time
+     */
+    public void setBreakerOpenTime(Duration openTime) {
+        breakerOpenMillis = openTime.toMillis();
+    }
+
+    /**
+     * Charges a payment
+     * @param channel The payment channel
+     * @param studentID The paying student
+     * @param amount The amount
+     * @param idempotencyKey Identifies the payment; sending it again returns the first outcome
+     * @return Completes with the approved charge, or fails with DeclinedException,
+     *         UnavailableException, or IOException once all attempts failed
+     */
+    public CompletableFuture<Result> charge(String channel, String studentID, double amount, String idempotencyKey) {
+        String body = "channel=" + URLEncoder.encode(channel, StandardCharsets.UTF_8)
+                + "&studentID=" + URLEncoder.encode(studentID, StandardCharsets.UTF_8)
+                + "&amount=" + String.format("%.2f", amount);
+        HttpRequest request = HttpRequest.newBuilder(chargesUri)
+                .timeout(timeouts.getOrDefault(channel, DEFAULT_TIMEOUT))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("Idempotency-Key", idempotencyKey)
+                .POST(HttpRequest.BodyPublishers.ofString(body))
+                .build();
+        return attempt(request, getBreaker(channel), channel, 1);
+    }
+
+    private CompletableFuture<Result> attempt(HttpRequest request, CircuitBreaker breaker, String channel, int attempt) {
+        if (!breaker.allow()) {
+            return CompletableFuture.failedFuture(
+                    new UnavailableException("The " + channel + " gateway is unavailable, please try again later"));
+        }
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                .handle((response, error) -> {
+                    if (error != null) {
+                        Throwable cause = error instanceof CompletionException && error.getCause() != null
+                                ? error.getCause() : error;
+                        breaker.failure();
+                        throw new CompletionException(new RetryableException("Gateway not reachable: " + cause, cause));
+                    }
+                    String reply = response.body();
+                    int status = response.statusCode();
+                    if (status == 200 && reply.startsWith("approved,")) {
+                        breaker.success();
+                        return new Result(reply.substring("approved,".length()), attempt);
+                    }
+                    if (status == 402) {
+                        breaker.success();
+                        throw new CompletionException(new DeclinedException(
+                                "Declined: " + reply.substring(reply.indexOf(',') + 1)));
+                    }
+                    breaker.failure();
+                    IOException failure = new IOException("Gateway answered " + status);
+                    if (status >= 500 || status == 429 || status == 409) {
+                        failure = new RetryableException(failure.getMessage(), null);
+                    }
+                    throw new CompletionException(failure);
+                })
+                .handle((result, error) -> {
+                    if (error == null) {
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    Throwable cause = error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error;
+                    if (!(cause instanceof RetryableException) || attempt >= maxAttempts) {
+                        return CompletableFuture.<Result>failedFuture(cause);
+                    }
+                    // Exponential backoff with jitter, without holding a thread while waiting
+                    long delay = (BACKOFF_MILLIS << (attempt - 1)) + ThreadLocalRandom.current().nextLong(BACKOFF_MILLIS);
+                    return CompletableFuture.supplyAsync(() -> null,
+                            CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS))
+                            .thenCompose(ignored -> attempt(request, breaker, channel, attempt + 1));
+                })
+                .thenCompose(next -> next);
+    }
+
+    private CircuitBreaker getBreaker(String channel) {
+        return breakers.computeIfAbsent(channel, ignored -> new CircuitBreaker());
+    }
+
+    /**
+     * @param channel The payment channel
+     * @return true if charges on the channel are currently failing fast
+     */
+    public boolean isOpen(String channel) {
+        return getBreaker(channel).isOpen();
+    }
+
+    /**
+     * Closed while charges succeed; open after BREAKER_FAILURES failures in a row, when
+     * every charge fails fast; half-open once the open time passed, when one trial is
+     * let through and closes or reopens the breaker
+     */
+    private class CircuitBreaker {
+        private int failures;
+        private long openedAt = -1;
+        private boolean trialInFlight;
+
+        synchronized boolean allow() {
+            if (openedAt < 0) {
+                return true;
+            }
+            if (trialInFlight || System.currentTimeMillis() - openedAt < breakerOpenMillis) {
+                return false;
+            }
+            trialInFlight = true;
+            return true;
+        }
+
+        synchronized void success() {
+            failures = 0;
+            openedAt = -1;
+            trialInFlight = false;
+        }
+
+        synchronized void failure() {
+            failures++;
+            if (trialInFlight || failures >= BREAKER_FAILURES) {
+                openedAt = System.currentTimeMillis();
+            }
+            trialInFlight = false;
+        }
+
+        synchronized boolean isOpen() {
+            return openedAt >= 0;
+        }
+    }
+}
@@ -0,0 +1,686 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.*;
+
+/**
+ * Time-range index over the payment log, partitioned by academic term. Each term
+ * is a segment holding the timestamps of its payments, sorted, with the offset of
+ * each payment's line. A query finds the segments its range touches by binary
+ * search over the terms, then the range within each segment by binary search over
+ * the timestamps, and reads only those lines; years of history cost nothing but
+ * the index.
+ *
+ * The log itself stays one append-only file, shared with every other reader and
+ * appended to by other portal processes; the index follows its tail like
+ * PaymentLogIndex and is saved in the checkpoint.
+ */
+public class PaymentLedger {
+
+    /** Receives the payments visited by forEach() */
+    public interface PaymentVisitor {
+        void visit(int minute, long centavos, int studentID) throws IOException;
+    }
+
+    // Terms: the first semester runs August to December, the second January to May,
+    // the summer term June and July. A term number is schoolYearStart * 3 + term.
+    private static final String[] TERM_NAMES = {"FIRST SEMESTER", "SECOND SEMESTER", "SUMMER"};
+    private static final String REFERENCE_SUFFIX = " Enrollme.";
+
+    static final DateTimeFormatter TIMESTAMP_FORMAT = DateTimeFormatter.ofPattern("MM/dd/yyyy hh:mm a", Locale.US);
+
+    // The optional idempotency key field, just before the student ID so readers that
+    // take the last field as the ID, and the amount parser, pass over it
+    private static final String KEY_FIELD = ",idem=";
+    private static final int MAX_KEY_LENGTH = 64;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final File file;
+
+    private int[] terms = new int[0];               // sorted
+    private Segment[] segments = new Segment[0];    // parallel to terms
+    private long coveredLength;
+    private long unreadableLines;
+
+    /**
+     * Creates an empty ledger index; it is filled on first use
+     * @param file The payment log
+     */
+    public PaymentLedger(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Finds the payments made in a time range
+     * @param from The earliest payment time, inclusive
+     * @param to The latest payment time, inclusive
+     * @param channel Only payments through this channel (case-insensitive), or null for all
+     * @return The payments in time order
+     * @throws IOException If the log cannot be read
+     */
+    public synchronized List<PaymentTransaction> query(LocalDateTime from, LocalDateTime to, String channel)
+            throws IOException {
+        return query(from, to, channel, null);
+    }
+
+    /**
+     * Finds the payments made in a time range, without the ones an unfinished archive
+     * run left in the log
+     * @param from The earliest payment time, inclusive
+     * @param to The latest payment time, inclusive
+     * @param channel Only payments through this channel (case-insensitive), or null for all
+     * @param leftovers The lines to leave out, or null
+     * @return The payments in time order
+     * @throws IOException If the log cannot be read
+     */
+    public synchronized List<PaymentTransaction> query(LocalDateTime from, LocalDateTime to, String channel,
+                                                       PaymentArchive.Leftovers leftovers) throws IOException {
+        catchUp();
+        List<PaymentTransaction> result = query(minuteOf(from), minuteOf(to), channel, leftovers);
+        if (result == null) {
+            // Changed behind our back (e.g. edited by hand); read everything again
+            coveredLength = -1;
+            catchUp();
+            result = query(minuteOf(from), minuteOf(to), channel, leftovers);
+        }
+        return result == null ? new ArrayList<>() : result;
+    }
+
+    private List<PaymentTransaction> query(int fromMinute, int toMinute, String channel,
+                                           PaymentArchive.Leftovers leftovers) throws IOException {
+        List<PaymentTransaction> result = new ArrayList<>();
+        if (fromMinute > toMinute) {
+            return result;
+        }
+        int first = lowerBound(terms, terms.length, termOf(fromMinute));
+        int last = termOf(toMinute);
+        try (FileChannel log = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(256);
+            for (int s = first; s < terms.length && terms[s] <= last; s++) {
+                Segment segment = segments[s];
+                segment.sort();
+                int end = lowerBound(segment.minutes, segment.size, toMinute + 1);
+                for (int i = lowerBound(segment.minutes, segment.size, fromMinute); i < end; i++) {
+                    String line = RecordFile.readLine(log, segment.offsets[i], buffer);
+                    if (line == null || parseMinute(line) != segment.minutes[i]) {
+                        return null;
+                    }
+                    if (leftovers != null && leftovers.contains(line, segment.offsets[i])) {
+                        continue;
+                    }
+                    PaymentTransaction payment = PaymentTransaction.parse(line);
+                    if (payment != null && (channel == null || channel.equalsIgnoreCase(payment.getChannel()))) {
+                        result.add(payment);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Visits the payments made through one channel in a time range without holding
+     * them in memory: the segments the range touches give its first and last line,
+     * and the log is read once from the one to the other
+     * @param from The earliest payment time, inclusive
+     * @param to The latest payment time, inclusive
+     * @param channel Only payments through this channel (case-insensitive), or null for all
+     * @param leftovers The lines to leave out, or null
+     * @param visitor Receives each payment's minute, amount in centavos and student ID (-1 if none)
+     * @return The number of payments visited
+     * @throws IOException If the log cannot be read, or the visitor fails
+     */
+    public synchronized long forEach(LocalDateTime from, LocalDateTime to, String channel,
+                                     PaymentArchive.Leftovers leftovers, PaymentVisitor visitor) throws IOException {
+        catchUp();
+        int fromMinute = minuteOf(from);
+        int toMinute = minuteOf(to);
+        long[] range = lineRange(fromMinute, toMinute);
+        if (range == null) {
+            // Changed behind our back (e.g. edited by hand); read everything again
+            coveredLength = -1;
+            catchUp();
+            range = lineRange(fromMinute, toMinute);
+        }
+        if (range == null || range[1] <= range[0]) {
+            return 0;
+        }
+        long end = range[1];
+        long[] visited = {0};
+        RecordFile.scanLines(file, range[0], end, (line, offset, lineBytes) -> {
+            if (offset >= end) {
+                return;     // read along with the last line, but after it
+            }
+            int minute = parseMinute(line);
+            if (minute < fromMinute || minute > toMinute
+                    || (leftovers != null && leftovers.contains(line, offset))) {
+                return;
+            }
+            if (visit(line, minute, channel, visitor)) {
+                visited[0]++;
+            }
+        });
+        return visited[0];
+    }
+
+    /**
+     * Counts the payments of every channel in a time range from the index alone,
+     * without reading the log
+     * @param from The earliest payment time, inclusive
+     * @param to The latest payment time, inclusive
+     * @return The number of payment lines in the range
+     * @throws IOException If the log cannot be read
+     */
+    public synchronized long count(LocalDateTime from, LocalDateTime to) throws IOException {
+        catchUp();
+        int fromMinute = minuteOf(from);
+        int toMinute = minuteOf(to);
+        long count = 0;
+        if (fromMinute > toMinute) {
+            return count;
+        }
+        int lastTerm = termOf(toMinute);
+        for (int s = lowerBound(terms, terms.length, termOf(fromMinute)); s < terms.length && terms[s] <= lastTerm; s++) {
+            Segment segment = segments[s];
+            segment.sort();
+            count += lowerBound(segment.minutes, segment.size, toMinute + 1)
+                    - lowerBound(segment.minutes, segment.size, fromMinute);
+        }
+        return count;
+    }
+
+    /**
+     * @return The offset of the first line in a time range and the offset after the
+     *         last ({0, 0} if there are none), or null if the first is not where the
+     *         index has it
+     */
+    private long[] lineRange(int fromMinute, int toMinute) throws IOException {
+        long first = Long.MAX_VALUE;
+        long last = -1;
+        int firstMinute = -1;
+        if (fromMinute <= toMinute) {
+            int lastTerm = termOf(toMinute);
+            for (int s = lowerBound(terms, terms.length, termOf(fromMinute)); s < terms.length && terms[s] <= lastTerm; s++) {
+                Segment segment = segments[s];
+                segment.sort();
+                int end = lowerBound(segment.minutes, segment.size, toMinute + 1);
+                for (int i = lowerBound(segment.minutes, segment.size, fromMinute); i < end; i++) {
+                    if (segment.offsets[i] < first) {
+                        first = segment.offsets[i];
+                        firstMinute = segment.minutes[i];
+                    }
+                    last = Math.max(last, segment.offsets[i]);
+                }
+            }
+        }
+        if (last < 0) {
+            return new long[]{0, 0};
+        }
+        try (FileChannel log = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(256);
+            String line = RecordFile.readLine(log, first, buffer);
+            if (line == null || parseMinute(line) != firstMinute) {
+                return null;
+            }
+            return new long[]{first, RecordFile.lineEnd(log, last, buffer)};
+        }
+    }
+
+    /**
+     * Hands a payment line to a visitor if it was made through a channel
+     * @param line The payment line
+     * @param minute Its minute, from parseMinute()
+     * @param channel The channel (case-insensitive), or null for all
+     * @param visitor Receives the payment
+     * @return true if the line was visited, false if it is of another channel or unreadable
+     * @throws IOException If the visitor fails
+     */
+    static boolean visit(String line, int minute, String channel, PaymentVisitor visitor) throws IOException {
+        if (channel != null) {
+            // The channel is the second field; other channels are passed over without parsing the line
+            int start = line.indexOf(',') + 1;
+            int end = start == 0 ? -1 : line.indexOf(',', start);
+            if (end < 0 || !line.substring(start, end).trim().equalsIgnoreCase(channel)) {
+                return false;
+            }
+        }
+        PaymentTransaction payment = PaymentTransaction.parse(line);
+        long centavos = payment == null ? -1 : PaymentTransaction.parseCentavos(payment.getAmount());
+        if (centavos < 0 || (channel != null && !channel.equalsIgnoreCase(payment.getChannel()))) {
+            return false;
+        }
+        visitor.visit(minute, centavos, payment.getStudentID() == null ? -1 : StudentIdIndex.parse(payment.getStudentID()));
+        return true;
+    }
+
+    /**
+     * Reads the lines appended since the last use now, rather than on the next query
+     * @throws IOException If the log cannot be read
+     */
+    public synchronized void refresh() throws IOException {
+        catchUp();
+    }
+
+    /**
+     * @return The payment log
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return The number of terms with payments
+     */
+    public synchronized int getSegmentCount() {
+        return terms.length;
+    }
+
+    /**
+     * @return The terms with payments in the log, oldest first
+     */
+    public synchronized int[] getTerms() {
+        return terms.clone();
+    }
+
+    /**
+     * @param term A term
+     * @return The offset of the last line in the log of a payment made before the
+     *         term, or -1 if there is none
+     * @throws IOException If the log cannot be read
+     */
+    public synchronized long lastOffsetBefore(int term) throws IOException {
+        catchUp();
+        long last = -1;
+        for (int s = 0; s < terms.length && terms[s] < term; s++) {
+            Segment segment = segments[s];
+            for (int i = 0; i < segment.size; i++) {
+                last = Math.max(last, segment.offsets[i]);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * @return The number of payments indexed
+     */
+    public synchronized long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size;
+        }
+        return size;
+    }
+
+    /**
+     * @return Lines skipped because their date could not be read
+     */
+    public synchronized long getUnreadableLines() {
+        return unreadableLines;
+    }
+
+    /**
+     * Writes the index to a checkpoint
+     * @param out The checkpoint stream
+     * @throws IOException If the log cannot be read or the checkpoint written
+     */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        catchUp();
+        out.writeLong(coveredLength);
+        out.writeLong(DataFileWatcher.fingerprint(file, coveredLength));
+        out.writeLong(unreadableLines);
+        out.writeInt(terms.length);
+        for (int s = 0; s < terms.length; s++) {
+            Segment segment = segments[s];
+            segment.sort();
+            out.writeInt(terms[s]);
+            out.writeInt(segment.size);
+            DataCheckpoint.writeInts(out, segment.minutes, segment.size);
+            DataCheckpoint.writeLongs(out, segment.offsets, segment.size);
+        }
+    }
+
+    /**
+     * Loads the index from a checkpoint, unless the log no longer starts with the
+     * lines it covered
+     * @param in The checkpoint stream, positioned where writeTo() started
+     * @return true if the index was loaded; the stream is read past it either way
+     * @throws IOException If the checkpoint cannot be read
+     */
+    public synchronized boolean readFrom(DataInputStream in) throws IOException {
+        long length = in.readLong();
+        long fingerprint = in.readLong();
+        long unreadable = in.readLong();
+        int count = in.readInt();
+        int[] loadedTerms = new int[count];
+        Segment[] loadedSegments = new Segment[count];
+        for (int s = 0; s < count; s++) {
+            loadedTerms[s] = in.readInt();
+            Segment segment = new Segment(in.readInt());
+            segment.size = segment.minutes.length;
+            DataCheckpoint.readInts(in, segment.minutes, segment.size);
+            DataCheckpoint.readLongs(in, segment.offsets, segment.size);
+            loadedSegments[s] = segment;
+        }
+        if (file.length() < length || DataFileWatcher.fingerprint(file, length) != fingerprint) {
+            return false;
+        }
+        terms = loadedTerms;
+        segments = loadedSegments;
+        coveredLength = length;
+        unreadableLines = unreadable;
+        return true;
+    }
+
+    /**
+     * Reads the complete lines appended since the last call, or the whole log if
+     * it shrank or was never read
+     */
+    private void catchUp() throws IOException {
+        long length = file.length();
+        if (coveredLength < 0 || length < coveredLength) {
+            terms = new int[0];
+            segments = new Segment[0];
+            coveredLength = 0;
+            unreadableLines = 0;
+        }
+        if (length == coveredLength) {
+            return;
+        }
+        // A torn last line is read again once it is complete
+        coveredLength = RecordFile.scanLines(file, coveredLength, length, (line, offset, lineBytes) -> add(line, offset));
+    }
+
+    private void add(String line, long offset) {
+        int minute = parseMinute(line);
+        if (minute < 0) {
+            if (!line.trim().isEmpty()) {
+                unreadableLines++;
+            }
+            return;
+        }
+        int term = termOf(minute);
+        int s = lowerBound(terms, terms.length, term);
+        if (s == terms.length || terms[s] != term) {
+            terms = insert(terms, s, term);
+            Segment[] grown = new Segment[segments.length + 1];
+            System.arraycopy(segments, 0, grown, 0, s);
+            System.arraycopy(segments, s, grown, s + 1, segments.length - s);
+            grown[s] = new Segment(1024);
+            segments = grown;
+        }
+        segments[s].add(minute, offset);
+    }
+
+    // Terms and timestamps
+
+    /**
+     * @param date A date
+     * @return The number of the academic term the date falls in
+     */
+    public static int termOf(LocalDate date) {
+        int year = date.getYear();
+        int month = date.getMonthValue();
+        if (month >= 8) {
+            return year * 3;
+        }
+        return (year - 1) * 3 + (month <= 5 ? 1 : 2);
+    }
+
+    static int termOf(int minute) {
+        return termOf(LocalDate.ofEpochDay(Math.floorDiv(minute, MINUTES_PER_DAY)));
+    }
+
+    /**
+     * @param term A term number from termOf()
+     * @return The first day of the term
+     */
+    public static LocalDate firstDayOf(int term) {
+        int schoolYear = term / 3;
+        switch (term % 3) {
+            case 0:
+                return LocalDate.of(schoolYear, 8, 1);
+            case 1:
+                return LocalDate.of(schoolYear + 1, 1, 1);
+            default:
+                return LocalDate.of(schoolYear + 1, 6, 1);
+        }
+    }
+
+    /**
+     * @param term A term number from termOf()
+     * @return The term as shown to students, e.g. "FIRST SEMESTER 2025-2026"
+     */
+    public static String termLabel(int term) {
+        int schoolYear = term / 3;
+        return TERM_NAMES[term % 3] + " " + schoolYear + "-" + (schoolYear + 1);
+    }
+
+    /**
+     * @param date The payment date
+     * @return The reference logged with a payment made on that date
+     */
+    public static String referenceFor(LocalDate date) {
+        return termLabel(termOf(date)) + REFERENCE_SUFFIX;
+    }
+
+    /**
+     * @param time When the payment was made
+     * @param channel The payment channel
+     * @param amount The amount paid
+     * @param studentID The paying student
+     * @return The payment as logged, e.g. "09/14/2025 05:35 PM,GCash,FIRST SEMESTER 2025-2026 Tuition,P 7,000.00,2250001"
+     */
+    static String logLine(LocalDateTime time, String channel, double amount, String studentID) {
+        return logLine(time, channel, amount, studentID, null);
+    }
+
+    /**
+     * @param time When the payment was made
+     * @param channel The payment channel
+     * @param amount The amount paid
+     * @param studentID The paying student
+     * @param key The payment's idempotency key, or null
+     * @return The payment as logged, with the key before the student ID, e.g.
+     *         "09/14/2025 05:35 PM,GCash,FIRST SEMESTER 2025-2026 Tuition,P 7,000.00,idem=8f2c01,2250001"
+     */
+    static String logLine(LocalDateTime time, String channel, double amount, String studentID, String key) {
+        return time.format(TIMESTAMP_FORMAT) + "," + channel + "," + referenceFor(time.toLocalDate()) + ","
+                + String.format("P %,.2f", amount) + (key == null ? "," : KEY_FIELD + key + ",") + studentID;
+    }
+
+    /**
+     * @param key A caller's idempotency key
+     * @return true if the key can be logged: 1 to 64 letters, digits, '-', '_', '.' or ':'
+     */
+    public static boolean isValidKey(String key) {
+        if (key == null || key.isEmpty() || key.length() > MAX_KEY_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < key.length(); i++) {
+            char c = key.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                    || c == '-' || c == '_' || c == '.' || c == ':')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param line A payment log line
+     * @return The line's idempotency key, or null if it was logged without one
+     */
+    static String keyOf(String line) {
+        int start = line.indexOf(KEY_FIELD);
+        if (start < 0) {
+            return null;
+        }
+        start += KEY_FIELD.length();
+        int end = line.indexOf(',', start);
+        return end < 0 ? null : line.substring(start, end);
+    }
+
+    /**
+     * @param minute A minute from minuteOf()
+     * @return The start of the minute in milliseconds since 1970, in this computer's time zone
+     */
+    static long millisOf(int minute) {
+        LocalDateTime time = LocalDate.ofEpochDay(minute / MINUTES_PER_DAY).atStartOfDay().plusMinutes(minute % MINUTES_PER_DAY);
+        return time.atZone(java.time.ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // Local time in minutes since 1970, which fits an int until the year 6053
+    static int minuteOf(LocalDateTime time) {
+        long minute = time.toLocalDate().toEpochDay() * MINUTES_PER_DAY + time.getHour() * 60 + time.getMinute();
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, minute));
+    }
+
+    /**
+     * @param minute A minute from minuteOf()
+     * @return The minute as logged, e.g. "09/14/2025 05:35 PM"
+     */
+    static String timestampOf(int minute) {
+        // Called per row of a reconciliation report, so it avoids the formatter
+        LocalDate date = LocalDate.ofEpochDay(minute / MINUTES_PER_DAY);
+        int hour = minute % MINUTES_PER_DAY / 60;
+        StringBuilder text = new StringBuilder(19);
+        appendTwoDigits(text, date.getMonthValue()).append('/');
+        appendTwoDigits(text, date.getDayOfMonth()).append('/').append(date.getYear()).append(' ');
+        appendTwoDigits(text, hour % 12 == 0 ? 12 : hour % 12).append(':');
+        return appendTwoDigits(text, minute % 60).append(hour < 12 ? " AM" : " PM").toString();
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder text, int value) {
+        return text.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+
+    /**
+     * Reads the timestamp at the start of a log line ("09/14/2025 05:35 PM")
+     * @return The minute, or -1 if the line does not start with a timestamp
+     */
+    static int parseMinute(String line) {
+        int comma = line.indexOf(',');
+        return comma < 0 ? -1 : parseTimestamp(line.substring(0, comma).trim());
+    }
+
+    /**
+     * Reads a payment timestamp ("09/14/2025 05:35 PM")
+     * @return The minute, or -1 if the text is not a timestamp
+     */
+    static int parseTimestamp(String text) {
+        if (text.length() == 19 && text.charAt(2) == '/' && text.charAt(5) == '/' && text.charAt(13) == ':') {
+            // The format logPaymentTransaction writes, without the cost of a formatter
+            int month = digits(text, 0, 2);
+            int day = digits(text, 3, 5);
+            int year = digits(text, 6, 10);
+            int hour = digits(text, 11, 13);
+            int minute = digits(text, 14, 16);
+            String half = text.substring(17);
+            if (month >= 1 && month <= 12 && day >= 1 && day <= 31 && year >= 1970 && hour >= 1 && hour <= 12
+                    && minute >= 0 && minute < 60 && (half.equals("AM") || half.equals("PM"))) {
+                try {
+                    return minuteOf(LocalDate.of(year, month, day).atTime(hour % 12 + (half.equals("PM") ? 12 : 0), minute));
+                } catch (DateTimeException e) {
+                    return -1;
+                }
+            }
+        }
+        try {
+            return minuteOf(LocalDateTime.parse(text, TIMESTAMP_FORMAT));
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+
+    private static int digits(String text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int lowerBound(int[] values, int size, int key) {
+        int low = 0;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int[] insert(int[] values, int at, int value) {
+        int[] grown = new int[values.length + 1];
+        System.arraycopy(values, 0, grown, 0, at);
+        System.arraycopy(values, at, grown, at + 1, values.length - at);
+        grown[at] = value;
+        return grown;
+    }
+
+    /**
+     * The payments of one term: timestamps with the offsets of their lines, kept
+     * sorted by time. Payments are logged in time order, so sorting is only needed
+     * after a backdated or out-of-order line.
+     */
+    private static class Segment {
+        int[] minutes;
+        long[] offsets;
+        int size;
+        boolean sorted = true;
+
+        Segment(int capacity) {
+            minutes = new int[capacity];
+            offsets = new long[capacity];
+        }
+
+        void add(int minute, long offset) {
+            if (size == minutes.length) {
+                minutes = Arrays.copyOf(minutes, Math.max(16, size * 2));
+                offsets = Arrays.copyOf(offsets, minutes.length);
+            }
+            if (size > 0 && minute < minutes[size - 1]) {
+                sorted = false;
+            }
+            minutes[size] = minute;
+            offsets[size] = offset;
+            size++;
+        }
+
+        void sort() {
+            if (sorted) {
+                return;
+            }
+            // Sort (minute, position) packed into longs; positions keep equal minutes in log order
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) minutes[i] << 32) | i;
+            }
+            Arrays.sort(order);
+            int[] sortedMinutes = new int[minutes.length];
+            long[] sortedOffsets = new long[offsets.length];
+            for (int i = 0; i < size; i++) {
+                int from = (int) order[i];
+                sortedMinutes[i] = minutes[from];
+                sortedOffsets[i] = offsets[from];
+            }
+            minutes = sortedMinutes;
+            offsets = sortedOffsets;
+            sorted = true;
+        }
+    }
+}
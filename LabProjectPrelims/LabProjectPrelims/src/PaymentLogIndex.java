@@ -0,0 +1,196 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Offsets of each student's lines in paymentLogs.txt, so a student's payments are
+ * read without scanning the whole log. The student ID is the last field of a
+ * payment line. Lines are numbered in log order; each student's lines form a chain
+ * from the student's last line backwards, kept in primitive arrays with the chain
+ * heads in an OffHeapIdIndex, so millions of payments are a few flat arrays rather
+ * than objects. The index follows the log's tail before each use; if the log
+ * shrank or a line no longer belongs to its student, it is built again.
+ *
+ * The index can be saved in a checkpoint and loaded again, after which only the
+ * lines appended since are read.
+ */
+public class PaymentLogIndex {
+
+    private final File file;
+
+    private OffHeapIdIndex lastLine = new OffHeapIdIndex(1024);   // student ID -> line number
+    private long[] lineOffsets = new long[1024];
+    private int[] previousLine = new int[1024];                   // -1 ends a student's chain
+    private int lines;
+    private long coveredLength;
+
+    /**
+     * Creates an empty index; it is filled on first use
+     * @param file The payment log
+     */
+    public PaymentLogIndex(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Reads the payment lines of a student, in log order
+     * @param studentID The 7-digit student ID
+     * @return The lines without their terminators, or null if the ID is not a
+     *         7-digit ID and the log has to be scanned instead
+     * @throws IOException If the log cannot be read
+     */
+    public synchronized List<String> readLines(String studentID) throws IOException {
+        return readLines(studentID, null);
+    }
+
+    /**
+     * Reads the payment lines of a student, in log order, without the ones an
+     * unfinished archive run left in the log
+     * @param studentID The 7-digit student ID
+     * @param leftovers The lines to leave out, or null
+     * @return The lines without their terminators, or null if the ID is not a
+     *         7-digit ID and the log has to be scanned instead
+     * @throws IOException If the log cannot be read
+     */
+    public synchronized List<String> readLines(String studentID, PaymentArchive.Leftovers leftovers)
+            throws IOException {
+        int id = StudentIdIndex.parse(studentID);
+        if (id < 0) {
+            return null;
+        }
+        catchUp();
+        List<String> result = readLines(id, studentID, leftovers);
+        if (result == null) {
+            // Changed behind our back (e.g. edited by hand); read everything again
+            coveredLength = -1;
+            catchUp();
+            result = readLines(id, studentID, leftovers);
+        }
+        return result == null ? new ArrayList<>() : result;
+    }
+
+    /**
+     * Reads the lines appended since the last use now, rather than on the next lookup
+     * @throws IOException If the file cannot be read
+     */
+    public synchronized void refresh() throws IOException {
+        catchUp();
+    }
+
+    /**
+     * @return The number of payment lines indexed
+     */
+    public synchronized int size() {
+        return lines;
+    }
+
+    /**
+     * @return The length of the log read so far
+     */
+    public synchronized long getCoveredLength() {
+        return coveredLength;
+    }
+
+    /**
+     * Writes the index to a checkpoint
+     * @param out The checkpoint stream
+     * @throws IOException If the log cannot be read or the checkpoint written
+     */
+    public synchronized void writeTo(DataOutputStream out) throws IOException {
+        catchUp();
+        out.writeLong(coveredLength);
+        out.writeLong(DataFileWatcher.fingerprint(file, coveredLength));
+        out.writeInt(lines);
+        DataCheckpoint.writeLongs(out, lineOffsets, lines);
+        DataCheckpoint.writeInts(out, previousLine, lines);
+        lastLine.writeTo(out);
+    }
+
+    /**
+     * Loads the index from a checkpoint, unless the log no longer starts with the
+     * lines it covered
+     * @param in The checkpoint stream, positioned where writeTo() started
+     * @return true if the index was loaded; the stream is read past it either way
+     * @throws IOException If the checkpoint cannot be read
+     */
+    public synchronized boolean readFrom(DataInputStream in) throws IOException {
+        long length = in.readLong();
+        long fingerprint = in.readLong();
+        int count = in.readInt();
+        long[] loadedOffsets = new long[Math.max(1024, count)];
+        int[] loadedPrevious = new int[loadedOffsets.length];
+        DataCheckpoint.readLongs(in, loadedOffsets, count);
+        DataCheckpoint.readInts(in, loadedPrevious, count);
+        OffHeapIdIndex loadedLast = OffHeapIdIndex.readFrom(in);
+        if (file.length() < length || DataFileWatcher.fingerprint(file, length) != fingerprint) {
+            return false;
+        }
+        lineOffsets = loadedOffsets;
+        previousLine = loadedPrevious;
+        lastLine = loadedLast;
+        lines = count;
+        coveredLength = length;
+        return true;
+    }
+
+    private List<String> readLines(int id, String studentID, PaymentArchive.Leftovers leftovers) throws IOException {
+        List<String> result = new ArrayList<>();
+        int line = (int) lastLine.get(id);
+        if (line < 0) {
+            return result;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(256);
+            for (; line >= 0; line = previousLine[line]) {
+                String text = RecordFile.readLine(channel, lineOffsets[line], buffer);
+                if (text == null || !studentID.equals(studentIDOf(text))) {
+                    return null;
+                }
+                if (leftovers == null || !leftovers.contains(text, lineOffsets[line])) {
+                    result.add(text);
+                }
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Reads the complete lines appended since the last call, or the whole log if
+     * it shrank or was never read
+     */
+    private void catchUp() throws IOException {
+        long length = file.length();
+        if (coveredLength < 0 || length < coveredLength) {
+            lastLine = new OffHeapIdIndex(1024);
+            coveredLength = 0;
+            lines = 0;
+        }
+        if (length == coveredLength) {
+            return;
+        }
+        // A torn last line is read again once it is complete
+        coveredLength = RecordFile.scanLines(file, coveredLength, length, (line, offset, lineBytes) -> add(line, offset));
+    }
+
+    private void add(String line, long offset) {
+        int id = StudentIdIndex.parse(studentIDOf(line));
+        if (id < 0) {
+            return;
+        }
+        if (lines == lineOffsets.length) {
+            lineOffsets = Arrays.copyOf(lineOffsets, lines * 2);
+            previousLine = Arrays.copyOf(previousLine, lines * 2);
+        }
+        lineOffsets[lines] = offset;
+        previousLine[lines] = (int) lastLine.put(id, lines);
+        lines++;
+    }
+
+    private static String studentIDOf(String line) {
+        int comma = line.lastIndexOf(',');
+        return comma < 0 ? null : line.substring(comma + 1).trim();
+    }
+}
@@ -0,0 +1,295 @@
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Takes payments through stages so the submitting thread never waits on the network or
+ * the disk. submit() validates a payment on the caller's thread; if a gateway is set the
+ * card is charged asynchronously; the payment is then queued, and one writer thread
+ * drains the queue and persists everything waiting with a single durable append; then
+ * each payment's future completes with the transaction as logged. A payment takes its
+ * place in the queue before it is charged, so a full queue fails the future up front
+ * rather than blocking the caller or refusing a payment that was already charged.
+ * With recent payment keys, a payment whose idempotency key was submitted or logged
+ * recently is refused, so sending it twice charges and logs it once. That check only
+ * sees this program; the persister refuses a line whose key another program logged
+ * first, and its payment fails the same way.
+ */
+public class PaymentPipeline {
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final int MAX_BATCH = 1024;
+
+    /**
+     * A payment as entered, before validation
+     */
+    public static class Request {
+        private final String channel;
+        private final String studentID;
+        private final String cardNumber;
+        private final String cvv;
+        private final String expDate;
+        private final String cardHolderName;
+        private final String amountText;
+        private final String idempotencyKey;
+
+        public Request(String channel, String studentID, String cardNumber, String cvv, String expDate,
+                       String cardHolderName, String amountText) {
+            this(channel, studentID, cardNumber, cvv, expDate, cardHolderName, amountText, UUID.randomUUID().toString());
+        }
+
+        /**
+         * Creates a request with the caller's idempotency key; sending the same payment
+         * again with the same key does not log or charge it twice
+         */
+        public Request(String channel, String studentID, String cardNumber, String cvv, String expDate,
+                       String cardHolderName, String amountText, String idempotencyKey) {
+            this.idempotencyKey = idempotencyKey;
+            this.channel = channel;
+            this.studentID = studentID;
+            this.cardNumber = cardNumber;
+            this.cvv = cvv;
+            this.expDate = expDate;
+            this.cardHolderName = cardHolderName;
+            this.amountText = amountText;
+        }
+
+        /**
+         * @return Why the payment cannot be accepted, or null if it is valid
+         */
+        public String validate() {
+            if (cardNumber.replaceAll("\\s", "").length() != 16) {
+                return "Card number must be 16 digits";
+            }
+            if (cvv.length() != 3) {
+                return "CVV must be 3 digits";
+            }
+            if (!expDate.matches("\\d{2}/\\d{2}")) {
+                return "Expiration date must be in MM/YY format";
+            }
+            if (cardHolderName.trim().isEmpty()) {
+                return "Card holder name is required";
+            }
+            try {
+                if (Double.parseDouble(amountText) <= 0) {
+                    return "Amount must be greater than 0";
+                }
+            } catch (NumberFormatException e) {
+                return "Invalid amount format";
+            }
+            if (!PaymentLedger.isValidKey(idempotencyKey)) {
+                return "Invalid payment key";
+            }
+            return null;
+        }
+
+        public String getChannel() { return channel; }
+        public String getStudentID() { return studentID; }
+        public String getIdempotencyKey() { return idempotencyKey; }
+
+        /**
+         * @return The amount to pay; only meaningful once validate() returned null
+         */
+        public double getAmount() {
+            return Double.parseDouble(amountText);
+        }
+    }
+
+    /**
+     * A payment with the same idempotency key was already submitted
+     */
+    public static class DuplicatePaymentException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        public DuplicatePaymentException(String idempotencyKey) {
+            super("Payment " + idempotencyKey + " was already submitted");
+        }
+    }
+
+    private static class Pending {
+        final Request request;
+        final CompletableFuture<PaymentTransaction> done = new CompletableFuture<>();
+
+        Pending(Request request) {
+            this.request = request;
+        }
+    }
+
+    /**
+     * Writes a batch of payment log lines
+     */
+    public interface Persister {
+        /**
+         * @param lines The lines
+         * @return Whether each line was written; false where its key was already logged
+         * @throws IOException If the batch could not be written
+         */
+        boolean[] write(List<String> lines) throws IOException;
+    }
+
+    private final Persister persister;
+    private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final Semaphore places;
+    private final RecentPaymentKeys keys;
+    private volatile PaymentGateway gateway;
+
+    private long batches;
+    private long payments;
+
+    /**
+     * Creates a pipeline that does not check for payments sent twice, and starts its writer thread
+     * @param persister Writes a batch of payment log lines; must return only once they are durable
+     * @param capacity How many payments may wait to be charged or written
+     */
+    public PaymentPipeline(Persister persister, int capacity) {
+        this(persister, null, capacity);
+    }
+
+    /**
+     * Creates a pipeline and starts its writer thread
+     * @param persister Writes a batch of payment log lines; must return only once they are durable
+     * @param keys Keys of recently logged payments, to refuse a payment sent again, or null
+     * @param capacity How many payments may wait to be charged or written
+     */
+    public PaymentPipeline(Persister persister, RecentPaymentKeys keys, int capacity) {
+        this.persister = persister;
+        this.keys = keys;
+        this.places = new Semaphore(capacity);
+        Thread writer = new Thread(this::drain, "PaymentWriter");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Sets the gateway that charges each payment before it is logged
+     * @param gateway The gateway, or null to log payments without charging them
+     */
+    public void setGateway(PaymentGateway gateway) {
+        this.gateway = gateway;
+    }
+
+    /**
+     * Validates a payment, charges it and queues it for writing; never blocks
+     * @param request The payment
+     * @return Completes with the logged transaction once it is on disk, or fails with
+     *         IllegalArgumentException if the payment is invalid, DuplicatePaymentException
+     *         if its key was sent already, RejectedExecutionException if the queue is full,
+     *         or IOException if it was not charged or not written
+     */
+    public CompletableFuture<PaymentTransaction> submit(Request request) {
+        String error = request.validate();
+        if (error != null) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException(error));
+        }
+        if (keys != null && !keys.add(request.idempotencyKey, System.currentTimeMillis())) {
+            return CompletableFuture.failedFuture(new DuplicatePaymentException(request.idempotencyKey));
+        }
+        if (!places.tryAcquire()) {
+            forget(request);
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many payments waiting to be saved"));
+        }
+        Pending pending = new Pending(request);
+        PaymentGateway charger = gateway;
+        if (charger == null) {
+            queue.add(pending);
+            return pending.done;
+        }
+        charger.charge(request.channel, request.studentID, request.getAmount(), request.idempotencyKey)
+                .whenComplete((result, failure) -> {
+                    if (failure == null) {
+                        queue.add(pending);
+                    } else {
+                        places.release();
+                        forget(request);
+                        pending.done.completeExceptionally(failure instanceof CompletionException
+                                && failure.getCause() != null ? failure.getCause() : failure);
+                    }
+                });
+        return pending.done;
+    }
+
+    // A payment that was not logged may be sent again with the same key
+    private void forget(Request request) {
+        if (keys != null) {
+            keys.remove(request.idempotencyKey);
+        }
+    }
+
+    private void drain() {
+        List<Pending> batch = new ArrayList<>();
+        List<String> lines = new ArrayList<>();
+        while (true) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.drainTo(batch, MAX_BATCH - 1);
+            places.release(batch.size());
+
+            // Stamped here rather than at submit, so the log stays in time order
+            LocalDateTime now = LocalDateTime.now();
+            for (Pending pending : batch) {
+                Request request = pending.request;
+                lines.add(PaymentLedger.logLine(now, request.channel, request.getAmount(), request.studentID,
+                        request.idempotencyKey));
+            }
+            try {
+                boolean[] written = persister.write(lines);
+                int logged = 0;
+                for (boolean line : written) {
+                    logged += line ? 1 : 0;
+                }
+                synchronized (this) {
+                    batches++;
+                    payments += logged;
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    Pending pending = batch.get(i);
+                    if (written[i]) {
+                        pending.done.complete(PaymentTransaction.parse(lines.get(i)));
+                    } else {
+                        // Logged by another program first, so the key stays claimed
+                        pending.done.completeExceptionally(new DuplicatePaymentException(pending.request.idempotencyKey));
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                for (Pending pending : batch) {
+                    forget(pending.request);
+                    pending.done.completeExceptionally(e);
+                }
+            }
+            batch.clear();
+            lines.clear();
+        }
+    }
+
+    /**
+     * @return Number of payments waiting to be written
+     */
+    public int getQueued() {
+        return queue.size();
+    }
+
+    /**
+     * @return Number of batches written
+     */
+    public synchronized long getBatches() {
+        return batches;
+    }
+
+    /**
+     * @return Number of payments written
+     */
+    public synchronized long getPayments() {
+        return payments;
+    }
+}
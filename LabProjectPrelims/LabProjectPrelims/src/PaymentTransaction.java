@@ -6,12 +6,89 @@ public class PaymentTransaction {
     private String channel;
     private String reference;
     private String amount;
+    private String studentID;
     
     public PaymentTransaction(String date, String channel, String reference, String amount) {
+        this(date, channel, reference, amount, null);
+    }
+    
+    public PaymentTransaction(String date, String channel, String reference, String amount, String studentID) {
         this.date = date;
         this.channel = channel;
         this.reference = reference;
         this.amount = amount;
+        this.studentID = studentID;
+    }
+    
+    /**
+     * Parses a payment log line: date, channel, reference, amount and student ID.
+     * The amount is written with thousands separators ("P 7,000.00"), so its
+     * comma-separated groups are joined back together.
+     * @param line The line
+     * @return The transaction, or null if the line is not a payment
+     */
+    public static PaymentTransaction parse(String line) {
+        String[] parts = line.split(",");
+        if (parts.length < 4) {
+            return null;
+        }
+        StringBuilder amount = new StringBuilder(parts[3].trim());
+        int next = 4;
+        while (next < parts.length && isDigitGroup(parts[next])) {
+            amount.append(',').append(parts[next]);
+            next++;
+        }
+        String studentID = next < parts.length ? parts[parts.length - 1].trim() : null;
+        return new PaymentTransaction(parts[0].trim(), parts[1].trim(), parts[2].trim(), amount.toString(), studentID);
+    }
+    
+    /**
+     * Reads an amount as logged ("P 7,000.00") in centavos
+     * @param amount The amount
+     * @return The amount in centavos, or -1 if it is not an amount
+     */
+    public static long parseCentavos(String amount) {
+        long pesos = 0;
+        int centavos = -1;
+        int fractionDigits = 0;
+        boolean digits = false;
+        for (int i = 0; i < amount.length(); i++) {
+            char c = amount.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+                if (centavos < 0) {
+                    pesos = pesos * 10 + (c - '0');
+                } else if (fractionDigits++ < 2) {
+                    centavos = centavos * 10 + (c - '0');
+                }
+            } else if (c == '.' && centavos < 0) {
+                centavos = 0;
+            } else if (c != ',' && !(c == 'P' && !digits) && c != ' ') {
+                return -1;
+            }
+        }
+        if (!digits) {
+            return -1;
+        }
+        if (centavos < 0) {
+            centavos = 0;
+        } else if (fractionDigits == 1) {
+            centavos *= 10;
+        }
+        return pesos * 100 + centavos;
+    }
+    
+    // "000" or "500.00": the part of an amount after a thousands separator
+    private static boolean isDigitGroup(String part) {
+        if (part.length() < 3 || (part.length() > 3 && part.charAt(3) != '.')) {
+            return false;
+        }
+        for (int i = 0; i < part.length(); i++) {
+            if (i != 3 && !Character.isDigit(part.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
     }
     
     // Getters
@@ -19,6 +96,7 @@ public class PaymentTransaction {
     public String getChannel() { return channel; }
     public String getReference() { return reference; }
     public String getAmount() { return amount; }
+    public String getStudentID() { return studentID; }
     
     public Object[] toTableRow() {
         return new Object[]{date, channel, reference, amount};
@@ -0,0 +1,2109 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Performance benchmarks for the Student Portal data layer.
+ * Every benchmark works on synthetic data in a temporary directory, so the real
+ * data files are never touched. The "agree"/"DIFFER" lines only sanity-check a
+ * run; FeatureTest is the correctness check.
+ *
+ * Usage: java PerformanceBenchmarks [benchmark...]   (no arguments runs all)
+ */
+public class PerformanceBenchmarks {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("appendWorker")) {
+            runAppendWorker(Integer.parseInt(args[1]), Integer.parseInt(args[2]),
+                    Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("accountWorker")) {
+            runAccountWorker(Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("provisionWorker")) {
+            runProvisionWorker(Integer.parseInt(args[1]), Integer.parseInt(args[2]));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("startupWorker")) {
+            runStartupWorker(args[1], args[2]);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("updateWorker")) {
+            runUpdateWorker(Integer.parseInt(args[1]));
+            return;
+        }
+        Set<String> selected = new HashSet<>(Arrays.asList(args));
+        System.out.println("=== STUDENT PORTAL PERFORMANCE BENCHMARKS ===\n");
+
+        if (selected.isEmpty() || selected.contains("bulkImport")) {
+            benchmarkBulkImport();
+        }
+        if (selected.isEmpty() || selected.contains("journalSearch")) {
+            benchmarkJournalSearch();
+        }
+        if (selected.isEmpty() || selected.contains("nameSearch")) {
+            benchmarkNameSearch();
+        }
+        if (selected.isEmpty() || selected.contains("studentQuery")) {
+            benchmarkStudentQuery();
+        }
+        if (selected.isEmpty() || selected.contains("loginReject")) {
+            benchmarkLoginReject();
+        }
+        if (selected.isEmpty() || selected.contains("recordCache")) {
+            benchmarkRecordCache();
+        }
+        if (selected.isEmpty() || selected.contains("fileWatcher")) {
+            benchmarkFileWatcher();
+        }
+        if (selected.isEmpty() || selected.contains("multiProcess")) {
+            benchmarkMultiProcessAppends();
+        }
+        if (selected.isEmpty() || selected.contains("accountJournal")) {
+            benchmarkAccountJournal();
+        }
+        if (selected.isEmpty() || selected.contains("bulkProvision")) {
+            benchmarkBulkProvision();
+        }
+        if (selected.isEmpty() || selected.contains("recordUpdate")) {
+            benchmarkRecordUpdate();
+        }
+        if (selected.isEmpty() || selected.contains("shardedStore")) {
+            benchmarkShardedStore();
+        }
+        if (selected.isEmpty() || selected.contains("offHeapIndex")) {
+            benchmarkOffHeapIndex();
+        }
+        if (selected.isEmpty() || selected.contains("studentFootprint")) {
+            benchmarkStudentFootprint();
+        }
+        if (selected.isEmpty() || selected.contains("checkpointStartup")) {
+            benchmarkCheckpointStartup();
+        }
+        if (selected.isEmpty() || selected.contains("ledgerQuery")) {
+            benchmarkLedgerQuery();
+        }
+        if (selected.isEmpty() || selected.contains("paymentArchive")) {
+            benchmarkPaymentArchive();
+        }
+        if (selected.isEmpty() || selected.contains("paymentReport")) {
+            benchmarkPaymentReport();
+        }
+        if (selected.isEmpty() || selected.contains("reconcile")) {
+            benchmarkReconcile();
+        }
+        if (selected.isEmpty() || selected.contains("paymentPipeline")) {
+            benchmarkPaymentPipeline();
+        }
+        if (selected.isEmpty() || selected.contains("paymentGateway")) {
+            benchmarkPaymentGateway();
+        }
+        if (selected.isEmpty() || selected.contains("balanceStress")) {
+            benchmarkBalanceStress();
+        }
+        if (selected.isEmpty() || selected.contains("paymentDedupe")) {
+            benchmarkPaymentDedupe();
+        }
+
+        System.out.println("=== BENCHMARKS COMPLETED ===");
+    }
+
+    /**
+     * Imports a 1M-row grade and attendance sheet with about 1% bad rows
+     */
+    private static void benchmarkBulkImport() throws IOException {
+        System.out.println("Bulk import (1,000,000 rows):");
+        File dir = createTempDirectory();
+
+        StudentIdIndex idIndex = new StudentIdIndex();
+        for (int i = 0; i < 50_000; i++) {
+            idIndex.add(2_250_000 + i);
+        }
+
+        File sheet = new File(dir, "sheet.csv");
+        Random random = new Random(42);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(sheet, StandardCharsets.UTF_8), 1 << 16)) {
+            writer.write("# type,studentID,...");
+            writer.newLine();
+            for (int i = 0; i < 1_000_000; i++) {
+                int studentID = 2_250_000 + random.nextInt(50_000);
+                if (i % 100 == 99) {
+                    studentID = 3_000_000 + random.nextInt(1_000); // unknown student
+                }
+                if (i % 10 < 7) {
+                    writer.write("GRADE," + studentID + ",IT " + (100 + random.nextInt(40)) + ",2025-2026-1,"
+                            + (76 + random.nextInt(24)) + "," + (1 + random.nextInt(3)));
+                } else {
+                    writer.write("ATTENDANCE," + studentID + ",IT " + (100 + random.nextInt(40)) + ","
+                            + random.nextInt(40) + "," + "PAL".charAt(random.nextInt(3)));
+                }
+                writer.newLine();
+            }
+        }
+
+        AttendanceStore attendance = new AttendanceStore(new File(dir, "attendanceLog.dat"));
+        BulkImporter importer = new BulkImporter(idIndex, new File(dir, "gradeLogs.txt"), attendance);
+        BulkImporter.ImportReport report = importer.importSheet(sheet);
+        attendance.close();
+
+        long accounted = report.getGradesAccepted() + report.getAttendanceAccepted() + report.getRejected();
+        System.out.println("   " + report.getSummary());
+        System.out.println("   Sheet size: " + (sheet.length() / 1024 / 1024) + " MB, heap used: " + usedHeapMB() + " MB");
+        System.out.println("   Rows accounted for: " + (accounted == report.getRowsRead() ? "YES" : "NO"));
+        System.out.println("   Sample reject: " + (report.getSampleRejects().isEmpty() ? "none" : report.getSampleRejects().get(0)));
+        System.out.println();
+
+        deleteRecursively(dir);
+    }
+
+    /**
+     * Builds a 100k-entry catalog index and replays type-ahead keystrokes against it
+     */
+    private static void benchmarkJournalSearch() {
+        System.out.println("Journal search (100,000 entries):");
+        String[] words = {"computing", "computer", "education", "nursing", "climate", "cordillera", "database",
+                "mathematics", "tourism", "heritage", "engineering", "energy", "accounting", "ethics", "theology",
+                "agriculture", "programming", "design", "systems", "students", "rural", "health", "baguio",
+                "benguet", "philippine", "university", "research", "learning", "management", "community"};
+        Random random = new Random(7);
+        List<JournalEntry> catalog = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            StringBuilder title = new StringBuilder();
+            for (int w = 0; w < 6; w++) {
+                title.append(words[random.nextInt(words.length)]).append(w == 5 ? "" : " ");
+            }
+            title.append(" ").append(Integer.toString(i, 36));
+            catalog.add(new JournalEntry(title.toString(), "Author " + (i % 5000), "Journal " + (i % 300),
+                    "Vol. " + (i % 50), "2020-01", "pp. 1-10", words[random.nextInt(words.length)]));
+        }
+
+        long start = System.nanoTime();
+        JournalSearchIndex index = JournalSearchIndex.build(catalog);
+        long buildMillis = (System.nanoTime() - start) / 1_000_000;
+        System.out.println("   Built index: " + index.getTermCount() + " terms in " + buildMillis + " ms");
+
+        // Each query is typed one character at a time, searching on every keystroke
+        String[] queries = {"computer education", "climate cordillera", "rural health nursing", "database systems design", "c"};
+        List<Long> latencies = new ArrayList<>();
+        for (int round = 0; round < 20; round++) {
+            for (String query : queries) {
+                for (int length = 1; length <= query.length(); length++) {
+                    long keyStart = System.nanoTime();
+                    index.search(query.substring(0, length), 100);
+                    latencies.add(System.nanoTime() - keyStart);
+                }
+            }
+        }
+        // Discard the first round as warm-up
+        List<Long> measured = new ArrayList<>(latencies.subList(latencies.size() / 20, latencies.size()));
+        System.out.println("   Keystrokes: " + measured.size() + " | " + formatLatencies(measured));
+        System.out.println();
+    }
+
+    /**
+     * Builds a name index over a 1M-student roster and replays type-ahead keystrokes
+     */
+    private static void benchmarkNameSearch() {
+        System.out.println("Student name search (1,000,000 students):");
+        List<StudentInfo> roster = createSyntheticRoster(1_000_000);
+
+        long start = System.nanoTime();
+        StudentNameIndex index = StudentNameIndex.build(roster);
+        System.out.println("   Built index in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        // Prefix queries, a two-word query and misspellings that need the trigram index
+        String[] queries = {"madriaga", "santos maria", "dela cruz", "bautsta", "rivra", "villanueva", "gonzales"};
+        List<Long> latencies = new ArrayList<>();
+        for (int round = 0; round < 20; round++) {
+            for (String query : queries) {
+                for (int length = 1; length <= query.length(); length++) {
+                    long keyStart = System.nanoTime();
+                    index.search(query.substring(0, length), 10);
+                    latencies.add(System.nanoTime() - keyStart);
+                }
+            }
+        }
+        List<Long> measured = new ArrayList<>(latencies.subList(latencies.size() / 20, latencies.size()));
+        System.out.println("   Keystrokes: " + measured.size() + " | " + formatLatencies(measured));
+        System.out.println("   'bautsta' -> " + index.search("bautsta", 3).get(0).getLastName());
+        System.out.println();
+    }
+
+    /**
+     * Filters a 1M-student database: load-then-filter, pushed-down scan, and indexed
+     */
+    private static void benchmarkStudentQuery() throws IOException {
+        System.out.println("Student query (1,000,000 students):");
+        File dir = createTempDirectory();
+        File database = new File(dir, "Database.txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(database, StandardCharsets.UTF_8), 1 << 16)) {
+            for (StudentInfo student : createSyntheticRoster(1_000_000)) {
+                writer.write(student.toDatabaseFormat());
+                writer.newLine();
+            }
+        }
+
+        Map<String, StudentQuery> queries = new LinkedHashMap<>();
+        queries.put("last name", new StudentQuery().lastName("rivera"));
+        queries.put("born Jan 2005", new StudentQuery().bornBetween(
+                java.time.LocalDate.of(2005, 1, 1), java.time.LocalDate.of(2005, 1, 31)));
+        queries.put("ID range", new StudentQuery().idBetween(2_500_000, 2_500_999));
+        queries.put("last name + born 2005", new StudentQuery().lastName("Santos").bornBetween(
+                java.time.LocalDate.of(2005, 1, 1), java.time.LocalDate.of(2005, 12, 31)));
+
+        StudentQueryEngine engine = new StudentQueryEngine(database);
+        Map<String, Integer> scanCounts = new HashMap<>();
+        for (int pass = 0; pass < 2; pass++) {
+            String label = pass == 0 ? "scan" : "indexed";
+            if (pass == 1) {
+                long start = System.nanoTime();
+                engine.buildIndexes();
+                System.out.println("   Built indexes in " + (System.nanoTime() - start) / 1_000_000 + " ms");
+            }
+            for (Map.Entry<String, StudentQuery> query : queries.entrySet()) {
+                engine.query(query.getValue()); // warm-up
+                long start = System.nanoTime();
+                int count = engine.query(query.getValue()).size();
+                long micros = (System.nanoTime() - start) / 1_000;
+                if (pass == 0) {
+                    scanCounts.put(query.getKey(), count);
+                }
+                System.out.printf("   %-22s %-8s %-17s %7d rows %9.2f ms%s%n", query.getKey(), label,
+                        engine.explain(query.getValue()), count, micros / 1000.0,
+                        count == scanCounts.get(query.getKey()) ? "" : "  MISMATCH");
+            }
+        }
+
+        // The old way: build every StudentInfo, then filter in the caller
+        long start = System.nanoTime();
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new FileReader(database, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 6) {
+                    StudentInfo student = new StudentInfo(parts[0].trim(), parts[1].trim(), parts[2].trim(),
+                            parts[3].trim(), parts[4].trim(), parts[5].trim());
+                    if (student.getLastName().equalsIgnoreCase("rivera")) {
+                        count++;
+                    }
+                }
+            }
+        }
+        System.out.printf("   %-22s %-8s %-17s %7d rows %9.2f ms%n", "last name", "load all", "split + filter",
+                count, (System.nanoTime() - start) / 1e6);
+        System.out.println();
+
+        deleteRecursively(dir);
+    }
+
+    /**
+     * Login attempts with unknown IDs against a 100k-student database: full scan
+     * versus the Bloom filter check
+     */
+    private static void benchmarkLoginReject() throws IOException {
+        System.out.println("Unknown-ID login rejection (100,000 students):");
+        File dir = createTempDirectory();
+        File database = new File(dir, "Database.txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(database, StandardCharsets.UTF_8), 1 << 16)) {
+            for (StudentInfo student : createSyntheticRoster(100_000)) {
+                writer.write(student.toDatabaseFormat());
+                writer.newLine();
+            }
+        }
+
+        long start = System.nanoTime();
+        StudentIdBloomFilter filter = StudentIdBloomFilter.load(database);
+        System.out.println("   Built filter in " + (System.nanoTime() - start) / 1_000_000 + " ms: "
+                + filter.getSizeInBytes() / 1024 + " KB, " + filter.getHashCount() + " hashes");
+
+        // Unknown IDs: everything outside the roster's 2000000..2099999 range
+        Random random = new Random(5);
+        int attempts = 100_000;
+        int passed = 0;
+        start = System.nanoTime();
+        for (int i = 0; i < attempts; i++) {
+            if (filter.mightContain(String.valueOf(3_000_000 + random.nextInt(6_000_000)))) {
+                passed++;
+            }
+        }
+        double filterMicros = (System.nanoTime() - start) / 1e3 / attempts;
+        System.out.printf("   Filter: %.3f us per unknown ID, %d of %d passed (false-positive rate %.2f%%)%n",
+                filterMicros, passed, attempts, passed * 100.0 / attempts);
+
+        // What each of those attempts cost before: a full scan of the database
+        int scans = 20;
+        start = System.nanoTime();
+        for (int i = 0; i < scans; i++) {
+            scanForID(database, String.valueOf(3_000_000 + random.nextInt(6_000_000)));
+        }
+        double scanMicros = (System.nanoTime() - start) / 1e3 / scans;
+        System.out.printf("   Full scan: %.1f us per unknown ID, %.0fx slower%n", scanMicros, scanMicros / filterMicros);
+
+        int known = 0;
+        for (int i = 0; i < 10_000; i++) {
+            if (filter.mightContain(String.valueOf(2_000_000 + i * 10))) {
+                known++;
+            }
+        }
+        System.out.println("   Known IDs passed: " + known + " of 10000");
+        System.out.println();
+
+        deleteRecursively(dir);
+    }
+
+    /**
+     * Portal opens (student record plus payment history) through the record caches,
+     * counting how often the data files are actually read
+     */
+    private static void benchmarkRecordCache() throws IOException {
+        System.out.println("Record cache (20,000 students, 100,000 payments):");
+        File dir = createTempDirectory();
+        File database = new File(dir, "Database.txt");
+        File payments = new File(dir, "paymentLogs.txt");
+        List<StudentInfo> roster = createSyntheticRoster(20_000);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(database, StandardCharsets.UTF_8), 1 << 16)) {
+            for (StudentInfo student : roster) {
+                writer.write(student.toDatabaseFormat());
+                writer.newLine();
+            }
+        }
+        Random random = new Random(3);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(payments, StandardCharsets.UTF_8), 1 << 16)) {
+            for (int i = 0; i < 100_000; i++) {
+                writer.write("09/14/2025 05:35 PM,GCash,FIRST SEMESTER 2025-2026 Enrollme.,P 1,000.00,"
+                        + (2_000_000 + random.nextInt(roster.size())));
+                writer.newLine();
+            }
+        }
+
+        long[] fileReads = new long[1];
+        RecordCache<String, StudentInfo> students = new RecordCache<>(database, 64 * 1024, student -> 300);
+        RecordCache<String, List<PaymentTransaction>> ledger = new RecordCache<>(payments, 512 * 1024,
+                transactions -> 64 + 250L * transactions.size());
+        java.util.function.Function<String, StudentInfo> readStudent = id -> {
+            fileReads[0]++;
+            return readStudentRecord(database, id);
+        };
+        java.util.function.Function<String, List<PaymentTransaction>> readPayments = id -> {
+            fileReads[0]++;
+            return readPaymentRecords(payments, id);
+        };
+
+        // A working set of 200 students opening the portal again and again
+        long start = System.nanoTime();
+        for (int i = 0; i < 200; i++) {
+            String id = String.valueOf(2_000_000 + i * 97);
+            students.get(id, readStudent);
+            ledger.get(id, readPayments);
+        }
+        double firstMillis = (System.nanoTime() - start) / 1e6 / 200;
+        long readsBefore = fileReads[0];
+        start = System.nanoTime();
+        for (int round = 0; round < 50; round++) {
+            for (int i = 0; i < 200; i++) {
+                String id = String.valueOf(2_000_000 + i * 97);
+                students.get(id, readStudent);
+                ledger.get(id, readPayments);
+            }
+        }
+        double repeatMicros = (System.nanoTime() - start) / 1e3 / 10_000;
+        System.out.printf("   First open: %.2f ms; repeat open: %.2f us with %d file reads over 10000 opens%n",
+                firstMillis, repeatMicros, fileReads[0] - readsBefore);
+
+        // A scan over more students than fit in the budget forces evictions
+        for (int i = 0; i < 600; i++) {
+            students.get(String.valueOf(2_000_000 + i), readStudent);
+        }
+        System.out.println("   Students: " + students.getStats());
+        System.out.println("   Payments: " + ledger.getStats());
+
+        // An append by another program invalidates the cache
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(payments, true))) {
+            writer.write("09/15/2025 09:00 AM,GCash,FIRST SEMESTER 2025-2026 Enrollme.,P 500.00,2000000");
+            writer.newLine();
+        }
+        int count = ledger.get("2000000", readPayments).size();
+        System.out.println("   After external append: " + ledger.getInvalidations() + " invalidation(s), student 2000000 has "
+                + count + " payments (" + readPaymentRecords(payments, "2000000").size() + " in file)");
+        System.out.println();
+
+        deleteRecursively(dir);
+    }
+
+    /**
+     * Appends to a 1M-line file from "another program" and measures how long the
+     * watcher takes to deliver just the new lines, then rewrites the file
+     */
+    private static void benchmarkFileWatcher() throws Exception {
+        System.out.println("File watcher (1,000,000-line database):");
+        File dir = createTempDirectory();
+        File database = new File(dir, "Database.txt");
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(database, StandardCharsets.UTF_8), 1 << 16)) {
+            for (StudentInfo student : createSyntheticRoster(1_000_000)) {
+                writer.write(student.toDatabaseFormat());
+                writer.newLine();
+            }
+        }
+
+        java.util.concurrent.BlockingQueue<Object> events = new java.util.concurrent.LinkedBlockingQueue<>();
+        DataFileWatcher watcher = new DataFileWatcher();
+        watcher.watch(database, new DataFileWatcher.Listener() {
+            @Override
+            public void appended(List<String> lines, long lengthBefore, long lengthAfter) {
+                events.add(lines.size());
+            }
+
+            @Override
+            public void reset() {
+                events.add("reset");
+            }
+        });
+        watcher.start();
+
+        List<Long> latencies = new ArrayList<>();
+        int linesDelivered = 0;
+        for (int i = 0; i < 20; i++) {
+            long start = System.nanoTime();
+            try (BufferedWriter writer = new BufferedWriter(new FileWriter(database, true))) {
+                for (int j = 0; j < 5; j++) {
+                    writer.write((3_000_000 + i * 5 + j) + ",Script,Added,X,01/01/05,pw");
+                    writer.newLine();
+                }
+            }
+            Object event = events.poll(30, java.util.concurrent.TimeUnit.SECONDS);
+            latencies.add(System.nanoTime() - start);
+            // Events can split one append; collect until all five lines arrived
+            while (event instanceof Integer && (linesDelivered += (Integer) event) % 5 != 0) {
+                event = events.poll(30, java.util.concurrent.TimeUnit.SECONDS);
+            }
+        }
+        System.out.println("   20 appends of 5 lines: " + linesDelivered + " lines delivered, " + formatLatencies(latencies));
+
+        long start = System.nanoTime();
+        int reloaded = StudentIdBloomFilter.load(database).size();
+        System.out.println("   A full reload instead would read " + reloaded + " records in "
+                + (System.nanoTime() - start) / 1_000_000 + " ms");
+
+        // A registrar script rewrites the file with fewer records
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(database))) {
+            writer.write("2250001,Rewritten,Only,X,01/01/05,pw");
+            writer.newLine();
+        }
+        Object event = events.poll(30, java.util.concurrent.TimeUnit.SECONDS);
+        while (event != null && !"reset".equals(event)) {
+            event = events.poll(5, java.util.concurrent.TimeUnit.SECONDS);
+        }
+        System.out.println("   Rewrite detected as: " + event + " (" + watcher.getAppendEvents() + " append events, "
+                + watcher.getResetEvents() + " resets)");
+        System.out.println();
+
+        watcher.close();
+        deleteRecursively(dir);
+    }
+
+    /**
+     * Stress test: several JVMs append payments and create accounts in one data
+     * directory at the same time; afterwards every record must be present, whole and
+     * unique, and no student ID may be used twice
+     */
+    private static void benchmarkMultiProcessAppends() throws Exception {
+        int processes = 4;
+        int threads = 8;
+        int paymentsPerThread = 2_000;
+        int accountsPerProcess = 250;
+        System.out.println("Multi-process appends (" + processes + " JVMs x " + threads + " threads):");
+        File dir = createTempDirectory();
+        for (String name : new String[]{"Database.txt", "UserPasswordID.txt", "paymentLogs.txt"}) {
+            new File(dir, name).createNewFile();
+        }
+
+        long start = System.nanoTime();
+        List<Process> workers = new ArrayList<>();
+        for (int w = 0; w < processes; w++) {
+            ProcessBuilder builder = new ProcessBuilder(
+                    new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", System.getProperty("java.class.path"), "PerformanceBenchmarks", "appendWorker",
+                    String.valueOf(w), String.valueOf(threads), String.valueOf(paymentsPerThread),
+                    String.valueOf(accountsPerProcess));
+            builder.directory(dir);
+            builder.inheritIO();
+            workers.add(builder.start());
+        }
+        for (Process worker : workers) {
+            if (!worker.waitFor(5, java.util.concurrent.TimeUnit.MINUTES)) {
+                worker.destroyForcibly();
+                System.out.println("   A worker did not finish in 5 minutes");
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        // Every payment line must be whole and its tag must appear exactly once
+        int expectedPayments = processes * threads * paymentsPerThread;
+        Set<String> tags = new HashSet<>();
+        int paymentLines = 0;
+        int tornPayments = 0;
+        for (String line : Files.readAllLines(new File(dir, "paymentLogs.txt").toPath())) {
+            paymentLines++;
+            String[] parts = line.split(",");
+            String tag = parts[parts.length - 1];
+            if (parts.length != 6 || !parts[1].startsWith("Stress") || !tag.matches("W\\d+T\\d+S\\d+") || !tags.add(tag)) {
+                tornPayments++;
+            }
+        }
+        System.out.printf("   Payments: %d lines, %d unique, %d torn or duplicated (expected %d) in %.1f s, %.0f appends/s%n",
+                paymentLines, tags.size(), tornPayments, expectedPayments, seconds, paymentLines / seconds);
+
+        Set<String> ids = new HashSet<>();
+        int accountLines = 0;
+        int badAccounts = 0;
+        for (String line : Files.readAllLines(new File(dir, "Database.txt").toPath())) {
+            accountLines++;
+            String[] parts = line.split(",");
+            if (parts.length != 6 || !ids.add(parts[0])) {
+                badAccounts++;
+            }
+        }
+        System.out.println("   Accounts: " + accountLines + " lines, " + ids.size() + " unique IDs, " + badAccounts
+                + " torn or duplicated (expected " + processes * accountsPerProcess + ")");
+        System.out.println("   Counts " + (tornPayments == 0 && badAccounts == 0 && paymentLines == expectedPayments
+                && ids.size() == processes * accountsPerProcess ? "agree" : "DIFFER"));
+        System.out.println();
+
+        deleteRecursively(dir);
+    }
+
+    /**
+     * One stress-test process, run in the shared data directory as its working directory
+     */
+    private static void runAppendWorker(int worker, int threads, int paymentsPerThread, int accounts) throws Exception {
+        List<Thread> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread payer = new Thread(() -> {
+                for (int seq = 0; seq < paymentsPerThread; seq++) {
+                    DataManager.logPaymentTransaction("Stress " + worker, 1000 + seq, "W" + worker + "T" + thread + "S" + seq);
+                }
+            });
+            payer.start();
+            running.add(payer);
+        }
+        for (int i = 0; i < accounts; i++) {
+            if (DataManager.createStudentAccount("Worker" + worker, "Account" + i, "X", "01/01/05", "pw") == null) {
+                System.err.println("Worker " + worker + " could not create account " + i);
+            }
+        }
+        for (Thread payer : running) {
+            payer.join();
+        }
+        System.out.println("   worker " + worker + ": lock taken " + DataManager.getDataFileLock().getAcquisitions()
+                + " times, waited " + DataManager.getDataFileLock().getWaitMillis() + " ms");
+    }
+
+    /**
+     * Account saves from concurrent threads, committed through the journal in batches;
+     * then worker processes are killed mid-run and recovery must leave Database.txt and
+     * UserPasswordID.txt holding exactly the same accounts
+     */
+    private static void benchmarkAccountJournal() throws Exception {
+        System.out.println("Journaled account saves:");
+        File dir = createTempDirectory();
+        Process worker = startAccountWorker(dir, 16, 150, 3_000_000);
+        worker.waitFor();
+        System.out.println("   Files agree: " + accountFilesAgree(dir));
+
+        int kills = 10;
+        int pendingAtKill = 0;
+        int agreeing = 0;
+        Random random = new Random(5);
+        File journal = new File(dir, "accountJournal.dat");
+        for (int round = 0; round < kills; round++) {
+            worker = startAccountWorker(dir, 8, 10_000, 4_000_000 + round * 100_000);
+            Thread.sleep(300 + random.nextInt(400));
+            worker.destroyForcibly().waitFor();
+            if (journal.length() > 0) {
+                pendingAtKill++;
+            }
+            // The next worker recovers first; do the same here before checking
+            worker = startAccountWorker(dir, 1, 0, 0);
+            worker.waitFor();
+            if (accountFilesAgree(dir)) {
+                agreeing++;
+            }
+        }
+        System.out.println("   Killed " + kills + " workers mid-run, " + pendingAtKill
+                + " with a commit in the journal; files agree after recovery in " + agreeing + " of " + kills);
+        System.out.println("   Counts " + (agreeing == kills ? "agree" : "DIFFER"));
+        System.out.println();
+        deleteRecursively(dir);
+    }
+
+    private static Process startAccountWorker(File dir, int threads, int accountsPerThread, int firstID)
+            throws IOException {
+        ProcessBuilder builder = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"), "PerformanceBenchmarks", "accountWorker",
+                String.valueOf(threads), String.valueOf(accountsPerThread), String.valueOf(firstID));
+        builder.directory(dir);
+        builder.inheritIO();
+        return builder.start();
+    }
+
+    /**
+     * One account-saving process, run in the data directory as its working directory
+     */
+    private static void runAccountWorker(int threads, int accountsPerThread, int firstID) throws Exception {
+        int recovered = DataManager.recoverAccountJournal();
+        if (accountsPerThread == 0) {
+            if (recovered > 0) {
+                System.out.println("   recovery redid " + recovered + " file appends");
+            }
+            return;
+        }
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> running = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread saver = new Thread(() -> {
+                for (int i = 0; i < accountsPerThread; i++) {
+                    long began = System.nanoTime();
+                    // Explicit IDs, so killed runs never exhaust the 225xxxx range
+                    StudentInfo student = new StudentInfo(String.valueOf(firstID + thread * accountsPerThread + i),
+                            "Journal", "Thread" + thread, "J", "01/01/05", "pw" + i);
+                    if (!DataManager.saveStudentAccount(student)) {
+                        continue;
+                    }
+                    latencies.add(System.nanoTime() - began);
+                }
+            });
+            saver.start();
+            running.add(saver);
+        }
+        for (Thread saver : running) {
+            saver.join();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        AppendJournal journal = DataManager.getAccountJournal();
+        System.out.printf("   %d threads saved %d accounts in %.2f s (%.0f accounts/s), %s%n",
+                threads, latencies.size(), seconds, latencies.size() / seconds, formatLatencies(latencies));
+        System.out.printf("   %d journaled commits, %.1f accounts and %.2f fsyncs per account%n",
+                journal.getCommits(), latencies.size() / (double) journal.getCommits(),
+                journal.getForces() / (double) latencies.size());
+    }
+
+    /**
+     * @return true if every account in Database.txt has a password line and vice versa
+     */
+    private static boolean accountFilesAgree(File dir) throws IOException {
+        Set<String> records = new HashSet<>();
+        for (String line : Files.readAllLines(new File(dir, "Database.txt").toPath())) {
+            records.add(line.substring(0, line.indexOf(',')));
+        }
+        Set<String> credentials = new HashSet<>();
+        for (String line : Files.readAllLines(new File(dir, "UserPasswordID.txt").toPath())) {
+            credentials.add(line.substring("ID: ".length(), line.indexOf(" |")));
+        }
+        return records.equals(credentials);
+    }
+
+    /**
+     * Provisions 50k freshman accounts with one saveStudentAccounts call, against
+     * saving a sample of them one createStudentAccount call at a time
+     */
+    private static void benchmarkBulkProvision() throws Exception {
+        System.out.println("Bulk account provisioning:");
+        int[][] runs = {{50_000, 1}, {2_000, 0}};
+        for (int[] run : runs) {
+            File dir = createTempDirectory();
+            ProcessBuilder builder = new ProcessBuilder(
+                    new File(System.getProperty("java.home"), "bin/java").getPath(),
+                    "-cp", System.getProperty("java.class.path"), "PerformanceBenchmarks", "provisionWorker",
+                    String.valueOf(run[0]), String.valueOf(run[1]));
+            builder.directory(dir);
+            builder.inheritIO();
+            builder.start().waitFor();
+            System.out.println("   Files agree: " + accountFilesAgree(dir));
+            deleteRecursively(dir);
+        }
+        System.out.println();
+    }
+
+    /**
+     * One provisioning process, run in an empty data directory as its working directory
+     */
+    private static void runProvisionWorker(int count, int bulk) throws Exception {
+        List<StudentInfo> freshmen = new ArrayList<>(count);
+        for (StudentInfo student : createSyntheticRoster(count)) {
+            freshmen.add(new StudentInfo(null, student.getLastName(), student.getFirstName(),
+                    student.getMiddleName(), student.getDateOfBirth(), student.getPassword()));
+        }
+        long start = System.nanoTime();
+        Set<String> ids = new HashSet<>();
+        if (bulk == 1) {
+            List<String> assigned = DataManager.saveStudentAccounts(freshmen);
+            if (assigned != null) {
+                ids.addAll(assigned);
+            }
+        } else {
+            for (StudentInfo student : freshmen) {
+                StudentInfo saved = DataManager.createStudentAccount(student.getLastName(), student.getFirstName(),
+                        student.getMiddleName(), student.getDateOfBirth(), student.getPassword());
+                if (saved != null) {
+                    ids.add(saved.getId());
+                }
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        ids.remove(null);
+        System.out.printf("   %s: %,d accounts in %.2f s (%,.0f accounts/s), %,d unique IDs, %d journaled commits%n",
+                bulk == 1 ? "saveStudentAccounts" : "createStudentAccount one by one", count, seconds,
+                count / seconds, ids.size(), DataManager.getAccountJournal().getCommits());
+        if (bulk == 1) {
+            List<String> sorted = new ArrayList<>(ids);
+            Collections.sort(sorted);
+            System.out.println("   IDs " + sorted.get(0) + " to " + sorted.get(sorted.size() - 1));
+        }
+    }
+
+    /**
+     * In-place updates and deletes against a 40k-student database, until the
+     * background compactor reclaims the dead records, while a reader keeps looking
+     * students up
+     */
+    private static void benchmarkRecordUpdate() throws Exception {
+        System.out.println("In-place record updates:");
+        File dir = createTempDirectory();
+        ProcessBuilder builder = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"), "PerformanceBenchmarks", "updateWorker", "40000");
+        builder.directory(dir);
+        builder.inheritIO();
+        builder.start().waitFor();
+        System.out.println();
+        deleteRecursively(dir);
+    }
+
+    /**
+     * One update benchmark process, run in an empty data directory as its working directory
+     */
+    private static void runUpdateWorker(int size) throws Exception {
+        List<StudentInfo> roster = createSyntheticRoster(size);
+        DataManager.saveStudentAccounts(roster);
+        File database = new File("Database.txt");
+        System.out.printf("   %,d students, %,d bytes%n", size, database.length());
+
+        // What an edit used to need: rewriting the whole file
+        long start = System.nanoTime();
+        List<String> lines = Files.readAllLines(database.toPath());
+        Files.write(new File("rewrite.txt").toPath(), lines);
+        System.out.printf("   Rewriting the whole file once: %.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+        // A reader looks students up the whole time
+        Random random = new Random(3);
+        Set<String> deleted = Collections.synchronizedSet(new HashSet<>());
+        long[] readerStats = new long[3];   // lookups, wrong results, max nanos
+        java.util.concurrent.atomic.AtomicBoolean reading = new java.util.concurrent.atomic.AtomicBoolean(true);
+        Thread reader = new Thread(() -> {
+            Random readerRandom = new Random(4);
+            while (reading.get()) {
+                String id = roster.get(readerRandom.nextInt(size)).getId();
+                long began = System.nanoTime();
+                StudentInfo found = DataManager.getStudentInfo(id);
+                long took = System.nanoTime() - began;
+                synchronized (readerStats) {
+                    readerStats[0]++;
+                    if (found == null && !deleted.contains(id)) {
+                        readerStats[1]++;
+                    }
+                    readerStats[2] = Math.max(readerStats[2], took);
+                }
+                if (readerStats[0] % 10 == 0) {
+                    try {
+                        Thread.sleep(1);   // about the pace of busy logins, not a spinning loop
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        reader.setDaemon(true);
+        reader.start();
+
+        RecordFile records = DataManager.getStudentRecords();
+        List<Long> updateLatencies = new ArrayList<>();
+        int updates = 0;
+        while (records.getCompactions() == 0 && updates < 50_000) {
+            StudentInfo student = roster.get(random.nextInt(size));
+            if (deleted.contains(student.getId())) {
+                continue;
+            }
+            long began = System.nanoTime();
+            if (updates % 20 == 19) {
+                deleted.add(student.getId());
+                DataManager.deleteStudentAccount(student.getId());
+            } else {
+                DataManager.updateStudentAccount(new StudentInfo(student.getId(), student.getLastName() + "-Edited",
+                        student.getFirstName(), student.getMiddleName(), student.getDateOfBirth(), "new" + updates));
+            }
+            updateLatencies.add(System.nanoTime() - began);
+            updates++;
+            if (updates % 1000 == 0) {
+                Thread.sleep(1);   // give a queued compaction a chance to start
+            }
+        }
+        for (int wait = 0; wait < 100 && records.getCompactions() == 0; wait++) {
+            Thread.sleep(100);
+        }
+        reading.set(false);
+        reader.join();
+
+        System.out.printf("   %,d updates and deletes: %s%n", updates, formatLatencies(updateLatencies));
+        System.out.printf("   Background compactions: %d, %,d bytes reclaimed, file now %,d bytes%n",
+                records.getCompactions(), records.getReclaimedBytes(), database.length());
+        synchronized (readerStats) {
+            System.out.printf("   Reader: %,d lookups meanwhile, %d wrong, slowest %.1f ms%n",
+                    readerStats[0], readerStats[1], readerStats[2] / 1e6);
+        }
+
+        // Spot checks after compaction
+        int wrong = 0;
+        for (StudentInfo student : roster.subList(0, 2000)) {
+            StudentInfo found = DataManager.getStudentInfo(student.getId());
+            if (deleted.contains(student.getId()) ? found != null
+                    : found == null || !found.getFirstName().equals(student.getFirstName())) {
+                wrong++;
+            }
+        }
+        String someDeleted = deleted.iterator().next();
+        boolean reused = DataManager.saveStudentAccount(new StudentInfo(someDeleted, "Reuse", "Attempt", "X", "01/01/05", "pw"));
+        System.out.println("   Spot check of 2,000 students: " + wrong + " wrong; deleted ID reusable: " + reused);
+        System.out.println("   Counts " + (wrong == 0 && !reused && records.getCompactions() > 0 ? "agree" : "DIFFER"));
+    }
+
+    /**
+     * Migrates a 1M-student Database.txt into 16 shards and into a single shard, then
+     * compares concurrent lookups, concurrent saves and whole-roster scans
+     */
+    private static void benchmarkShardedStore() throws Exception {
+        int size = 1_000_000;
+        int threads = 8;
+        System.out.println("Sharded student store (" + size / 1000 + "k students, " + threads + " threads):");
+        File dir = createTempDirectory();
+        File database = new File(dir, "Database.txt");
+        List<StudentInfo> roster = createSyntheticRoster(size);
+        try (Writer writer = new BufferedWriter(new FileWriter(database), 1 << 16)) {
+            for (StudentInfo student : roster) {
+                writer.write(student.toDatabaseFormat());
+                writer.write(System.lineSeparator());
+            }
+        }
+
+        for (int shardCount : new int[]{1, ShardedStudentStore.DEFAULT_SHARDS}) {
+            long start = System.nanoTime();
+            ShardedStudentStore store = ShardedStudentStore.migrate(database, new File(dir, "shards" + shardCount), shardCount);
+            double migrateMs = (System.nanoTime() - start) / 1e6;
+            start = System.nanoTime();
+            for (int i = 0; i < shardCount * 4; i++) {
+                store.get(roster.get(i).getId());   // loads each shard's index
+            }
+            System.out.printf("   %2d shard(s): migrated in %.0f ms, indexes loaded in %.0f ms%n",
+                    shardCount, migrateMs, (System.nanoTime() - start) / 1e6);
+
+            int lookups = 40_000;
+            double lookupSeconds = runThreads(threads, (thread, random) -> {
+                for (int i = 0; i < lookups / threads; i++) {
+                    StudentInfo student = roster.get(random.nextInt(size));
+                    if (!store.authenticate(student.getId(), student.getPassword())) {
+                        throw new IllegalStateException("Login failed for " + student.getId());
+                    }
+                }
+            });
+            int saves = 4_000;
+            double saveSeconds = runThreads(threads, (thread, random) -> {
+                for (int i = 0; i < saves / threads; i++) {
+                    store.save(new StudentInfo(String.valueOf(5_000_000 + thread * 100_000 + i), "Shard", "Test",
+                            "S", "01/01/05", "pw"));
+                }
+            });
+            long waited = 0;
+            for (String line : store.getLockStats().split(System.lineSeparator())) {
+                waited += Long.parseLong(line.replaceAll(".*, (\\d+) ms waiting", "$1"));
+            }
+            System.out.printf("      logins: %,.0f/s; saves: %,.0f/s, %d ms waiting for shard locks%n",
+                    lookups / lookupSeconds, saves / saveSeconds, waited);
+
+            for (int parallelism : new int[]{1, 4}) {
+                start = System.nanoTime();
+                int matches = store.scan(s -> s.getLastName().startsWith("Reyes"), parallelism).size();
+                System.out.printf("      scan with %d thread(s): %,d matches in %.0f ms%n",
+                        parallelism, matches, (System.nanoTime() - start) / 1e6);
+            }
+        }
+        System.out.println("   (" + Runtime.getRuntime().availableProcessors() + " processor(s) available)");
+        System.out.println();
+        deleteRecursively(dir);
+    }
+
+    /**
+     * Cold start of a portal process with and without a checkpoint, for growing data.
+     * Each start runs in a fresh JVM; the warm start finds 10,000 students and their
+     * payments appended after the checkpoint.
+     */
+    private static void benchmarkCheckpointStartup() throws Exception {
+        System.out.println("Checkpoint startup (2 payments per student, 10,000-student tail):");
+        for (int size : new int[]{250_000, 1_000_000, 2_000_000}) {
+            File dir = createTempDirectory();
+            appendStartupData(dir, 0, size);
+            System.out.printf("   %,d students, %,d MB of data%n", size,
+                    (new File(dir, "Database.txt").length() + new File(dir, "paymentLogs.txt").length()) >> 20);
+            runStartupWorker(dir, "cold", 2_000_000 + size / 2);
+            appendStartupData(dir, size, 10_000);
+            runStartupWorker(dir, "warm", 2_000_000 + size + 5_000);
+            deleteRecursively(dir);
+        }
+        System.out.println();
+    }
+
+    private static void appendStartupData(File dir, int first, int count) throws IOException {
+        try (BufferedWriter students = new BufferedWriter(new FileWriter(new File(dir, "Database.txt"), true), 1 << 16);
+             BufferedWriter payments = new BufferedWriter(new FileWriter(new File(dir, "paymentLogs.txt"), true), 1 << 16)) {
+            for (int i = first; i < first + count; i++) {
+                int id = 2_000_000 + i;
+                students.write(id + "," + LAST_NAMES[i % LAST_NAMES.length] + "," + FIRST_NAMES[i % FIRST_NAMES.length]
+                        + ",M,01/01/05,pw" + i);
+                students.newLine();
+                for (int p = 0; p < 2; p++) {
+                    payments.write("08/01/2025 09:00 AM,GCash,FIRST SEMESTER 2025-2026 Enrollme.,P 1,500.00," + id);
+                    payments.newLine();
+                }
+            }
+        }
+    }
+
+    private static void runStartupWorker(File dir, String mode, int probeID) throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(
+                new File(System.getProperty("java.home"), "bin/java").getPath(),
+                "-cp", System.getProperty("java.class.path"), "PerformanceBenchmarks", "startupWorker",
+                mode, String.valueOf(probeID));
+        builder.directory(dir);
+        builder.inheritIO();
+        if (builder.start().waitFor() != 0) {
+            throw new IllegalStateException("The " + mode + " start failed");
+        }
+    }
+
+    /**
+     * One portal start, run in the data directory as its working directory: "cold"
+     * starts without a checkpoint and writes one afterwards, "warm" loads it
+     */
+    private static void runStartupWorker(String mode, String probeID) {
+        if (mode.equals("cold")) {
+            new File("dataCheckpoint.dat").delete();
+        }
+        long start = System.nanoTime();
+        DataManager.recoverAccountJournal();
+        boolean loaded = DataManager.loadCheckpoint();
+        double startupMillis = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        boolean loggedIn = DataManager.authenticateUser(probeID, "pw" + (Integer.parseInt(probeID) - 2_000_000));
+        int payments = DataManager.loadPaymentTransactions(probeID).size();
+        double firstMillis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("      %-4s start: %7.1f ms (checkpoint %s), first login + payments: %5.1f ms%s%n",
+                mode, startupMillis, loaded ? "loaded" : "none", firstMillis,
+                loggedIn && payments == 2 ? "" : "  WRONG (login " + loggedIn + ", " + payments + " payments)");
+        if (!loggedIn || payments != 2) {
+            System.exit(1);
+        }
+        if (mode.equals("cold")) {
+            start = System.nanoTime();
+            long bytes = DataManager.writeCheckpoint();
+            System.out.printf("      checkpoint written in %.1f ms, %,d KB%n", (System.nanoTime() - start) / 1e6, bytes >> 10);
+        }
+    }
+
+    /**
+     * Cashier reports over four school years of payments: one channel for one day
+     * (end of day) and a whole term, by scanning the log as before and through the
+     * per-term time index. The first query builds the index.
+     */
+    private static void benchmarkLedgerQuery() throws Exception {
+        String[] channels = PAYMENT_CHANNELS;
+        File dir = createTempDirectory();
+        File log = new File(dir, "paymentLogs.txt");
+        java.time.LocalDate firstDay = java.time.LocalDate.of(2022, 8, 1);
+        Random random = new Random(43);
+        long payments = writeSyntheticPayments(log, firstDay, java.time.LocalDate.of(2026, 7, 31), 2_500, 1_000_000, random);
+        System.out.printf("Payment ledger queries (%,d payments over 4 school years, %,d MB):%n",
+                payments, log.length() >> 20);
+
+        java.time.LocalDateTime dayStart = java.time.LocalDate.of(2026, 3, 12).atStartOfDay();
+        java.time.LocalDateTime dayEnd = dayStart.plusDays(1).minusMinutes(1);
+        java.time.LocalDateTime termStart = java.time.LocalDate.of(2025, 8, 1).atStartOfDay();
+        java.time.LocalDateTime termEnd = java.time.LocalDate.of(2025, 12, 31).atTime(23, 59);
+
+        long start = System.nanoTime();
+        int scanned = scanPayments(log, dayStart, dayEnd, "GCash").size();
+        double scanDayMs = (System.nanoTime() - start) / 1e6;
+        start = System.nanoTime();
+        int scannedTerm = scanPayments(log, termStart, termEnd, null).size();
+        double scanTermMs = (System.nanoTime() - start) / 1e6;
+
+        PaymentLedger ledger = new PaymentLedger(log);
+        start = System.nanoTime();
+        int found = ledger.query(dayStart, dayEnd, "GCash").size();
+        double firstMs = (System.nanoTime() - start) / 1e6;
+        List<Long> dayLatencies = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            java.time.LocalDateTime from = firstDay.plusDays(random.nextInt(1400)).atStartOfDay();
+            start = System.nanoTime();
+            ledger.query(from, from.plusDays(1).minusMinutes(1), channels[i % channels.length]);
+            dayLatencies.add(System.nanoTime() - start);
+        }
+        start = System.nanoTime();
+        int foundTerm = ledger.query(termStart, termEnd, null).size();
+        double termMs = (System.nanoTime() - start) / 1e6;
+
+        System.out.printf("   full scan:  one day, one channel %7.1f ms (%,d); whole term %7.1f ms (%,d)%n",
+                scanDayMs, scanned, scanTermMs, scannedTerm);
+        System.out.printf("   time index: built by the first query in %.1f ms (%d terms); whole term %7.1f ms (%,d)%n",
+                firstMs, ledger.getSegmentCount(), termMs, foundTerm);
+        System.out.println("   time index: one day, one channel " + formatLatencies(dayLatencies));
+        System.out.println("   results " + (found == scanned && foundTerm == scannedTerm ? "agree" : "DIFFER")
+                + " with the full scan");
+        System.out.println();
+        deleteRecursively(dir);
+    }
+
+    /**
+     * Student payment lookups over four school years of payments, before and after
+     * the completed terms are moved into the compressed archive: a full scan (as
+     * loadPaymentTransactions did), then the log index over the whole log, then the
+     * log index over the current term plus the archive blocks of the student.
+     */
+    private static void benchmarkPaymentArchive() throws Exception {
+        int students = 100_000;
+        File dir = createTempDirectory();
+        File log = new File(dir, "paymentLogs.txt");
+        java.time.LocalDate lastDay = java.time.LocalDate.of(2026, 9, 30);
+        long payments = writeSyntheticPayments(log, java.time.LocalDate.of(2022, 8, 1), lastDay, 2_500, students,
+                new Random(44));
+        long logBytes = log.length();
+        System.out.printf("Payment archive (%,d payments over 4 school years, %,d students, %,d MB):%n",
+                payments, students, logBytes >> 20);
+        Random random = new Random(45);
+        String[] probes = new String[200];
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = String.valueOf(2_000_000 + random.nextInt(students));
+        }
+
+        long start = System.nanoTime();
+        List<List<String>> expected = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            List<String> lines = new ArrayList<>();
+            for (PaymentTransaction payment : readPaymentRecords(log, probes[i])) {
+                lines.add(payment.getDate() + "|" + payment.getAmount());
+            }
+            expected.add(lines);
+        }
+        System.out.printf("   full scan per lookup:           %7.1f ms%n", (System.nanoTime() - start) / 5 / 1e6);
+
+        PaymentLogIndex wholeLog = new PaymentLogIndex(log);
+        start = System.nanoTime();
+        wholeLog.refresh();
+        double wholeIndexMs = (System.nanoTime() - start) / 1e6;
+        List<Long> wholeLatencies = new ArrayList<>();
+        for (String probe : probes) {
+            long began = System.nanoTime();
+            wholeLog.readLines(probe);
+            wholeLatencies.add(System.nanoTime() - began);
+        }
+        System.out.printf("   log index, whole log: built in  %7.1f ms; lookup %s%n", wholeIndexMs,
+                formatLatencies(wholeLatencies));
+        wholeLog = null;
+
+        PaymentArchive archive = new PaymentArchive(new File(dir, "paymentArchive.dat"), new File(dir, "paymentArchive.idx"));
+        start = System.nanoTime();
+        int archived = DataFileLock.forFile(log).call(() -> archive.archive(log, PaymentLedger.termOf(lastDay)));
+        double archiveMs = (System.nanoTime() - start) / 1e6;
+        System.out.printf("   archived %,d payments of %d terms in %.1f ms: %,d blocks, %,d MB -> %,d MB "
+                        + "(%.1fx); log now %,d MB%n", archived, archive.getTerms().length, archiveMs,
+                archive.getBlockCount(), (logBytes - log.length()) >> 20, archive.getFile().length() >> 20,
+                (double) (logBytes - log.length()) / archive.getFile().length(), log.length() >> 20);
+
+        PaymentLogIndex hotLog = new PaymentLogIndex(log);
+        start = System.nanoTime();
+        hotLog.refresh();
+        double hotIndexMs = (System.nanoTime() - start) / 1e6;
+        List<Long> tieredLatencies = new ArrayList<>();
+        long inflatedBefore = archive.getBlocksInflated();
+        boolean agree = true;
+        for (int i = 0; i < probes.length; i++) {
+            long began = System.nanoTime();
+            List<String> lines = archive.readLines(probes[i]);
+            lines.addAll(hotLog.readLines(probes[i]));
+            tieredLatencies.add(System.nanoTime() - began);
+            if (i < expected.size()) {
+                List<String> found = new ArrayList<>();
+                for (String line : lines) {
+                    PaymentTransaction payment = PaymentTransaction.parse(line);
+                    found.add(payment.getDate() + "|" + payment.getAmount());
+                }
+                agree &= found.equals(expected.get(i));
+            }
+        }
+        System.out.printf("   log index, current term: built in %5.1f ms; lookup with archive %s%n", hotIndexMs,
+                formatLatencies(tieredLatencies));
+        System.out.printf("   %.1f blocks inflated per lookup; payments %s with the full scan%n",
+                (archive.getBlocksInflated() - inflatedBefore) / (double) probes.length, agree ? "agree" : "DIFFER");
+        System.out.println();
+        deleteRecursively(dir);
+    }
+
+    /**
+     * Finance reports: one school year's totals by channel, day and term, by parsing
+     * the log lines as a report would without the column view, and over the column
+     * view for the same 1M payments and for 10M.
+     */
+    private static void benchmarkPaymentReport() throws Exception {
+        File dir = createTempDirectory();
+        File log = new File(dir, "paymentLogs.txt");
+        java.time.LocalDate firstDay = java.time.LocalDate.of(2025, 8, 1);
+        java.time.LocalDate lastDay = java.time.LocalDate.of(2026, 7, 31);
+        long payments = writeSyntheticPayments(log, firstDay, lastDay, 2_740, 200_000, new Random(45));
+        java.time.LocalDateTime from = firstDay.atStartOfDay();
+        java.time.LocalDateTime to = lastDay.atTime(23, 59);
+        System.out.printf("Payment reports (one school year, %,d payments in the log, %,d MB):%n",
+                payments, log.length() >> 20);
+
+        long start = System.nanoTime();
+        Map<String, long[]> scanned = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        try (BufferedReader reader = new BufferedReader(new FileReader(log), 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                PaymentTransaction payment = PaymentTransaction.parse(line);
+                java.time.LocalDateTime time = java.time.LocalDateTime.parse(payment.getDate(), PaymentLedger.TIMESTAMP_FORMAT);
+                if (!time.isBefore(from) && !time.isAfter(to)) {
+                    long[] total = scanned.computeIfAbsent(payment.getChannel(), channel -> new long[2]);
+                    total[0]++;
+                    total[1] += PaymentTransaction.parseCentavos(payment.getAmount());
+                }
+            }
+        }
+        System.out.printf("   parsing the log, by channel:    %7.1f ms%n", (System.nanoTime() - start) / 1e6);
+
+        PaymentColumns columns = new PaymentColumns(log, null);
+        start = System.nanoTime();
+        columns.refresh();
+        System.out.printf("   column view built from the log: %7.1f ms%n", (System.nanoTime() - start) / 1e6);
+        boolean agree = true;
+        for (PaymentColumns.Total total : columns.summarize(from, to, PaymentColumns.GroupBy.CHANNEL)) {
+            long[] expected = scanned.get(total.getKey());
+            agree &= expected != null && expected[0] == total.getCount() && expected[1] == total.getCentavos();
+        }
+        reportColumns(columns, from, to);
+        System.out.println("   channel totals " + (agree ? "agree" : "DIFFER") + " with parsing the log");
+        deleteRecursively(dir);
+
+        // 10M payments, added as rows directly: the log would be about 800 MB
+        columns = new PaymentColumns(new File(dir, "none"), null);
+        columns.refresh();
+        Random random = new Random(46);
+        int size = 10_000_000;
+        int firstMinute = PaymentLedger.minuteOf(from);
+        int spanMinutes = PaymentLedger.minuteOf(to) - firstMinute;
+        for (int i = 0; i < size; i++) {
+            columns.add(firstMinute + (int) ((long) i * spanMinutes / size),
+                    PAYMENT_CHANNELS[random.nextInt(PAYMENT_CHANNELS.length)],
+                    50_000 + random.nextInt(20) * 50_000L, 2_000_000 + random.nextInt(1_000_000));
+        }
+        System.out.printf("   %,d payments:%n", size);
+        reportColumns(columns, from, to);
+        System.out.println("   (" + java.util.concurrent.ForkJoinPool.commonPool().getParallelism()
+                + " fork-join worker(s), " + Runtime.getRuntime().availableProcessors() + " processor(s))");
+        System.out.println();
+    }
+
+    /**
+     * Reconciles a month's settlement export of 2M UnionBank payments (1% not
+     * settled, 0.5% unknown to the ledger) with the hash table in memory, and with a
+     * table limit of 250,000 payments that makes it spill partitions to disk. The
+     * export also has a row longer than 64 KB.
+     */
+    private static void benchmarkReconcile() throws Exception {
+        int size = 2_000_000;
+        String channel = "UnionBank UPay Online";
+        java.time.LocalDate firstDay = java.time.LocalDate.of(2026, 3, 1);
+        java.time.LocalDate lastDay = java.time.LocalDate.of(2026, 3, 31);
+        File dir = createTempDirectory();
+        PaymentLedger ledger = new PaymentLedger(new File(dir, "paymentLogs.txt"));
+        File settlement = new File(dir, "settlement.csv");
+        Random random = new Random(47);
+        int firstMinute = PaymentLedger.minuteOf(firstDay.atStartOfDay());
+        int spanMinutes = PaymentLedger.minuteOf(lastDay.atTime(23, 59)) - firstMinute;
+        long unsettled = 0;
+        long unknown = 0;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(settlement), 1 << 16);
+             BufferedWriter log = new BufferedWriter(new FileWriter(ledger.getFile()), 1 << 16)) {
+            writer.write("date,studentID,amount,reference");
+            writer.newLine();
+            for (int i = 0; i < size; i++) {
+                int minute = firstMinute + (int) ((long) i * spanMinutes / size);
+                int studentID = 2_000_000 + random.nextInt(1_000_000);
+                long centavos = 50_000 + random.nextInt(20) * 50_000L;
+                java.time.LocalDateTime time = firstDay.atStartOfDay().plusMinutes(minute - firstMinute);
+                log.write(PaymentLedger.logLine(time, channel, centavos / 100.0, String.valueOf(studentID)));
+                log.newLine();
+                // Some payments of other channels, which the bank does not settle
+                log.write(PaymentLedger.logLine(time, "GCash", centavos / 100.0, String.valueOf(studentID)));
+                log.newLine();
+                String date = java.time.LocalDate.ofEpochDay(minute / (24 * 60)).toString();
+                if (random.nextInt(100) == 0) {
+                    unsettled++;
+                } else {
+                    writer.write(date + "," + studentID + ",\"" + String.format("%,d.%02d", centavos / 100, centavos % 100)
+                            + "\",UB" + i);
+                    writer.newLine();
+                }
+                if (random.nextInt(200) == 0) {
+                    writer.write(date + "," + studentID + "," + (centavos + 1) / 100.0 + ",UBX" + i);
+                    writer.newLine();
+                    unknown++;
+                }
+            }
+            StringBuilder longReference = new StringBuilder("UBX");
+            while (longReference.length() < 70_000) {
+                longReference.append("0123456789");
+            }
+            writer.write(firstDay + ",2000000,1.00," + longReference);
+            writer.newLine();
+            unknown++;
+        }
+        System.out.printf("Settlement reconciliation (%,d %s payments in a month, %,d MB export):%n",
+                size, channel, settlement.length() >> 20);
+        // The portal keeps the ledger's index in its checkpoint, so build it outside the timings
+        long start = System.nanoTime();
+        ledger.refresh();
+        System.out.printf("   ledger index of the %,d MB log built in %.2f s%n", ledger.getFile().length() >> 20,
+                (System.nanoTime() - start) / 1e9);
+        for (int limit : new int[]{4_000_000, 250_000}) {
+            System.gc();
+            SettlementReconciler.ReconcileReport report = new SettlementReconciler(ledger, null, limit)
+                    .reconcile(settlement, channel, firstDay, lastDay);
+            System.out.printf("   table limit %,9d: %s%n", limit, report);
+            System.out.println("      " + (report.getMissing() == unsettled && report.getExtra() == unknown
+                    && report.getMatched() == size - unsettled && report.getRejected() == 0 ? "agrees" : "DIFFERS")
+                    + " with the export (" + unsettled + " unsettled, " + unknown + " unknown)");
+        }
+        System.out.println();
+        deleteRecursively(dir);
+    }
+
+    /**
+     * Payments submitted at a steady rate from several threads, each forced to disk
+     * before it is acknowledged: callers appending themselves wait for the disk, while
+     * callers of the pipeline only wait to queue the payment
+     */
+    private static void benchmarkPaymentPipeline() throws Exception {
+        int clients = 8;
+        int perClient = 2_500;
+        long intervalNanos = 2_000_000;    // 500 payments/s per client, 4,000/s in all
+        System.out.printf("Payment pipeline (%d clients, %,d payments/s for %.0f s, forced to disk):%n",
+                clients, clients * 1_000_000_000L / intervalNanos, perClient * intervalNanos / 1e9);
+        File dir = createTempDirectory();
+
+        BatchingAppender direct = new BatchingAppender(new File(dir, "direct.txt"), null, true);
+        List<Long> blocked = Collections.synchronizedList(new ArrayList<>());
+        runPaymentClients(clients, perClient, intervalNanos, (client, seq) -> {
+            long began = System.nanoTime();
+            direct.append(PaymentLedger.logLine(java.time.LocalDateTime.now(), "GCash", 1000 + seq,
+                    String.valueOf(2_000_000 + client)));
+            blocked.add(System.nanoTime() - began);
+        });
+        System.out.printf("   synchronous appends, %d batches: caller blocked %s%n",
+                direct.getBatches(), formatLatencies(blocked));
+
+        BatchingAppender queued = new BatchingAppender(new File(dir, "pipeline.txt"), null, true);
+        PaymentPipeline pipeline = new PaymentPipeline(queued::appendAll, PaymentPipeline.DEFAULT_CAPACITY);
+        List<Long> submits = Collections.synchronizedList(new ArrayList<>());
+        List<Long> durable = Collections.synchronizedList(new ArrayList<>());
+        List<java.util.concurrent.CompletableFuture<PaymentTransaction>> futures =
+                Collections.synchronizedList(new ArrayList<>());
+        runPaymentClients(clients, perClient, intervalNanos, (client, seq) -> {
+            long began = System.nanoTime();
+            java.util.concurrent.CompletableFuture<PaymentTransaction> future = pipeline.submit(
+                    new PaymentPipeline.Request("GCash", String.valueOf(2_000_000 + client), "4111 1111 1111 1111",
+                            "123", "12/30", "Bench Client", String.valueOf(1000 + seq)));
+            submits.add(System.nanoTime() - began);
+            futures.add(future.whenComplete((transaction, failure) -> durable.add(System.nanoTime() - began)));
+        });
+        int failed = 0;
+        for (java.util.concurrent.CompletableFuture<PaymentTransaction> future : futures) {
+            try {
+                future.join();
+            } catch (java.util.concurrent.CompletionException e) {
+                failed++;
+            }
+        }
+        System.out.printf("   pipeline, %d batches: caller blocked %s%n", pipeline.getBatches(), formatLatencies(submits));
+        System.out.printf("   pipeline, submit to durable: %s%n", formatLatencies(durable));
+        long lines = Files.lines(new File(dir, "pipeline.txt").toPath()).count();
+        System.out.println("   " + lines + " lines logged, " + failed + " failed (expected " + clients * perClient
+                + " and 0): " + (lines == clients * perClient && failed == 0 ? "agree" : "DIFFER"));
+        System.out.println();
+        deleteRecursively(dir);
+    }
+
+    /**
+     * Payments charged through the local mock gateway at a steady rate from one thread,
+     * with failures retried under their idempotency key; then an outage that opens the
+     * circuit breaker, and the recovery after it
+     */
+    private static void benchmarkPaymentGateway() throws Exception {
+        int payments = 2_500;
+        long intervalNanos = 4_000_000;    // 250 payments/s
+        String channel = "GCash";
+        File dir = createTempDirectory();
+        try (MockPaymentGateway mock = new MockPaymentGateway(20, 0, 0)) {
+            System.out.printf("Payment gateway (%,d payments at 250/s, mock: 20 ms latency, 10%% failures, 2%% declines):%n",
+                    payments);
+            PaymentGateway gateway = new PaymentGateway(mock.getUri(), 4);
+            gateway.setTimeout(channel, java.time.Duration.ofSeconds(2));
+            gateway.setBreakerOpenTime(java.time.Duration.ofMillis(500));
+            File log = new File(dir, "paymentLogs.txt");
+            PaymentPipeline pipeline = new PaymentPipeline(new BatchingAppender(log, null, true)::appendAll,
+                    PaymentPipeline.DEFAULT_CAPACITY);
+            pipeline.setGateway(gateway);
+
+            // Warm-up: the first request opens the connections
+            pipeline.submit(gatewayRequest(channel, 0)).join();
+            mock.setFailureRate(0.10);
+            mock.setDeclineRate(0.02);
+            List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+            Map<String, Integer> outcomes = new TreeMap<>();
+            List<java.util.concurrent.CompletableFuture<?>> futures = new ArrayList<>();
+            List<String> unconfirmedKeys = Collections.synchronizedList(new ArrayList<>());
+            long start = System.nanoTime();
+            for (int i = 0; i < payments; i++) {
+                long wait = start + i * intervalNanos - System.nanoTime();
+                if (wait > 0) {
+                    java.util.concurrent.locks.LockSupport.parkNanos(wait);
+                }
+                long began = System.nanoTime();
+                PaymentPipeline.Request request = gatewayRequest(channel, i);
+                futures.add(pipeline.submit(request).handle((transaction, failure) -> {
+                    latencies.add(System.nanoTime() - began);
+                    if (failure != null) {
+                        unconfirmedKeys.add(request.getIdempotencyKey());
+                    }
+                    return failure == null ? "approved" : failure.getClass().getSimpleName();
+                }).thenAccept(outcome -> {
+                    synchronized (outcomes) {
+                        outcomes.merge(outcome, 1, Integer::sum);
+                    }
+                }));
+            }
+            java.util.concurrent.CompletableFuture.allOf(futures.toArray(new java.util.concurrent.CompletableFuture<?>[0])).join();
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long lines = Files.lines(log.toPath()).count() - 1;    // less the warm-up
+            // A payment can fail after its charge was taken, when every reply was lost;
+            // resubmitting it under the same key would confirm it without a second charge
+            long unconfirmed = unconfirmedKeys.stream().filter(mock::isCharged).count();
+            System.out.printf("   %,d payments in %.1f s, submit to durable %s%n", payments, seconds,
+                    formatLatencies(latencies));
+            System.out.println("   outcomes: " + outcomes);
+            System.out.printf("   gateway: %,d requests, %,d replayed retries, %,d charges = %,d logged + %,d unconfirmed (%s)%n",
+                    mock.getRequests(), mock.getReplays(), mock.getCharges() - 1, lines, unconfirmed,
+                    mock.getCharges() - 1 == lines + unconfirmed ? "agrees" : "DIFFERS");
+
+            mock.setFailureRate(1.0);
+            int unavailable = 0;
+            for (int i = 0; i < 200; i++) {
+                try {
+                    pipeline.submit(gatewayRequest(channel, i)).join();
+                } catch (java.util.concurrent.CompletionException e) {
+                    if (e.getCause() instanceof PaymentGateway.UnavailableException) {
+                        unavailable++;
+                    }
+                }
+            }
+            System.out.printf("   outage: breaker %s, %d of 200 payments failed fast without a request%n",
+                    gateway.isOpen(channel) ? "open" : "CLOSED", unavailable);
+            mock.setFailureRate(0);
+            mock.setDeclineRate(0);
+            Thread.sleep(600);
+            int approved = 0;
+            for (int i = 0; i < 50; i++) {
+                try {
+                    pipeline.submit(gatewayRequest(channel, i)).join();
+                    approved++;
+                } catch (java.util.concurrent.CompletionException e) {
+                    // counted as not approved
+                }
+            }
+            System.out.printf("   recovery: breaker %s, %d of 50 payments approved%n",
+                    gateway.isOpen(channel) ? "OPEN" : "closed", approved);
+        }
+        System.out.println();
+        deleteRecursively(dir);
+    }
+
+    /**
+     * Many threads paying into shared balances at once: every payment must be counted,
+     * first for a few students paid by every thread, then for a student per thread. The
+     * unsynchronized read-modify-write the portal used before runs the first case too.
+     */
+    private static void benchmarkBalanceStress() throws InterruptedException {
+        int threads = 64;
+        int paymentsPerThread = 200_000;
+        long startDue = 50_000_00;
+        long startCredit = 1_000_00;
+        System.out.printf("Balance updates (%d threads, %,d payments each):%n", threads, paymentsPerThread);
+
+        AccountBalances shared = new AccountBalances();
+        int hotStudents = 4;
+        for (int s = 0; s < hotStudents; s++) {
+            shared.open("H" + s, startDue, startCredit);
+        }
+        long[] paid = new long[hotStudents];
+        double seconds = runBalanceThreads(threads, paymentsPerThread, (thread, seq) -> {
+            int student = (thread + seq) % hotStudents;
+            shared.applyPayment("H" + student, 1 + seq % 7);
+        });
+        for (int t = 0; t < threads; t++) {
+            for (int seq = 0; seq < paymentsPerThread; seq++) {
+                paid[(t + seq) % hotStudents] += 1 + seq % 7;
+            }
+        }
+        int wrong = 0;
+        for (int s = 0; s < hotStudents; s++) {
+            AccountBalances.Balance expected = new AccountBalances.Balance(startDue, startCredit).afterPayment(paid[s]);
+            AccountBalances.Balance actual = shared.getBalance("H" + s);
+            if (actual.getDueCentavos() != expected.getDueCentavos()
+                    || actual.getCreditCentavos() != expected.getCreditCentavos()) {
+                wrong++;
+            }
+        }
+        System.out.printf("   %d shared students: %.0f payments/s, %d of %d balances wrong%n",
+                hotStudents, threads * paymentsPerThread / seconds, wrong, hotStudents);
+
+        AccountBalances own = new AccountBalances();
+        for (int t = 0; t < threads; t++) {
+            own.open("S" + t, startDue, startCredit);
+        }
+        seconds = runBalanceThreads(threads, paymentsPerThread, (thread, seq) -> own.applyPayment("S" + thread, 1 + seq % 7));
+        long perStudent = 0;
+        for (int seq = 0; seq < paymentsPerThread; seq++) {
+            perStudent += 1 + seq % 7;
+        }
+        AccountBalances.Balance expected = new AccountBalances.Balance(startDue, startCredit).afterPayment(perStudent);
+        int wrongOwn = 0;
+        for (int t = 0; t < threads; t++) {
+            AccountBalances.Balance actual = own.getBalance("S" + t);
+            if (actual.getDueCentavos() != expected.getDueCentavos()
+                    || actual.getCreditCentavos() != expected.getCreditCentavos()) {
+                wrongOwn++;
+            }
+        }
+        System.out.printf("   a student per thread: %.0f payments/s, %d of %d balances wrong%n",
+                threads * paymentsPerThread / seconds, wrongOwn, threads);
+
+        // The old portal fields: read, compute, write back, with nothing in between
+        double[] due = new double[hotStudents];
+        double[] credit = new double[hotStudents];
+        Arrays.fill(due, startDue / 100.0);
+        Arrays.fill(credit, startCredit / 100.0);
+        runBalanceThreads(threads, paymentsPerThread, (thread, seq) -> {
+            int student = (thread + seq) % hotStudents;
+            double amount = (1 + seq % 7) / 100.0;
+            if (amount >= due[student]) {
+                credit[student] += amount - due[student];
+                due[student] = 0;
+            } else {
+                due[student] -= amount;
+            }
+        });
+        double lost = 0;
+        for (int s = 0; s < hotStudents; s++) {
+            lost += paid[s] / 100.0 - (startDue / 100.0 - due[s]) - (credit[s] - startCredit / 100.0);
+        }
+        System.out.printf("   unsynchronized doubles: P %,.2f of payments lost%n", lost);
+        System.out.println("   Counts " + (wrong == 0 && wrongOwn == 0 ? "agree" : "DIFFER"));
+        System.out.println();
+    }
+
+    /**
+     * Every payment submitted twice at once, as by a double click or a retried gateway
+     * callback, must be logged once; after a restart the keys come back from the log tail
+     */
+    private static void benchmarkPaymentDedupe() throws Exception {
+        int oldPayments = 2_000_000;
+        int recentPayments = 50_000;
+        File dir = createTempDirectory();
+        File log = new File(dir, "paymentLogs.txt");
+        java.time.LocalDateTime now = java.time.LocalDateTime.now();
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(log), 1 << 16)) {
+            java.time.LocalDateTime old = now.minusDays(30);
+            for (int i = 0; i < oldPayments; i++) {
+                writer.write(PaymentLedger.logLine(old.plusSeconds(i), "GCash", 500 + i % 100,
+                        String.valueOf(2_000_000 + i % 100_000), "old-" + i));
+                writer.newLine();
+            }
+            java.time.LocalDateTime recent = now.minusHours(6);
+            for (int i = 0; i < recentPayments; i++) {
+                writer.write(PaymentLedger.logLine(recent.plusNanos(i * 400_000_000L), "GCash", 500 + i % 100,
+                        String.valueOf(2_000_000 + i % 100_000), "recent-" + i));
+                writer.newLine();
+            }
+        }
+        System.out.printf("Payment dedupe (%,d MB log, %,d payments in the last day):%n",
+                log.length() >> 20, recentPayments);
+
+        long began = System.nanoTime();
+        Set<String> rescanned = new HashSet<>();
+        long windowStart = System.currentTimeMillis() - RecentPaymentKeys.DEFAULT_WINDOW_MILLIS;
+        try (BufferedReader reader = new BufferedReader(new FileReader(log), 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String key = PaymentLedger.keyOf(line);
+                if (key != null && PaymentLedger.millisOf(PaymentLedger.parseMinute(line)) >= windowStart) {
+                    rescanned.add(key);
+                }
+            }
+        }
+        double rescanMs = (System.nanoTime() - began) / 1e6;
+        began = System.nanoTime();
+        RecentPaymentKeys keys = new RecentPaymentKeys(RecentPaymentKeys.DEFAULT_MAX_KEYS,
+                RecentPaymentKeys.DEFAULT_WINDOW_MILLIS);
+        int restored = keys.restore(log);
+        double restoreMs = (System.nanoTime() - began) / 1e6;
+        System.out.printf("   startup: %,d keys from the log tail in %.0f ms; a full rescan finds %,d in %.0f ms%n",
+                restored, restoreMs, rescanned.size(), rescanMs);
+
+        List<Long> checks = new ArrayList<>();
+        for (int i = 0; i < 200_000; i++) {
+            long start = System.nanoTime();
+            keys.add(i % 2 == 0 ? "recent-" + (i % recentPayments) : "new-" + i, System.currentTimeMillis());
+            checks.add(System.nanoTime() - start);
+        }
+        System.out.println("   check and claim a key: " + formatLatencies(checks) + ", " + keys.size() + " keys kept");
+
+        // Two submits of every payment, from two threads
+        File pipelineLog = new File(dir, "pipeline.txt");
+        RecentPaymentKeys pipelineKeys = new RecentPaymentKeys(RecentPaymentKeys.DEFAULT_MAX_KEYS,
+                RecentPaymentKeys.DEFAULT_WINDOW_MILLIS);
+        PaymentPipeline pipeline = new PaymentPipeline(new BatchingAppender(pipelineLog, null, true)::appendAll,
+                pipelineKeys, PaymentPipeline.DEFAULT_CAPACITY);
+        int payments = 20_000;
+        List<PaymentPipeline.Request> requests = new ArrayList<>();
+        for (int i = 0; i < payments; i++) {
+            requests.add(new PaymentPipeline.Request("GCash", String.valueOf(2_000_000 + i), "4111 1111 1111 1111",
+                    "123", "12/30", "Bench Client", String.valueOf(500 + i % 100)));
+        }
+        java.util.concurrent.atomic.AtomicInteger duplicates = new java.util.concurrent.atomic.AtomicInteger();
+        List<java.util.concurrent.CompletableFuture<?>> futures = Collections.synchronizedList(new ArrayList<>());
+        List<Thread> clickers = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            Thread clicker = new Thread(() -> {
+                for (PaymentPipeline.Request request : requests) {
+                    while (true) {
+                        java.util.concurrent.CompletableFuture<PaymentTransaction> future = pipeline.submit(request);
+                        if (future.isCompletedExceptionally() && future.handle((done, failure) ->
+                                failure instanceof java.util.concurrent.RejectedExecutionException).join()) {
+                            Thread.yield();     // queue full; try again
+                            continue;
+                        }
+                        futures.add(future.handle((done, failure) -> {
+                            if (failure instanceof PaymentPipeline.DuplicatePaymentException) {
+                                duplicates.incrementAndGet();
+                            }
+                            return null;
+                        }));
+                        break;
+                    }
+                }
+            });
+            clicker.start();
+            clickers.add(clicker);
+        }
+        for (Thread clicker : clickers) {
+            clicker.join();
+        }
+        java.util.concurrent.CompletableFuture.allOf(futures.toArray(new java.util.concurrent.CompletableFuture<?>[0])).join();
+        long lines = Files.lines(pipelineLog.toPath()).count();
+        System.out.printf("   %,d payments submitted twice: %,d lines logged, %,d duplicates refused%n",
+                payments, lines, duplicates.get());
+
+        // A restarted portal refuses the same payments again, from the keys in the log
+        RecentPaymentKeys afterRestart = new RecentPaymentKeys(RecentPaymentKeys.DEFAULT_MAX_KEYS,
+                RecentPaymentKeys.DEFAULT_WINDOW_MILLIS);
+        afterRestart.restore(pipelineLog);
+        int refusedAfterRestart = 0;
+        for (PaymentPipeline.Request request : requests) {
+            if (!afterRestart.add(request.getIdempotencyKey(), System.currentTimeMillis())) {
+                refusedAfterRestart++;
+            }
+        }
+        System.out.printf("   after a restart: %,d of %,d resent payments refused%n", refusedAfterRestart, payments);
+        System.out.println("   Counts " + (restored == recentPayments && rescanned.size() == recentPayments
+                && lines == payments && duplicates.get() == payments && refusedAfterRestart == payments
+                ? "agree" : "DIFFER"));
+        System.out.println();
+        deleteRecursively(dir);
+    }
+
+    private interface BalanceWorker {
+        void pay(int thread, int seq);
+    }
+
+    /**
+     * @return Seconds until every thread made its payments
+     */
+    private static double runBalanceThreads(int threads, int paymentsPerThread, BalanceWorker worker)
+            throws InterruptedException {
+        java.util.concurrent.CountDownLatch go = new java.util.concurrent.CountDownLatch(1);
+        List<Thread> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread payer = new Thread(() -> {
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int seq = 0; seq < paymentsPerThread; seq++) {
+                    worker.pay(thread, seq);
+                }
+            });
+            payer.start();
+            running.add(payer);
+        }
+        long start = System.nanoTime();
+        go.countDown();
+        for (Thread payer : running) {
+            payer.join();
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static PaymentPipeline.Request gatewayRequest(String channel, int seq) {
+        return new PaymentPipeline.Request(channel, String.valueOf(2_000_000 + seq % 1000), "4111 1111 1111 1111",
+                "123", "12/30", "Bench Client", String.valueOf(500 + seq % 100));
+    }
+
+    private interface PaymentClient {
+        void pay(int client, int seq) throws IOException;
+    }
+
+    /**
+     * Runs clients that each pay on a fixed schedule, so a slow payment does not
+     * lower the offered load
+     */
+    private static void runPaymentClients(int clients, int perClient, long intervalNanos, PaymentClient payer)
+            throws InterruptedException {
+        List<Thread> running = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            Thread thread = new Thread(() -> {
+                try {
+                    for (int seq = 0; seq < perClient; seq++) {
+                        long due = start + seq * intervalNanos + client * intervalNanos / clients;
+                        long wait = due - System.nanoTime();
+                        if (wait > 0) {
+                            java.util.concurrent.locks.LockSupport.parkNanos(wait);
+                        }
+                        payer.pay(client, seq);
+                    }
+                } catch (IOException e) {
+                    System.err.println("Payment client " + client + " failed: " + e.getMessage());
+                }
+            });
+            thread.start();
+            running.add(thread);
+        }
+        for (Thread thread : running) {
+            thread.join();
+        }
+    }
+
+    private static void reportColumns(PaymentColumns columns, java.time.LocalDateTime from,
+                                      java.time.LocalDateTime to) throws IOException {
+        for (PaymentColumns.GroupBy by : PaymentColumns.GroupBy.values()) {
+            columns.summarize(from, to, by);    // warm-up
+            List<Long> latencies = new ArrayList<>();
+            int groups = 0;
+            for (int i = 0; i < 10; i++) {
+                long began = System.nanoTime();
+                groups = columns.summarize(from, to, by).size();
+                latencies.add(System.nanoTime() - began);
+            }
+            System.out.printf("   column view, by %-7s (%3d groups): %s%n", by.name().toLowerCase(), groups,
+                    formatLatencies(latencies));
+        }
+    }
+
+    /**
+     * Writes payments for every day in a range, in time order through office hours
+     * as they are logged, by students with IDs 2000000 upwards
+     * @return The number of payments written
+     */
+    private static long writeSyntheticPayments(File log, java.time.LocalDate firstDay, java.time.LocalDate lastDay,
+                                               int perDay, int students, Random random) throws IOException {
+        long payments = 0;
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(log), 1 << 16)) {
+            for (java.time.LocalDate day = firstDay; !day.isAfter(lastDay); day = day.plusDays(1)) {
+                String reference = PaymentLedger.referenceFor(day);
+                for (int i = 0; i < perDay; i++) {
+                    java.time.LocalDateTime time = day.atTime(8, 0).plusMinutes(i * 600L / perDay);
+                    writer.write(time.format(PaymentLedger.TIMESTAMP_FORMAT) + ","
+                            + PAYMENT_CHANNELS[random.nextInt(PAYMENT_CHANNELS.length)] + "," + reference + ","
+                            + String.format("P %,.2f", 500.0 + random.nextInt(20) * 500)
+                            + "," + (2_000_000 + random.nextInt(students)));
+                    writer.newLine();
+                    payments++;
+                }
+            }
+        }
+        return payments;
+    }
+
+    /**
+     * Filters the log the way a report would without an index
+     */
+    private static List<PaymentTransaction> scanPayments(File log, java.time.LocalDateTime from,
+                                                         java.time.LocalDateTime to, String channel) throws IOException {
+        List<PaymentTransaction> result = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(log))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                PaymentTransaction payment = PaymentTransaction.parse(line);
+                if (payment == null || (channel != null && !channel.equalsIgnoreCase(payment.getChannel()))) {
+                    continue;
+                }
+                java.time.LocalDateTime time = java.time.LocalDateTime.parse(payment.getDate(), PaymentLedger.TIMESTAMP_FORMAT);
+                if (!time.isBefore(from) && !time.isAfter(to)) {
+                    result.add(payment);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * ID-to-offset index for 2M students: HashMap<String, Long> (as RecordFile kept it),
+     * HashMap<Integer, Long> and OffHeapIdIndex. Compares heap footprint, full GC pause
+     * with the index live, GC time under allocation churn, and lookup speed.
+     */
+    private static void benchmarkOffHeapIndex() {
+        int size = 2_000_000;
+        System.out.println("Student ID index (" + size / 1_000_000 + "M students):");
+        int[] ids = new int[size];
+        for (int i = 0; i < size; i++) {
+            ids[i] = 2_000_000 + i * 3;
+        }
+        for (String kind : new String[]{"HashMap<String, Long>", "HashMap<Integer, Long>", "OffHeapIdIndex"}) {
+            long heapBefore = settledHeapBytes();
+            long start = System.nanoTime();
+            Object index;
+            long nativeBytes = 0;
+            if (kind.startsWith("HashMap<String")) {
+                Map<String, Long> map = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(String.valueOf(ids[i]), i * 45L);
+                }
+                index = map;
+            } else if (kind.startsWith("HashMap<Integer")) {
+                Map<Integer, Long> map = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    map.put(ids[i], i * 45L);
+                }
+                index = map;
+            } else {
+                OffHeapIdIndex offHeap = new OffHeapIdIndex(size);
+                for (int i = 0; i < size; i++) {
+                    offHeap.put(ids[i], i * 45L);
+                }
+                nativeBytes = offHeap.getSizeInBytes();
+                index = offHeap;
+            }
+            double buildMs = (System.nanoTime() - start) / 1e6;
+            long heapBytes = settledHeapBytes() - heapBefore;
+
+            // Full collection with the index live: its cost grows with the objects to trace
+            long fullGcNanos = Long.MAX_VALUE;
+            for (int i = 0; i < 3; i++) {
+                long began = System.nanoTime();
+                System.gc();
+                fullGcNanos = Math.min(fullGcNanos, System.nanoTime() - began);
+            }
+
+            // Short-lived garbage, as a busy portal makes: young collections must scan old-to-young references
+            long gcTimeBefore = totalGcMillis();
+            long gcCountBefore = totalGcCount();
+            for (int i = 0; i < 20_000_000; i++) {
+                churnSink += new StudentInfo("x", "y", "z", "m", "d", "p").hashCode() & 1;
+            }
+            long churnGcMillis = totalGcMillis() - gcTimeBefore;
+            long churnGcCount = totalGcCount() - gcCountBefore;
+
+            Random random = new Random(8);
+            start = System.nanoTime();
+            long found = 0;
+            for (int i = 0; i < 1_000_000; i++) {
+                int id = ids[random.nextInt(size)];
+                if (index instanceof OffHeapIdIndex) {
+                    found += ((OffHeapIdIndex) index).get(id) >= 0 ? 1 : 0;
+                } else if (kind.startsWith("HashMap<String")) {
+                    found += ((Map<?, ?>) index).containsKey(String.valueOf(id)) ? 1 : 0;
+                } else {
+                    found += ((Map<?, ?>) index).containsKey(id) ? 1 : 0;
+                }
+            }
+            double lookupNs = (System.nanoTime() - start) / 1e6;
+
+            System.out.printf("   %-22s heap %5.1f MB (%3d B/student), native %5.1f MB, built in %4.0f ms%n",
+                    kind, heapBytes / 1048576.0, heapBytes / size, nativeBytes / 1048576.0, buildMs);
+            System.out.printf("   %-22s full GC %5.1f ms; churn: %d GCs, %d ms total; lookup %.0f ns (%d found)%n",
+                    "", fullGcNanos / 1e6, churnGcCount, churnGcMillis, lookupNs, found);
+            index = null;
+        }
+        System.out.println();
+    }
+
+    /**
+     * Heap taken by a 1M-student roster read from Database.txt lines, as StudentInfo
+     * objects and as StudentRecords sharing a NameDictionary
+     */
+    private static void benchmarkStudentFootprint() {
+        int size = 1_000_000;
+        System.out.println("Student roster footprint (1,000,000 students):");
+        String[] lines = createSyntheticDatabaseLines(size);
+
+        long heapBefore = settledHeapBytes();
+        long start = System.nanoTime();
+        List<StudentInfo> infos = new ArrayList<>(size);
+        for (String line : lines) {
+            String[] parts = line.split(",");
+            infos.add(new StudentInfo(parts[0].trim(), parts[1].trim(), parts[2].trim(),
+                    parts[3].trim(), parts[4].trim(), parts[5].trim()));
+        }
+        long infoMillis = (System.nanoTime() - start) / 1_000_000;
+        long infoBytes = settledHeapBytes() - heapBefore;
+        start = System.nanoTime();
+        long nameChars = 0;
+        for (int round = 0; round < 5; round++) {
+            for (StudentInfo student : infos) {
+                nameChars += student.getFullName().length();
+            }
+        }
+        long infoNameNanos = (System.nanoTime() - start) / (5L * size);
+        infos = null;
+
+        heapBefore = settledHeapBytes();
+        start = System.nanoTime();
+        NameDictionary names = new NameDictionary();
+        List<StudentRecord> records = new ArrayList<>(size);
+        for (String line : lines) {
+            records.add(StudentRecord.parse(line, names));
+        }
+        long recordMillis = (System.nanoTime() - start) / 1_000_000;
+        long recordBytes = settledHeapBytes() - heapBefore;
+        start = System.nanoTime();
+        for (int round = 0; round < 5; round++) {
+            for (StudentRecord record : records) {
+                nameChars += record.getFullName().length();
+            }
+        }
+        long recordNameNanos = (System.nanoTime() - start) / (5L * size);
+
+        int mismatches = 0;
+        for (int i = 0; i < size; i++) {
+            if (!records.get(i).toDatabaseFormat().equals(lines[i])) {
+                mismatches++;
+            }
+        }
+        System.out.printf("   StudentInfo    %5.1f MB (%3d B/student), loaded in %4d ms, getFullName %3d ns%n",
+                infoBytes / 1048576.0, infoBytes / size, infoMillis, infoNameNanos);
+        System.out.printf("   StudentRecord  %5.1f MB (%3d B/student), loaded in %4d ms, getFullName %3d ns%n",
+                recordBytes / 1048576.0, recordBytes / size, recordMillis, recordNameNanos);
+        System.out.println("   Distinct names: " + names.size() + " | records that do not read back: " + mismatches
+                + (nameChars > 0 ? "" : " "));
+        System.out.println();
+    }
+
+    // Keeps the churn allocations from being optimized away
+    private static volatile long churnSink;
+
+    private static long settledHeapBytes() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static long totalGcMillis() {
+        long total = 0;
+        for (java.lang.management.GarbageCollectorMXBean gc : java.lang.management.ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    private static long totalGcCount() {
+        long total = 0;
+        for (java.lang.management.GarbageCollectorMXBean gc : java.lang.management.ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionCount());
+        }
+        return total;
+    }
+
+    private interface BenchmarkThread {
+        void run(int thread, Random random) throws Exception;
+    }
+
+    /**
+     * Runs the same work on several threads and waits for all of them
+     * @return The elapsed time in seconds
+     */
+    private static double runThreads(int threads, BenchmarkThread work) throws InterruptedException {
+        List<Thread> running = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int t = 0; t < threads; t++) {
+            int thread = t;
+            Thread worker = new Thread(() -> {
+                try {
+                    work.run(thread, new Random(thread));
+                } catch (Exception e) {
+                    System.err.println("Benchmark thread failed: " + e.getMessage());
+                }
+            });
+            worker.start();
+            running.add(worker);
+        }
+        for (Thread worker : running) {
+            worker.join();
+        }
+        return (System.nanoTime() - start) / 1e9;
+    }
+
+    private static StudentInfo readStudentRecord(File database, String studentID) {
+        try (BufferedReader reader = new BufferedReader(new FileReader(database))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 6 && studentID.equals(parts[0].trim())) {
+                    return new StudentInfo(parts[0], parts[1], parts[2], parts[3], parts[4], parts[5]);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading database: " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static List<PaymentTransaction> readPaymentRecords(File payments, String studentID) {
+        List<PaymentTransaction> transactions = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(payments))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                PaymentTransaction transaction = PaymentTransaction.parse(line);
+                if (transaction != null && studentID.equals(transaction.getStudentID())) {
+                    transactions.add(transaction);
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading payment logs: " + e.getMessage());
+        }
+        return transactions;
+    }
+
+    /**
+     * Scans a database for an ID the way authenticateUser does
+     */
+    private static boolean scanForID(File database, String studentID) throws IOException {
+        try (BufferedReader reader = new BufferedReader(new FileReader(database))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(",");
+                if (parts.length >= 6 && studentID.equals(parts[0].trim())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Helper methods
+
+    private static final String[] LAST_NAMES = {"Madriaga", "Rivera", "Santos", "Reyes", "Bautista", "Carino",
+            "Dela Cruz", "Garcia", "Mendoza", "Torres", "Villanueva", "Aquino", "Fernandez", "Lim", "Gonzales",
+            "Ramos", "Castillo", "Flores", "Navarro", "Pascual"};
+    private static final String[] PAYMENT_CHANNELS = {"GCash", "Maya", "UnionBank UPay", "BPI", "Cashier"};
+    private static final String[] FIRST_NAMES = {"Aldine", "Sherlie", "Maria", "Jose", "Ana", "Pedro", "Rosa",
+            "Luis", "Grace", "Mark", "Carlo", "Liza", "Rene", "Ella", "Juan", "Paolo", "Kristine", "Joshua"};
+
+    /**
+     * Creates a roster of synthetic students with IDs 2000000 upwards
+     */
+    private static List<StudentInfo> createSyntheticRoster(int size) {
+        Random random = new Random(11);
+        List<StudentInfo> roster = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            // Suffix some surnames so that the key space is not just twenty names
+            String lastName = LAST_NAMES[random.nextInt(LAST_NAMES.length)]
+                    + (random.nextInt(4) == 0 ? "" : "-" + Integer.toString(random.nextInt(20_000), 36));
+            roster.add(new StudentInfo(String.valueOf(2_000_000 + i), lastName,
+                    FIRST_NAMES[random.nextInt(FIRST_NAMES.length)], "M",
+                    String.format("%02d/%02d/%02d", 1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(10)),
+                    "pw" + i));
+        }
+        return roster;
+    }
+
+    // A method of its own, so the roster is unreachable once it returns
+    private static String[] createSyntheticDatabaseLines(int size) {
+        String[] lines = new String[size];
+        int i = 0;
+        for (StudentInfo student : createSyntheticRoster(size)) {
+            lines[i++] = student.toDatabaseFormat();
+        }
+        return lines;
+    }
+
+    /**
+     * @return p50, p99 and max of a list of nanosecond latencies, in milliseconds
+     */
+    private static String formatLatencies(List<Long> nanos) {
+        List<Long> sorted = new ArrayList<>(nanos);
+        Collections.sort(sorted);
+        return String.format("p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                sorted.get(sorted.size() / 2) / 1e6,
+                sorted.get((int) Math.min(sorted.size() - 1, Math.round(sorted.size() * 0.99))) / 1e6,
+                sorted.get(sorted.size() - 1) / 1e6);
+    }
+
+    private static File createTempDirectory() throws IOException {
+        return Files.createTempDirectory("portal-bench").toFile();
+    }
+
+    private static long usedHeapMB() {
+        Runtime runtime = Runtime.getRuntime();
+        return (runtime.totalMemory() - runtime.freeMemory()) / 1024 / 1024;
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        file.delete();
+    }
+}
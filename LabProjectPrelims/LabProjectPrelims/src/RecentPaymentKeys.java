@@ -0,0 +1,181 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Idempotency keys of recently logged payments, so a payment sent twice (a double
+ * click, a retried gateway callback) is logged once. Keys are kept in the order they
+ * were logged with their time, and drop out once they are older than the window or
+ * once there are more than the limit, so checking a key costs one hash lookup and the
+ * set never grows past its limit. After a restart the set is filled again from the end
+ * of the payment log rather than by reading all of it. Keys read from the log are told
+ * apart from keys only claimed here, and another program appending to the same log is
+ * caught up with under the data lock, just before this one appends.
+ */
+public class RecentPaymentKeys {
+
+    public static final int DEFAULT_MAX_KEYS = 100_000;
+    public static final long DEFAULT_WINDOW_MILLIS = 24L * 60 * 60 * 1000;
+
+    // Generous for one payment line with its key, so the tail read on restore covers the limit
+    private static final int BYTES_PER_LINE = 160;
+
+    private final int maxKeys;
+    private final long windowMillis;
+    private final LinkedHashMap<String, Long> keys = new LinkedHashMap<>();
+    private final Set<String> logged = new HashSet<>();     // the keys read from the log
+    private long coveredLength = -1;    // how much of the log has been read, or -1 if not restored
+
+    /**
+     * Creates an empty set
+     * @param maxKeys The most keys kept
+     * @param windowMillis How long a key is kept
+     */
+    public RecentPaymentKeys(int maxKeys, long windowMillis) {
+        this.maxKeys = maxKeys;
+        this.windowMillis = windowMillis;
+    }
+
+    /**
+     * Claims a key for a payment about to be logged
+     * @param key The idempotency key
+     * @param millis When the payment is logged
+     * @return true if the key is new, false if a payment with it was logged or claimed recently
+     */
+    public synchronized boolean add(String key, long millis) {
+        expire(millis);
+        if (keys.containsKey(key)) {
+            return false;
+        }
+        keys.put(key, millis);
+        if (keys.size() > maxKeys) {
+            Iterator<String> oldest = keys.keySet().iterator();
+            logged.remove(oldest.next());
+            oldest.remove();
+        }
+        return true;
+    }
+
+    // A key read from the log, which may have been claimed here already
+    private synchronized boolean addLogged(String key, long millis) {
+        boolean added = add(key, millis);
+        if (keys.containsKey(key)) {
+            logged.add(key);
+        }
+        return added;
+    }
+
+    /**
+     * Gives up a claimed key whose payment could not be logged, so it can be sent again
+     * @param key The idempotency key
+     */
+    public synchronized void remove(String key) {
+        keys.remove(key);
+        logged.remove(key);
+    }
+
+    /**
+     * @param key The idempotency key
+     * @return true if a payment with the key was read from the log, rather than only claimed here
+     */
+    public synchronized boolean isLogged(String key) {
+        return logged.contains(key);
+    }
+
+    /**
+     * @return Number of keys kept
+     */
+    public synchronized int size() {
+        return keys.size();
+    }
+
+    // Keys are in time order, so expired ones are at the front
+    private void expire(long now) {
+        Iterator<Map.Entry<String, Long>> oldest = keys.entrySet().iterator();
+        while (oldest.hasNext()) {
+            Map.Entry<String, Long> entry = oldest.next();
+            if (entry.getValue() >= now - windowMillis) {
+                break;
+            }
+            logged.remove(entry.getKey());
+            oldest.remove();
+        }
+    }
+
+    /**
+     * Adds the keys of the payments at the end of a payment log that fall in the window
+     * @param log The payment log
+     * @return Number of keys added
+     * @throws IOException If the log cannot be read
+     */
+    public int restore(File log) throws IOException {
+        long length = log.length();
+        long from = Math.max(0, length - (long) maxKeys * BYTES_PER_LINE);
+        int firstMinute = PaymentLedger.minuteOf(java.time.LocalDateTime.now().minusSeconds(windowMillis / 1000));
+        int[] added = {0};
+        RecordFile.scanLines(log, from, length, (line, offset, lineBytes) -> {
+            if (offset == from && from > 0) {
+                return;     // most likely the end of a line that starts before the tail
+            }
+            String key = PaymentLedger.keyOf(line);
+            int minute = key == null ? -1 : PaymentLedger.parseMinute(line);
+            if (minute >= firstMinute && addLogged(key, PaymentLedger.millisOf(minute))) {
+                added[0]++;
+            }
+        });
+        synchronized (this) {
+            coveredLength = Math.max(coveredLength, length);
+        }
+        return added[0];
+    }
+
+    /**
+     * Reads the payments appended to the log since it was last read, which another
+     * program may have logged; call it holding the data lock, just before appending
+     * @param log The payment log
+     * @param length The log's length
+     * @throws IOException If the log cannot be read
+     */
+    public synchronized void catchUp(File log, long length) throws IOException {
+        if (coveredLength < 0 || length < coveredLength) {
+            coveredLength = length;     // not restored yet, or the log was rewritten
+            return;
+        }
+        coveredLength = RecordFile.scanLines(log, coveredLength, length, (line, offset, lineBytes) -> {
+            String key = PaymentLedger.keyOf(line);
+            int minute = key == null ? -1 : PaymentLedger.parseMinute(line);
+            if (minute >= 0) {
+                addLogged(key, PaymentLedger.millisOf(minute));
+            }
+        });
+    }
+
+    /**
+     * Records that this program appended to the log, whose keys it claimed before
+     * @param lengthBefore The log's length before the append
+     * @param lengthAfter The log's length after it
+     */
+    public synchronized void afterAppend(long lengthBefore, long lengthAfter) {
+        if (coveredLength == lengthBefore) {
+            coveredLength = lengthAfter;
+        }
+    }
+
+    /**
+     * Adds the keys of payment lines logged by another program
+     * @param lines The lines
+     */
+    public void addLogged(Iterable<String> lines) {
+        for (String line : lines) {
+            String key = PaymentLedger.keyOf(line);
+            int minute = key == null ? -1 : PaymentLedger.parseMinute(line);
+            if (minute >= 0) {
+                addLogged(key, PaymentLedger.millisOf(minute));
+            }
+        }
+    }
+}
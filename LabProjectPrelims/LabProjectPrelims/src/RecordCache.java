@@ -0,0 +1,183 @@
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Size-bounded LRU cache for records loaded from one data file.
+ * Entries are weighed in (estimated) bytes and the least recently used ones are
+ * evicted once the total weight passes the limit. The cache remembers the file's
+ * modification time and length; when either changes, every entry is dropped,
+ * except for appends reported through afterAppend, which only drop the affected keys.
+ *
+ * @param <K> The key type
+ * @param <V> The record type
+ */
+public class RecordCache<K, V> {
+
+    private final File file;
+    private final long maxWeight;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    private long weight;
+    private long fileModified = -1;
+    private long fileLength = -1;
+
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    private static class Entry<V> {
+        final V value;
+        final long weight;
+
+        Entry(V value, long weight) {
+            this.value = value;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Creates an empty cache
+     * @param file The data file the records come from
+     * @param maxWeight The maximum total weight, in bytes
+     * @param weigher Estimates the size of a record in bytes
+     */
+    public RecordCache(File file, long maxWeight, ToLongFunction<V> weigher) {
+        this.file = file;
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * Returns the cached record for a key, loading and caching it on a miss.
+     * Null results are returned but not cached.
+     * @param key The key
+     * @param loader Reads the record from the file
+     * @return The record, or null if the loader found none
+     */
+    public V get(K key, Function<K, V> loader) {
+        long modified;
+        long length;
+        synchronized (this) {
+            checkFile();
+            Entry<V> entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.value;
+            }
+            misses++;
+            modified = fileModified;
+            length = fileLength;
+        }
+
+        V value = loader.apply(key);
+
+        synchronized (this) {
+            // Only cache what was read from the version of the file we checked
+            checkFile();
+            if (value != null && fileModified == modified && fileLength == length) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Records an append to the file: drops the affected key and, if nothing else
+     * changed the file since it was last checked, keeps the rest
+     * @param key The key whose record changed
+     * @param lengthBefore The file length before the append
+     * @param lengthAfter The file length after the append
+     */
+    public void afterAppend(K key, long lengthBefore, long lengthAfter) {
+        afterAppend(Collections.singletonList(key), lengthBefore, lengthAfter);
+    }
+
+    /**
+     * Records an append to the file that changed several records
+     * @param keys The keys whose records changed
+     * @param lengthBefore The file length before the append
+     * @param lengthAfter The file length after the append
+     */
+    public synchronized void afterAppend(Collection<K> keys, long lengthBefore, long lengthAfter) {
+        for (K key : keys) {
+            remove(key);
+        }
+        if (fileLength == lengthBefore && file.length() == lengthAfter) {
+            fileModified = file.lastModified();
+            fileLength = lengthAfter;
+        }
+    }
+
+    /**
+     * Drops every entry
+     */
+    public synchronized void clear() {
+        entries.clear();
+        weight = 0;
+    }
+
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    public synchronized long getEvictions() { return evictions; }
+    public synchronized long getInvalidations() { return invalidations; }
+    public synchronized long getWeight() { return weight; }
+    public synchronized int size() { return entries.size(); }
+
+    /**
+     * @return A one-line summary of the cache statistics
+     */
+    public synchronized String getStats() {
+        long lookups = hits + misses;
+        return String.format("%d entries, %,d of %,d bytes, %d hits, %d misses (%.1f%% hit rate), %d evictions, %d invalidations",
+                entries.size(), weight, maxWeight, hits, misses, lookups == 0 ? 0.0 : hits * 100.0 / lookups,
+                evictions, invalidations);
+    }
+
+    /**
+     * Drops every entry if the file changed since it was last checked
+     */
+    private void checkFile() {
+        long modified = file.lastModified();
+        long length = file.length();
+        if (modified != fileModified || length != fileLength) {
+            if (!entries.isEmpty()) {
+                invalidations++;
+                clear();
+            }
+            fileModified = modified;
+            fileLength = length;
+        }
+    }
+
+    private void put(K key, V value) {
+        long entryWeight = weigher.applyAsLong(value);
+        if (entryWeight > maxWeight) {
+            return;
+        }
+        remove(key);
+        entries.put(key, new Entry<>(value, entryWeight));
+        weight += entryWeight;
+        // The map is in access order, so iteration starts at the least recently used
+        Iterator<Map.Entry<K, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (weight > maxWeight && eldest.hasNext()) {
+            weight -= eldest.next().getValue().weight;
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    private void remove(K key) {
+        Entry<V> removed = entries.remove(key);
+        if (removed != null) {
+            weight -= removed.weight;
+        }
+    }
+}
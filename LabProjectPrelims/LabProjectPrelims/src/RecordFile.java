@@ -0,0 +1,453 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Locates the live line of each record in a line-per-record data file, so records
+ * can be replaced and deleted without rewriting the file.
+ *
+ * A replaced record's old line is overwritten in place with a tombstone of the same
+ * length ('#' then spaces), and the new version is appended. A deleted record is
+ * tombstoned the same way and a "#deleted key" line is appended, so programs that
+ * only read appended lines learn about it. Lines starting with '#' have no commas
+ * and are not records, so every existing reader skips them.
+ *
+ * The key of each record is mapped to the offset of its line, caught up from the
+ * file's tail before each use. Files keyed by student ID keep that map off the heap
+ * in an OffHeapIdIndex; other keys use a HashMap. Tombstones are counted, and compact() rewrites the
+ * file without them; deletion markers are kept, so deleted keys stay known.
+ * Callers hold the DataFileLock for the data directory.
+ */
+public class RecordFile {
+
+    static final String DELETED_MARKER = "#deleted ";
+    private static final byte TOMBSTONE = '#';
+
+    // Compact once dead lines take up this share of the file, and at least this much
+    private static final double COMPACT_DEAD_RATIO = 0.25;
+    private static final long COMPACT_MIN_DEAD_BYTES = 64 * 1024;
+
+    private final File file;
+    private final Function<String, String> keyOf;
+    private final boolean studentIDKeys;
+
+    private Map<String, Long> offsets;      // keys that are not 7-digit student IDs
+    private OffHeapIdIndex idOffsets;       // student ID keys, when studentIDKeys
+    private long coveredLength = -1;
+    private long deadBytes;
+
+    private long compactions;
+    private long reclaimedBytes;
+
+    /**
+     * Creates a locator for a data file
+     * @param file The data file
+     * @param keyOf Extracts the key from a record line, or returns null for other lines
+     */
+    public RecordFile(File file, Function<String, String> keyOf) {
+        this(file, keyOf, false);
+    }
+
+    private RecordFile(File file, Function<String, String> keyOf, boolean studentIDKeys) {
+        this.file = file;
+        this.keyOf = keyOf;
+        this.studentIDKeys = studentIDKeys;
+    }
+
+    /**
+     * Creates a locator for a file in the Database.txt format, keyed by the student
+     * ID before the first comma and indexed off the heap
+     * @param file The data file
+     * @return The locator
+     */
+    public static RecordFile byStudentID(File file) {
+        return new RecordFile(file, line -> {
+            int comma = line.indexOf(',');
+            return comma > 0 ? line.substring(0, comma).trim() : null;
+        }, true);
+    }
+
+    /**
+     * Finds the live line of a record; the caller holds the data lock
+     * @param key The record key
+     * @return The offset of the record's line, or -1 if there is no such record
+     * @throws IOException If the file cannot be read
+     */
+    public synchronized long locate(String key) throws IOException {
+        catchUp();
+        long offset = offsetOf(key);
+        if (offset < 0) {
+            return -1;
+        }
+        String line = readLine(offset);
+        if (line == null || !key.equals(keyOf.apply(line))) {
+            // Changed behind our back (e.g. edited by hand); read everything again
+            coveredLength = -1;
+            catchUp();
+            offset = offsetOf(key);
+        }
+        return offset;
+    }
+
+    /**
+     * Reads the live line of a record. Unlike locate() followed by readLine(), no
+     * compaction can move the line in between.
+     * @param key The record key
+     * @return The line without its terminator, or null if there is no such record
+     * @throws IOException If the file cannot be read
+     */
+    public synchronized String readRecord(String key) throws IOException {
+        long offset = locate(key);
+        return offset < 0 ? null : readLine(offset);
+    }
+
+    /**
+     * Reads the record line starting at an offset
+     * @param offset The offset of the line
+     * @return The line without its terminator, or null past the end of the file
+     * @throws IOException If the file cannot be read
+     */
+    public String readLine(long offset) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return readLine(channel, offset, ByteBuffer.allocate(256));
+        }
+    }
+
+    /**
+     * Reads the line starting at an offset of an open file
+     * @param channel The file
+     * @param offset The offset of the line
+     * @param buffer Scratch buffer, reused across calls
+     * @return The line without its terminator, or null past the end of the file
+     * @throws IOException If the file cannot be read
+     */
+    static String readLine(FileChannel channel, long offset, ByteBuffer buffer) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        long position = offset;
+        buffer.clear();
+        while (channel.read(buffer, position) > 0) {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                byte b = buffer.get();
+                if (b == '\n') {
+                    return trimCarriageReturn(line.toString(StandardCharsets.UTF_8));
+                }
+                line.write(b);
+            }
+            position += buffer.position();
+            buffer.clear();
+        }
+        return position > offset ? trimCarriageReturn(line.toString(StandardCharsets.UTF_8)) : null;
+    }
+
+    /**
+     * Finds the end of the line starting at an offset of an open file
+     * @param channel The file
+     * @param offset The offset of the line
+     * @param buffer Scratch buffer, reused across calls
+     * @return The offset after the line's terminator, or the file length if it has none
+     * @throws IOException If the file cannot be read
+     */
+    static long lineEnd(FileChannel channel, long offset, ByteBuffer buffer) throws IOException {
+        long position = offset;
+        buffer.clear();
+        int read;
+        while ((read = channel.read(buffer, position)) > 0) {
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+            buffer.clear();
+        }
+        return position;
+    }
+
+    /**
+     * Builds the patch that turns the live line of a record into a tombstone; the
+     * caller holds the data lock and commits the patch with the record's replacement
+     * @param key The record key
+     * @return The patch, or null if there is no such record
+     * @throws IOException If the file cannot be read
+     */
+    public synchronized AppendJournal.Patch tombstone(String key) throws IOException {
+        long offset = locate(key);
+        if (offset < 0) {
+            return null;
+        }
+        byte[] bytes = readLine(offset).getBytes(StandardCharsets.UTF_8);
+        Arrays.fill(bytes, (byte) ' ');
+        bytes[0] = TOMBSTONE;
+        return new AppendJournal.Patch(file, offset, bytes);
+    }
+
+    /**
+     * @param key The key of a deleted record
+     * @return The line to append when deleting it
+     */
+    public static String deletionMarker(String key) {
+        return DELETED_MARKER + key;
+    }
+
+    /**
+     * @return Bytes taken up by tombstones, as far as seen
+     */
+    public synchronized long getDeadBytes() {
+        return deadBytes;
+    }
+
+    /**
+     * @return true if enough of the file is dead that compact() is worth running
+     */
+    public synchronized boolean shouldCompact() {
+        return deadBytes >= COMPACT_MIN_DEAD_BYTES && deadBytes >= file.length() * COMPACT_DEAD_RATIO;
+    }
+
+    /**
+     * Rewrites the file without tombstones; the caller holds
+     * the data lock. The new file is written next to the old one and renamed over
+     * it, so readers that already opened the file finish on the old copy.
+     * @return The number of bytes reclaimed
+     * @throws IOException If the file cannot be rewritten; the old file is kept
+     */
+    public synchronized long compact() throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        File temp = new File(file.getParentFile(), file.getName() + ".compact");
+        long before = file.length();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16);
+             FileOutputStream stream = new FileOutputStream(temp);
+             Writer writer = new BufferedWriter(new OutputStreamWriter(stream, StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isEmpty() && (line.charAt(0) != TOMBSTONE || line.startsWith(DELETED_MARKER))) {
+                    writer.write(line);
+                    writer.write(System.lineSeparator());
+                }
+            }
+            writer.flush();
+            stream.getFD().sync();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        long reclaimed = before - file.length();
+        coveredLength = -1;
+        offsets = null;
+        idOffsets = null;
+        deadBytes = 0;
+        compactions++;
+        reclaimedBytes += reclaimed;
+        return reclaimed;
+    }
+
+    public File getFile() { return file; }
+    public synchronized long getCompactions() { return compactions; }
+    public synchronized long getReclaimedBytes() { return reclaimedBytes; }
+
+    /**
+     * @return The keys of the live records
+     * @throws IOException If the file cannot be read
+     */
+    public synchronized Set<String> keys() throws IOException {
+        catchUp();
+        Set<String> keys = new HashSet<>(offsets.keySet());
+        if (idOffsets != null) {
+            idOffsets.forEachId(id -> keys.add(String.format("%07d", id)));
+        }
+        return keys;
+    }
+
+    /**
+     * Reads the lines appended since the last call, or the whole file if it shrank
+     * or was never read
+     */
+    private void catchUp() throws IOException {
+        long length = file.length();
+        if (offsets == null || coveredLength < 0 || length < coveredLength) {
+            offsets = new HashMap<>();
+            // Database.txt lines average about 45 bytes
+            idOffsets = studentIDKeys ? new OffHeapIdIndex((int) Math.min(length / 40, 50_000_000)) : null;
+            coveredLength = 0;
+            deadBytes = 0;
+        }
+        if (length == coveredLength) {
+            return;
+        }
+        // A torn last line is read again once it is complete
+        coveredLength = scanLines(file, coveredLength, length, this::apply);
+    }
+
+    /** Receives the lines read by scanLines() */
+    interface LineVisitor {
+        void visit(String line, long offset, long lineBytes) throws IOException;
+    }
+
+    /**
+     * Reads the complete lines of a file between two offsets
+     * @param file The file
+     * @param from The offset of the first line
+     * @param to The length to read up to
+     * @param visitor Receives each line without its terminator, its offset and its
+     *                length including the terminator
+     * @return The offset after the last complete line
+     * @throws IOException If the file cannot be read
+     */
+    static long scanLines(File file, long from, long to, LineVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+            ByteArrayOutputStream carry = new ByteArrayOutputStream(128);
+            long lineStart = from;
+            long position = from;
+            while (position < to) {
+                buffer.clear();
+                int read = channel.read(buffer, position);
+                if (read <= 0) {
+                    break;
+                }
+                byte[] bytes = buffer.array();
+                int start = 0;
+                for (int i = 0; i < read; i++) {
+                    if (bytes[i] != '\n') {
+                        continue;
+                    }
+                    String line;
+                    if (carry.size() > 0) {
+                        carry.write(bytes, start, i - start);
+                        line = carry.toString(StandardCharsets.UTF_8);
+                        carry.reset();
+                    } else {
+                        line = new String(bytes, start, i - start, StandardCharsets.UTF_8);
+                    }
+                    long lineEnd = position + i + 1;
+                    visitor.visit(trimCarriageReturn(line), lineStart, lineEnd - lineStart);
+                    lineStart = lineEnd;
+                    start = i + 1;
+                }
+                carry.write(bytes, start, read - start);
+                position += read;
+            }
+            return lineStart;
+        }
+    }
+
+    private void apply(String line, long offset, long lineBytes) throws IOException {
+        long replaced;
+        if (line.startsWith(DELETED_MARKER)) {
+            replaced = removeOffset(line.substring(DELETED_MARKER.length()).trim());
+        } else if (!line.isEmpty() && line.charAt(0) == TOMBSTONE) {
+            deadBytes += lineBytes;
+            return;
+        } else {
+            String key = keyOf.apply(line);
+            replaced = key == null ? -1 : putOffset(key, offset);
+        }
+        if (replaced >= 0) {
+            // The old line was tombstoned when this one was written; count it now
+            String old = readLine(replaced);
+            deadBytes += old == null ? 0 : old.length() + 1;
+        }
+    }
+
+    private long offsetOf(String key) {
+        int id = idOffsets == null ? -1 : StudentIdIndex.parse(key);
+        if (id >= 0) {
+            return idOffsets.get(id);
+        }
+        Long offset = offsets.get(key);
+        return offset == null ? -1 : offset;
+    }
+
+    private long putOffset(String key, long offset) {
+        int id = idOffsets == null ? -1 : StudentIdIndex.parse(key);
+        if (id >= 0) {
+            return idOffsets.put(id, offset);
+        }
+        Long previous = offsets.put(key, offset);
+        return previous == null ? -1 : previous;
+    }
+
+    private long removeOffset(String key) {
+        int id = idOffsets == null ? -1 : StudentIdIndex.parse(key);
+        if (id >= 0) {
+            return idOffsets.remove(id);
+        }
+        Long previous = offsets.remove(key);
+        return previous == null ? -1 : previous;
+    }
+
+    /**
+     * Writes the record offsets to a checkpoint; the caller holds the data lock
+     * @param out The checkpoint stream
+     * @throws IOException If the file cannot be read or the checkpoint written
+     */
+    public synchronized void writeIndexTo(DataOutputStream out) throws IOException {
+        catchUp();
+        out.writeLong(coveredLength);
+        out.writeLong(DataFileWatcher.fingerprint(file, coveredLength));
+        out.writeLong(deadBytes);
+        out.writeInt(offsets.size());
+        for (Map.Entry<String, Long> entry : offsets.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeLong(entry.getValue());
+        }
+        out.writeBoolean(idOffsets != null);
+        if (idOffsets != null) {
+            idOffsets.writeTo(out);
+        }
+    }
+
+    /**
+     * Loads the record offsets from a checkpoint, unless the file no longer starts
+     * with the lines they cover; only lines appended since are read afterwards
+     * @param in The checkpoint stream, positioned where writeIndexTo() started
+     * @return true if the offsets were loaded; the stream is read past them either way
+     * @throws IOException If the checkpoint cannot be read
+     */
+    public synchronized boolean readIndexFrom(DataInputStream in) throws IOException {
+        long length = in.readLong();
+        long fingerprint = in.readLong();
+        long dead = in.readLong();
+        int count = in.readInt();
+        Map<String, Long> loaded = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            loaded.put(in.readUTF(), in.readLong());
+        }
+        OffHeapIdIndex loadedIDs = in.readBoolean() ? OffHeapIdIndex.readFrom(in) : null;
+        if (studentIDKeys != (loadedIDs != null)
+                || file.length() < length || DataFileWatcher.fingerprint(file, length) != fingerprint) {
+            return false;
+        }
+        offsets = loaded;
+        idOffsets = loadedIDs;
+        coveredLength = length;
+        deadBytes = dead;
+        return true;
+    }
+
+    /**
+     * Reads the lines appended since the last use now, rather than on the next lookup
+     * @throws IOException If the file cannot be read
+     */
+    public synchronized void refresh() throws IOException {
+        catchUp();
+    }
+
+    /**
+     * @return Native memory taken by the off-heap offset index, in bytes
+     */
+    public synchronized long getOffHeapBytes() {
+        return idOffsets == null ? 0 : idOffsets.getSizeInBytes();
+    }
+
+    static String trimCarriageReturn(String line) {
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+}
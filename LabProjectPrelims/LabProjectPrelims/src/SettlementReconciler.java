@@ -0,0 +1,501 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+
+/**
+ * Matches a bank settlement export against the payments logged for the bank's
+ * channel. The logged payments of the settlement period are the build side of a
+ * hash join on (student ID, amount in centavos, date), streamed from the archive
+ * blocks and the ledger's segments of the period's terms; the settlement file is
+ * streamed and probes it. A settlement row matches one logged payment with the
+ * same key, so two equal payments on a day need two rows.
+ *
+ * Reports are written next to the settlement file:
+ *   .matched  settlement rows with the time the payment was logged
+ *   .missing  logged payments the bank did not settle
+ *   .extra    settlement rows with no logged payment
+ *   .rejects  settlement rows that could not be read
+ *
+ * The hash table holds at most a set number of payments. If the period has more,
+ * both sides are first split by key hash into partition files next to the
+ * settlement file, and the partitions are joined one at a time; the reports are
+ * then in partition order rather than file order.
+ *
+ * Settlement rows (blank lines, lines starting with '#' and a header are skipped):
+ *   date,studentID,amount[,bank reference]
+ * with the date as MM/dd/yyyy or yyyy-MM-dd and the amount as "7000.00", "P 7,000.00"
+ * or a quoted "7,000.00".
+ */
+public class SettlementReconciler {
+
+    public static final int DEFAULT_MAX_TABLE_ENTRIES = 1 << 20;
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    private final PaymentLedger ledger;
+    private final PaymentArchive archive;
+    private final int maxTableEntries;
+
+    /**
+     * Creates a reconciler
+     * @param ledger The payments in the log
+     * @param archive The archived payments, or null if there is no archive
+     * @param maxTableEntries The most payments held in memory at once
+     */
+    public SettlementReconciler(PaymentLedger ledger, PaymentArchive archive, int maxTableEntries) {
+        if (maxTableEntries <= 0) {
+            throw new IllegalArgumentException("The table must hold at least one payment");
+        }
+        this.ledger = ledger;
+        this.archive = archive;
+        this.maxTableEntries = maxTableEntries;
+    }
+
+    /**
+     * Reconciles a settlement file
+     * @param settlement The bank's settlement export
+     * @param channel The payment channel the bank settles (case-insensitive)
+     * @param from The first day of the settlement period
+     * @param to The last day of the settlement period
+     * @return The reconciliation report
+     * @throws IOException If a file cannot be read or written
+     */
+    public ReconcileReport reconcile(File settlement, String channel, LocalDate from, LocalDate to) throws IOException {
+        long start = System.nanoTime();
+        LocalDateTime periodStart = from.atStartOfDay();
+        LocalDateTime periodEnd = to.atTime(23, 59);
+        // Lines an unfinished archive run left in the log are read from the archive
+        PaymentArchive.Leftovers leftovers = archive == null ? null : archive.getLeftovers(ledger.getFile());
+        // The ledger's index bounds the payments in the log without reading it; they are
+        // only counted exactly if that bound does not fit the table or terms were archived
+        long payments = ledger.count(periodStart, periodEnd);
+        if (payments > maxTableEntries || hasArchivedTerms(from, to)) {
+            payments = forEachPayment(periodStart, periodEnd, channel, leftovers, (minute, centavos, studentID) -> { });
+        }
+        // Partitions are filled by hash, so leave room for some to come out larger than average
+        int partitions = payments <= maxTableEntries ? 1
+                : (int) ((payments * 5 / 4 + maxTableEntries - 1) / maxTableEntries);
+        ReconcileReport report = new ReconcileReport(settlement, partitions);
+
+        try (Reports reports = new Reports(settlement)) {
+            if (partitions == 1) {
+                PaymentTable table = new PaymentTable((int) payments);
+                forEachPayment(periodStart, periodEnd, channel, leftovers, table::add);
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(settlement), StandardCharsets.UTF_8), 1 << 16)) {
+                    String line;
+                    long lineNumber = 0;
+                    while ((line = reader.readLine()) != null) {
+                        SettlementRow row = SettlementRow.parse(++lineNumber, line, report, reports);
+                        if (row != null) {
+                            probe(table, row, report, reports);
+                        }
+                    }
+                }
+                table.reportMissing(report, reports);
+            } else {
+                joinPartitions(settlement, channel, periodStart, periodEnd, leftovers, partitions, report, reports);
+            }
+        }
+        report.elapsedNanos = System.nanoTime() - start;
+        return report;
+    }
+
+    private boolean hasArchivedTerms(LocalDate from, LocalDate to) throws IOException {
+        if (archive != null) {
+            for (int term : archive.getTerms()) {
+                if (term >= PaymentLedger.termOf(from) && term <= PaymentLedger.termOf(to)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Visits the period's payments, archived first, then those in the log
+     */
+    private long forEachPayment(LocalDateTime periodStart, LocalDateTime periodEnd, String channel,
+                                PaymentArchive.Leftovers leftovers, PaymentLedger.PaymentVisitor visitor)
+            throws IOException {
+        long visited = archive == null ? 0 : archive.forEach(periodStart, periodEnd, channel, visitor);
+        return visited + ledger.forEach(periodStart, periodEnd, channel, leftovers, visitor);
+    }
+
+    /**
+     * Splits both sides into partition files by key hash, then joins each pair
+     */
+    private void joinPartitions(File settlement, String channel, LocalDateTime periodStart, LocalDateTime periodEnd,
+                                PaymentArchive.Leftovers leftovers, int partitions, ReconcileReport report,
+                                Reports reports) throws IOException {
+        File[] buildFiles = new File[partitions];
+        File[] probeFiles = new File[partitions];
+        DataOutputStream[] outs = new DataOutputStream[partitions];
+        try {
+            for (int p = 0; p < partitions; p++) {
+                buildFiles[p] = new File(settlement.getPath() + ".spill" + p + ".build");
+                probeFiles[p] = new File(settlement.getPath() + ".spill" + p + ".probe");
+            }
+            int[] buildCounts = new int[partitions];
+            openAll(outs, buildFiles);
+            try {
+                forEachPayment(periodStart, periodEnd, channel, leftovers, (minute, centavos, studentID) -> {
+                    int p = partitionOf(studentID, minute / MINUTES_PER_DAY, centavos, partitions);
+                    outs[p].writeInt(studentID);
+                    outs[p].writeInt(minute);
+                    outs[p].writeLong(centavos);
+                    buildCounts[p]++;
+                });
+            } finally {
+                closeAll(outs);
+            }
+
+            openAll(outs, probeFiles);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(settlement), StandardCharsets.UTF_8), 1 << 16)) {
+                String line;
+                long lineNumber = 0;
+                while ((line = reader.readLine()) != null) {
+                    SettlementRow row = SettlementRow.parse(++lineNumber, line, report, reports);
+                    if (row != null) {
+                        DataOutputStream out = outs[partitionOf(row.studentID, row.day, row.centavos, partitions)];
+                        out.writeLong(row.lineNumber);
+                        out.writeInt(row.studentID);
+                        out.writeInt(row.day);
+                        out.writeLong(row.centavos);
+                        // Length and bytes rather than writeUTF, which is limited to 64 KB
+                        byte[] text = row.line.getBytes(StandardCharsets.UTF_8);
+                        out.writeInt(text.length);
+                        out.write(text);
+                    }
+                }
+            } finally {
+                closeAll(outs);
+            }
+
+            for (int p = 0; p < partitions; p++) {
+                // A skewed partition may hold more than the limit; it is still joined in one go
+                PaymentTable table = new PaymentTable(buildCounts[p]);
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(buildFiles[p]), 1 << 16))) {
+                    for (int i = 0; i < buildCounts[p]; i++) {
+                        int studentID = in.readInt();
+                        int minute = in.readInt();
+                        table.add(minute, in.readLong(), studentID);
+                    }
+                }
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                        new FileInputStream(probeFiles[p]), 1 << 16))) {
+                    while (true) {
+                        long lineNumber;
+                        try {
+                            lineNumber = in.readLong();
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        int studentID = in.readInt();
+                        int day = in.readInt();
+                        long centavos = in.readLong();
+                        byte[] text = new byte[in.readInt()];
+                        in.readFully(text);
+                        probe(table, new SettlementRow(lineNumber, studentID, day, centavos,
+                                new String(text, StandardCharsets.UTF_8)), report, reports);
+                    }
+                }
+                table.reportMissing(report, reports);
+                buildFiles[p].delete();
+                probeFiles[p].delete();
+            }
+        } finally {
+            closeAll(outs);
+            for (int p = 0; p < partitions; p++) {
+                if (buildFiles[p] != null) {
+                    buildFiles[p].delete();
+                    probeFiles[p].delete();
+                }
+            }
+        }
+    }
+
+    private static void probe(PaymentTable table, SettlementRow row, ReconcileReport report, Reports reports)
+            throws IOException {
+        int minute = table.match(row.studentID, row.day, row.centavos);
+        if (minute >= 0) {
+            reports.matched.write(row.line + "," + PaymentLedger.timestampOf(minute));
+            reports.matched.newLine();
+            report.matched++;
+            report.matchedCentavos += row.centavos;
+        } else {
+            reports.extra.write("line " + row.lineNumber + ": " + row.line);
+            reports.extra.newLine();
+            report.extra++;
+            report.extraCentavos += row.centavos;
+        }
+    }
+
+    private static void openAll(DataOutputStream[] outs, File[] files) throws IOException {
+        for (int p = 0; p < files.length; p++) {
+            outs[p] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(files[p]), 1 << 16));
+        }
+    }
+
+    private static void closeAll(DataOutputStream[] outs) throws IOException {
+        for (int p = 0; p < outs.length; p++) {
+            if (outs[p] != null) {
+                outs[p].close();
+                outs[p] = null;
+            }
+        }
+    }
+
+    private static long hash(int studentID, int day, long centavos) {
+        long h = studentID * 0x9E3779B97F4A7C15L + day * 0xC2B2AE3D27D4EB4FL + centavos * 0x165667B19E3779F9L;
+        return h ^ (h >>> 29);
+    }
+
+    // The partition comes from the high bits, the table slot from the low ones
+    private static int partitionOf(int studentID, int day, long centavos, int partitions) {
+        return (int) ((hash(studentID, day, centavos) >>> 33) % partitions);
+    }
+
+    /**
+     * Open-addressing table of logged payments; a match marks one payment taken
+     */
+    private static class PaymentTable {
+        private final int[] studentIDs;
+        private final int[] minutes;
+        private final long[] centavos;
+        private final byte[] states;    // 0 empty, 1 unmatched, 2 matched
+        private final int mask;
+
+        PaymentTable(int expected) {
+            int capacity = Integer.highestOneBit(Math.max(16, expected * 2 - 1)) << 1;
+            studentIDs = new int[capacity];
+            minutes = new int[capacity];
+            centavos = new long[capacity];
+            states = new byte[capacity];
+            mask = capacity - 1;
+        }
+
+        void add(int minute, long amount, int studentID) {
+            int slot = (int) hash(studentID, minute / MINUTES_PER_DAY, amount) & mask;
+            while (states[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            studentIDs[slot] = studentID;
+            minutes[slot] = minute;
+            centavos[slot] = amount;
+            states[slot] = 1;
+        }
+
+        /**
+         * @return The minute of the matched payment, or -1 if there is no unmatched one
+         */
+        int match(int studentID, int day, long amount) {
+            int slot = (int) hash(studentID, day, amount) & mask;
+            for (; states[slot] != 0; slot = (slot + 1) & mask) {
+                if (states[slot] == 1 && studentIDs[slot] == studentID && centavos[slot] == amount
+                        && minutes[slot] / MINUTES_PER_DAY == day) {
+                    states[slot] = 2;
+                    return minutes[slot];
+                }
+            }
+            return -1;
+        }
+
+        void reportMissing(ReconcileReport report, Reports reports) throws IOException {
+            for (int slot = 0; slot < states.length; slot++) {
+                if (states[slot] == 1) {
+                    reports.missing.write(PaymentLedger.timestampOf(minutes[slot]) + ","
+                            + (studentIDs[slot] < 0 ? "" : String.format("%07d", studentIDs[slot])) + ","
+                            + formatCentavos(centavos[slot]));
+                    reports.missing.newLine();
+                    report.missing++;
+                    report.missingCentavos += centavos[slot];
+                }
+            }
+        }
+    }
+
+    /**
+     * One readable settlement row
+     */
+    private static class SettlementRow {
+        final long lineNumber;
+        final int studentID;
+        final int day;
+        final long centavos;
+        final String line;
+
+        SettlementRow(long lineNumber, int studentID, int day, long centavos, String line) {
+            this.lineNumber = lineNumber;
+            this.studentID = studentID;
+            this.day = day;
+            this.centavos = centavos;
+            this.line = line;
+        }
+
+        /**
+         * @return The row, or null if the line is skipped or rejected
+         */
+        static SettlementRow parse(long lineNumber, String line, ReconcileReport report, Reports reports)
+                throws IOException {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                return null;
+            }
+            List<String> fields = splitCsv(trimmed);
+            String reason = null;
+            int day = fields.size() < 3 ? -1 : parseDay(fields.get(0).trim());
+            int studentID = fields.size() < 3 ? -1 : StudentIdIndex.parse(fields.get(1).trim());
+            long centavos = fields.size() < 3 ? -1 : PaymentTransaction.parseCentavos(fields.get(2).trim());
+            if (fields.size() < 3) {
+                reason = "expected date, student ID and amount";
+            } else if (day < 0) {
+                if (lineNumber == 1) {
+                    return null;    // a header
+                }
+                reason = "invalid date";
+            } else if (studentID < 0) {
+                reason = "malformed student ID";
+            } else if (centavos < 0) {
+                reason = "invalid amount";
+            }
+            if (reason != null) {
+                reports.rejects.write("line " + lineNumber + ": " + reason + ": " + line);
+                reports.rejects.newLine();
+                report.rejected++;
+                return null;
+            }
+            return new SettlementRow(lineNumber, studentID, day, centavos, trimmed);
+        }
+    }
+
+    /**
+     * Splits a CSV line, allowing fields in double quotes to hold commas
+     */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '"') {
+                if (quoted && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = !quoted;
+                }
+            } else if (c == ',' && !quoted) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * @return The epoch day of a date written as MM/dd/yyyy or yyyy-MM-dd, or -1
+     */
+    private static int parseDay(String text) {
+        try {
+            if (text.length() == 10 && text.charAt(2) == '/' && text.charAt(5) == '/') {
+                return (int) LocalDate.of(Integer.parseInt(text.substring(6)), Integer.parseInt(text.substring(0, 2)),
+                        Integer.parseInt(text.substring(3, 5))).toEpochDay();
+            }
+            if (text.length() == 10 && text.charAt(4) == '-' && text.charAt(7) == '-') {
+                return (int) LocalDate.of(Integer.parseInt(text.substring(0, 4)), Integer.parseInt(text.substring(5, 7)),
+                        Integer.parseInt(text.substring(8))).toEpochDay();
+            }
+        } catch (NumberFormatException | DateTimeException e) {
+            return -1;
+        }
+        return -1;
+    }
+
+    static String formatCentavos(long centavos) {
+        return String.format("P %,d.%02d", centavos / 100, centavos % 100);
+    }
+
+    /**
+     * The report files, open for one reconciliation
+     */
+    private static class Reports implements Closeable {
+        final BufferedWriter matched;
+        final BufferedWriter missing;
+        final BufferedWriter extra;
+        final BufferedWriter rejects;
+
+        Reports(File settlement) throws IOException {
+            matched = open(settlement, ".matched");
+            missing = open(settlement, ".missing");
+            extra = open(settlement, ".extra");
+            rejects = open(settlement, ".rejects");
+        }
+
+        private static BufferedWriter open(File settlement, String suffix) throws IOException {
+            return new BufferedWriter(new FileWriter(settlement.getPath() + suffix, StandardCharsets.UTF_8), 1 << 16);
+        }
+
+        @Override
+        public void close() throws IOException {
+            matched.close();
+            missing.close();
+            extra.close();
+            rejects.close();
+        }
+    }
+
+    /**
+     * Summary of a reconciliation
+     */
+    public static class ReconcileReport {
+        private final File settlement;
+        private final int partitions;
+        private long matched;
+        private long matchedCentavos;
+        private long missing;
+        private long missingCentavos;
+        private long extra;
+        private long extraCentavos;
+        private long rejected;
+        private long elapsedNanos;
+
+        ReconcileReport(File settlement, int partitions) {
+            this.settlement = settlement;
+            this.partitions = partitions;
+        }
+
+        public long getMatched() { return matched; }
+        public long getMatchedCentavos() { return matchedCentavos; }
+        public long getMissing() { return missing; }
+        public long getMissingCentavos() { return missingCentavos; }
+        public long getExtra() { return extra; }
+        public long getExtraCentavos() { return extraCentavos; }
+        public long getRejected() { return rejected; }
+        public int getPartitions() { return partitions; }
+        public double getElapsedSeconds() { return elapsedNanos / 1e9; }
+
+        /**
+         * @param suffix ".matched", ".missing", ".extra" or ".rejects"
+         * @return The report file
+         */
+        public File getReportFile(String suffix) {
+            return new File(settlement.getPath() + suffix);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("matched %,d (%s), missing %,d (%s), extra %,d (%s), rejected %,d; "
+                            + "%d partition(s), %.2f s",
+                    matched, formatCentavos(matchedCentavos), missing, formatCentavos(missingCentavos),
+                    extra, formatCentavos(extraCentavos), rejected, partitions, getElapsedSeconds());
+        }
+    }
+}
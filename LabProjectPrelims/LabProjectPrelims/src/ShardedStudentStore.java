@@ -0,0 +1,426 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Predicate;
+
+/**
+ * Student records split over several files by a hash of the student ID, for rosters
+ * too large for a single Database.txt. Every shard is a file in the Database.txt
+ * format with its own record index, journal and lock file, so logins and writes for
+ * students in different shards never wait for each other, and whole-roster scans
+ * read the shards in parallel.
+ *
+ * Layout of the store directory:
+ *   shards.txt          number of shards; written last, so it marks a complete store
+ *   shard-NN.txt        the records of shard NN
+ *   shard-NN.journal    journal of shard NN's in-place updates
+ *   .shard-NN.lock      lock file of shard NN
+ */
+public class ShardedStudentStore {
+
+    static final String MANIFEST_FILE = "shards.txt";
+    public static final int DEFAULT_SHARDS = 16;
+
+    private final File directory;
+    private final Shard[] shards;
+
+    private static class Shard {
+        final File file;
+        final RecordFile records;
+        final AppendJournal journal;
+        final DataFileLock lock;
+
+        Shard(File directory, int number) {
+            String name = String.format("shard-%02d", number);
+            this.file = new File(directory, name + ".txt");
+            this.records = RecordFile.byStudentID(file);
+            this.journal = new AppendJournal(new File(directory, name + ".journal"));
+            this.lock = DataFileLock.forLockFile(new File(directory, "." + name + ".lock"));
+        }
+    }
+
+    private ShardedStudentStore(File directory, int shardCount) {
+        this.directory = directory;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(directory, i);
+        }
+    }
+
+    /**
+     * Opens an existing store
+     * @param directory The store directory
+     * @return The store
+     * @throws IOException If the directory holds no complete store
+     */
+    public static ShardedStudentStore open(File directory) throws IOException {
+        File manifest = new File(directory, MANIFEST_FILE);
+        if (!manifest.exists()) {
+            throw new FileNotFoundException("No sharded student store in " + directory);
+        }
+        try {
+            int shardCount = Integer.parseInt(Files.readString(manifest.toPath()).trim());
+            return new ShardedStudentStore(directory, shardCount);
+        } catch (NumberFormatException e) {
+            throw new IOException("Bad shard count in " + manifest, e);
+        }
+    }
+
+    /**
+     * @param directory A directory
+     * @return true if the directory holds a complete store
+     */
+    public static boolean exists(File directory) {
+        return new File(directory, MANIFEST_FILE).exists();
+    }
+
+    /**
+     * Splits a Database.txt into a new store. The database is read under its data
+     * directory lock, so no account is saved halfway through; it is left in place.
+     * Shard files are written in full and renamed before the manifest is written.
+     * @param database The Database.txt to split
+     * @param directory The store directory, which must not hold a store yet
+     * @param shardCount The number of shards
+     * @return The new store
+     * @throws IOException If the database cannot be read or the store cannot be written
+     */
+    public static ShardedStudentStore migrate(File database, File directory, int shardCount) throws IOException {
+        if (shardCount < 1 || shardCount > 100) {
+            throw new IllegalArgumentException("Shard count must be between 1 and 100: " + shardCount);
+        }
+        if (exists(directory)) {
+            throw new IOException("A sharded student store already exists in " + directory);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        ShardedStudentStore store = new ShardedStudentStore(directory, shardCount);
+        DataFileLock.forFile(database).call(() -> {
+            File[] temps = new File[shardCount];
+            FileOutputStream[] streams = new FileOutputStream[shardCount];
+            Writer[] writers = new Writer[shardCount];
+            try {
+                for (int i = 0; i < shardCount; i++) {
+                    temps[i] = new File(directory, store.shards[i].file.getName() + ".migrating");
+                    streams[i] = new FileOutputStream(temps[i]);
+                    writers[i] = new BufferedWriter(new OutputStreamWriter(streams[i], StandardCharsets.UTF_8), 1 << 16);
+                }
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                        new FileInputStream(database), StandardCharsets.UTF_8), 1 << 16)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        // Deletion markers go along, so deleted IDs stay reserved
+                        String id = line.startsWith(RecordFile.DELETED_MARKER)
+                                ? line.substring(RecordFile.DELETED_MARKER.length()).trim() : idOf(line);
+                        if (id != null) {
+                            Writer writer = writers[store.shardOf(id)];
+                            writer.write(line);
+                            writer.write(System.lineSeparator());
+                        }
+                    }
+                }
+                for (int i = 0; i < shardCount; i++) {
+                    writers[i].flush();
+                    streams[i].getFD().sync();
+                }
+            } finally {
+                for (Writer writer : writers) {
+                    if (writer != null) {
+                        writer.close();
+                    }
+                }
+            }
+            for (int i = 0; i < shardCount; i++) {
+                Files.move(temps[i].toPath(), store.shards[i].file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            return null;
+        });
+        Files.writeString(new File(directory, MANIFEST_FILE).toPath(), shardCount + System.lineSeparator());
+        return store;
+    }
+
+    public File getDirectory() { return directory; }
+    public int getShardCount() { return shards.length; }
+
+    /**
+     * @param studentID A student ID
+     * @return The number of the shard holding the student
+     */
+    public int shardOf(String studentID) {
+        int hash = studentID.hashCode();
+        // Spread sequential IDs; String.hashCode of 7-digit IDs differs mostly in low bits
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        return Math.floorMod(hash, shards.length);
+    }
+
+    /**
+     * Looks up a student
+     * @param studentID The student ID
+     * @return The student, or null if not found
+     */
+    public StudentInfo get(String studentID) {
+        Shard shard = shards[shardOf(studentID)];
+        try {
+            return parse(shard.records.readRecord(studentID));
+        } catch (IOException e) {
+            System.err.println("Error reading student shard: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Checks a student's password
+     * @param studentID The student ID
+     * @param password The password
+     * @return true if the student exists and the password matches
+     */
+    public boolean authenticate(String studentID, String password) {
+        StudentInfo student = get(studentID);
+        return student != null && student.getPassword().equals(password);
+    }
+
+    /**
+     * Saves a new student
+     * @param student The student
+     * @return true if saved, false if the ID is taken or the shard could not be written
+     */
+    public boolean save(StudentInfo student) {
+        return saveAll(Collections.singletonList(student)).get(0) != null;
+    }
+
+    /**
+     * Saves new students with one append to each shard they fall into
+     * @param students The students; each must have an ID
+     * @return The ID of each student in the given order, or null where the ID was
+     * taken or its shard could not be written
+     */
+    public List<String> saveAll(Iterable<StudentInfo> students) {
+        List<StudentInfo> all = new ArrayList<>();
+        Map<Integer, List<StudentInfo>> byShard = new TreeMap<>();
+        for (StudentInfo student : students) {
+            all.add(student);
+            byShard.computeIfAbsent(shardOf(student.getId()), s -> new ArrayList<>()).add(student);
+        }
+        Set<String> saved = new HashSet<>();
+        for (Map.Entry<Integer, List<StudentInfo>> entry : byShard.entrySet()) {
+            Shard shard = shards[entry.getKey()];
+            try {
+                shard.lock.call(() -> {
+                    shard.journal.recover();
+                    StringBuilder text = new StringBuilder();
+                    List<String> ids = new ArrayList<>();
+                    Set<String> inBatch = new HashSet<>();
+                    for (StudentInfo student : entry.getValue()) {
+                        if (shard.records.locate(student.getId()) < 0 && inBatch.add(student.getId())) {
+                            text.append(student.toDatabaseFormat()).append(System.lineSeparator());
+                            ids.add(student.getId());
+                        }
+                    }
+                    if (!ids.isEmpty()) {
+                        try (FileChannel channel = BatchingAppender.openForAppend(shard.file)) {
+                            BatchingAppender.writeAtEnd(channel, channel.size(),
+                                    ByteBuffer.wrap(text.toString().getBytes(StandardCharsets.UTF_8)));
+                            channel.force(false);
+                        }
+                        saved.addAll(ids);
+                    }
+                    return null;
+                });
+            } catch (IOException e) {
+                System.err.println("Error saving to student shard: " + e.getMessage());
+            }
+        }
+        List<String> result = new ArrayList<>(all.size());
+        for (StudentInfo student : all) {
+            // A second copy of an ID in the same call is refused like any taken ID
+            result.add(saved.remove(student.getId()) ? student.getId() : null);
+        }
+        return result;
+    }
+
+    /**
+     * Replaces a student's record in place, locking only the student's shard
+     * @param student The new details; the ID selects the record
+     * @return true if updated, false if there is no such student or the shard could not be written
+     */
+    public boolean update(StudentInfo student) {
+        Shard shard = shards[shardOf(student.getId())];
+        try {
+            return shard.lock.call(() -> {
+                shard.journal.recover();
+                AppendJournal.Patch tombstone = shard.records.tombstone(student.getId());
+                if (tombstone == null) {
+                    return false;
+                }
+                shard.journal.commit(new File[]{shard.file},
+                        new byte[][]{(student.toDatabaseFormat() + System.lineSeparator()).getBytes(StandardCharsets.UTF_8)},
+                        Collections.singletonList(tombstone));
+                return true;
+            });
+        } catch (IOException e) {
+            System.err.println("Error updating student shard: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Deletes a student's record in place, locking only the student's shard
+     * @param studentID The student ID
+     * @return true if deleted, false if there is no such student or the shard could not be written
+     */
+    public boolean delete(String studentID) {
+        Shard shard = shards[shardOf(studentID)];
+        try {
+            return shard.lock.call(() -> {
+                shard.journal.recover();
+                AppendJournal.Patch tombstone = shard.records.tombstone(studentID);
+                if (tombstone == null) {
+                    return false;
+                }
+                shard.journal.commit(new File[]{shard.file},
+                        new byte[][]{(RecordFile.deletionMarker(studentID) + System.lineSeparator())
+                                .getBytes(StandardCharsets.UTF_8)},
+                        Collections.singletonList(tombstone));
+                return true;
+            });
+        } catch (IOException e) {
+            System.err.println("Error deleting from student shard: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Finds the students matching a filter, reading all shards in parallel
+     * @param filter The filter
+     * @param parallelism The number of shards read at once
+     * @return The matching students, grouped by shard
+     */
+    public List<StudentInfo> scan(Predicate<StudentInfo> filter, int parallelism) {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, shards.length)));
+        try {
+            List<Future<List<StudentInfo>>> parts = new ArrayList<>();
+            for (Shard shard : shards) {
+                parts.add(pool.submit(() -> scanShard(shard, filter)));
+            }
+            List<StudentInfo> matches = new ArrayList<>();
+            for (Future<List<StudentInfo>> part : parts) {
+                matches.addAll(part.get());
+            }
+            return matches;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new ArrayList<>();
+        } catch (ExecutionException e) {
+            System.err.println("Error scanning student shards: " + e.getCause().getMessage());
+            return new ArrayList<>();
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Finds the students matching a filter, using one thread per available processor
+     * @param filter The filter
+     * @return The matching students, grouped by shard
+     */
+    public List<StudentInfo> scan(Predicate<StudentInfo> filter) {
+        return scan(filter, Runtime.getRuntime().availableProcessors());
+    }
+
+    private static List<StudentInfo> scanShard(Shard shard, Predicate<StudentInfo> filter) throws IOException {
+        List<StudentInfo> matches = new ArrayList<>();
+        if (!shard.file.exists()) {
+            return matches;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(shard.file), StandardCharsets.UTF_8), 1 << 16)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                StudentInfo student = parse(line);
+                if (student != null && filter.test(student)) {
+                    matches.add(student);
+                }
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Rewrites every shard without its dead records, one shard at a time
+     * @return The number of bytes reclaimed
+     */
+    public long compact() {
+        long reclaimed = 0;
+        for (Shard shard : shards) {
+            try {
+                reclaimed += shard.lock.call(() -> {
+                    shard.journal.recover();
+                    return shard.file.exists() ? shard.records.compact() : 0L;
+                });
+            } catch (IOException e) {
+                System.err.println("Error compacting student shard: " + e.getMessage());
+            }
+        }
+        return reclaimed;
+    }
+
+    /**
+     * @return The lock acquisitions and wait time of each shard, one line per shard
+     */
+    public String getLockStats() {
+        StringBuilder stats = new StringBuilder();
+        for (int i = 0; i < shards.length; i++) {
+            stats.append(String.format("shard %02d: %d acquisitions, %d ms waiting%n",
+                    i, shards[i].lock.getAcquisitions(), shards[i].lock.getWaitMillis()));
+        }
+        return stats.toString();
+    }
+
+    private static String idOf(String line) {
+        int comma = line.indexOf(',');
+        return comma > 0 ? line.substring(0, comma).trim() : null;
+    }
+
+    private static StudentInfo parse(String line) {
+        if (line == null) {
+            return null;
+        }
+        String[] parts = line.split(",");
+        if (parts.length < 6) {
+            return null;
+        }
+        return new StudentInfo(parts[0].trim(), parts[1].trim(), parts[2].trim(), parts[3].trim(),
+                parts[4].trim(), parts[5].trim());
+    }
+
+    /**
+     * Migration tool: splits a Database.txt into a sharded store.
+     * Usage: java ShardedStudentStore Database.txt students [shards]
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Usage: java ShardedStudentStore <Database.txt> <store directory> [shards]");
+            return;
+        }
+        int shardCount = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_SHARDS;
+        long start = System.nanoTime();
+        try {
+            ShardedStudentStore store = migrate(new File(args[0]), new File(args[1]), shardCount);
+            long records = 0;
+            for (Shard shard : store.shards) {
+                records += shard.records.keys().size();
+            }
+            System.out.printf("Migrated %,d students into %d shards in %s (%.1f s)%n",
+                    records, shardCount, store.directory, (System.nanoTime() - start) / 1e9);
+        } catch (IOException e) {
+            System.err.println("Error migrating student database: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,141 @@
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over the student IDs in the database, used to turn away unknown IDs
+ * (typos, guessed IDs) without reading the database file. mightContain never
+ * returns false for an ID that was added; it returns true for an unknown ID with
+ * roughly the configured false-positive rate, as long as the filter holds no more
+ * than the expected number of IDs.
+ */
+public class StudentIdBloomFilter {
+
+    public static final double DEFAULT_FALSE_POSITIVE_RATE = 0.01;
+    private static final int MIN_EXPECTED_IDS = 1024;
+
+    private final AtomicLongArray words;
+    private final int bitCount;
+    private final int hashCount;
+    private final int expectedIDs;
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Creates an empty filter
+     * @param expectedIDs How many IDs the filter is sized for
+     * @param falsePositiveRate The target false-positive rate at that size
+     */
+    public StudentIdBloomFilter(int expectedIDs, double falsePositiveRate) {
+        this.expectedIDs = Math.max(expectedIDs, MIN_EXPECTED_IDS);
+        double bits = -this.expectedIDs * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2));
+        int words = (int) Math.min(Integer.MAX_VALUE / 64, (long) Math.ceil(bits / 64));
+        this.words = new AtomicLongArray(words);
+        this.bitCount = words * 64;
+        this.hashCount = Math.max(1, (int) Math.round(bitCount / (double) this.expectedIDs * Math.log(2)));
+    }
+
+    /**
+     * Builds a filter from the student IDs in a database file, sized for twice the
+     * current number of students so new accounts can be added
+     * @param databaseFile The database file to read
+     * @return The filter, empty if the file does not exist
+     */
+    public static StudentIdBloomFilter load(File databaseFile) {
+        List<String> ids = new ArrayList<>();
+        if (databaseFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(databaseFile))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    int comma = line.indexOf(',');
+                    if (comma > 0) {
+                        ids.add(line.substring(0, comma).trim());
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("Error reading student IDs: " + e.getMessage());
+            }
+        }
+        StudentIdBloomFilter filter = new StudentIdBloomFilter(ids.size() * 2, DEFAULT_FALSE_POSITIVE_RATE);
+        for (String id : ids) {
+            filter.add(id);
+        }
+        return filter;
+    }
+
+    /**
+     * Adds an ID to the filter
+     * @param studentID The student ID, as stored in the database
+     */
+    public void add(String studentID) {
+        long hash = hash(studentID.trim());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = bitIndex(h1 + i * h2);
+            words.getAndAccumulate(bit >>> 6, 1L << bit, (word, mask) -> word | mask);
+        }
+        size.incrementAndGet();
+    }
+
+    /**
+     * @param studentID The student ID to check
+     * @return false if the ID is certainly not in the database, true if it may be
+     */
+    public boolean mightContain(String studentID) {
+        if (studentID == null) {
+            return false;
+        }
+        long hash = hash(studentID.trim());
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < hashCount; i++) {
+            int bit = bitIndex(h1 + i * h2);
+            if ((words.get(bit >>> 6) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return Number of IDs added
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * @return true once more IDs were added than the filter was sized for, after
+     * which the false-positive rate climbs and the filter should be rebuilt
+     */
+    public boolean isSaturated() {
+        return size.get() > expectedIDs;
+    }
+
+    public int getHashCount() { return hashCount; }
+    public long getSizeInBytes() { return bitCount / 8L; }
+
+    private int bitIndex(int combinedHash) {
+        return (combinedHash & Integer.MAX_VALUE) % bitCount;
+    }
+
+    /**
+     * 64-bit FNV-1a over the characters, finished with a MurmurHash3 mix so both
+     * halves are usable as independent hashes
+     */
+    private static long hash(String text) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,144 @@
+import java.io.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * In-memory index of the student IDs present in the database, including deleted
+ * ones (kept as "#deleted" lines) so their IDs are never handed out again.
+ * Student IDs are 7-digit numbers, so the index is a single bitmap over
+ * 0..9,999,999 (about 1.2 MB) and membership checks are O(1). The bitmap
+ * words are atomic, so lookups from parallel workers never take a lock.
+ */
+public class StudentIdIndex {
+
+    public static final int ID_SPACE = 10_000_000;
+
+    private final AtomicLongArray words = new AtomicLongArray((ID_SPACE + 63) / 64);
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Builds an index from the student IDs in a database file
+     * @param databaseFile The database file to read
+     * @return The index, empty if the file does not exist
+     */
+    public static StudentIdIndex load(File databaseFile) {
+        StudentIdIndex index = new StudentIdIndex();
+        if (!databaseFile.exists()) {
+            return index;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(databaseFile))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int comma = line.indexOf(',');
+                if (comma > 0) {
+                    index.add(line.substring(0, comma).trim());
+                } else if (line.startsWith(RecordFile.DELETED_MARKER)) {
+                    index.add(line.substring(RecordFile.DELETED_MARKER.length()).trim());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Error reading student IDs: " + e.getMessage());
+        }
+        return index;
+    }
+
+    /**
+     * Adds an ID to the index; malformed IDs are ignored
+     * @param studentID The 7-digit student ID
+     */
+    public void add(String studentID) {
+        add(parse(studentID));
+    }
+
+    /**
+     * Adds a packed numeric ID to the index
+     * @param id The numeric student ID
+     * @return true if the ID was not already present
+     */
+    public boolean add(int id) {
+        if (id < 0 || id >= ID_SPACE) {
+            return false;
+        }
+        long bit = 1L << id;
+        long previous = words.getAndAccumulate(id >>> 6, bit, (word, mask) -> word | mask);
+        if ((previous & bit) != 0) {
+            return false;
+        }
+        size.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * @param studentID The student ID to check
+     * @return true if the ID is well formed and present in the index
+     */
+    public boolean contains(String studentID) {
+        return contains(parse(studentID));
+    }
+
+    /**
+     * @param id The packed numeric student ID
+     * @return true if the ID is present in the index
+     */
+    public boolean contains(int id) {
+        return id >= 0 && id < ID_SPACE && (words.get(id >>> 6) & (1L << id)) != 0;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Writes the index to a checkpoint
+     * @param out The checkpoint stream
+     * @throws IOException If the checkpoint cannot be written
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(words.length());
+        for (int i = 0; i < words.length(); i++) {
+            out.writeLong(words.get(i));
+        }
+    }
+
+    /**
+     * Reads an index written by writeTo()
+     * @param in The checkpoint stream
+     * @return The index
+     * @throws IOException If the checkpoint cannot be read or does not hold an index
+     */
+    public static StudentIdIndex readFrom(DataInput in) throws IOException {
+        StudentIdIndex index = new StudentIdIndex();
+        int count = in.readInt();
+        if (count != index.words.length()) {
+            throw new IOException("Student ID index has " + count + " words, expected " + index.words.length());
+        }
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            long word = in.readLong();
+            index.words.set(i, word);
+            size += Long.bitCount(word);
+        }
+        index.size.set(size);
+        return index;
+    }
+
+    /**
+     * Parses a 7-digit student ID without allocating
+     * @param studentID The ID text
+     * @return The numeric ID, or -1 if the text is not exactly 7 digits
+     */
+    public static int parse(CharSequence studentID) {
+        if (studentID == null || studentID.length() != 7) {
+            return -1;
+        }
+        int id = 0;
+        for (int i = 0; i < 7; i++) {
+            char c = studentID.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+}
@@ -8,6 +8,7 @@ public class StudentInfo {
     private String middleName;
     private String dateOfBirth;
     private String password;
+    private String fullName;   // built on first use
     
     public StudentInfo(String id, String lastName, String firstName, String middleName, String dateOfBirth, String password) {
         this.id = id;
@@ -27,7 +28,10 @@ public class StudentInfo {
     public String getPassword() { return password; }
     
     public String getFullName() {
-        return firstName.toUpperCase() + " " + lastName.toUpperCase();
+        if (fullName == null) {
+            fullName = StudentRecord.fullName(firstName, lastName);
+        }
+        return fullName;
     }
     
     public String toDatabaseFormat() {
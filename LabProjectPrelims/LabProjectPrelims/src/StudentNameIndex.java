@@ -0,0 +1,423 @@
+import java.text.Normalizer;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Type-ahead index over student last and first names.
+ * Each student contributes two keys (normalized last name and first name) kept in a
+ * sorted array, so a prefix lookup is a binary search. New students go into a small
+ * unsorted buffer that is merged into the sorted array once it grows past a threshold.
+ * A trigram index over the distinct names provides fuzzy matches for misspelled
+ * names when there are not enough prefix matches; the similar names are then mapped
+ * back to students through the sorted keys. Students are held as StudentRecords
+ * whose names share the index's NameDictionary.
+ */
+public class StudentNameIndex {
+
+    private static final int MERGE_THRESHOLD = 4096;
+    private static final double MIN_FUZZY_SIMILARITY = 0.4;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private StudentRecord[] students = new StudentRecord[1024];
+    private final NameDictionary studentNames = new NameDictionary();
+    private int studentCount;
+
+    // Sorted keys; a key number is (student << 1) | (0 = last name, 1 = first name)
+    private String[] sortedKeys = new String[0];
+    private int[] sortedKeyNumbers = new int[0];
+
+    // Keys added since the last merge
+    private String[] pendingKeys = new String[MERGE_THRESHOLD];
+    private int[] pendingKeyNumbers = new int[MERGE_THRESHOLD];
+    private int pendingCount;
+    private boolean bulkLoading;
+
+    // Dictionary of distinct names; keys share these String instances
+    private final Map<String, Integer> nameIDs = new HashMap<>();
+    private String[] names = new String[1024];
+    private byte[] nameTrigramCounts = new byte[1024];
+
+    // Trigram postings over name IDs
+    private final Map<Integer, Postings> trigramPostings = new HashMap<>();
+
+    // Per-thread scratch counters for fuzzy matching, indexed by name ID
+    private final ThreadLocal<int[]> sharedCounts = ThreadLocal.withInitial(() -> new int[0]);
+
+    /**
+     * Builds an index over a roster
+     * @param roster The students to index
+     * @return The index
+     */
+    public static StudentNameIndex build(Collection<StudentInfo> roster) {
+        StudentNameIndex index = new StudentNameIndex();
+        index.lock.writeLock().lock();
+        try {
+            // Collect every key first and sort once, instead of merging every few thousand keys
+            index.bulkLoading = true;
+            for (StudentInfo student : roster) {
+                index.addUnlocked(student);
+            }
+            index.mergePending();
+            index.bulkLoading = false;
+            index.pendingKeys = new String[MERGE_THRESHOLD];
+            index.pendingKeyNumbers = new int[MERGE_THRESHOLD];
+        } finally {
+            index.lock.writeLock().unlock();
+        }
+        return index;
+    }
+
+    /**
+     * Adds a student to the index; students without a 7-digit ID are skipped
+     * @param student The student to add
+     */
+    public void add(StudentInfo student) {
+        lock.writeLock().lock();
+        try {
+            addUnlocked(student);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return studentCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Searches by name. Every word of the query must be a prefix of the student's last,
+     * first or middle name; results are ordered by the matching name. If that gives
+     * fewer than `limit` students, close misspellings are appended.
+     * @param query The name or name prefix typed so far
+     * @param limit The maximum number of results
+     * @return The matching students
+     */
+    public List<StudentInfo> search(String query, int limit) {
+        List<StudentInfo> results = new ArrayList<>();
+        String[] words = normalize(query).split(" ");
+        if (limit <= 0 || words[0].isEmpty()) {
+            return results;
+        }
+        // Look up the longest word, it is the most selective
+        String probe = words[0];
+        for (String word : words) {
+            if (word.length() > probe.length()) {
+                probe = word;
+            }
+        }
+
+        lock.readLock().lock();
+        try {
+            Set<Integer> seen = new HashSet<>();
+            // Matching keys from the sorted array (at most `limit` of them) and the pending buffer
+            List<Integer> candidates = new ArrayList<>();
+            int from = lowerBound(sortedKeys, probe);
+            int taken = 0;
+            for (int i = from; i < sortedKeys.length && sortedKeys[i].startsWith(probe) && taken < limit; i++) {
+                if (matchesAllWords(sortedKeyNumbers[i] >>> 1, words)) {
+                    candidates.add(i);
+                    taken++;
+                }
+            }
+            for (int i = 0; i < pendingCount; i++) {
+                if (pendingKeys[i].startsWith(probe) && matchesAllWords(pendingKeyNumbers[i] >>> 1, words)) {
+                    candidates.add(-1 - i);
+                }
+            }
+            if (pendingCount > 0) {
+                candidates.sort(Comparator.comparing(this::candidateKey));
+            }
+            for (int candidate : candidates) {
+                int student = candidateKeyNumber(candidate) >>> 1;
+                if (results.size() < limit && seen.add(student)) {
+                    results.add(students[student].toStudentInfo());
+                }
+            }
+
+            if (results.size() < limit && probe.length() >= 3) {
+                for (int student : fuzzyMatches(probe, limit - results.size(), seen)) {
+                    results.add(students[student].toStudentInfo());
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return results;
+    }
+
+    /**
+     * Normalizes a name for indexing: accents removed, lower case, letters and digits
+     * only, words separated by single spaces
+     */
+    static String normalize(String name) {
+        if (name == null) {
+            return "";
+        }
+        String decomposed = isAscii(name) ? name : Normalizer.normalize(name, Normalizer.Form.NFD);
+        StringBuilder normalized = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && normalized.length() > 0) {
+                    normalized.append(' ');
+                }
+                pendingSpace = false;
+                normalized.append(Character.toLowerCase(c));
+            } else if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                pendingSpace = true;
+            }
+        }
+        return normalized.toString();
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 128) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addUnlocked(StudentInfo student) {
+        if (StudentIdIndex.parse(student.getId()) < 0) {
+            return;   // not a stored student
+        }
+        StudentRecord record = StudentRecord.of(student, studentNames);
+        if (studentCount == students.length) {
+            students = Arrays.copyOf(students, studentCount * 2);
+        }
+        int studentNumber = studentCount++;
+        students[studentNumber] = record;
+        addKey(normalize(student.getLastName()), studentNumber << 1);
+        addKey(normalize(student.getFirstName()), (studentNumber << 1) | 1);
+    }
+
+    private void addKey(String key, int keyNumber) {
+        if (pendingCount == pendingKeys.length) {
+            if (bulkLoading) {
+                pendingKeys = Arrays.copyOf(pendingKeys, pendingCount * 2);
+                pendingKeyNumbers = Arrays.copyOf(pendingKeyNumbers, pendingCount * 2);
+            } else {
+                mergePending();
+            }
+        }
+        pendingKeys[pendingCount] = internName(key);
+        pendingKeyNumbers[pendingCount] = keyNumber;
+        pendingCount++;
+    }
+
+    /**
+     * Returns the dictionary instance of a name, adding it and its trigrams if it is new
+     */
+    private String internName(String name) {
+        Integer nameID = nameIDs.get(name);
+        if (nameID != null) {
+            return names[nameID];
+        }
+        nameID = nameIDs.size();
+        if (nameID == names.length) {
+            names = Arrays.copyOf(names, nameID * 2);
+            nameTrigramCounts = Arrays.copyOf(nameTrigramCounts, nameID * 2);
+        }
+        names[nameID] = name;
+        nameIDs.put(name, nameID);
+
+        int[] trigrams = trigrams(name);
+        nameTrigramCounts[nameID] = (byte) Math.min(trigrams.length, Byte.MAX_VALUE);
+        for (int trigram : trigrams) {
+            trigramPostings.computeIfAbsent(trigram, t -> new Postings()).add(nameID);
+        }
+        return name;
+    }
+
+    /**
+     * Merges the pending keys into the sorted array
+     */
+    private void mergePending() {
+        if (pendingCount == 0) {
+            return;
+        }
+        Integer[] order = new Integer[pendingCount];
+        for (int i = 0; i < pendingCount; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparing(i -> pendingKeys[i]));
+
+        String[] mergedKeys = new String[sortedKeys.length + pendingCount];
+        int[] mergedNumbers = new int[mergedKeys.length];
+        int a = 0;
+        int b = 0;
+        for (int out = 0; out < mergedKeys.length; out++) {
+            if (b == pendingCount || (a < sortedKeys.length && sortedKeys[a].compareTo(pendingKeys[order[b]]) <= 0)) {
+                mergedKeys[out] = sortedKeys[a];
+                mergedNumbers[out] = sortedKeyNumbers[a++];
+            } else {
+                mergedKeys[out] = pendingKeys[order[b]];
+                mergedNumbers[out] = pendingKeyNumbers[order[b++]];
+            }
+        }
+        sortedKeys = mergedKeys;
+        sortedKeyNumbers = mergedNumbers;
+        Arrays.fill(pendingKeys, 0, pendingCount, null);
+        pendingCount = 0;
+    }
+
+    // A candidate is a sorted-array position, or -1 - position in the pending buffer
+    private String candidateKey(int candidate) {
+        return candidate >= 0 ? sortedKeys[candidate] : pendingKeys[-1 - candidate];
+    }
+
+    private int candidateKeyNumber(int candidate) {
+        return candidate >= 0 ? sortedKeyNumbers[candidate] : pendingKeyNumbers[-1 - candidate];
+    }
+
+    private boolean matchesAllWords(int student, String[] words) {
+        if (words.length == 1) {
+            return true;
+        }
+        StudentRecord info = students[student];
+        String names = " " + normalize(info.getLastName()) + " " + normalize(info.getFirstName())
+                + " " + normalize(info.getMiddleName());
+        for (String word : words) {
+            if (!names.contains(" " + word)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds students whose last or first name shares enough trigrams with the probe
+     */
+    private List<Integer> fuzzyMatches(String probe, int limit, Set<Integer> exclude) {
+        int[] probeTrigrams = trigrams(probe);
+        // The leading "  x" trigram only says which letter the name starts with; skip it
+        int firstUsable = probeTrigrams.length > 1 ? 1 : 0;
+        int nameCount = nameIDs.size();
+        int[] counts = sharedCounts.get();
+        if (counts.length < nameCount) {
+            counts = new int[nameCount + MERGE_THRESHOLD];
+            sharedCounts.set(counts);
+        }
+
+        // Count shared trigrams per distinct name, remembering which names were touched
+        int[] touched = new int[64];
+        int touchedCount = 0;
+        for (int t = firstUsable; t < probeTrigrams.length; t++) {
+            Postings postings = trigramPostings.get(probeTrigrams[t]);
+            if (postings == null) {
+                continue;
+            }
+            for (int i = 0; i < postings.size; i++) {
+                int nameID = postings.ids[i];
+                if (counts[nameID]++ == 0) {
+                    if (touchedCount == touched.length) {
+                        touched = Arrays.copyOf(touched, touchedCount * 2);
+                    }
+                    touched[touchedCount++] = nameID;
+                }
+            }
+        }
+
+        // Similar names, most similar first; counters are reset as we go. A name can only
+        // reach the threshold if it shares enough trigrams and is not much longer than the probe.
+        int probeCount = probeTrigrams.length - firstUsable;
+        int minShared = (int) Math.ceil(probeCount * MIN_FUZZY_SIMILARITY);
+        long[] similarNames = new long[16];
+        int similarCount = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int nameID = touched[i];
+            int shared = counts[nameID];
+            counts[nameID] = 0;
+            if (shared < minShared) {
+                continue;
+            }
+            double similarity = shared / (double) Math.max(probeCount, nameTrigramCounts[nameID] - firstUsable);
+            if (similarity >= MIN_FUZZY_SIMILARITY) {
+                if (similarCount == similarNames.length) {
+                    similarNames = Arrays.copyOf(similarNames, similarCount * 2);
+                }
+                // Pack (similarity, name ID) so a primitive sort orders by similarity
+                similarNames[similarCount++] = ((long) (similarity * 1_000_000) << 32) | nameID;
+            }
+        }
+        Arrays.sort(similarNames, 0, similarCount);
+
+        // Map the names back to students through the sorted keys, then the pending buffer
+        List<Integer> students = new ArrayList<>();
+        Set<String> searched = new HashSet<>();
+        for (int i = similarCount - 1; i >= 0 && students.size() < limit; i--) {
+            String name = names[(int) similarNames[i]];
+            searched.add(name);
+            for (int k = lowerBound(sortedKeys, name);
+                 k < sortedKeys.length && students.size() < limit && sortedKeys[k].equals(name); k++) {
+                int student = sortedKeyNumbers[k] >>> 1;
+                if (!exclude.contains(student) && !students.contains(student)) {
+                    students.add(student);
+                }
+            }
+        }
+        for (int i = 0; i < pendingCount && students.size() < limit; i++) {
+            int student = pendingKeyNumbers[i] >>> 1;
+            if (searched.contains(pendingKeys[i]) && !exclude.contains(student) && !students.contains(student)) {
+                students.add(student);
+            }
+        }
+        return students;
+    }
+
+    /**
+     * Distinct trigrams of a key padded with spaces, each packed as three 16-bit chars
+     * folded into an int hash
+     */
+    private static int[] trigrams(String key) {
+        String padded = "  " + key + " ";
+        Set<Integer> unique = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= padded.length(); i++) {
+            unique.add(padded.charAt(i) * 961 + padded.charAt(i + 1) * 31 + padded.charAt(i + 2));
+        }
+        int[] result = new int[unique.size()];
+        int i = 0;
+        for (int trigram : unique) {
+            result[i++] = trigram;
+        }
+        return result;
+    }
+
+    private static int lowerBound(String[] keys, String probe) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid].compareTo(probe) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Growable list of name IDs for one trigram
+     */
+    private static class Postings {
+        int[] ids = new int[4];
+        int size;
+
+        void add(int nameID) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+            }
+            ids[size++] = nameID;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.Locale;
+
+/**
+ * Filter for student lookups: last name, date of birth range and ID range.
+ * Unset criteria match every student. The predicates work on the raw bytes of a
+ * database record, so the scanner can reject records before building a StudentInfo.
+ *
+ * Example: new StudentQuery().lastName("Rivera").bornBetween(from, to)
+ */
+public class StudentQuery {
+
+    /** Epoch day used for dates of birth that cannot be parsed */
+    static final int NO_DATE = Integer.MIN_VALUE;
+
+    // Two-digit years up to this one are in the current century
+    private static final int CURRENT_YEAR = LocalDate.now().getYear();
+
+    private String lastName;
+    private byte[] lastNameBytes;
+    private boolean lastNameAscii;
+    private int minID = Integer.MIN_VALUE;
+    private int maxID = Integer.MAX_VALUE;
+    private int bornFrom = Integer.MIN_VALUE;
+    private int bornTo = Integer.MAX_VALUE;
+
+    /**
+     * Only students with this last name (case-insensitive)
+     * @param lastName The last name
+     * @return This query
+     */
+    public StudentQuery lastName(String lastName) {
+        this.lastName = lastName.trim().toLowerCase(Locale.ROOT);
+        this.lastNameBytes = this.lastName.getBytes(StandardCharsets.UTF_8);
+        this.lastNameAscii = lastNameBytes.length == this.lastName.length();
+        return this;
+    }
+
+    /**
+     * Only students with an ID in the range
+     * @param from The lowest ID, inclusive
+     * @param to The highest ID, inclusive
+     * @return This query
+     */
+    public StudentQuery idBetween(int from, int to) {
+        this.minID = from;
+        this.maxID = to;
+        return this;
+    }
+
+    /**
+     * Only students born in the range
+     * @param from The earliest date of birth, inclusive
+     * @param to The latest date of birth, inclusive
+     * @return This query
+     */
+    public StudentQuery bornBetween(LocalDate from, LocalDate to) {
+        this.bornFrom = (int) from.toEpochDay();
+        this.bornTo = (int) to.toEpochDay();
+        return this;
+    }
+
+    public String getLastName() { return lastName; }
+    public boolean hasLastName() { return lastName != null; }
+    public boolean hasIDRange() { return minID != Integer.MIN_VALUE || maxID != Integer.MAX_VALUE; }
+    public boolean hasBirthDateRange() { return bornFrom != Integer.MIN_VALUE || bornTo != Integer.MAX_VALUE; }
+    int getBornFrom() { return bornFrom; }
+    int getBornTo() { return bornTo; }
+
+    /**
+     * Tests a database record (ID,Last Name,First Name,Middle Name,Date of Birth,Password)
+     * @param record The buffer holding the record
+     * @param fieldStarts Start of each of the first five fields
+     * @param fieldEnds End (exclusive) of each of the first five fields, trimmed
+     * @return true if the record matches every criterion
+     */
+    boolean matches(byte[] record, int[] fieldStarts, int[] fieldEnds) {
+        if (hasIDRange()) {
+            int id = parseID(record, fieldStarts[0], fieldEnds[0]);
+            if (id < 0 || id < minID || id > maxID) {
+                return false;
+            }
+        }
+        if (lastName != null && !lastNameEquals(record, fieldStarts[1], fieldEnds[1])) {
+            return false;
+        }
+        if (hasBirthDateRange()) {
+            int born = parseBirthDate(record, fieldStarts[4], fieldEnds[4]);
+            if (born == NO_DATE || born < bornFrom || born > bornTo) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean lastNameEquals(byte[] record, int start, int end) {
+        if (!lastNameAscii) {
+            return decodedLastNameEquals(record, start, end);
+        }
+        boolean equal = end - start == lastNameBytes.length;
+        for (int i = start; i < end; i++) {
+            byte b = record[i];
+            if (b < 0) {
+                // Non-ASCII letters: compare as text
+                return decodedLastNameEquals(record, start, end);
+            }
+            if (equal) {
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                equal = b == lastNameBytes[i - start];
+            }
+        }
+        return equal;
+    }
+
+    private boolean decodedLastNameEquals(byte[] record, int start, int end) {
+        String field = new String(record, start, end - start, StandardCharsets.UTF_8);
+        return field.toLowerCase(Locale.ROOT).equals(lastName);
+    }
+
+    /**
+     * Parses a numeric student ID
+     * @return The ID, or -1 if the field is not all digits
+     */
+    static int parseID(byte[] record, int start, int end) {
+        if (end <= start || end - start > 9) {
+            return -1;
+        }
+        int id = 0;
+        for (int i = start; i < end; i++) {
+            int digit = record[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return -1;
+            }
+            id = id * 10 + digit;
+        }
+        return id;
+    }
+
+    /**
+     * Parses a date of birth in MM/dd/yy or MM/dd/yyyy form. Two-digit years up to the
+     * current year are taken as 20yy, later ones as 19yy.
+     * @return The epoch day, or NO_DATE if the field is not a valid date
+     */
+    static int parseBirthDate(byte[] record, int start, int end) {
+        int[] parts = new int[3];
+        int part = 0;
+        int digits = 0;
+        for (int i = start; i < end; i++) {
+            byte b = record[i];
+            if (b == '/') {
+                if (digits == 0 || ++part > 2) {
+                    return NO_DATE;
+                }
+                digits = 0;
+            } else if (b >= '0' && b <= '9' && digits < 4) {
+                parts[part] = parts[part] * 10 + (b - '0');
+                digits++;
+            } else {
+                return NO_DATE;
+            }
+        }
+        if (part != 2 || (digits != 2 && digits != 4)) {
+            return NO_DATE;
+        }
+        int year = parts[2];
+        if (digits == 2) {
+            int century = CURRENT_YEAR / 100 * 100;
+            year += year <= CURRENT_YEAR % 100 ? century : century - 100;
+        }
+        try {
+            return (int) LocalDate.of(year, parts[0], parts[1]).toEpochDay();
+        } catch (DateTimeException e) {
+            return NO_DATE;
+        }
+    }
+
+    static int parseBirthDate(String text) {
+        byte[] bytes = text.trim().getBytes(StandardCharsets.UTF_8);
+        return parseBirthDate(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Hash key of a last name in the last-name index
+     */
+    static int lastNameKey(String lastName) {
+        return lastName.trim().toLowerCase(Locale.ROOT).hashCode();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder("StudentQuery[");
+        if (lastName != null) {
+            text.append("lastName=").append(lastName).append(' ');
+        }
+        if (hasIDRange()) {
+            text.append("id=").append(minID).append("..").append(maxID).append(' ');
+        }
+        if (hasBirthDateRange()) {
+            text.append("born=").append(LocalDate.ofEpochDay(bornFrom)).append("..").append(LocalDate.ofEpochDay(bornTo));
+        }
+        return text.toString().trim() + "]";
+    }
+}
@@ -0,0 +1,445 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+
+/**
+ * Runs StudentQuery filters against the student database file.
+ * Without indexes, the file is scanned as raw bytes and each record is tested
+ * before a StudentInfo is built. Two optional secondary indexes can be built next
+ * to the database: one sorted by date of birth and one keyed by a hash of the last
+ * name. When a query has a matching criterion and the index is current, the planner
+ * reads only the indexed records, plus any records appended since the index was built.
+ */
+public class StudentQueryEngine {
+
+    private static final int INDEX_MAGIC = 0x53514958; // "SQIX"
+    private static final int INDEX_VERSION = 1;
+    // Bytes before the covered length whose checksum identifies the indexed file
+    private static final int FINGERPRINT_BYTES = 256;
+    private static final int SCAN_BUFFER_SIZE = 1 << 16;
+    private static final int FIELDS = 5;
+
+    /** How a query was (or would be) answered */
+    public enum Plan { FULL_SCAN, LAST_NAME_INDEX, BIRTH_DATE_INDEX }
+
+    private final File databaseFile;
+    private final File birthDateIndexFile;
+    private final File lastNameIndexFile;
+
+    // Indexes as loaded from disk, reloaded when the index file changes
+    private KeyOffsetIndex birthDateIndex;
+    private KeyOffsetIndex lastNameIndex;
+
+    public StudentQueryEngine(File databaseFile) {
+        this.databaseFile = databaseFile;
+        this.birthDateIndexFile = new File(databaseFile.getPath() + ".dob.idx");
+        this.lastNameIndexFile = new File(databaseFile.getPath() + ".lastname.idx");
+    }
+
+    /**
+     * Finds the students matching a query, in database order
+     * @param query The query
+     * @return The matching students
+     * @throws IOException If the database cannot be read
+     */
+    public List<StudentInfo> query(StudentQuery query) throws IOException {
+        List<StudentInfo> results = new ArrayList<>();
+        if (!databaseFile.exists()) {
+            return results;
+        }
+        Choice choice = choosePlan(query);
+        long scanFrom = 0;
+        if (choice.index != null) {
+            long[] offsets = choice.index.offsetsInRange(choice.from, choice.to);
+            readRecordsAt(offsets, query, results);
+            scanFrom = choice.index.coveredLength;
+        }
+        scan(query, scanFrom, results);
+        return results;
+    }
+
+    /**
+     * Tells how a query would be answered with the indexes as they are now
+     * @param query The query
+     * @return The plan
+     */
+    public Plan explain(StudentQuery query) throws IOException {
+        return choosePlan(query).plan;
+    }
+
+    /**
+     * Builds (or rebuilds) both secondary indexes from the current database
+     * @throws IOException If the database cannot be read or an index cannot be written
+     */
+    public void buildIndexes() throws IOException {
+        IndexBuilder birthDates = new IndexBuilder();
+        IndexBuilder lastNames = new IndexBuilder();
+        long coveredLength = forEachRecord(0, (buffer, start, end, fieldStarts, fieldEnds, offset) -> {
+            int born = StudentQuery.parseBirthDate(buffer, fieldStarts[4], fieldEnds[4]);
+            if (born != StudentQuery.NO_DATE) {
+                birthDates.add(born, offset);
+            }
+            String lastName = new String(buffer, fieldStarts[1], fieldEnds[1] - fieldStarts[1], StandardCharsets.UTF_8);
+            lastNames.add(StudentQuery.lastNameKey(lastName), offset);
+        });
+        // An unterminated last line is left to the tail scan
+        birthDates.truncate(coveredLength);
+        lastNames.truncate(coveredLength);
+        long fingerprint = fingerprint(coveredLength);
+        synchronized (this) {
+            birthDates.write(birthDateIndexFile, coveredLength, fingerprint);
+            lastNames.write(lastNameIndexFile, coveredLength, fingerprint);
+            birthDateIndex = null;
+            lastNameIndex = null;
+        }
+    }
+
+    /**
+     * Deletes the secondary indexes; later queries scan the database
+     */
+    public synchronized void dropIndexes() {
+        birthDateIndexFile.delete();
+        lastNameIndexFile.delete();
+        birthDateIndex = null;
+        lastNameIndex = null;
+    }
+
+    // Query planning
+
+    private static class Choice {
+        Plan plan = Plan.FULL_SCAN;
+        KeyOffsetIndex index;
+        int from;
+        int to;
+    }
+
+    /**
+     * Picks the usable index with the fewest candidate records, or a full scan
+     */
+    private Choice choosePlan(StudentQuery query) throws IOException {
+        Choice choice = new Choice();
+        long candidates = Long.MAX_VALUE;
+        if (query.hasLastName()) {
+            KeyOffsetIndex index = currentIndex(false);
+            if (index != null) {
+                int key = StudentQuery.lastNameKey(query.getLastName());
+                candidates = index.countInRange(key, key);
+                choice.plan = Plan.LAST_NAME_INDEX;
+                choice.index = index;
+                choice.from = key;
+                choice.to = key;
+            }
+        }
+        if (query.hasBirthDateRange()) {
+            KeyOffsetIndex index = currentIndex(true);
+            if (index != null && index.countInRange(query.getBornFrom(), query.getBornTo()) < candidates) {
+                choice.plan = Plan.BIRTH_DATE_INDEX;
+                choice.index = index;
+                choice.from = query.getBornFrom();
+                choice.to = query.getBornTo();
+            }
+        }
+        return choice;
+    }
+
+    /**
+     * Returns an index if it exists and still describes the start of the database.
+     * Appended records are fine (they are scanned); a shorter or rewritten file is not.
+     */
+    private synchronized KeyOffsetIndex currentIndex(boolean birthDate) throws IOException {
+        File file = birthDate ? birthDateIndexFile : lastNameIndexFile;
+        KeyOffsetIndex index = birthDate ? birthDateIndex : lastNameIndex;
+        if (!file.exists()) {
+            return null;
+        }
+        if (index == null || index.fileModified != file.lastModified()) {
+            index = readIndex(file);
+            if (birthDate) {
+                birthDateIndex = index;
+            } else {
+                lastNameIndex = index;
+            }
+        }
+        if (index == null || index.coveredLength > databaseFile.length()
+                || index.fingerprint != fingerprint(index.coveredLength)) {
+            return null;
+        }
+        return index;
+    }
+
+    // Record access
+
+    /** Receives one record with its first five fields located and trimmed */
+    private interface RecordVisitor {
+        void visit(byte[] buffer, int start, int end, int[] fieldStarts, int[] fieldEnds, long offset);
+    }
+
+    private void scan(StudentQuery query, long from, List<StudentInfo> results) throws IOException {
+        forEachRecord(from, (buffer, start, end, fieldStarts, fieldEnds, offset) -> {
+            if (query.matches(buffer, fieldStarts, fieldEnds)) {
+                results.add(toStudentInfo(buffer, start, end));
+            }
+        });
+    }
+
+    /**
+     * Reads the records at the given offsets, in file order, keeping those that match
+     */
+    private void readRecordsAt(long[] offsets, StudentQuery query, List<StudentInfo> results) throws IOException {
+        Arrays.sort(offsets);
+        int[] fieldStarts = new int[FIELDS];
+        int[] fieldEnds = new int[FIELDS];
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+        try (FileChannel channel = FileChannel.open(databaseFile.toPath(), StandardOpenOption.READ)) {
+            for (long offset : offsets) {
+                buffer.clear();
+                int lineEnd = -1;
+                while (lineEnd < 0) {
+                    if (!buffer.hasRemaining()) {
+                        ByteBuffer larger = ByteBuffer.allocate(buffer.capacity() * 2);
+                        buffer.flip();
+                        larger.put(buffer);
+                        buffer = larger;
+                    }
+                    int searchFrom = buffer.position();
+                    if (channel.read(buffer, offset + searchFrom) < 0) {
+                        lineEnd = buffer.position();
+                        break;
+                    }
+                    lineEnd = indexOf(buffer.array(), searchFrom, buffer.position(), (byte) '\n');
+                }
+                if (locateFields(buffer.array(), 0, lineEnd, fieldStarts, fieldEnds)
+                        && query.matches(buffer.array(), fieldStarts, fieldEnds)) {
+                    results.add(toStudentInfo(buffer.array(), 0, trimCarriageReturn(buffer.array(), 0, lineEnd)));
+                }
+            }
+        }
+    }
+
+    /**
+     * Calls the visitor for every record from an offset on
+     * @return The offset just past the last newline-terminated record
+     */
+    private long forEachRecord(long from, RecordVisitor visitor) throws IOException {
+        int[] fieldStarts = new int[FIELDS];
+        int[] fieldEnds = new int[FIELDS];
+        byte[] buffer = new byte[SCAN_BUFFER_SIZE];
+        long bufferOffset = from;
+        try (FileInputStream in = new FileInputStream(databaseFile)) {
+            in.getChannel().position(from);
+            int filled = 0;
+            int read;
+            while ((read = in.read(buffer, filled, buffer.length - filled)) > 0) {
+                filled += read;
+                int lineStart = 0;
+                int newline;
+                while ((newline = indexOf(buffer, lineStart, filled, (byte) '\n')) >= 0) {
+                    int lineEnd = trimCarriageReturn(buffer, lineStart, newline);
+                    if (locateFields(buffer, lineStart, lineEnd, fieldStarts, fieldEnds)) {
+                        visitor.visit(buffer, lineStart, lineEnd, fieldStarts, fieldEnds, bufferOffset + lineStart);
+                    }
+                    lineStart = newline + 1;
+                }
+                // Keep the partial line, growing the buffer for very long lines
+                filled -= lineStart;
+                System.arraycopy(buffer, lineStart, buffer, 0, filled);
+                bufferOffset += lineStart;
+                if (filled == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+            // A last line without a newline is still a record, but is not counted as complete
+            int lineEnd = trimCarriageReturn(buffer, 0, filled);
+            if (filled > 0 && locateFields(buffer, 0, lineEnd, fieldStarts, fieldEnds)) {
+                visitor.visit(buffer, 0, lineEnd, fieldStarts, fieldEnds, bufferOffset);
+            }
+        }
+        return bufferOffset;
+    }
+
+    /**
+     * Finds the first five comma-separated fields of a line, trimmed
+     * @return false if the line does not have all six fields of a record
+     */
+    private static boolean locateFields(byte[] buffer, int start, int end, int[] fieldStarts, int[] fieldEnds) {
+        int field = 0;
+        int fieldStart = start;
+        for (int i = start; i < end && field < FIELDS; i++) {
+            if (buffer[i] == ',') {
+                fieldStarts[field] = fieldStart;
+                fieldEnds[field] = i;
+                field++;
+                fieldStart = i + 1;
+            }
+        }
+        if (field < FIELDS) {
+            return false;
+        }
+        for (int f = 0; f < FIELDS; f++) {
+            while (fieldStarts[f] < fieldEnds[f] && buffer[fieldStarts[f]] <= ' ') {
+                fieldStarts[f]++;
+            }
+            while (fieldEnds[f] > fieldStarts[f] && buffer[fieldEnds[f] - 1] <= ' ') {
+                fieldEnds[f]--;
+            }
+        }
+        return true;
+    }
+
+    private static StudentInfo toStudentInfo(byte[] buffer, int start, int end) {
+        String[] parts = new String(buffer, start, end - start, StandardCharsets.UTF_8).split(",");
+        return new StudentInfo(parts[0].trim(), parts[1].trim(), parts[2].trim(), parts[3].trim(),
+                parts[4].trim(), parts.length > 5 ? parts[5].trim() : "");
+    }
+
+    private static int trimCarriageReturn(byte[] buffer, int start, int end) {
+        return end > start && buffer[end - 1] == '\r' ? end - 1 : end;
+    }
+
+    private static int indexOf(byte[] buffer, int from, int to, byte value) {
+        for (int i = from; i < to; i++) {
+            if (buffer[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // Index files: header, then (key, offset) pairs sorted by key and offset
+
+    private static long fingerprintOf(byte[] bytes, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        return crc.getValue();
+    }
+
+    /**
+     * Checksum of the bytes just before a length, used to tell that the database
+     * still starts with the records an index was built from
+     */
+    private long fingerprint(long length) throws IOException {
+        int size = (int) Math.min(FINGERPRINT_BYTES, length);
+        byte[] bytes = new byte[size];
+        try (RandomAccessFile file = new RandomAccessFile(databaseFile, "r")) {
+            file.seek(length - size);
+            file.readFully(bytes);
+        } catch (EOFException e) {
+            return -1;
+        }
+        return fingerprintOf(bytes, size) ^ length;
+    }
+
+    private static KeyOffsetIndex readIndex(File file) throws IOException {
+        long modified = file.lastModified();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                return null;
+            }
+            KeyOffsetIndex index = new KeyOffsetIndex();
+            index.coveredLength = in.readLong();
+            index.fingerprint = in.readLong();
+            int count = in.readInt();
+            index.keys = new int[count];
+            index.offsets = new long[count];
+            for (int i = 0; i < count; i++) {
+                index.keys[i] = in.readInt();
+                index.offsets[i] = in.readLong();
+            }
+            index.fileModified = modified;
+            return index;
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Collects (key, offset) pairs in file order and writes them sorted by key
+     */
+    private static class IndexBuilder {
+        int[] keys = new int[1024];
+        long[] offsets = new long[1024];
+        int size;
+
+        void add(int key, long offset) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            keys[size] = key;
+            offsets[size] = offset;
+            size++;
+        }
+
+        void truncate(long coveredLength) {
+            while (size > 0 && offsets[size - 1] >= coveredLength) {
+                size--;
+            }
+        }
+
+        void write(File file, long coveredLength, long fingerprint) throws IOException {
+            // Sort (key, position) packed into longs; positions keep equal keys in file order
+            long[] order = new long[size];
+            for (int i = 0; i < size; i++) {
+                order[i] = ((long) keys[i] << 32) | i;
+            }
+            Arrays.sort(order);
+            File temp = new File(file.getPath() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp), 1 << 16))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(INDEX_VERSION);
+                out.writeLong(coveredLength);
+                out.writeLong(fingerprint);
+                out.writeInt(size);
+                for (long entry : order) {
+                    int i = (int) entry;
+                    out.writeInt(keys[i]);
+                    out.writeLong(offsets[i]);
+                }
+            }
+            if (!temp.renameTo(file)) {
+                file.delete();
+                if (!temp.renameTo(file)) {
+                    throw new IOException("Could not replace " + file.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorted (key, record offset) pairs loaded from an index file
+     */
+    private static class KeyOffsetIndex {
+        int[] keys;
+        long[] offsets;
+        long coveredLength;
+        long fingerprint;
+        long fileModified;
+
+        int lowerBound(long key) {
+            int low = 0;
+            int high = keys.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < key) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        int countInRange(int from, int to) {
+            return lowerBound((long) to + 1) - lowerBound(from);
+        }
+
+        long[] offsetsInRange(int from, int to) {
+            int start = lowerBound(from);
+            return Arrays.copyOfRange(offsets, start, lowerBound((long) to + 1));
+        }
+    }
+}
@@ -0,0 +1,138 @@
+import java.time.LocalDate;
+
+/**
+ * Compact, immutable form of a student for keeping large rosters in memory.
+ * The ID is packed into an int and the date of birth into an epoch day, and names
+ * come from a NameDictionary that the records of a roster share. The full name is
+ * built once; it and the password are the only Strings of a record's own.
+ *
+ * A date of birth that does not read back the same from its epoch day (e.g.
+ * "1/5/05" or free text) is kept as the original text.
+ */
+public final class StudentRecord {
+
+    private static final byte TWO_DIGIT_YEAR = 0;
+    private static final byte FOUR_DIGIT_YEAR = 1;
+    private static final byte DATE_AS_TEXT = 2;
+
+    private final int id;
+    private final int bornOn;           // epoch day, or StudentQuery.NO_DATE
+    private final byte dateFormat;
+    private final String lastName;
+    private final String firstName;
+    private final String middleName;
+    private final String fullName;
+    private final String password;
+    private final String dateText;      // only for DATE_AS_TEXT
+
+    private StudentRecord(int id, int bornOn, byte dateFormat, String dateText, String lastName,
+                          String firstName, String middleName, String fullName, String password) {
+        this.id = id;
+        this.bornOn = bornOn;
+        this.dateFormat = dateFormat;
+        this.dateText = dateText;
+        this.lastName = lastName;
+        this.firstName = firstName;
+        this.middleName = middleName;
+        this.fullName = fullName;
+        this.password = password;
+    }
+
+    /**
+     * Creates the compact form of a student
+     * @param student The student, with a 7-digit ID
+     * @param names The dictionary shared by the roster
+     * @return The record
+     * @throws IllegalArgumentException If the student has no valid 7-digit ID
+     */
+    public static StudentRecord of(StudentInfo student, NameDictionary names) {
+        int id = StudentIdIndex.parse(student.getId());
+        if (id < 0) {
+            throw new IllegalArgumentException("Not a student ID: " + student.getId());
+        }
+        String dateOfBirth = student.getDateOfBirth();
+        int bornOn = dateOfBirth == null ? StudentQuery.NO_DATE : StudentQuery.parseBirthDate(dateOfBirth);
+        byte dateFormat = DATE_AS_TEXT;
+        if (bornOn != StudentQuery.NO_DATE) {
+            if (dateOfBirth.equals(formatDate(bornOn, TWO_DIGIT_YEAR))) {
+                dateFormat = TWO_DIGIT_YEAR;
+            } else if (dateOfBirth.equals(formatDate(bornOn, FOUR_DIGIT_YEAR))) {
+                dateFormat = FOUR_DIGIT_YEAR;
+            }
+        }
+        String firstName = names.intern(student.getFirstName());
+        String lastName = names.intern(student.getLastName());
+        return new StudentRecord(id, bornOn, dateFormat, dateFormat == DATE_AS_TEXT ? dateOfBirth : null,
+                lastName, firstName, names.intern(student.getMiddleName()),
+                fullName(firstName, lastName), student.getPassword());
+    }
+
+    /**
+     * Parses a line in the Database.txt format
+     * @param line The line
+     * @param names The dictionary shared by the roster
+     * @return The record, or null if the line is not a student record
+     */
+    public static StudentRecord parse(String line, NameDictionary names) {
+        String[] parts = line.split(",");
+        if (parts.length < 6 || StudentIdIndex.parse(parts[0].trim()) < 0) {
+            return null;
+        }
+        return of(new StudentInfo(parts[0].trim(), parts[1].trim(), parts[2].trim(), parts[3].trim(),
+                parts[4].trim(), parts[5].trim()), names);
+    }
+
+    // Getters
+    public int getIdNumber() { return id; }
+    public String getId() { return String.format("%07d", id); }
+    public String getLastName() { return lastName; }
+    public String getFirstName() { return firstName; }
+    public String getMiddleName() { return middleName; }
+    public String getFullName() { return fullName; }
+    public String getPassword() { return password; }
+
+    /**
+     * @return The date of birth as it was entered
+     */
+    public String getDateOfBirth() {
+        return dateFormat == DATE_AS_TEXT ? dateText : formatDate(bornOn, dateFormat);
+    }
+
+    /**
+     * @return The date of birth, or null if it is not a valid date
+     */
+    public LocalDate getBirthDate() {
+        return bornOn == StudentQuery.NO_DATE ? null : LocalDate.ofEpochDay(bornOn);
+    }
+
+    /**
+     * @return A StudentInfo with the same fields, for code that takes one
+     */
+    public StudentInfo toStudentInfo() {
+        return new StudentInfo(getId(), lastName, firstName, middleName, getDateOfBirth(), password);
+    }
+
+    public String toDatabaseFormat() {
+        return getId() + "," + lastName + "," + firstName + "," + middleName + "," + getDateOfBirth() + "," + password;
+    }
+
+    static String fullName(String firstName, String lastName) {
+        return firstName.toUpperCase() + " " + lastName.toUpperCase();
+    }
+
+    // Called for every record on load, so it avoids String.format
+    private static String formatDate(int epochDay, byte format) {
+        LocalDate date = LocalDate.ofEpochDay(epochDay);
+        StringBuilder text = new StringBuilder(10);
+        appendTwoDigits(text, date.getMonthValue()).append('/');
+        appendTwoDigits(text, date.getDayOfMonth()).append('/');
+        if (format == FOUR_DIGIT_YEAR) {
+            return text.append(date.getYear()).toString();
+        }
+        return appendTwoDigits(text, date.getYear() % 100).toString();
+    }
+
+    private static StringBuilder appendTwoDigits(StringBuilder text, int value) {
+        return text.append((char) ('0' + value / 10)).append((char) ('0' + value % 10));
+    }
+}
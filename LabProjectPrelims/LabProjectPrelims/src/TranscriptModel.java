@@ -0,0 +1,184 @@
+import java.util.Arrays;
+
+/**
+ * Transcript of records for a single student.
+ * Grades and units are kept in primitive arrays grouped by term, and the
+ * per-term and cumulative weighted averages (GWA) are maintained as running
+ * sums so that adding or correcting a grade is O(1).
+ */
+public class TranscriptModel {
+
+    private static final int INITIAL_COURSES = 32;
+    private static final int INITIAL_TERMS = 8;
+
+    // Course columns (one slot per course, in insertion order)
+    private String[] courseCodes = new String[INITIAL_COURSES];
+    private String[] courseTitles = new String[INITIAL_COURSES];
+    private double[] grades = new double[INITIAL_COURSES];
+    private int[] units = new int[INITIAL_COURSES];
+    private int[] courseTerm = new int[INITIAL_COURSES];
+    private int courseCount;
+
+    // Term columns (running sums per term)
+    private String[] termLabels = new String[INITIAL_TERMS];
+    private double[] termWeightedSum = new double[INITIAL_TERMS];
+    private int[] termUnits = new int[INITIAL_TERMS];
+    private int[] termCourseCount = new int[INITIAL_TERMS];
+    private int termCount;
+
+    // Cumulative running sums
+    private double totalWeightedSum;
+    private int totalUnits;
+
+    /**
+     * Starts a new term (e.g. "FIRST SEMESTER, 2024-2025")
+     * @param label The term label shown in the transcript
+     * @return The index of the new term
+     */
+    public int addTerm(String label) {
+        if (termCount == termLabels.length) {
+            int newCapacity = termLabels.length * 2;
+            termLabels = Arrays.copyOf(termLabels, newCapacity);
+            termWeightedSum = Arrays.copyOf(termWeightedSum, newCapacity);
+            termUnits = Arrays.copyOf(termUnits, newCapacity);
+            termCourseCount = Arrays.copyOf(termCourseCount, newCapacity);
+        }
+        termLabels[termCount] = label;
+        return termCount++;
+    }
+
+    /**
+     * Adds a graded course to a term and updates the running averages
+     * @param term The term index returned by addTerm
+     * @param code The course number
+     * @param title The descriptive title
+     * @param grade The final grade
+     * @param courseUnits The number of units
+     * @return The index of the new course, used for later corrections
+     */
+    public int addCourse(int term, String code, String title, double grade, int courseUnits) {
+        checkTerm(term);
+        if (courseUnits < 0) {
+            throw new IllegalArgumentException("Units must not be negative: " + courseUnits);
+        }
+        if (courseCount == grades.length) {
+            int newCapacity = grades.length * 2;
+            courseCodes = Arrays.copyOf(courseCodes, newCapacity);
+            courseTitles = Arrays.copyOf(courseTitles, newCapacity);
+            grades = Arrays.copyOf(grades, newCapacity);
+            units = Arrays.copyOf(units, newCapacity);
+            courseTerm = Arrays.copyOf(courseTerm, newCapacity);
+        }
+        int index = courseCount++;
+        courseCodes[index] = code;
+        courseTitles[index] = title;
+        grades[index] = grade;
+        units[index] = courseUnits;
+        courseTerm[index] = term;
+
+        double weighted = grade * courseUnits;
+        termWeightedSum[term] += weighted;
+        termUnits[term] += courseUnits;
+        termCourseCount[term]++;
+        totalWeightedSum += weighted;
+        totalUnits += courseUnits;
+        return index;
+    }
+
+    /**
+     * Corrects the grade of an existing course, adjusting the term and
+     * cumulative sums by the difference only
+     * @param course The course index returned by addCourse
+     * @param newGrade The corrected grade
+     */
+    public void correctGrade(int course, double newGrade) {
+        checkCourse(course);
+        double delta = (newGrade - grades[course]) * units[course];
+        grades[course] = newGrade;
+        termWeightedSum[courseTerm[course]] += delta;
+        totalWeightedSum += delta;
+    }
+
+    /**
+     * Corrects the units of an existing course
+     * @param course The course index returned by addCourse
+     * @param newUnits The corrected number of units
+     */
+    public void correctUnits(int course, int newUnits) {
+        checkCourse(course);
+        if (newUnits < 0) {
+            throw new IllegalArgumentException("Units must not be negative: " + newUnits);
+        }
+        int unitDelta = newUnits - units[course];
+        double weightedDelta = grades[course] * unitDelta;
+        int term = courseTerm[course];
+        units[course] = newUnits;
+        termUnits[term] += unitDelta;
+        termWeightedSum[term] += weightedDelta;
+        totalUnits += unitDelta;
+        totalWeightedSum += weightedDelta;
+    }
+
+    // Getters
+    public int getTermCount() { return termCount; }
+    public int getCourseCount() { return courseCount; }
+    public String getTermLabel(int term) { checkTerm(term); return termLabels[term]; }
+    public int getTermUnits(int term) { checkTerm(term); return termUnits[term]; }
+    public double getGrade(int course) { checkCourse(course); return grades[course]; }
+    public int getUnits(int course) { checkCourse(course); return units[course]; }
+    public int getTotalUnits() { return totalUnits; }
+
+    /**
+     * @param term The term index
+     * @return The weighted average for the term, or 0 if it has no units
+     */
+    public double getTermGwa(int term) {
+        checkTerm(term);
+        return termUnits[term] == 0 ? 0.0 : termWeightedSum[term] / termUnits[term];
+    }
+
+    /**
+     * @return The cumulative weighted average over all terms, or 0 if there are no units
+     */
+    public double getCumulativeGwa() {
+        return totalUnits == 0 ? 0.0 : totalWeightedSum / totalUnits;
+    }
+
+    /**
+     * Converts the transcript into table rows, with a header row per term
+     * @return Rows of {Course Number, Descriptive Title, Grade, Units}
+     */
+    public Object[][] toTableData() {
+        Object[][] rows = new Object[termCount + courseCount][];
+        int row = 0;
+        for (int term = 0; term < termCount; term++) {
+            rows[row++] = new Object[]{termLabels[term], "", "", ""};
+            for (int course = 0; course < courseCount; course++) {
+                if (courseTerm[course] == term) {
+                    rows[row++] = new Object[]{courseCodes[course], courseTitles[course], formatGrade(grades[course]), units[course]};
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static Object formatGrade(double grade) {
+        // Whole-number grades are shown as integers, as on the printed transcript
+        if (grade == Math.rint(grade)) {
+            return (int) grade;
+        }
+        return String.format("%.2f", grade);
+    }
+
+    private void checkTerm(int term) {
+        if (term < 0 || term >= termCount) {
+            throw new IndexOutOfBoundsException("Term index: " + term + ", Terms: " + termCount);
+        }
+    }
+
+    private void checkCourse(int course) {
+        if (course < 0 || course >= courseCount) {
+            throw new IndexOutOfBoundsException("Course index: " + course + ", Courses: " + courseCount);
+        }
+    }
+}
@@ -111,14 +111,11 @@ public class reqAcc extends JFrame {
             }
 
             try {
-                // Generate unique ID using DataManager
-                String idNum = DataManager.generateUniqueStudentID();
+                // Pick a unique ID and save in one step, so other portals cannot take the same ID
+                StudentInfo studentInfo = DataManager.createStudentAccount(lname, fname, mname, dob, password);
 
-                // Create StudentInfo object
-                StudentInfo studentInfo = new StudentInfo(idNum, lname, fname, mname, dob, password);
-
-                // Save using DataManager
-                if (DataManager.saveStudentAccount(studentInfo)) {
+                if (studentInfo != null) {
+                    String idNum = studentInfo.getId();
                     // Add to local log for display
                     String logEntry = "ID: " + idNum + " | Password: " + password;
                     accountLog.add(logEntry);